@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.encryption;
+
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Authenticated AES encryption in Galois/Counter Mode. Every message is encrypted with a new 12 byte nonce which is
+ * written in front of the encrypted data, and ends with a 16 byte tag so that any change to the message is detected
+ * when it is decrypted. Each nonce is made of a random 8 byte prefix followed by a 4 byte counter, and a new prefix is
+ * drawn whenever the counter wraps, so a nonce is never repeated by an instance.
+ * <p>
+ * The key must be 16, 24 or 32 bytes long. Ciphers are pooled as in {@link ConcurrentEncryption}.
+ */
+public class AESGCMEncryption extends ConcurrentEncryption
+{
+	// ** Finals **//
+	public static final String ALGORITHM = "AES/GCM/NoPadding";
+	
+	// holds the number of bytes in the nonce written in front of every message
+	public static final int NONCE_LENGTH = 12;
+	
+	// holds the number of bytes in the authentication tag at the end of every message
+	public static final int TAG_LENGTH = 16;
+	
+	// ** Objects **//
+	// holds the source of the nonce prefixes
+	private final SecureRandom random;
+	
+	// ** Primitives **//
+	// holds the prefix and the counter of the next nonce
+	private long noncePrefix;
+	private int nonceCounter;
+	
+	public AESGCMEncryption(final byte[] encryptionKey) throws EncryptionException
+	{
+		this(encryptionKey, DEFAULT_MAX_IDLE);
+	}
+	
+	public AESGCMEncryption(final byte[] encryptionKey, final int maxIdle) throws EncryptionException
+	{
+		super(encryptionKey, ALGORITHM, maxIdle);
+		
+		random = new SecureRandom();
+	}
+	
+	/**
+	 * Creates a new cipher for the mode. The cipher is initialized with a random nonce only so that its output size can
+	 * be queried; every message initializes it again in {@link #beginMessage(int, Cipher, byte[])}.
+	 * 
+	 * @param mode
+	 * @return
+	 * @throws EncryptionException
+	 */
+	@Override
+	protected Cipher createCipher(final int mode) throws EncryptionException
+	{
+		try
+		{
+			// this is called by the constructor of the super class, before the random field is set
+			byte[] nonce = new byte[NONCE_LENGTH];
+			new SecureRandom().nextBytes(nonce);
+			
+			Cipher cipher = Cipher.getInstance(getAlgorithm());
+			cipher.init(mode, getKeySpec(), new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+			
+			return cipher;
+		}
+		catch (GeneralSecurityException e)
+		{
+			throw new EncryptionException(e);
+		}
+	}
+	
+	@Override
+	protected int getHeaderLength()
+	{
+		return NONCE_LENGTH;
+	}
+	
+	/**
+	 * Initializes the cipher with the nonce of the message. A new nonce is generated when encrypting; when decrypting,
+	 * the nonce is the header which was read from the message.
+	 * 
+	 * @param mode
+	 * @param cipher
+	 * @param header
+	 * @throws GeneralSecurityException
+	 */
+	@Override
+	protected void beginMessage(final int mode, final Cipher cipher, final byte[] header)
+		throws GeneralSecurityException
+	{
+		if (Cipher.ENCRYPT_MODE == mode)
+		{
+			nextNonce(header);
+		}
+		
+		cipher.init(mode, getKeySpec(), new GCMParameterSpec(TAG_LENGTH * 8, header));
+	}
+	
+	/**
+	 * Writes the next nonce into the array
+	 * 
+	 * @param nonce
+	 */
+	private synchronized void nextNonce(final byte[] nonce)
+	{
+		// draw a new prefix at the start of every run of the counter
+		if (0 == nonceCounter)
+		{
+			noncePrefix = random.nextLong();
+		}
+		
+		for (int i = 0; i < 8; i++)
+		{
+			nonce[i] = (byte) (noncePrefix >>> (56 - i * 8));
+		}
+		for (int i = 0; i < 4; i++)
+		{
+			nonce[8 + i] = (byte) (nonceCounter >>> (24 - i * 8));
+		}
+		
+		nonceCounter++;
+	}
+	
+	/**
+	 * Determines if AES-GCM is supported by this device
+	 * 
+	 * @return
+	 */
+	public static boolean isSupported()
+	{
+		try
+		{
+			Cipher.getInstance(ALGORITHM);
+			
+			return true;
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			return false;
+		}
+		catch (NoSuchPaddingException e)
+		{
+			return false;
+		}
+	}
+}
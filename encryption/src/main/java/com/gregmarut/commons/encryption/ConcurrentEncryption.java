@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.encryption;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+
+/**
+ * An {@link Encryption} which keeps a pool of ciphers for each mode instead of a single locked cipher, so that any
+ * number of threads can encrypt and decrypt at the same time. A thread takes an idle cipher from the pool, or creates
+ * one if none are idle, and returns it when it is done. At most a fixed number of idle ciphers are kept per mode.
+ */
+public class ConcurrentEncryption extends Encryption
+{
+	// ** Finals **//
+	// holds the number of idle ciphers kept per mode unless another number is given. Creating a cipher costs far more
+	// than using one, so the pool should be able to hold a cipher for every thread that encrypts at the same time.
+	public static final int DEFAULT_MAX_IDLE = Math.max(64, Runtime.getRuntime().availableProcessors() * 4);
+	
+	// ** Objects **//
+	// holds the idle ciphers of each mode
+	private final Queue<Cipher> encryptCiphers;
+	private final Queue<Cipher> decryptCiphers;
+	
+	// holds the number of idle ciphers of each mode
+	private final AtomicInteger encryptIdle;
+	private final AtomicInteger decryptIdle;
+	
+	// ** Primitives **//
+	private final int maxIdle;
+	
+	public ConcurrentEncryption(final byte[] encryptionKey, final String algorithm) throws EncryptionException
+	{
+		this(encryptionKey, algorithm, DEFAULT_MAX_IDLE);
+	}
+	
+	public ConcurrentEncryption(final byte[] encryptionKey, final String algorithm, final int maxIdle)
+		throws EncryptionException
+	{
+		super(encryptionKey, algorithm);
+		
+		// make sure at least one cipher can be kept
+		if (maxIdle < 1)
+		{
+			throw new IllegalArgumentException("maxIdle must be at least 1");
+		}
+		
+		this.maxIdle = maxIdle;
+		
+		encryptCiphers = new ConcurrentLinkedQueue<Cipher>();
+		decryptCiphers = new ConcurrentLinkedQueue<Cipher>();
+		encryptIdle = new AtomicInteger();
+		decryptIdle = new AtomicInteger();
+	}
+	
+	/**
+	 * Takes an idle cipher from the pool of the mode, or creates a new one if none are idle
+	 * 
+	 * @param mode
+	 * @return
+	 * @throws EncryptionException
+	 */
+	@Override
+	protected Cipher acquireCipher(final int mode) throws EncryptionException
+	{
+		Cipher cipher = getCiphers(mode).poll();
+		
+		// check to see if an idle cipher was found
+		if (null != cipher)
+		{
+			getIdle(mode).decrementAndGet();
+			return cipher;
+		}
+		else
+		{
+			return createCipher(mode);
+		}
+	}
+	
+	/**
+	 * Returns the cipher to the pool of the mode unless the pool is already full
+	 * 
+	 * @param mode
+	 * @param cipher
+	 */
+	@Override
+	protected void releaseCipher(final int mode, final Cipher cipher)
+	{
+		AtomicInteger idle = getIdle(mode);
+		
+		// make sure the pool has room for another cipher
+		if (idle.incrementAndGet() <= maxIdle)
+		{
+			getCiphers(mode).offer(cipher);
+		}
+		else
+		{
+			idle.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * Streams take their cipher from the same pool, since a pooled cipher is never shared
+	 * 
+	 * @param mode
+	 * @return
+	 * @throws EncryptionException
+	 */
+	@Override
+	protected Cipher acquireStreamCipher(final int mode) throws EncryptionException
+	{
+		return acquireCipher(mode);
+	}
+	
+	/**
+	 * Returns the cipher of a finished stream to the pool of the mode
+	 * 
+	 * @param mode
+	 * @param cipher
+	 */
+	@Override
+	protected void releaseStreamCipher(final int mode, final Cipher cipher)
+	{
+		releaseCipher(mode, cipher);
+	}
+	
+	public int getMaxIdle()
+	{
+		return maxIdle;
+	}
+	
+	/**
+	 * Returns the idle ciphers of the mode
+	 * 
+	 * @param mode
+	 * @return
+	 */
+	private Queue<Cipher> getCiphers(final int mode)
+	{
+		return Cipher.ENCRYPT_MODE == mode ? encryptCiphers : decryptCiphers;
+	}
+	
+	/**
+	 * Returns the number of idle ciphers of the mode
+	 * 
+	 * @param mode
+	 * @return
+	 */
+	private AtomicInteger getIdle(final int mode)
+	{
+		return Cipher.ENCRYPT_MODE == mode ? encryptIdle : decryptIdle;
+	}
+}
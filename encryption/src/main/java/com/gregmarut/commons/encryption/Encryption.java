@@ -12,38 +12,76 @@
  ******************************************************************************/
 package com.gregmarut.commons.encryption;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
-import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.SecretKeySpec;
 
 import com.gregmarut.commons.util.ByteArray;
 
+/**
+ * Encrypts and decrypts byte arrays, buffers and streams with a symmetric key. A single instance can safely be shared between threads, but
+ * each mode has only one {@link Cipher} so concurrent calls in the same mode wait for each other; use
+ * {@link ConcurrentEncryption} when many threads encrypt at once.
+ */
 public class Encryption
 {
 	// holds the objects to encrypt and decrypt
 	private final Cipher encrypt;
 	private final Cipher decrypt;
 	
+	// holds the locks which guard each of the ciphers
+	private final Lock encryptLock;
+	private final Lock decryptLock;
+	
 	// holds the key spec that will be used for the encryption
 	private final SecretKeySpec keySpec;
 	
+	// holds the algorithm used to create each cipher
+	private final String algorithm;
+	
 	public Encryption(final byte[] encryptionKey, final String algorithm) throws EncryptionException
+	{
+		// create the key spec using the provided encryption key. A transformation such as "AES/GCM/NoPadding" only names
+		// the key algorithm in its first part.
+		this.keySpec = new SecretKeySpec(encryptionKey, algorithm.split("/")[0]);
+		this.algorithm = algorithm;
+		
+		encrypt = createCipher(Cipher.ENCRYPT_MODE);
+		decrypt = createCipher(Cipher.DECRYPT_MODE);
+		
+		encryptLock = new ReentrantLock();
+		decryptLock = new ReentrantLock();
+	}
+	
+	/**
+	 * Creates a new cipher which is initialized for the mode
+	 * 
+	 * @param mode
+	 *            {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+	 * @return
+	 * @throws EncryptionException
+	 */
+	protected Cipher createCipher(final int mode) throws EncryptionException
 	{
 		try
 		{
-			// create the key spec using the provided encryption key
-			keySpec = new SecretKeySpec(encryptionKey, algorithm);
+			Cipher cipher = Cipher.getInstance(algorithm);
+			cipher.init(mode, keySpec);
 			
-			encrypt = Cipher.getInstance(algorithm);
-			encrypt.init(Cipher.ENCRYPT_MODE, keySpec);
-			
-			decrypt = Cipher.getInstance(algorithm);
-			decrypt.init(Cipher.DECRYPT_MODE, keySpec);
+			return cipher;
 		}
 		catch (NoSuchAlgorithmException e)
 		{
@@ -60,28 +98,186 @@ public class Encryption
 	}
 	
 	/**
-	 * Encrypts the input and returns the result as a byte array
+	 * Returns a cipher for the mode which the calling thread may use until it calls
+	 * {@link #releaseCipher(int, Cipher)}. The cipher of the mode is locked until it is released.
 	 * 
+	 * @param mode
+	 *            {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+	 * @return
+	 * @throws EncryptionException
+	 */
+	protected Cipher acquireCipher(final int mode) throws EncryptionException
+	{
+		if (Cipher.ENCRYPT_MODE == mode)
+		{
+			encryptLock.lock();
+			return encrypt;
+		}
+		else
+		{
+			decryptLock.lock();
+			return decrypt;
+		}
+	}
+	
+	/**
+	 * Returns a cipher obtained from {@link #acquireCipher(int)}
+	 * 
+	 * @param mode
+	 * @param cipher
+	 */
+	protected void releaseCipher(final int mode, final Cipher cipher)
+	{
+		if (Cipher.ENCRYPT_MODE == mode)
+		{
+			encryptLock.unlock();
+		}
+		else
+		{
+			decryptLock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns a cipher for the mode which is owned by a single stream until the stream reaches the end of its data and
+	 * calls {@link #releaseStreamCipher(int, Cipher)}. A stream may be open for a long time, so rather than holding the
+	 * lock of the shared cipher this creates a new one.
+	 * 
+	 * @param mode
+	 *            {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+	 * @return
+	 * @throws EncryptionException
+	 */
+	protected Cipher acquireStreamCipher(final int mode) throws EncryptionException
+	{
+		return createCipher(mode);
+	}
+	
+	/**
+	 * Returns a cipher obtained from {@link #acquireStreamCipher(int)} once its stream has finished the cipher. A stream
+	 * which is closed early never releases its cipher.
+	 * 
+	 * @param mode
+	 * @param cipher
+	 */
+	protected void releaseStreamCipher(final int mode, final Cipher cipher)
+	{
+		// the cipher is simply discarded
+	}
+	
+	/**
+	 * Runs the input through a cipher of the mode
+	 * 
+	 * @param mode
 	 * @param input
 	 * @return
 	 * @throws EncryptionException
 	 */
-	public final byte[] encrypt(final byte[] input) throws EncryptionException
+	private byte[] doFinal(final int mode, final byte[] input) throws EncryptionException
 	{
+		// make sure the input is not null
+		if (null == input)
+		{
+			throw new IllegalArgumentException("input cannot be null");
+		}
+		
+		Cipher cipher = acquireCipher(mode);
+		
 		try
 		{
-			return encrypt.doFinal(input);
+			byte[] header = new byte[getHeaderLength()];
+			
+			if (Cipher.ENCRYPT_MODE == mode)
+			{
+				beginMessage(mode, cipher, header);
+				
+				// check to see if there is a header to write in front of the output
+				if (0 == header.length)
+				{
+					return cipher.doFinal(input);
+				}
+				
+				byte[] output = new byte[header.length + cipher.getOutputSize(input.length)];
+				System.arraycopy(header, 0, output, 0, header.length);
+				int length = header.length + cipher.doFinal(input, 0, input.length, output, header.length);
+				
+				return length == output.length ? output : Arrays.copyOf(output, length);
+			}
+			else
+			{
+				// make sure the input holds the whole header
+				if (input.length < header.length)
+				{
+					throw new IllegalBlockSizeException("Input is shorter than the message header");
+				}
+				
+				System.arraycopy(input, 0, header, 0, header.length);
+				beginMessage(mode, cipher, header);
+				
+				return cipher.doFinal(input, header.length, input.length - header.length);
+			}
 		}
-		catch (IllegalBlockSizeException e)
+		catch (GeneralSecurityException e)
 		{
 			throw new EncryptionException(e);
 		}
-		catch (BadPaddingException e)
+		finally
 		{
-			throw new EncryptionException(e);
+			releaseCipher(mode, cipher);
 		}
 	}
 	
+	/**
+	 * Returns the number of bytes which are written in front of every encrypted message, such as a nonce. The default
+	 * has no header.
+	 * 
+	 * @return
+	 */
+	protected int getHeaderLength()
+	{
+		return 0;
+	}
+	
+	/**
+	 * Prepares the cipher for a new message. When encrypting, the header of the message is filled in here; when
+	 * decrypting, the header holds the bytes which were read from the front of the message. Ciphers which are
+	 * initialized once by {@link #createCipher(int)} do nothing here.
+	 * 
+	 * @param mode
+	 *            {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+	 * @param cipher
+	 * @param header
+	 *            an array of {@link #getHeaderLength()} bytes
+	 * @throws GeneralSecurityException
+	 */
+	protected void beginMessage(final int mode, final Cipher cipher, final byte[] header)
+		throws GeneralSecurityException
+	{
+		// the cipher needs no preparation
+	}
+	
+	public String getAlgorithm()
+	{
+		return algorithm;
+	}
+	
+	protected SecretKeySpec getKeySpec()
+	{
+		return keySpec;
+	}
+	
+	/**
+	 * Encrypts the input and returns the result as a byte array
+	 * 
+	 * @param input
+	 * @return
+	 * @throws EncryptionException
+	 */
+	public final byte[] encrypt(final byte[] input) throws EncryptionException
+	{
+		return doFinal(Cipher.ENCRYPT_MODE, input);
+	}
+	
 	/**
 	 * Decrypts the input and returns the result as a byte array
 	 * 
@@ -91,18 +287,284 @@ public class Encryption
 	 */
 	public final byte[] decrypt(final byte[] input) throws EncryptionException
 	{
+		return doFinal(Cipher.DECRYPT_MODE, input);
+	}
+	
+	/**
+	 * Encrypts the remaining bytes of the input buffer into the output buffer. The output buffer must have room for
+	 * {@link #getEncryptedSize(int)} bytes.
+	 * 
+	 * @param input
+	 * @param output
+	 * @return the number of bytes written to the output buffer
+	 * @throws EncryptionException
+	 */
+	public final int encrypt(final ByteBuffer input, final ByteBuffer output) throws EncryptionException
+	{
+		return doFinal(Cipher.ENCRYPT_MODE, input, output);
+	}
+	
+	/**
+	 * Decrypts the remaining bytes of the input buffer into the output buffer. The output buffer must have room for
+	 * {@link #getDecryptedSize(int)} bytes.
+	 * 
+	 * @param input
+	 * @param output
+	 * @return the number of bytes written to the output buffer
+	 * @throws EncryptionException
+	 */
+	public final int decrypt(final ByteBuffer input, final ByteBuffer output) throws EncryptionException
+	{
+		return doFinal(Cipher.DECRYPT_MODE, input, output);
+	}
+	
+	/**
+	 * Returns the largest number of bytes that encrypting an input of the given length can produce
+	 * 
+	 * @param inputLength
+	 * @return
+	 * @throws EncryptionException
+	 */
+	public final int getEncryptedSize(final int inputLength) throws EncryptionException
+	{
+		return getOutputSize(Cipher.ENCRYPT_MODE, inputLength);
+	}
+	
+	/**
+	 * Returns the largest number of bytes that decrypting an input of the given length can produce
+	 * 
+	 * @param inputLength
+	 * @return
+	 * @throws EncryptionException
+	 */
+	public final int getDecryptedSize(final int inputLength) throws EncryptionException
+	{
+		return getOutputSize(Cipher.DECRYPT_MODE, inputLength);
+	}
+	
+	/**
+	 * Encrypts everything read from the input stream until it ends and writes the result to the output stream. Neither
+	 * stream is closed.
+	 * 
+	 * @param input
+	 * @param output
+	 * @return the number of bytes written to the output stream
+	 * @throws EncryptionException
+	 * @throws IOException
+	 */
+	public final long encrypt(final InputStream input, final OutputStream output) throws EncryptionException,
+		IOException
+	{
+		return copy(encryptingStream(input), output);
+	}
+	
+	/**
+	 * Decrypts everything read from the input stream until it ends and writes the result to the output stream. Neither
+	 * stream is closed.
+	 * 
+	 * @param input
+	 * @param output
+	 * @return the number of bytes written to the output stream
+	 * @throws EncryptionException
+	 * @throws IOException
+	 */
+	public final long decrypt(final InputStream input, final OutputStream output) throws EncryptionException,
+		IOException
+	{
+		return copy(decryptingStream(input), output);
+	}
+	
+	/**
+	 * Returns a stream which encrypts everything written to it into the given stream. The stream must be closed to
+	 * write the final block, which also closes the given stream.
+	 * 
+	 * @param output
+	 * @return
+	 * @throws EncryptionException
+	 */
+	public final OutputStream encryptingStream(final OutputStream output) throws EncryptionException
+	{
+		return createOutputStream(Cipher.ENCRYPT_MODE, output);
+	}
+	
+	/**
+	 * Returns a stream which decrypts everything written to it into the given stream. The stream must be closed to
+	 * write the final block, which also closes the given stream. An authenticated cipher holds back the whole message
+	 * until it is closed.
+	 * 
+	 * @param output
+	 * @return
+	 * @throws EncryptionException
+	 */
+	public final OutputStream decryptingStream(final OutputStream output) throws EncryptionException
+	{
+		return createOutputStream(Cipher.DECRYPT_MODE, output);
+	}
+	
+	/**
+	 * Returns a stream which reads the encrypted form of the given stream
+	 * 
+	 * @param input
+	 * @return
+	 * @throws EncryptionException
+	 */
+	public final InputStream encryptingStream(final InputStream input) throws EncryptionException
+	{
+		return createInputStream(Cipher.ENCRYPT_MODE, input);
+	}
+	
+	/**
+	 * Returns a stream which reads the decrypted form of the given stream. An error decrypting the final block is
+	 * thrown as an {@link IOException} caused by an {@link EncryptionException}. An authenticated cipher holds back
+	 * the whole message until its end has been read.
+	 * 
+	 * @param input
+	 * @return
+	 * @throws EncryptionException
+	 */
+	public final InputStream decryptingStream(final InputStream input) throws EncryptionException
+	{
+		return createInputStream(Cipher.DECRYPT_MODE, input);
+	}
+	
+	/**
+	 * Runs the remaining bytes of the input buffer through a cipher of the mode
+	 * 
+	 * @param mode
+	 * @param input
+	 * @param output
+	 * @return
+	 * @throws EncryptionException
+	 */
+	private int doFinal(final int mode, final ByteBuffer input, final ByteBuffer output) throws EncryptionException
+	{
+		// make sure neither of the buffers is null
+		if (null == input || null == output)
+		{
+			throw new IllegalArgumentException("buffers cannot be null");
+		}
+		
+		Cipher cipher = acquireCipher(mode);
+		
 		try
 		{
-			return decrypt.doFinal(input);
+			byte[] header = new byte[getHeaderLength()];
+			
+			if (Cipher.ENCRYPT_MODE == mode)
+			{
+				beginMessage(mode, cipher, header);
+				
+				// make sure the header and the encrypted data both fit
+				if (output.remaining() < header.length + cipher.getOutputSize(input.remaining()))
+				{
+					throw new ShortBufferException("Output buffer is too small");
+				}
+				
+				output.put(header);
+			}
+			else
+			{
+				// make sure the input holds the whole header
+				if (input.remaining() < header.length)
+				{
+					throw new IllegalBlockSizeException("Input is shorter than the message header");
+				}
+				
+				input.get(header);
+				beginMessage(mode, cipher, header);
+			}
+			
+			return (Cipher.ENCRYPT_MODE == mode ? header.length : 0) + cipher.doFinal(input, output);
 		}
-		catch (IllegalBlockSizeException e)
+		catch (GeneralSecurityException e)
 		{
 			throw new EncryptionException(e);
 		}
-		catch (BadPaddingException e)
+		finally
 		{
-			throw new EncryptionException(e);
+			releaseCipher(mode, cipher);
+		}
+	}
+	
+	/**
+	 * Returns the output size of a cipher of the mode for an input of the given length
+	 * 
+	 * @param mode
+	 * @param inputLength
+	 * @return
+	 * @throws EncryptionException
+	 */
+	private int getOutputSize(final int mode, final int inputLength) throws EncryptionException
+	{
+		Cipher cipher = acquireCipher(mode);
+		
+		try
+		{
+			// the header is added to encrypted messages and removed from decrypted ones
+			if (Cipher.ENCRYPT_MODE == mode)
+			{
+				return getHeaderLength() + cipher.getOutputSize(inputLength);
+			}
+			else
+			{
+				return cipher.getOutputSize(Math.max(0, inputLength - getHeaderLength()));
+			}
+		}
+		finally
+		{
+			releaseCipher(mode, cipher);
+		}
+	}
+	
+	private OutputStream createOutputStream(final int mode, final OutputStream output) throws EncryptionException
+	{
+		// make sure the stream is not null
+		if (null == output)
+		{
+			throw new IllegalArgumentException("output cannot be null");
+		}
+		
+		return new EncryptionOutputStream(output, this, mode, acquireStreamCipher(mode));
+	}
+	
+	private InputStream createInputStream(final int mode, final InputStream input) throws EncryptionException
+	{
+		// make sure the stream is not null
+		if (null == input)
+		{
+			throw new IllegalArgumentException("input cannot be null");
+		}
+		
+		return new EncryptionInputStream(input, this, mode, acquireStreamCipher(mode));
+	}
+	
+	/**
+	 * Copies the input stream to the output stream until the input ends
+	 * 
+	 * @param input
+	 * @param output
+	 * @return
+	 * @throws IOException
+	 */
+	private long copy(final InputStream input, final OutputStream output) throws IOException
+	{
+		// make sure the stream is not null
+		if (null == output)
+		{
+			throw new IllegalArgumentException("output cannot be null");
 		}
+		
+		byte[] buffer = new byte[8192];
+		long total = 0;
+		int read;
+		
+		while ((read = input.read(buffer)) >= 0)
+		{
+			output.write(buffer, 0, read);
+			total += read;
+		}
+		
+		return total;
 	}
 	
 	/**
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.encryption;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+
+/**
+ * An input stream which runs everything read from the underlying stream through a cipher. Unlike
+ * {@link javax.crypto.CipherInputStream}, a padding or block size error at the end of the data is thrown from
+ * {@link #read()} instead of silently truncating the stream. Only a single chunk of input is buffered at a time,
+ * except when decrypting with an authenticated cipher such as AES-GCM: it releases nothing until the tag at the end
+ * has been checked, so the whole decrypted message is held in memory before the first byte can be read.
+ */
+class EncryptionInputStream extends FilterInputStream
+{
+	// ** Finals **//
+	// holds the number of bytes read from the underlying stream at once
+	private static final int CHUNK_SIZE = 8192;
+	
+	// ** Objects **//
+	// holds the engine which provided the cipher
+	private final Encryption encryption;
+	
+	// holds the cipher used to transform the data
+	private final Cipher cipher;
+	
+	// holds the data read from the underlying stream
+	private final byte[] input;
+	
+	// holds the output of the cipher which has not been read yet
+	private byte[] buffer;
+	
+	// holds the header of the message, which is read first when encrypting and taken from the stream when decrypting
+	private final byte[] header;
+	
+	// ** Primitives **//
+	private final int mode;
+	private int position;
+	private int limit;
+	private boolean started;
+	private boolean finished;
+	private boolean closed;
+	
+	EncryptionInputStream(final InputStream in, final Encryption encryption, final int mode, final Cipher cipher)
+	{
+		super(in);
+		
+		this.encryption = encryption;
+		this.mode = mode;
+		this.cipher = cipher;
+		
+		input = new byte[CHUNK_SIZE];
+		buffer = new byte[cipher.getOutputSize(CHUNK_SIZE)];
+		header = new byte[encryption.getHeaderLength()];
+	}
+	
+	@Override
+	public int read() throws IOException
+	{
+		// make sure there is output to read
+		if (!fill())
+		{
+			return -1;
+		}
+		
+		return buffer[position++] & 0xFF;
+	}
+	
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException
+	{
+		if (0 == len)
+		{
+			return 0;
+		}
+		
+		// make sure there is output to read
+		if (!fill())
+		{
+			return -1;
+		}
+		
+		int length = Math.min(len, limit - position);
+		System.arraycopy(buffer, position, b, off, length);
+		position += length;
+		
+		return length;
+	}
+	
+	/**
+	 * Skips by reading, since the underlying stream cannot be skipped without breaking the cipher
+	 */
+	@Override
+	public long skip(final long n) throws IOException
+	{
+		long skipped = 0;
+		
+		while (skipped < n && fill())
+		{
+			int length = (int) Math.min(n - skipped, limit - position);
+			position += length;
+			skipped += length;
+		}
+		
+		return skipped;
+	}
+	
+	@Override
+	public int available() throws IOException
+	{
+		ensureOpen();
+		return limit - position;
+	}
+	
+	@Override
+	public boolean markSupported()
+	{
+		return false;
+	}
+	
+	@Override
+	public synchronized void mark(final int readlimit)
+	{
+	}
+	
+	@Override
+	public synchronized void reset() throws IOException
+	{
+		throw new IOException("mark/reset not supported");
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		// a cipher which did not reach the end of its data is not reset, so it is dropped instead of released
+		closed = true;
+		in.close();
+	}
+	
+	/**
+	 * Reads from the underlying stream until the cipher produces output or the data ends
+	 * 
+	 * @return whether or not there is output to read
+	 * @throws IOException
+	 */
+	private boolean fill() throws IOException
+	{
+		ensureOpen();
+		
+		// check to see if the message still needs to be started
+		if (!started)
+		{
+			start();
+		}
+		
+		while (position == limit)
+		{
+			// check to see if the final block has already been read
+			if (finished)
+			{
+				return false;
+			}
+			
+			position = 0;
+			int read = in.read(input, 0, input.length);
+			
+			try
+			{
+				// check to see if the underlying stream has ended
+				if (read < 0)
+				{
+					ensureCapacity(cipher.getOutputSize(0));
+					limit = cipher.doFinal(buffer, 0);
+					finished = true;
+					
+					// the cipher has been reset by doFinal so it may be used again
+					encryption.releaseStreamCipher(mode, cipher);
+				}
+				else
+				{
+					ensureCapacity(cipher.getOutputSize(read));
+					limit = cipher.update(input, 0, read, buffer, 0);
+				}
+			}
+			catch (GeneralSecurityException e)
+			{
+				throw new IOException(new EncryptionException(e));
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Starts the message. When encrypting, the header is created and becomes the first output; when decrypting, the
+	 * header is read from the front of the underlying stream.
+	 * 
+	 * @throws IOException
+	 */
+	private void start() throws IOException
+	{
+		try
+		{
+			if (Cipher.ENCRYPT_MODE == mode)
+			{
+				encryption.beginMessage(mode, cipher, header);
+				
+				ensureCapacity(header.length);
+				System.arraycopy(header, 0, buffer, 0, header.length);
+				position = 0;
+				limit = header.length;
+			}
+			else
+			{
+				// read the whole header
+				int length = 0;
+				while (length < header.length)
+				{
+					int read = in.read(header, length, header.length - length);
+					
+					// make sure the stream did not end
+					if (read < 0)
+					{
+						throw new IllegalBlockSizeException("Stream ended before the message header");
+					}
+					
+					length += read;
+				}
+				
+				encryption.beginMessage(mode, cipher, header);
+			}
+			
+			started = true;
+		}
+		catch (GeneralSecurityException e)
+		{
+			throw new IOException(new EncryptionException(e));
+		}
+	}
+	
+	/**
+	 * Grows the output buffer if it is smaller than the size given. The buffer at least doubles each time so that a
+	 * cipher which holds back the whole message does not copy it again for every chunk.
+	 * 
+	 * @param size
+	 */
+	private void ensureCapacity(final int size)
+	{
+		if (buffer.length < size)
+		{
+			buffer = new byte[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(size, 2L * buffer.length))];
+		}
+	}
+	
+	private void ensureOpen() throws IOException
+	{
+		if (closed)
+		{
+			throw new IOException("Stream closed");
+		}
+	}
+}
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.encryption;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+
+/**
+ * An output stream which runs everything written to it through a cipher before passing it on to the underlying
+ * stream. Unlike {@link javax.crypto.CipherOutputStream}, a padding or block size error while finishing the cipher is
+ * thrown from {@link #close()} instead of being ignored. Only a single chunk of output is buffered at a time,
+ * except when decrypting with an authenticated cipher such as AES-GCM: it releases nothing until the tag at the end
+ * has been checked, so the whole decrypted message is held in memory and only written once the stream is closed.
+ */
+class EncryptionOutputStream extends FilterOutputStream
+{
+	// ** Finals **//
+	// holds the largest number of bytes passed to the cipher at once
+	private static final int CHUNK_SIZE = 8192;
+	
+	// ** Objects **//
+	// holds the engine which provided the cipher
+	private final Encryption encryption;
+	
+	// holds the cipher used to transform the data
+	private final Cipher cipher;
+	
+	// holds the buffer which receives the output of the cipher
+	private byte[] buffer;
+	
+	// holds a buffer for single byte writes
+	private final byte[] single;
+	
+	// holds the header of the message, which is written first when encrypting and read first when decrypting
+	private final byte[] header;
+	
+	// ** Primitives **//
+	private final int mode;
+	private int headerPosition;
+	private boolean started;
+	private boolean closed;
+	
+	EncryptionOutputStream(final OutputStream out, final Encryption encryption, final int mode, final Cipher cipher)
+	{
+		super(out);
+		
+		this.encryption = encryption;
+		this.mode = mode;
+		this.cipher = cipher;
+		
+		buffer = new byte[cipher.getOutputSize(CHUNK_SIZE)];
+		single = new byte[1];
+		header = new byte[encryption.getHeaderLength()];
+	}
+	
+	@Override
+	public void write(final int b) throws IOException
+	{
+		single[0] = (byte) b;
+		write(single, 0, 1);
+	}
+	
+	@Override
+	public void write(final byte[] b, final int off, final int len) throws IOException
+	{
+		ensureOpen();
+		
+		int offset = off;
+		int remaining = len;
+		
+		// check to see if the message still needs to be started
+		if (!started)
+		{
+			int consumed = start(b, offset, remaining);
+			offset += consumed;
+			remaining -= consumed;
+		}
+		
+		// pass the data to the cipher one chunk at a time so that the output buffer only grows for a cipher which holds
+		// back its output
+		while (remaining > 0)
+		{
+			int length = Math.min(remaining, CHUNK_SIZE);
+			ensureCapacity(cipher.getOutputSize(length));
+			
+			try
+			{
+				int written = cipher.update(b, offset, length, buffer, 0);
+				out.write(buffer, 0, written);
+			}
+			catch (GeneralSecurityException e)
+			{
+				throw new IOException(new EncryptionException(e));
+			}
+			
+			offset += length;
+			remaining -= length;
+		}
+	}
+	
+	/**
+	 * Flushes the underlying stream. Any partial block which is still held by the cipher is only written once the
+	 * stream is closed.
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+		out.flush();
+	}
+	
+	/**
+	 * Finishes the cipher, writes the final block and closes the underlying stream
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		// make sure the stream is only finished once
+		if (closed)
+		{
+			return;
+		}
+		
+		closed = true;
+		
+		try
+		{
+			// make sure the message was started, even if it is empty
+			if (!started)
+			{
+				start(single, 0, 0);
+			}
+			
+			// a decrypted message is not complete without its whole header
+			if (!started)
+			{
+				throw new IOException("Stream ended before the message header");
+			}
+			
+			ensureCapacity(cipher.getOutputSize(0));
+			
+			int written;
+			try
+			{
+				written = cipher.doFinal(buffer, 0);
+			}
+			catch (GeneralSecurityException e)
+			{
+				throw new IOException(new EncryptionException(e));
+			}
+			
+			// the cipher has been reset by doFinal so it may be used again
+			encryption.releaseStreamCipher(mode, cipher);
+			
+			out.write(buffer, 0, written);
+			out.flush();
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+	
+	/**
+	 * Starts the message. When encrypting, the header is created and written; when decrypting, the header is taken
+	 * from the front of the data and the cipher is prepared once it is complete.
+	 * 
+	 * @param b
+	 * @param off
+	 * @param len
+	 * @return the number of bytes of the data which were taken as the header
+	 * @throws IOException
+	 */
+	private int start(final byte[] b, final int off, final int len) throws IOException
+	{
+		try
+		{
+			if (Cipher.ENCRYPT_MODE == mode)
+			{
+				encryption.beginMessage(mode, cipher, header);
+				out.write(header);
+				started = true;
+				
+				return 0;
+			}
+			else
+			{
+				int length = Math.min(len, header.length - headerPosition);
+				System.arraycopy(b, off, header, headerPosition, length);
+				headerPosition += length;
+				
+				// check to see if the whole header has been written
+				if (headerPosition == header.length)
+				{
+					encryption.beginMessage(mode, cipher, header);
+					started = true;
+				}
+				
+				return length;
+			}
+		}
+		catch (GeneralSecurityException e)
+		{
+			throw new IOException(new EncryptionException(e));
+		}
+	}
+	
+	/**
+	 * Grows the output buffer if it is smaller than the size given. The buffer at least doubles each time so that a
+	 * cipher which holds back the whole message does not copy it again for every chunk.
+	 * 
+	 * @param size
+	 */
+	private void ensureCapacity(final int size)
+	{
+		if (buffer.length < size)
+		{
+			buffer = new byte[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(size, 2L * buffer.length))];
+		}
+	}
+	
+	private void ensureOpen() throws IOException
+	{
+		if (closed)
+		{
+			throw new IOException("Stream closed");
+		}
+	}
+}
@@ -47,7 +47,14 @@ public class HashUtils
 		return new ByteArray(hashBytes(input, algorithm)).toHexString();
 	}
 	
-	private static byte[] hashBytes(final byte[] input, final String algorithm)
+	/**
+	 * Hashes the input with any algorithm which {@link MessageDigest} supports
+	 * 
+	 * @param input
+	 * @param algorithm
+	 * @return
+	 */
+	public static byte[] hashBytes(final byte[] input, final String algorithm)
 	{
 		// create the message digest object
 		MessageDigest mdMD5;
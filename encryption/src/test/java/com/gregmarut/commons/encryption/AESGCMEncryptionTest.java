@@ -0,0 +1,132 @@
+package com.gregmarut.commons.encryption;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class AESGCMEncryptionTest
+{
+	private static final byte[] KEY = "0123456789abcdef".getBytes();
+	
+	@Test
+	public void roundTripTest() throws EncryptionException
+	{
+		Encryption encryption = new AESGCMEncryption(KEY);
+		byte[] input = "Hello World".getBytes();
+		
+		byte[] encrypted = encryption.encrypt(input);
+		Assert.assertEquals(AESGCMEncryption.NONCE_LENGTH + input.length + AESGCMEncryption.TAG_LENGTH,
+			encrypted.length);
+		Assert.assertEquals(encrypted.length, encryption.getEncryptedSize(input.length));
+		
+		// another instance with the same key can decrypt the message
+		Assert.assertTrue(Arrays.equals(input, new AESGCMEncryption(KEY).decrypt(encrypted)));
+		Assert.assertTrue(Arrays.equals(new byte[0], encryption.decrypt(encryption.encrypt(new byte[0]))));
+	}
+	
+	@Test
+	public void nonceTest() throws EncryptionException
+	{
+		Encryption encryption = new AESGCMEncryption(KEY);
+		byte[] input = "Hello World".getBytes();
+		
+		// the same input never produces the same message twice
+		byte[] first = encryption.encrypt(input);
+		byte[] second = encryption.encrypt(input);
+		Assert.assertFalse(Arrays.equals(Arrays.copyOf(first, AESGCMEncryption.NONCE_LENGTH),
+			Arrays.copyOf(second, AESGCMEncryption.NONCE_LENGTH)));
+		Assert.assertFalse(Arrays.equals(first, second));
+	}
+	
+	@Test
+	public void tamperTest() throws EncryptionException
+	{
+		Encryption encryption = new AESGCMEncryption(KEY);
+		byte[] encrypted = encryption.encrypt("Hello World".getBytes());
+		
+		// changing any byte of the message is detected, including the nonce and the tag
+		for (int i : new int[] { 0, AESGCMEncryption.NONCE_LENGTH, encrypted.length - 1 })
+		{
+			byte[] tampered = encrypted.clone();
+			tampered[i] ^= 1;
+			
+			try
+			{
+				encryption.decrypt(tampered);
+				Assert.fail();
+			}
+			catch (EncryptionException e)
+			{
+				// expected
+			}
+		}
+		
+		// a message too short to hold a nonce is rejected
+		try
+		{
+			encryption.decrypt(new byte[4]);
+			Assert.fail();
+		}
+		catch (EncryptionException e)
+		{
+			// expected
+		}
+		
+		// the pooled ciphers are still usable afterwards
+		Assert.assertEquals("Hello World", new String(encryption.decrypt(encrypted)));
+	}
+	
+	@Test
+	public void streamTest() throws EncryptionException, IOException
+	{
+		Encryption encryption = new AESGCMEncryption(KEY);
+		byte[] input = new byte[100000];
+		new Random(1).nextBytes(input);
+		
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		OutputStream out = encryption.encryptingStream(encrypted);
+		out.write(input, 0, 5);
+		out.write(input, 5, input.length - 5);
+		out.close();
+		
+		// a streamed message can be decrypted as an array, and the other way around
+		Assert.assertTrue(Arrays.equals(input, encryption.decrypt(encrypted.toByteArray())));
+		
+		ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+		encryption.decrypt(new ByteArrayInputStream(encryption.encrypt(input)), decrypted);
+		Assert.assertTrue(Arrays.equals(input, decrypted.toByteArray()));
+		
+		// a message written to a decrypting stream a byte at a time splits the nonce
+		decrypted.reset();
+		OutputStream decrypting = encryption.decryptingStream(decrypted);
+		for (byte b : encrypted.toByteArray())
+		{
+			decrypting.write(b);
+		}
+		decrypting.close();
+		Assert.assertTrue(Arrays.equals(input, decrypted.toByteArray()));
+	}
+	
+	@Test
+	public void byteBufferTest() throws EncryptionException
+	{
+		Encryption encryption = new AESGCMEncryption(KEY);
+		byte[] input = "Hello World".getBytes();
+		
+		ByteBuffer encrypted = ByteBuffer.allocateDirect(encryption.getEncryptedSize(input.length));
+		Assert.assertEquals(encrypted.capacity(), encryption.encrypt(ByteBuffer.wrap(input), encrypted));
+		encrypted.flip();
+		
+		ByteBuffer decrypted = ByteBuffer.allocate(encryption.getDecryptedSize(encrypted.remaining()));
+		Assert.assertEquals(input.length, encryption.decrypt(encrypted, decrypted));
+		Assert.assertTrue(Arrays.equals(input, decrypted.array()));
+	}
+}
@@ -0,0 +1,72 @@
+package com.gregmarut.commons.encryption;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the ECB mode used by {@link AESEncryption} with {@link AESGCMEncryption}, which initializes its cipher with
+ * a new nonce for every message. Run the main method of this class with the test classpath of this module.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CipherModeBenchmark
+{
+	@Param(
+		{
+			"64", "1024", "16384"
+		})
+	private int payloadSize;
+	
+	private Encryption ecb;
+	private Encryption gcm;
+	private byte[] payload;
+	
+	@Setup(Level.Trial)
+	public void setup() throws EncryptionException
+	{
+		byte[] key = "0123456789abcdef".getBytes();
+		
+		ecb = new ConcurrentEncryption(key, "AES");
+		gcm = new AESGCMEncryption(key);
+		
+		payload = new byte[payloadSize];
+		new Random(1).nextBytes(payload);
+	}
+	
+	@Benchmark
+	public byte[] ecbRoundTrip() throws EncryptionException
+	{
+		return ecb.decrypt(ecb.encrypt(payload));
+	}
+	
+	@Benchmark
+	public byte[] gcmRoundTrip() throws EncryptionException
+	{
+		return gcm.decrypt(gcm.encrypt(payload));
+	}
+	
+	public static void main(final String[] args) throws RunnerException
+	{
+		new Runner(new OptionsBuilder().include(CipherModeBenchmark.class.getSimpleName()).build()).run();
+	}
+}
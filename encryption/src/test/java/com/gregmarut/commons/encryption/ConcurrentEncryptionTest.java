@@ -0,0 +1,92 @@
+package com.gregmarut.commons.encryption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ConcurrentEncryptionTest
+{
+	private static final byte[] KEY = "0123456789abcdef".getBytes();
+	
+	private static final int THREADS = 16;
+	private static final int ITERATIONS = 2000;
+	
+	@Test
+	public void compatibleTest() throws EncryptionException
+	{
+		Encryption encryption = new AESEncryption(KEY);
+		Encryption concurrent = new ConcurrentEncryption(KEY, "AES");
+		
+		// both engines produce the same output for the same key
+		byte[] input = "Hello World".getBytes();
+		Assert.assertTrue(Arrays.equals(encryption.encrypt(input), concurrent.encrypt(input)));
+		Assert.assertTrue(Arrays.equals(input, encryption.decrypt(concurrent.encrypt(input))));
+	}
+	
+	@Test
+	public void concurrentTest() throws Exception
+	{
+		runConcurrently(new ConcurrentEncryption(KEY, "AES", 4));
+	}
+	
+	@Test
+	public void sharedTest() throws Exception
+	{
+		// the locked engine is also safe to share, just slower
+		runConcurrently(new AESEncryption(KEY));
+	}
+	
+	private void runConcurrently(final Encryption encryption) throws Exception
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		
+		try
+		{
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < THREADS; i++)
+			{
+				final int seed = i;
+				results.add(executor.submit(new Callable<Boolean>()
+				{
+					@Override
+					public Boolean call() throws Exception
+					{
+						Random random = new Random(seed);
+						
+						// every round trip must return exactly what was encrypted
+						for (int j = 0; j < ITERATIONS; j++)
+						{
+							byte[] input = new byte[random.nextInt(512)];
+							random.nextBytes(input);
+							
+							if (!Arrays.equals(input, encryption.decrypt(encryption.encrypt(input))))
+							{
+								return false;
+							}
+						}
+						
+						return true;
+					}
+				}));
+			}
+			
+			for (Future<Boolean> result : results)
+			{
+				Assert.assertTrue(result.get());
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+}
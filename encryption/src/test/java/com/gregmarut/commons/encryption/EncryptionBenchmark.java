@@ -0,0 +1,80 @@
+package com.gregmarut.commons.encryption;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares how a single shared {@link Encryption}, whose ciphers are locked, and a shared
+ * {@link ConcurrentEncryption}, whose ciphers are pooled, scale as more threads encrypt and decrypt at once. Run the
+ * main method of this class with the test classpath of this module; it runs every benchmark on 1 to 32 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncryptionBenchmark
+{
+	private static final int[] THREADS = { 1, 2, 4, 8, 16, 32 };
+	
+	@Param(
+		{
+			"64", "1024", "16384"
+		})
+	private int payloadSize;
+	
+	private Encryption locked;
+	private Encryption pooled;
+	private byte[] payload;
+	
+	@Setup(Level.Trial)
+	public void setup() throws EncryptionException
+	{
+		byte[] key = "0123456789abcdef".getBytes();
+		
+		locked = new Encryption(key, "AES");
+		pooled = new ConcurrentEncryption(key, "AES");
+		
+		payload = new byte[payloadSize];
+		new Random(1).nextBytes(payload);
+	}
+	
+	@Benchmark
+	public byte[] lockedRoundTrip() throws EncryptionException
+	{
+		return locked.decrypt(locked.encrypt(payload));
+	}
+	
+	@Benchmark
+	public byte[] pooledRoundTrip() throws EncryptionException
+	{
+		return pooled.decrypt(pooled.encrypt(payload));
+	}
+	
+	public static void main(final String[] args) throws RunnerException
+	{
+		// run the benchmarks once for each thread count
+		for (int threads : THREADS)
+		{
+			new Runner(new OptionsBuilder().include(EncryptionBenchmark.class.getSimpleName()).threads(threads)
+				.build()).run();
+		}
+	}
+}
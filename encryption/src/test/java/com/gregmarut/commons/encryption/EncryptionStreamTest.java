@@ -0,0 +1,189 @@
+package com.gregmarut.commons.encryption;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class EncryptionStreamTest
+{
+	private static final byte[] KEY = "0123456789abcdef".getBytes();
+	
+	@Test
+	public void streamCopyTest() throws EncryptionException, IOException
+	{
+		Encryption encryption = new AESEncryption(KEY);
+		byte[] input = randomBytes(1024 * 1024 + 7);
+		
+		// the streamed output is the same as encrypting the whole array at once
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		encryption.encrypt(new ByteArrayInputStream(input), encrypted);
+		Assert.assertTrue(Arrays.equals(encryption.encrypt(input), encrypted.toByteArray()));
+		
+		ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+		long length = encryption.decrypt(new ByteArrayInputStream(encrypted.toByteArray()), decrypted);
+		Assert.assertEquals(input.length, length);
+		Assert.assertTrue(Arrays.equals(input, decrypted.toByteArray()));
+	}
+	
+	@Test
+	public void wrappedStreamTest() throws EncryptionException, IOException
+	{
+		Encryption encryption = new ConcurrentEncryption(KEY, "AES");
+		byte[] input = randomBytes(100000);
+		
+		// write in uneven pieces, including single bytes
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		OutputStream out = encryption.encryptingStream(encrypted);
+		out.write(input[0]);
+		out.write(input, 1, 12345);
+		out.write(input, 12346, input.length - 12346);
+		out.close();
+		Assert.assertTrue(Arrays.equals(encryption.encrypt(input), encrypted.toByteArray()));
+		
+		// read it back in uneven pieces
+		InputStream in = encryption.decryptingStream(new ByteArrayInputStream(encrypted.toByteArray()));
+		ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+		decrypted.write(in.read());
+		Assert.assertEquals(1000, in.skip(1000));
+		decrypted.write(input, 1, 1000);
+		
+		byte[] buffer = new byte[777];
+		int read;
+		while ((read = in.read(buffer)) >= 0)
+		{
+			decrypted.write(buffer, 0, read);
+		}
+		in.close();
+		
+		Assert.assertTrue(Arrays.equals(input, decrypted.toByteArray()));
+	}
+	
+	@Test
+	public void gcmStreamTest() throws EncryptionException, IOException
+	{
+		Encryption encryption = new AESGCMEncryption(KEY);
+		byte[] input = randomBytes(1024 * 1024 + 7);
+		
+		// encrypt through a stream in pieces which span many chunks
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		OutputStream out = encryption.encryptingStream(encrypted);
+		out.write(input, 0, 100000);
+		out.write(input, 100000, input.length - 100000);
+		out.close();
+		Assert.assertTrue(Arrays.equals(input, encryption.decrypt(encrypted.toByteArray())));
+		
+		// the message is held back until its tag has been checked, then read back in full
+		InputStream in = encryption.decryptingStream(new ByteArrayInputStream(encrypted.toByteArray()));
+		ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+		byte[] buffer = new byte[777];
+		int read;
+		while ((read = in.read(buffer)) >= 0)
+		{
+			decrypted.write(buffer, 0, read);
+		}
+		in.close();
+		Assert.assertTrue(Arrays.equals(input, decrypted.toByteArray()));
+		
+		// the decrypting output stream writes the message once it is closed
+		decrypted = new ByteArrayOutputStream();
+		out = encryption.decryptingStream(decrypted);
+		out.write(encrypted.toByteArray());
+		out.close();
+		Assert.assertTrue(Arrays.equals(input, decrypted.toByteArray()));
+		
+		// a change anywhere in the message is reported when the stream ends
+		byte[] corrupt = encrypted.toByteArray();
+		corrupt[corrupt.length / 2] ^= 1;
+		in = encryption.decryptingStream(new ByteArrayInputStream(corrupt));
+		
+		try
+		{
+			while (in.read(buffer) >= 0)
+			{
+			}
+			Assert.fail();
+		}
+		catch (IOException e)
+		{
+			Assert.assertTrue(e.getCause() instanceof EncryptionException);
+		}
+	}
+	
+	@Test
+	public void byteBufferTest() throws EncryptionException
+	{
+		Encryption encryption = new AESEncryption(KEY);
+		byte[] input = randomBytes(5000);
+		
+		ByteBuffer plain = ByteBuffer.allocateDirect(input.length);
+		plain.put(input).flip();
+		
+		ByteBuffer encrypted = ByteBuffer.allocateDirect(encryption.getEncryptedSize(input.length));
+		Assert.assertEquals(encrypted.capacity(), encryption.encrypt(plain, encrypted));
+		encrypted.flip();
+		
+		ByteBuffer decrypted = ByteBuffer.allocate(encryption.getDecryptedSize(encrypted.remaining()));
+		Assert.assertEquals(input.length, encryption.decrypt(encrypted, decrypted));
+		
+		Assert.assertTrue(Arrays.equals(input, Arrays.copyOf(decrypted.array(), input.length)));
+	}
+	
+	@Test
+	public void shortBufferTest() throws EncryptionException
+	{
+		Encryption encryption = new AESEncryption(KEY);
+		
+		try
+		{
+			encryption.encrypt(ByteBuffer.wrap(new byte[32]), ByteBuffer.allocate(16));
+			Assert.fail();
+		}
+		catch (EncryptionException e)
+		{
+			// expected
+		}
+		
+		// the cipher can still be used afterwards
+		byte[] input = "Hello World".getBytes();
+		Assert.assertTrue(Arrays.equals(input, encryption.decrypt(encryption.encrypt(input))));
+	}
+	
+	@Test
+	public void corruptStreamTest() throws EncryptionException
+	{
+		Encryption encryption = new AESEncryption(KEY);
+		byte[] encrypted = encryption.encrypt(randomBytes(100));
+		
+		// a truncated stream is reported instead of silently returning less data
+		InputStream in = encryption.decryptingStream(new ByteArrayInputStream(Arrays.copyOf(encrypted,
+			encrypted.length - 3)));
+		
+		try
+		{
+			while (in.read() >= 0)
+			{
+			}
+			Assert.fail();
+		}
+		catch (IOException e)
+		{
+			Assert.assertTrue(e.getCause() instanceof EncryptionException);
+		}
+	}
+	
+	private byte[] randomBytes(final int length)
+	{
+		byte[] bytes = new byte[length];
+		new Random(length).nextBytes(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Runs the calls of a {@link FileCache} on an executor, so that callers are handed a future instead of waiting for the
+ * disk, or for the cipher of an {@link EncryptedFileSystemCache}. Unless it is given another, the executor starts a
+ * virtual thread for each call when the runtime has them, and otherwise uses a pool of daemon threads.
+ * <p>
+ * Loads of a key which is already being loaded are not read again; they wait for the load in progress. Every waiter is
+ * then handed the same array, which must not be modified.
+ */
+public class AsyncFileCache
+{
+	// ** Finals **//
+	private static final String THREAD_NAME = "Async File Cache Thread ";
+	
+	// holds the cache which the calls are run against
+	private final FileCache cache;
+	
+	// holds the executor which runs the calls
+	private final Executor executor;
+	
+	// holds the executor which this cache created and has to shut down, if it was not given one
+	private final ExecutorService ownedExecutor;
+	
+	// holds the loads which are in progress, keyed by their path
+	private final ConcurrentMap<String, CompletableFuture<byte[]>> loads;
+	
+	/**
+	 * Creates an asynchronous cache which runs its calls on a new default executor, which {@link #close()} shuts down
+	 * 
+	 * @param cache
+	 */
+	public AsyncFileCache(final FileCache cache)
+	{
+		this(cache, createDefaultExecutor(), true);
+	}
+	
+	/**
+	 * Creates an asynchronous cache which runs its calls on the given executor, which is left running by
+	 * {@link #close()}
+	 * 
+	 * @param cache
+	 * @param executor
+	 */
+	public AsyncFileCache(final FileCache cache, final Executor executor)
+	{
+		this(cache, executor, false);
+	}
+	
+	private AsyncFileCache(final FileCache cache, final Executor executor, final boolean owned)
+	{
+		// make sure the cache is not null
+		if (null == cache)
+		{
+			throw new IllegalArgumentException("cache cannot be null");
+		}
+		
+		// make sure the executor is not null
+		if (null == executor)
+		{
+			throw new IllegalArgumentException("executor cannot be null");
+		}
+		
+		this.cache = cache;
+		this.executor = executor;
+		this.ownedExecutor = owned ? (ExecutorService) executor : null;
+		
+		loads = new ConcurrentHashMap<String, CompletableFuture<byte[]>>();
+	}
+	
+	/**
+	 * Loads the contents of a file. If the file is already being loaded, the future completes with the result of that
+	 * load.
+	 * 
+	 * @param relativePath
+	 * @return a future which completes with the data, or exceptionally with the {@link CacheException} of the load
+	 */
+	public CompletableFuture<byte[]> loadAsync(final String relativePath)
+	{
+		final CompletableFuture<byte[]> load = new CompletableFuture<byte[]>();
+		CompletableFuture<byte[]> existing = loads.putIfAbsent(relativePath, load);
+		
+		// check to see if the file is already being loaded
+		if (null != existing)
+		{
+			return share(existing);
+		}
+		
+		boolean executed = execute(load, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					byte[] data = cache.load(relativePath);
+					
+					// the load is finished before it completes, so that a caller who sees the data and then saves does not
+					// hand the old data to the next load
+					loads.remove(relativePath, load);
+					load.complete(data);
+				}
+				catch (Throwable e)
+				{
+					loads.remove(relativePath, load);
+					load.completeExceptionally(e);
+				}
+			}
+		});
+		
+		// a load which never ran must not be joined by later loads
+		if (!executed)
+		{
+			loads.remove(relativePath, load);
+		}
+		
+		return share(load);
+	}
+	
+	/**
+	 * Saves the content to the file. A load of the file which is in progress is not joined by later loads, which read
+	 * the file again.
+	 * 
+	 * @param relativePath
+	 * @param data
+	 * @return a future which completes once the data is saved, or exceptionally with the {@link CacheException} of the
+	 *         save
+	 */
+	public CompletableFuture<Void> saveAsync(final String relativePath, final byte[] data)
+	{
+		loads.remove(relativePath);
+		
+		final CompletableFuture<Void> future = new CompletableFuture<Void>();
+		execute(future, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					cache.save(relativePath, data);
+					future.complete(null);
+				}
+				catch (Throwable e)
+				{
+					future.completeExceptionally(e);
+				}
+			}
+		});
+		
+		return future;
+	}
+	
+	/**
+	 * Deletes the file or folder and any of its children
+	 * 
+	 * @param relativePath
+	 * @return a future which completes once the file is deleted
+	 */
+	public CompletableFuture<Void> deleteAsync(final String relativePath)
+	{
+		loads.remove(relativePath);
+		
+		final CompletableFuture<Void> future = new CompletableFuture<Void>();
+		execute(future, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					cache.delete(relativePath);
+					future.complete(null);
+				}
+				catch (Throwable e)
+				{
+					future.completeExceptionally(e);
+				}
+			}
+		});
+		
+		return future;
+	}
+	
+	/**
+	 * Returns the cache which the calls are run against, for the calls which do not need to wait for the disk
+	 * 
+	 * @return
+	 */
+	public FileCache getCache()
+	{
+		return cache;
+	}
+	
+	/**
+	 * Returns the number of distinct loads which are in progress
+	 * 
+	 * @return
+	 */
+	public int getPendingLoads()
+	{
+		return loads.size();
+	}
+	
+	/**
+	 * Shuts down the executor if this cache created it. Calls which were already handed over still complete.
+	 */
+	public void close()
+	{
+		if (null != ownedExecutor)
+		{
+			ownedExecutor.shutdown();
+		}
+	}
+	
+	/**
+	 * Hands the task to the executor, failing the future if the executor does not take it
+	 * 
+	 * @param future
+	 * @param task
+	 * @return whether the executor took the task
+	 */
+	private boolean execute(final CompletableFuture<?> future, final Runnable task)
+	{
+		try
+		{
+			executor.execute(task);
+			return true;
+		}
+		catch (RejectedExecutionException e)
+		{
+			future.completeExceptionally(e);
+			return false;
+		}
+	}
+	
+	/**
+	 * Returns a future of its own for each waiter, so that one waiter who cancels or completes it does not change the
+	 * result of the others
+	 * 
+	 * @param load
+	 * @return
+	 */
+	private static CompletableFuture<byte[]> share(final CompletableFuture<byte[]> load)
+	{
+		return load.thenApply(Function.<byte[]> identity());
+	}
+	
+	/**
+	 * Creates an executor which starts a virtual thread for each task. Virtual threads are looked up by reflection, so
+	 * that the module still runs on older runtimes, which are given a pool of daemon threads instead.
+	 * 
+	 * @return
+	 */
+	static ExecutorService createDefaultExecutor()
+	{
+		try
+		{
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return Executors.newCachedThreadPool(new DaemonThreadFactory(THREAD_NAME));
+		}
+	}
+}
@@ -0,0 +1,379 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes folders in the background on a pool of threads. Each folder is split into its subfolders, which are walked
+ * in parallel, and batches of the files directly inside it. The folder itself is deleted once all of its parts are
+ * gone. The counters can be read at any time to follow the progress.
+ */
+public class BackgroundDeleter
+{
+	// ** Finals **//
+	// holds the number of files directly inside a folder which one task deletes
+	public static final int FILE_BATCH_SIZE = 256;
+	
+	private static final String THREAD_NAME = "Cache Deleter Thread ";
+	
+	// holds the deleter which caches share unless they are given another
+	private static BackgroundDeleter defaultDeleter;
+	
+	// ** Objects **//
+	// holds the threads which delete the files
+	private final ThreadPoolExecutor executor;
+	
+	// holds the progress of the deletes
+	private final AtomicLong deletedFiles;
+	private final AtomicLong deletedDirectories;
+	private final AtomicLong failedDeletes;
+	
+	// holds the number of folders which were handed over and are not gone yet
+	private final AtomicInteger pendingDirectories;
+	
+	public BackgroundDeleter(final int threads)
+	{
+		// make sure the number of threads is valid
+		if (threads < 1)
+		{
+			throw new IllegalArgumentException("threads must be at least 1");
+		}
+		
+		executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new DaemonThreadFactory(THREAD_NAME, Thread.MIN_PRIORITY));
+		executor.allowCoreThreadTimeOut(true);
+		
+		deletedFiles = new AtomicLong();
+		deletedDirectories = new AtomicLong();
+		failedDeletes = new AtomicLong();
+		pendingDirectories = new AtomicInteger();
+	}
+	
+	/**
+	 * Returns the deleter which is shared by every cache which is not given its own, with one thread per processor
+	 * 
+	 * @return
+	 */
+	public static synchronized BackgroundDeleter getDefault()
+	{
+		if (null == defaultDeleter)
+		{
+			defaultDeleter = new BackgroundDeleter(Math.max(2, Runtime.getRuntime().availableProcessors()));
+		}
+		
+		return defaultDeleter;
+	}
+	
+	/**
+	 * Deletes the folder and everything in it in the background. Nothing else may write to the folder, so it is best
+	 * renamed out of the way first.
+	 * 
+	 * @param directory
+	 */
+	public void delete(final Path directory)
+	{
+		pendingDirectories.incrementAndGet();
+		
+		final Part part = new Part(directory, null);
+		submit(part, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				split(part);
+			}
+		});
+	}
+	
+	/**
+	 * Waits until every folder which was handed over is gone
+	 * 
+	 * @param timeout
+	 * @param unit
+	 * @return false if the time ran out first
+	 * @throws InterruptedException
+	 */
+	public boolean awaitIdle(final long timeout, final TimeUnit unit) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		
+		synchronized (pendingDirectories)
+		{
+			while (pendingDirectories.get() > 0)
+			{
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0)
+				{
+					return false;
+				}
+				
+				TimeUnit.NANOSECONDS.timedWait(pendingDirectories, remaining);
+			}
+		}
+		
+		return true;
+	}
+	
+	public long getDeletedFiles()
+	{
+		return deletedFiles.get();
+	}
+	
+	public long getDeletedDirectories()
+	{
+		return deletedDirectories.get();
+	}
+	
+	/**
+	 * Returns the number of files and folders which could not be deleted. They are left where they are.
+	 * 
+	 * @return
+	 */
+	public long getFailedDeletes()
+	{
+		return failedDeletes.get();
+	}
+	
+	public int getPendingDirectories()
+	{
+		return pendingDirectories.get();
+	}
+	
+	/**
+	 * Lists the folder and hands each of its subfolders, and each batch of its files, to a thread of its own
+	 * 
+	 * @param part
+	 */
+	private void split(final Part part)
+	{
+		List<Path> files = new ArrayList<Path>(FILE_BATCH_SIZE);
+		
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(part.path))
+		{
+			for (final Path child : children)
+			{
+				if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS))
+				{
+					submit(new Part(child, part), new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							walk(child);
+						}
+					});
+				}
+				else
+				{
+					files.add(child);
+					
+					if (files.size() == FILE_BATCH_SIZE)
+					{
+						submitBatch(part, files);
+						files = new ArrayList<Path>(FILE_BATCH_SIZE);
+					}
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			failedDeletes.incrementAndGet();
+		}
+		
+		if (!files.isEmpty())
+		{
+			submitBatch(part, files);
+		}
+	}
+	
+	private void submitBatch(final Part parent, final List<Path> files)
+	{
+		submit(new Part(null, parent), new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for (Path file : files)
+				{
+					deleteQuietly(file, false);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Deletes the folder and everything under it on the current thread
+	 * 
+	 * @param directory
+	 */
+	private void walk(final Path directory)
+	{
+		try
+		{
+			Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+			{
+				@Override
+				public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+				{
+					deleteQuietly(file, false);
+					return FileVisitResult.CONTINUE;
+				}
+				
+				@Override
+				public FileVisitResult visitFileFailed(final Path file, final IOException e)
+				{
+					failedDeletes.incrementAndGet();
+					return FileVisitResult.CONTINUE;
+				}
+				
+				@Override
+				public FileVisitResult postVisitDirectory(final Path dir, final IOException e)
+				{
+					// the folder itself is deleted by its part once the walk is done
+					if (!dir.equals(directory))
+					{
+						deleteQuietly(dir, true);
+					}
+					
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+		catch (IOException e)
+		{
+			failedDeletes.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Runs the task, and once the part and everything which it handed out is done, deletes its folder
+	 * 
+	 * @param part
+	 * @param task
+	 */
+	private void submit(final Part part, final Runnable task)
+	{
+		// the parent may not finish before this part does
+		if (null != part.parent)
+		{
+			part.parent.remaining.incrementAndGet();
+		}
+		
+		executor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					task.run();
+				}
+				finally
+				{
+					finish(part);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Marks one piece of work of the part as done, deleting its folder and finishing its parent once nothing is left
+	 * 
+	 * @param part
+	 */
+	private void finish(final Part part)
+	{
+		if (part.remaining.decrementAndGet() > 0)
+		{
+			return;
+		}
+		
+		if (null != part.path)
+		{
+			deleteQuietly(part.path, true);
+		}
+		
+		if (null != part.parent)
+		{
+			finish(part.parent);
+		}
+		else
+		{
+			// the whole folder is gone
+			synchronized (pendingDirectories)
+			{
+				pendingDirectories.decrementAndGet();
+				pendingDirectories.notifyAll();
+			}
+		}
+	}
+	
+	private void deleteQuietly(final Path path, final boolean directory)
+	{
+		try
+		{
+			Files.delete(path);
+			
+			if (directory)
+			{
+				deletedDirectories.incrementAndGet();
+			}
+			else
+			{
+				deletedFiles.incrementAndGet();
+			}
+		}
+		catch (IOException e)
+		{
+			failedDeletes.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * A folder, or a batch of files, whose deletion may be split into further parts
+	 */
+	private static class Part
+	{
+		// ** Finals **//
+		// holds the folder which is deleted once the part is done, if there is one
+		private final Path path;
+		
+		private final Part parent;
+		
+		// holds the number of tasks of the part which are not done, including its own
+		private final AtomicInteger remaining;
+		
+		public Part(final Path path, final Part parent)
+		{
+			this.path = path;
+			this.parent = parent;
+			
+			remaining = new AtomicInteger(1);
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of strings which is safe to use from several threads. Bits are only ever set, so a key which was added
+ * is always reported as possibly present.
+ */
+final class BloomFilter
+{
+	// ** Finals **//
+	// holds the bits of the filter
+	private final AtomicLongArray bits;
+	
+	// holds the number of keys which set at least one bit
+	private final AtomicInteger count;
+	
+	// ** Primitives **//
+	private final long bitCount;
+	private final int hashCount;
+	private final int expectedInsertions;
+	
+	/**
+	 * Creates a filter which answers wrongly for the given share of missing keys once it holds the expected number of
+	 * keys
+	 * 
+	 * @param expectedInsertions
+	 * @param falsePositiveRate
+	 */
+	BloomFilter(final int expectedInsertions, final double falsePositiveRate)
+	{
+		// make sure the parameters are valid
+		if (expectedInsertions < 1)
+		{
+			throw new IllegalArgumentException("expectedInsertions must be at least 1");
+		}
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+		{
+			throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+		}
+		
+		// the optimal size and number of hashes for the rate
+		double bitsPerKey = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+		long bitsNeeded = (long) Math.ceil(expectedInsertions * bitsPerKey);
+		int words = (int) Math.min(Integer.MAX_VALUE, (bitsNeeded + 63) / 64);
+		
+		this.expectedInsertions = expectedInsertions;
+		bits = new AtomicLongArray(words);
+		bitCount = words * 64L;
+		hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+		count = new AtomicInteger();
+	}
+	
+	private BloomFilter(final AtomicLongArray bits, final int hashCount, final int expectedInsertions, final int count)
+	{
+		this.bits = bits;
+		this.hashCount = hashCount;
+		this.expectedInsertions = expectedInsertions;
+		this.count = new AtomicInteger(count);
+		
+		bitCount = bits.length() * 64L;
+	}
+	
+	/**
+	 * Adds the key to the filter
+	 * 
+	 * @param key
+	 * @return true if the key set a bit which was not set yet, and so was certainly not in the filter before
+	 */
+	boolean put(final String key)
+	{
+		long hash = hash(key);
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		
+		boolean changed = false;
+		
+		for (int i = 1; i <= hashCount; i++)
+		{
+			long bit = index(hash1 + i * hash2);
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			
+			// set the bit unless another thread got there first
+			long value;
+			while (((value = bits.get(word)) & mask) == 0)
+			{
+				if (bits.compareAndSet(word, value, value | mask))
+				{
+					changed = true;
+					break;
+				}
+			}
+		}
+		
+		if (changed)
+		{
+			count.incrementAndGet();
+		}
+		
+		return changed;
+	}
+	
+	/**
+	 * Checks to see if the key may have been added
+	 * 
+	 * @param key
+	 * @return false if the key was certainly never added
+	 */
+	boolean mightContain(final String key)
+	{
+		long hash = hash(key);
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		
+		for (int i = 1; i <= hashCount; i++)
+		{
+			long bit = index(hash1 + i * hash2);
+			if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+			{
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Returns the approximate number of distinct keys which were added
+	 * 
+	 * @return
+	 */
+	int getCount()
+	{
+		return count.get();
+	}
+	
+	int getExpectedInsertions()
+	{
+		return expectedInsertions;
+	}
+	
+	void writeTo(final DataOutput out) throws IOException
+	{
+		out.writeInt(bits.length());
+		out.writeInt(hashCount);
+		out.writeInt(expectedInsertions);
+		out.writeInt(count.get());
+		
+		for (int i = 0; i < bits.length(); i++)
+		{
+			out.writeLong(bits.get(i));
+		}
+	}
+	
+	static BloomFilter readFrom(final DataInput in) throws IOException
+	{
+		int words = in.readInt();
+		int hashCount = in.readInt();
+		int expectedInsertions = in.readInt();
+		int count = in.readInt();
+		
+		// make sure the header is sane before allocating anything
+		if (words < 1 || hashCount < 1 || expectedInsertions < 1 || count < 0)
+		{
+			throw new IOException("Bloom filter is corrupt");
+		}
+		
+		AtomicLongArray bits = new AtomicLongArray(words);
+		for (int i = 0; i < words; i++)
+		{
+			bits.set(i, in.readLong());
+		}
+		
+		return new BloomFilter(bits, hashCount, expectedInsertions, count);
+	}
+	
+	private long index(final int combinedHash)
+	{
+		// flip a negative hash so that every bit can be reached
+		int positive = combinedHash < 0 ? ~combinedHash : combinedHash;
+		return positive % bitCount;
+	}
+	
+	/**
+	 * Hashes the key to 64 bits, which are split into the two hashes which every index is derived from
+	 * 
+	 * @param key
+	 * @return
+	 */
+	private static long hash(final String key)
+	{
+		// FNV-1a over the characters, followed by the finalizer of MurmurHash3 to spread the bits
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++)
+		{
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb93fc5345ad3L;
+		hash ^= hash >>> 33;
+		
+		return hash;
+	}
+}
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.gregmarut.commons.filecache.eviction.EvictionPolicy;
+import com.gregmarut.commons.filecache.eviction.TinyLfuPolicy;
+
+/**
+ * An in-memory cache which holds at most a fixed number of bytes. Once the data of all entries is larger than the
+ * maximum weight of its {@link EvictionPolicy}, entries chosen by the policy are evicted. Data which is larger than the
+ * maximum weight by itself is never cached. All methods are synchronized.
+ */
+public class BoundedInMemoryCache implements FileCache
+{
+	// ** Objects **//
+	// holds the map that will contain the in-memory cache
+	private final SortedMap<String, byte[]> cache;
+	
+	// holds the policy which decides which entries are evicted
+	private final EvictionPolicy policy;
+	
+	// holds the listeners which are notified of evictions
+	private final List<EvictionListener> evictionListeners;
+	
+	// ** Primitives **//
+	// holds the total number of bytes in the cache
+	private long weight;
+	
+	// holds the counters of the cache
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+	private long evictionWeight;
+	
+	/**
+	 * Creates a cache which holds at most the given number of bytes, using a {@link TinyLfuPolicy}
+	 * 
+	 * @param maximumBytes
+	 */
+	public BoundedInMemoryCache(final long maximumBytes)
+	{
+		this(new TinyLfuPolicy(maximumBytes));
+	}
+	
+	/**
+	 * Creates a cache which holds at most the maximum weight of the policy
+	 * 
+	 * @param policy
+	 */
+	public BoundedInMemoryCache(final EvictionPolicy policy)
+	{
+		// make sure the policy is not null
+		if (null == policy)
+		{
+			throw new IllegalArgumentException("policy cannot be null");
+		}
+		
+		this.policy = policy;
+		
+		cache = new TreeMap<String, byte[]>();
+		evictionListeners = new CopyOnWriteArrayList<EvictionListener>();
+	}
+	
+	@Override
+	public synchronized void delete(String relativePath)
+	{
+		// remove the entry itself
+		byte[] data = cache.remove(relativePath);
+		if (null != data)
+		{
+			weight -= data.length;
+			policy.remove(relativePath);
+		}
+		
+		// remove anything in its folder
+		SortedMap<String, byte[]> folder = CachePaths.under(cache, relativePath);
+		for (Map.Entry<String, byte[]> entry : folder.entrySet())
+		{
+			weight -= entry.getValue().length;
+			policy.remove(entry.getKey());
+		}
+		folder.clear();
+	}
+	
+	@Override
+	public synchronized byte[] load(String relativePath)
+	{
+		byte[] data = cache.get(relativePath);
+		
+		// check to see if this was a hit
+		if (null != data)
+		{
+			hitCount++;
+			policy.access(relativePath);
+		}
+		else
+		{
+			missCount++;
+		}
+		
+		return data;
+	}
+	
+	@Override
+	public void save(String relativePath, byte[] data)
+	{
+		// make sure the data is not null
+		if (null == data)
+		{
+			throw new IllegalArgumentException("data cannot be null");
+		}
+		
+		// holds the entries which were evicted
+		List<String> evictedPaths = new ArrayList<String>();
+		List<byte[]> evictedData = new ArrayList<byte[]>();
+		
+		synchronized (this)
+		{
+			// check to see if the data is too large to ever be cached
+			if (data.length > policy.getMaximumWeight())
+			{
+				// the old value would otherwise be returned in place of the new one
+				delete(relativePath);
+				return;
+			}
+			
+			byte[] previous = cache.put(relativePath, data);
+			weight += data.length;
+			
+			// check to see if this replaced an existing entry
+			if (null != previous)
+			{
+				weight -= previous.length;
+				policy.update(relativePath, data.length);
+			}
+			else
+			{
+				policy.add(relativePath, data.length);
+			}
+			
+			// evict entries until the cache is small enough again
+			while (weight > policy.getMaximumWeight())
+			{
+				String key = policy.evict();
+				byte[] evicted = cache.remove(key);
+				
+				weight -= evicted.length;
+				evictionCount++;
+				evictionWeight += evicted.length;
+				
+				evictedPaths.add(key);
+				evictedData.add(evicted);
+			}
+		}
+		
+		// notify the listeners outside of the lock
+		for (int i = 0; i < evictedPaths.size(); i++)
+		{
+			for (EvictionListener listener : evictionListeners)
+			{
+				listener.entryEvicted(evictedPaths.get(i), evictedData.get(i));
+			}
+		}
+	}
+	
+	@Override
+	public synchronized boolean exists(String relativePath)
+	{
+		return cache.containsKey(relativePath);
+	}
+	
+	@Override
+	public synchronized void clear()
+	{
+		cache.clear();
+		policy.clear();
+		weight = 0;
+	}
+	
+	/**
+	 * Returns the total number of bytes in the cache
+	 * 
+	 * @return
+	 */
+	public synchronized long getWeight()
+	{
+		return weight;
+	}
+	
+	public long getMaximumWeight()
+	{
+		return policy.getMaximumWeight();
+	}
+	
+	public synchronized int size()
+	{
+		return cache.size();
+	}
+	
+	/**
+	 * Returns a snapshot of the counters of this cache
+	 * 
+	 * @return
+	 */
+	public synchronized CacheStats getStats()
+	{
+		return new CacheStats(hitCount, missCount, evictionCount, evictionWeight);
+	}
+	
+	public void addEvictionListener(final EvictionListener listener)
+	{
+		evictionListeners.add(listener);
+	}
+	
+	public void removeEvictionListener(final EvictionListener listener)
+	{
+		evictionListeners.remove(listener);
+	}
+}
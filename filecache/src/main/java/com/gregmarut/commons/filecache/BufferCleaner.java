@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Frees the memory of a direct or mapped buffer right away instead of waiting for the garbage collector. There is no
+ * public API for this, so the cleaner is found by reflection: Java 9 and later offer Unsafe.invokeCleaner, while Java 7
+ * and 8 expose a cleaner on the buffer itself. When neither is available the buffer is left to the garbage collector.
+ */
+final class BufferCleaner
+{
+	// holds the unsafe instance and its invokeCleaner method on Java 9 and later
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+	
+	static
+	{
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		
+		try
+		{
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+		}
+		catch (Exception e)
+		{
+			// this is an older runtime, so the cleaner of the buffer is used instead
+			unsafe = null;
+			invokeCleaner = null;
+		}
+		
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+	
+	private BufferCleaner()
+	{
+		
+	}
+	
+	/**
+	 * Frees the memory of the buffer. The buffer, and every view of it, must never be used again.
+	 * 
+	 * @param buffer
+	 */
+	static void clean(final ByteBuffer buffer)
+	{
+		// only direct buffers hold memory outside of the heap
+		if (null == buffer || !buffer.isDirect())
+		{
+			return;
+		}
+		
+		try
+		{
+			if (null != INVOKE_CLEANER)
+			{
+				INVOKE_CLEANER.invoke(UNSAFE, buffer);
+			}
+			else
+			{
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				
+				// a view of another buffer has no cleaner of its own
+				if (null != cleaner)
+				{
+					Method clean = cleaner.getClass().getMethod("clean");
+					clean.setAccessible(true);
+					clean.invoke(cleaner);
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			// the memory is freed once the buffer is garbage collected
+		}
+	}
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A cache which can load and save many entries in one call. A failure of one entry is reported in the result and does
+ * not stop the others.
+ */
+public interface BulkFileCache extends FileCache
+{
+	/**
+	 * Loads the contents of every file
+	 * 
+	 * @param relativePaths
+	 * @return the data of each file which was loaded, and the error of each one which was not
+	 */
+	BulkResult<byte[]> loadAll(final Collection<String> relativePaths);
+	
+	/**
+	 * Saves the content of every entry to the file specified at its relative path
+	 * 
+	 * @param entries
+	 * @return the number of bytes which were saved for each file, and the error of each one which was not
+	 */
+	BulkResult<Long> saveAll(final Map<String, byte[]> entries);
+}
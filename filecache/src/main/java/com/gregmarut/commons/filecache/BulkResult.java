@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The outcome of a call to a {@link BulkFileCache}, which holds the value of each entry which succeeded and the error
+ * of each one which failed. Both maps are in the order in which the entries were given.
+ * 
+ * @param <T>
+ */
+public class BulkResult<T>
+{
+	// ** Objects **//
+	// holds the value of each entry which succeeded
+	private final Map<String, T> values;
+	
+	// holds the error of each entry which failed
+	private final Map<String, CacheException> failures;
+	
+	BulkResult(final Map<String, T> values, final Map<String, CacheException> failures)
+	{
+		this.values = Collections.unmodifiableMap(values);
+		this.failures = Collections.unmodifiableMap(failures);
+	}
+	
+	/**
+	 * Returns the value of the entry
+	 * 
+	 * @param relativePath
+	 * @return the value, or null if the entry failed
+	 */
+	public T get(final String relativePath)
+	{
+		return values.get(relativePath);
+	}
+	
+	/**
+	 * Returns the error of the entry
+	 * 
+	 * @param relativePath
+	 * @return the error, or null if the entry succeeded
+	 */
+	public CacheException getFailure(final String relativePath)
+	{
+		return failures.get(relativePath);
+	}
+	
+	public Map<String, T> getValues()
+	{
+		return values;
+	}
+	
+	public Map<String, CacheException> getFailures()
+	{
+		return failures;
+	}
+	
+	/**
+	 * Checks to see if every entry succeeded
+	 * 
+	 * @return
+	 */
+	public boolean isSuccessful()
+	{
+		return failures.isEmpty();
+	}
+}
@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+/**
+ * Builds the data of an entry which is missing from a cache
+ */
+public interface CacheLoader
+{
+	/**
+	 * Returns the data of the entry, or null if there is none
+	 * 
+	 * @param relativePath
+	 * @return
+	 * @throws CacheException
+	 */
+	byte[] load(final String relativePath) throws CacheException;
+}
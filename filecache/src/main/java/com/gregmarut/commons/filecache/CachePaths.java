@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.io.File;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SortedMap;
+
+/**
+ * Helpers for the relative paths used as the keys of a cache
+ */
+final class CachePaths
+{
+	private CachePaths()
+	{
+		
+	}
+	
+	/**
+	 * Checks to see if the key is the relative path itself or lies in the folder of that path. Deleting a relative path
+	 * deletes every key for which this is true.
+	 * 
+	 * @param key
+	 * @param relativePath
+	 * @return
+	 */
+	static boolean isAtOrUnder(final String key, final String relativePath)
+	{
+		return key.startsWith(relativePath)
+			&& (key.length() == relativePath.length() || '/' == key.charAt(relativePath.length()));
+	}
+	
+	/**
+	 * Checks to see if the file or folder belongs to a {@link FileSystemCache} rather than to an entry, such as the
+	 * index, a temporary file or a folder which is waiting to be deleted. The cache refuses keys which use any of these
+	 * names, so a name is enough to tell them apart.
+	 * 
+	 * @param path
+	 * @return
+	 */
+	static boolean isInternal(final Path path)
+	{
+		String name = path.getFileName().toString();
+		return name.startsWith(FileSystemCache.TRASH_PREFIX) || FileSystemCache.INDEX_FILE_NAME.equals(name)
+			|| (name.startsWith(".") && name.endsWith(FileSystemCache.TEMP_SUFFIX));
+	}
+	
+	/**
+	 * Returns a view of the keys of the sorted map which lie in the folder of the relative path, not counting the
+	 * relative path itself. Since '0' is the character after '/', these keys sort between the path followed by '/' and
+	 * the path followed by '0'.
+	 * 
+	 * @param map
+	 * @param relativePath
+	 * @return
+	 */
+	static <V> SortedMap<String, V> under(final SortedMap<String, V> map, final String relativePath)
+	{
+		return map.subMap(relativePath + '/', relativePath + '0');
+	}
+	
+	/**
+	 * Turns the relative path into the key which a {@link FileSystemCache} stores it under, so that every spelling of
+	 * the same path, such as "/a" and "a/b/..", becomes the same key
+	 * 
+	 * @param relativePath
+	 * @return the key, with / as the separator
+	 */
+	static String toKey(final String relativePath)
+	{
+		// skip the leading separators in the same way as the file system cache
+		int start = 0;
+		while (start < relativePath.length()
+			&& ('/' == relativePath.charAt(start) || '\\' == relativePath.charAt(start)))
+		{
+			start++;
+		}
+		
+		Path path;
+		
+		try
+		{
+			path = Paths.get(relativePath.substring(start)).normalize();
+		}
+		catch (InvalidPathException e)
+		{
+			throw new IllegalFileException(e.getMessage());
+		}
+		
+		// for security reasons, make sure that this path is not above the root
+		if (path.startsWith(".."))
+		{
+			throw new IllegalFileException("relativePath is outside of the root directory");
+		}
+		
+		return path.toString().replace(File.separatorChar, '/');
+	}
+}
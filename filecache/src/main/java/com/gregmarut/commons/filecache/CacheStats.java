@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+/**
+ * An immutable snapshot of the counters of a cache
+ */
+public class CacheStats
+{
+	// ** Objects **//
+	// holds the latencies of the loads and saves in nanoseconds
+	private final HistogramSnapshot loadLatency;
+	private final HistogramSnapshot saveLatency;
+	
+	// ** Primitives **//
+	private final long hitCount;
+	private final long missCount;
+	private final long loadErrorCount;
+	private final long saveCount;
+	private final long saveErrorCount;
+	private final long evictionCount;
+	private final long evictionWeight;
+	private final long bytesRead;
+	private final long bytesWritten;
+	
+	public CacheStats(final long hitCount, final long missCount, final long evictionCount, final long evictionWeight)
+	{
+		this(hitCount, missCount, 0, 0, 0, evictionCount, evictionWeight, 0, 0, HistogramSnapshot.EMPTY,
+			HistogramSnapshot.EMPTY);
+	}
+	
+	public CacheStats(final long hitCount, final long missCount, final long loadErrorCount, final long saveCount,
+		final long saveErrorCount, final long evictionCount, final long evictionWeight, final long bytesRead,
+		final long bytesWritten, final HistogramSnapshot loadLatency, final HistogramSnapshot saveLatency)
+	{
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.loadErrorCount = loadErrorCount;
+		this.saveCount = saveCount;
+		this.saveErrorCount = saveErrorCount;
+		this.evictionCount = evictionCount;
+		this.evictionWeight = evictionWeight;
+		this.bytesRead = bytesRead;
+		this.bytesWritten = bytesWritten;
+		this.loadLatency = loadLatency;
+		this.saveLatency = saveLatency;
+	}
+	
+	public long getHitCount()
+	{
+		return hitCount;
+	}
+	
+	public long getMissCount()
+	{
+		return missCount;
+	}
+	
+	/**
+	 * Returns the number of loads, which is the number of hits plus the number of misses
+	 * 
+	 * @return
+	 */
+	public long getRequestCount()
+	{
+		return hitCount + missCount;
+	}
+	
+	/**
+	 * Returns the share of the loads which were hits, or 1 if nothing has been loaded
+	 * 
+	 * @return
+	 */
+	public double getHitRate()
+	{
+		long requestCount = getRequestCount();
+		return 0 == requestCount ? 1.0 : (double) hitCount / requestCount;
+	}
+	
+	/**
+	 * Returns the number of loads which failed with an error other than a missing entry. They are neither hits nor
+	 * misses.
+	 * 
+	 * @return
+	 */
+	public long getLoadErrorCount()
+	{
+		return loadErrorCount;
+	}
+	
+	public long getSaveCount()
+	{
+		return saveCount;
+	}
+	
+	public long getSaveErrorCount()
+	{
+		return saveErrorCount;
+	}
+	
+	public long getEvictionCount()
+	{
+		return evictionCount;
+	}
+	
+	/**
+	 * Returns the total number of bytes which have been evicted
+	 * 
+	 * @return
+	 */
+	public long getEvictionWeight()
+	{
+		return evictionWeight;
+	}
+	
+	/**
+	 * Returns the total number of bytes which were handed out by hits
+	 * 
+	 * @return
+	 */
+	public long getBytesRead()
+	{
+		return bytesRead;
+	}
+	
+	/**
+	 * Returns the total number of bytes which were saved
+	 * 
+	 * @return
+	 */
+	public long getBytesWritten()
+	{
+		return bytesWritten;
+	}
+	
+	/**
+	 * Returns the latencies of the loads in nanoseconds, including those which missed or failed
+	 * 
+	 * @return
+	 */
+	public HistogramSnapshot getLoadLatency()
+	{
+		return loadLatency;
+	}
+	
+	/**
+	 * Returns the latencies of the saves in nanoseconds
+	 * 
+	 * @return
+	 */
+	public HistogramSnapshot getSaveLatency()
+	{
+		return saveLatency;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "CacheStats[hits=" + hitCount + ", misses=" + missCount + ", loadErrors=" + loadErrorCount + ", saves="
+			+ saveCount + ", saveErrors=" + saveErrorCount + ", evictions=" + evictionCount + ", evictionWeight="
+			+ evictionWeight + ", bytesRead=" + bytesRead + ", bytesWritten=" + bytesWritten + "]";
+	}
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+/**
+ * The counters of a {@link StatsRecorder} as they are published over JMX. Latencies are in nanoseconds.
+ */
+public interface CacheStatsMXBean
+{
+	long getHitCount();
+	
+	long getMissCount();
+	
+	double getHitRate();
+	
+	long getLoadErrorCount();
+	
+	long getSaveCount();
+	
+	long getSaveErrorCount();
+	
+	long getEvictionCount();
+	
+	long getEvictionWeight();
+	
+	long getBytesRead();
+	
+	long getBytesWritten();
+	
+	double getLoadLatencyMean();
+	
+	long getLoadLatency50thPercentile();
+	
+	long getLoadLatency99thPercentile();
+	
+	long getLoadLatencyMax();
+	
+	double getSaveLatencyMean();
+	
+	long getSaveLatency50thPercentile();
+	
+	long getSaveLatency99thPercentile();
+	
+	long getSaveLatencyMax();
+	
+	/**
+	 * Sets every counter back to zero
+	 */
+	void reset();
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Helpers for the tasks which the caches hand between threads
+ */
+final class CacheTasks
+{
+	private CacheTasks()
+	{
+		
+	}
+	
+	/**
+	 * Waits for the task to finish and returns its result, unwrapping any error thrown by the task
+	 * 
+	 * @param task
+	 * @return
+	 * @throws CacheException
+	 */
+	static <T> T await(final Future<T> task) throws CacheException
+	{
+		try
+		{
+			return task.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new CacheException(e);
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			
+			if (cause instanceof CacheException)
+			{
+				throw (CacheException) cause;
+			}
+			else if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+			else if (cause instanceof Error)
+			{
+				throw (Error) cause;
+			}
+			else
+			{
+				throw new CacheException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.FutureTask;
+
+/**
+ * An in-memory cache which can safely be shared between threads. Reads never block, and writes to different entries
+ * rarely contend since the entries are held in a {@link ConcurrentSkipListMap}, which also keeps the entries of a
+ * folder together so that they can be deleted without looking at every entry. Missing entries can be built with
+ * {@link #load(String, CacheLoader)}, which makes sure only one thread builds an entry while the others wait for it.
+ */
+public class ConcurrentInMemoryCache implements FileCache
+{
+	// holds the map that will contain the in-memory cache
+	private final ConcurrentNavigableMap<String, byte[]> cache;
+	
+	// holds the entries which are being built by a loader
+	private final ConcurrentMap<String, FutureTask<byte[]>> loading;
+	
+	public ConcurrentInMemoryCache()
+	{
+		cache = new ConcurrentSkipListMap<String, byte[]>();
+		loading = new ConcurrentHashMap<String, FutureTask<byte[]>>();
+	}
+	
+	@Override
+	public void delete(String relativePath)
+	{
+		// remove the entry along with anything in its folder
+		cache.remove(relativePath);
+		CachePaths.under(cache, relativePath).clear();
+	}
+	
+	@Override
+	public byte[] load(String relativePath)
+	{
+		return cache.get(relativePath);
+	}
+	
+	/**
+	 * Returns the data of the entry, building it with the loader if it is missing. When several threads ask for the
+	 * same missing entry only one of them runs the loader, and the rest wait for its result. If the loader fails, every
+	 * waiting thread receives the error and nothing is cached, so the next call tries again. A loader which returns
+	 * null caches nothing.
+	 * 
+	 * @param relativePath
+	 * @param loader
+	 * @return
+	 * @throws CacheException
+	 */
+	public byte[] load(final String relativePath, final CacheLoader loader) throws CacheException
+	{
+		byte[] data = cache.get(relativePath);
+		
+		// check to see if the entry is already cached
+		if (null != data)
+		{
+			return data;
+		}
+		
+		// make sure the loader is not null
+		if (null == loader)
+		{
+			throw new IllegalArgumentException("loader cannot be null");
+		}
+		
+		FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>()
+		{
+			@Override
+			public byte[] call() throws Exception
+			{
+				// the entry may have been cached since it was last checked
+				byte[] loaded = cache.get(relativePath);
+				
+				if (null == loaded)
+				{
+					loaded = loader.load(relativePath);
+					
+					// keep any data which was saved while the loader was running
+					if (null != loaded)
+					{
+						byte[] saved = cache.putIfAbsent(relativePath, loaded);
+						if (null != saved)
+						{
+							loaded = saved;
+						}
+					}
+				}
+				
+				return loaded;
+			}
+		});
+		
+		FutureTask<byte[]> existing = loading.putIfAbsent(relativePath, task);
+		
+		// check to see if another thread is already building this entry
+		if (null != existing)
+		{
+			return CacheTasks.await(existing);
+		}
+		
+		try
+		{
+			task.run();
+			return CacheTasks.await(task);
+		}
+		finally
+		{
+			loading.remove(relativePath, task);
+		}
+	}
+	
+	@Override
+	public void save(String relativePath, byte[] data)
+	{
+		// make sure the data is not null
+		if (null == data)
+		{
+			throw new IllegalArgumentException("data cannot be null");
+		}
+		
+		cache.put(relativePath, data);
+	}
+	
+	@Override
+	public boolean exists(String relativePath)
+	{
+		return cache.containsKey(relativePath);
+	}
+	
+	@Override
+	public void clear()
+	{
+		cache.clear();
+	}
+	
+	public int size()
+	{
+		return cache.size();
+	}
+}
@@ -0,0 +1,419 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.gregmarut.commons.hash.HashUtils;
+import com.gregmarut.commons.util.ByteArray;
+
+/**
+ * Stores the data of every entry once, no matter how many keys it is saved under. Data is stored as a blob which is
+ * named by its SHA-256 hash, and each key holds a small reference to the blob of its data. A save of data which is
+ * already stored only writes the reference, and a save of the data which the key already refers to writes nothing.
+ * <p>
+ * The number of keys which refer to each blob is counted in memory, and a blob is deleted once no key refers to it. The
+ * counts are rebuilt from the references when the cache is opened, which also deletes any blob which a crash left
+ * without a reference.
+ * <p>
+ * Keys are normalized in the same way as by a {@link FileSystemCache}, so "/a" and "a" are the same key.
+ */
+public class ContentAddressedFileCache implements FileCache
+{
+	// ** Finals **//
+	// holds the names of the folders which the blobs and references are stored in
+	public static final String BLOBS_FOLDER = "blobs";
+	public static final String REFS_FOLDER = "refs";
+	
+	// ** Objects **//
+	// holds the blobs, keyed by their hash
+	private final FileSystemCache blobs;
+	
+	// holds the references, keyed by the keys of the cache
+	private final FileSystemCache refs;
+	
+	// holds the hash which each key refers to, sorted so that the keys under a folder are next to each other
+	private final TreeMap<String, String> hashes;
+	
+	// holds the number of keys which refer to each blob
+	private final Map<String, Integer> counts;
+	
+	public ContentAddressedFileCache(final File root) throws CacheException
+	{
+		// make sure the file is not null
+		if (null == root)
+		{
+			throw new IllegalArgumentException("Root cache cannot be null.");
+		}
+		
+		blobs = new FileSystemCache(new File(root, BLOBS_FOLDER));
+		refs = new FileSystemCache(new File(root, REFS_FOLDER));
+		
+		hashes = new TreeMap<String, String>();
+		counts = new HashMap<String, Integer>();
+		
+		rebuild();
+	}
+	
+	@Override
+	public byte[] load(final String relativePath) throws CacheException
+	{
+		final String key = CachePaths.toKey(relativePath);
+		String hash;
+		
+		synchronized (this)
+		{
+			hash = hashes.get(key);
+		}
+		
+		// check to see if the key is cached
+		if (null == hash)
+		{
+			return null;
+		}
+		
+		try
+		{
+			// the blob is read without the lock, so that loads do not wait for each other
+			byte[] data = blobs.load(getBlobPath(hash));
+			if (null != data)
+			{
+				return data;
+			}
+		}
+		catch (CacheException e)
+		{
+			// the blob may have been deleted by a concurrent save or delete, which is checked below
+		}
+		
+		// read the blob again under the lock, where the key and its blob cannot change
+		synchronized (this)
+		{
+			hash = hashes.get(key);
+			return null == hash ? null : blobs.load(getBlobPath(hash));
+		}
+	}
+	
+	@Override
+	public void save(final String relativePath, final byte[] data) throws CacheException
+	{
+		// make sure the data is not null
+		if (null == data)
+		{
+			throw new IllegalArgumentException("data cannot be null");
+		}
+		
+		// the data is hashed before taking the lock so that saves only wait for each other's references
+		final String key = CachePaths.toKey(relativePath);
+		final String hash = hash(data);
+		final String blobPath = getBlobPath(hash);
+		
+		synchronized (this)
+		{
+			// check to see if the key already refers to this data
+			if (hash.equals(hashes.get(key)))
+			{
+				return;
+			}
+		}
+		
+		// the blob is written without the lock, since a blob is replaced atomically and two saves of the same data
+		// write the same bytes
+		if (!containsHash(hash))
+		{
+			blobs.save(blobPath, data);
+		}
+		
+		synchronized (this)
+		{
+			String previous = hashes.get(key);
+			
+			// check to see if the key was given this data in the meantime
+			if (hash.equals(previous))
+			{
+				return;
+			}
+			
+			// the last key which referred to the blob may have been deleted since it was checked, which deletes the blob.
+			// The blob is written before the reference so that a reference never points at a missing blob.
+			if (!counts.containsKey(hash) && !blobs.exists(blobPath))
+			{
+				blobs.save(blobPath, data);
+			}
+			
+			refs.save(key, hash.getBytes());
+			
+			hashes.put(key, hash);
+			increment(hash);
+			
+			if (null != previous)
+			{
+				decrement(previous);
+			}
+		}
+	}
+	
+	@Override
+	public synchronized boolean exists(final String relativePath)
+	{
+		final String key = CachePaths.toKey(relativePath);
+		
+		// a folder exists as long as it holds a key, and the root always exists
+		if (key.isEmpty() || hashes.containsKey(key))
+		{
+			return true;
+		}
+		
+		String child = hashes.ceilingKey(key + "/");
+		return null != child && child.startsWith(key + "/");
+	}
+	
+	@Override
+	public synchronized void delete(final String relativePath)
+	{
+		final String key = CachePaths.toKey(relativePath);
+		
+		// deleting the root deletes everything
+		if (key.isEmpty())
+		{
+			clear();
+			return;
+		}
+		
+		// find the key and every key in its folder
+		List<String> keys = new ArrayList<String>();
+		if (hashes.containsKey(key))
+		{
+			keys.add(key);
+		}
+		keys.addAll(hashes.subMap(key + "/", key + "0").keySet());
+		
+		// make sure there is anything to delete
+		if (keys.isEmpty())
+		{
+			return;
+		}
+		
+		refs.delete(key);
+		
+		for (String deleted : keys)
+		{
+			decrement(hashes.remove(deleted));
+		}
+	}
+	
+	@Override
+	public synchronized void clear()
+	{
+		refs.clear();
+		blobs.clear();
+		
+		hashes.clear();
+		counts.clear();
+	}
+	
+	/**
+	 * Checks to see if data with this hash is stored, without touching the disk
+	 * 
+	 * @param hash
+	 * @return
+	 */
+	public synchronized boolean containsHash(final String hash)
+	{
+		return counts.containsKey(hash);
+	}
+	
+	/**
+	 * Checks to see if this data is stored under any key, without touching the disk
+	 * 
+	 * @param data
+	 * @return
+	 */
+	public boolean containsContent(final byte[] data)
+	{
+		return containsHash(hash(data));
+	}
+	
+	/**
+	 * Returns the hash of the data which the key refers to
+	 * 
+	 * @param relativePath
+	 * @return the hash, or null if the key is not cached
+	 */
+	public synchronized String getHash(final String relativePath)
+	{
+		return hashes.get(CachePaths.toKey(relativePath));
+	}
+	
+	/**
+	 * Returns the number of keys which refer to the data with this hash
+	 * 
+	 * @param hash
+	 * @return
+	 */
+	public synchronized int getReferenceCount(final String hash)
+	{
+		Integer count = counts.get(hash);
+		return null == count ? 0 : count;
+	}
+	
+	/**
+	 * Returns the number of distinct blobs which are stored
+	 * 
+	 * @return
+	 */
+	public synchronized int getBlobCount()
+	{
+		return counts.size();
+	}
+	
+	/**
+	 * Returns the number of keys in the cache
+	 * 
+	 * @return
+	 */
+	public synchronized int size()
+	{
+		return hashes.size();
+	}
+	
+	/**
+	 * Hashes the data with SHA-256
+	 * 
+	 * @param data
+	 * @return the hash as a hex string
+	 */
+	public static String hash(final byte[] data)
+	{
+		return new ByteArray(HashUtils.hashBytes(data, HashUtils.SHA_256)).toHexString();
+	}
+	
+	private void increment(final String hash)
+	{
+		Integer count = counts.get(hash);
+		counts.put(hash, null == count ? 1 : count + 1);
+	}
+	
+	/**
+	 * Counts one reference less to the blob, deleting it once nothing refers to it
+	 * 
+	 * @param hash
+	 */
+	private void decrement(final String hash)
+	{
+		Integer count = counts.get(hash);
+		
+		if (null == count || count <= 1)
+		{
+			counts.remove(hash);
+			blobs.delete(getBlobPath(hash));
+		}
+		else
+		{
+			counts.put(hash, count - 1);
+		}
+	}
+	
+	/**
+	 * Reads every reference to rebuild the counts, and deletes the blobs which nothing refers to
+	 * 
+	 * @throws CacheException
+	 */
+	private void rebuild() throws CacheException
+	{
+		final Path refsPath = refs.getRoot().toPath();
+		
+		try
+		{
+			Files.walkFileTree(refsPath, new SimpleFileVisitor<Path>()
+			{
+				@Override
+				public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+				{
+					return !refsPath.equals(dir) && CachePaths.isInternal(dir) ? FileVisitResult.SKIP_SUBTREE
+						: FileVisitResult.CONTINUE;
+				}
+				
+				@Override
+				public FileVisitResult visitFileFailed(final Path file, final IOException e)
+				{
+					// the trash may be deleted in the background while the references are read
+					return FileVisitResult.CONTINUE;
+				}
+				
+				@Override
+				public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException
+				{
+					if (!CachePaths.isInternal(file))
+					{
+						String key = refsPath.relativize(file).toString().replace(File.separatorChar, '/');
+						String hash = new String(Files.readAllBytes(file));
+						
+						hashes.put(key, hash);
+						increment(hash);
+					}
+					
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+		catch (IOException e)
+		{
+			// wrap the exception
+			throw new CacheException(e);
+		}
+		
+		// delete the blobs which a crash left without a reference
+		File[] folders = blobs.getRoot().listFiles();
+		if (null != folders)
+		{
+			for (File folder : folders)
+			{
+				File[] files = folder.listFiles();
+				if (null != files && !CachePaths.isInternal(folder.toPath()))
+				{
+					for (File file : files)
+					{
+						String hash = folder.getName() + file.getName();
+						if (!CachePaths.isInternal(file.toPath()) && !counts.containsKey(hash))
+						{
+							file.delete();
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the path of a blob, which is spread over folders by the first two characters of its hash
+	 * 
+	 * @param hash
+	 * @return
+	 */
+	private static String getBlobPath(final String hash)
+	{
+		return hash.substring(0, 2) + "/" + hash.substring(2);
+	}
+}
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the daemon threads of the background pools of the caches, numbering each thread after the given name
+ */
+final class DaemonThreadFactory implements ThreadFactory
+{
+	// ** Finals **//
+	// holds the name which the number of each thread is appended to
+	private final String name;
+	
+	// holds the number of threads which were created
+	private final AtomicInteger count;
+	
+	// ** Primitives **//
+	private final int priority;
+	
+	DaemonThreadFactory(final String name)
+	{
+		this(name, Thread.NORM_PRIORITY);
+	}
+	
+	DaemonThreadFactory(final String name, final int priority)
+	{
+		this.name = name;
+		this.priority = priority;
+		
+		count = new AtomicInteger();
+	}
+	
+	@Override
+	public Thread newThread(final Runnable runnable)
+	{
+		Thread thread = new Thread(runnable, name + count.incrementAndGet());
+		thread.setDaemon(true);
+		thread.setPriority(priority);
+		return thread;
+	}
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct buffers which all have the same capacity. Allocating a direct buffer is slow, so buffers are reused
+ * instead; at most a fixed number of idle buffers are kept, and any more are freed when they are released.
+ */
+public class DirectBufferPool
+{
+	// ** Objects **//
+	// holds the idle buffers
+	private final Queue<ByteBuffer> buffers;
+	
+	// holds the number of idle buffers
+	private final AtomicInteger idle;
+	
+	// ** Primitives **//
+	private final int bufferSize;
+	private final int maxIdle;
+	
+	public DirectBufferPool(final int bufferSize, final int maxIdle)
+	{
+		// make sure the sizes are valid
+		if (bufferSize < 1)
+		{
+			throw new IllegalArgumentException("bufferSize must be at least 1");
+		}
+		if (maxIdle < 0)
+		{
+			throw new IllegalArgumentException("maxIdle cannot be negative");
+		}
+		
+		this.bufferSize = bufferSize;
+		this.maxIdle = maxIdle;
+		
+		buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+		idle = new AtomicInteger();
+	}
+	
+	/**
+	 * Takes an idle buffer from the pool, or allocates one if none are idle. The buffer is cleared.
+	 * 
+	 * @return
+	 */
+	public ByteBuffer acquire()
+	{
+		ByteBuffer buffer = buffers.poll();
+		
+		// check to see if an idle buffer was found
+		if (null != buffer)
+		{
+			idle.decrementAndGet();
+			buffer.clear();
+			return buffer;
+		}
+		else
+		{
+			return ByteBuffer.allocateDirect(bufferSize);
+		}
+	}
+	
+	/**
+	 * Returns a buffer obtained from {@link #acquire()} to the pool, or frees it if the pool is full
+	 * 
+	 * @param buffer
+	 */
+	public void release(final ByteBuffer buffer)
+	{
+		// make sure the pool has room for another buffer
+		if (idle.incrementAndGet() <= maxIdle)
+		{
+			buffers.offer(buffer);
+		}
+		else
+		{
+			idle.decrementAndGet();
+			BufferCleaner.clean(buffer);
+		}
+	}
+	
+	public int getBufferSize()
+	{
+		return bufferSize;
+	}
+	
+	public int getMaxIdle()
+	{
+		return maxIdle;
+	}
+}
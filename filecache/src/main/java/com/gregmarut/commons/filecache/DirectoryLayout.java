@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+/**
+ * Decides where under the root of a {@link FileSystemCache} the file of each key is stored. Callers only ever see the
+ * keys, so the layout can be changed without changing them, although the files which are already stored have to be
+ * moved with the {@link LayoutMigrator}.
+ */
+public interface DirectoryLayout
+{
+	/**
+	 * Returns the path below the root which the file of the key is stored at
+	 * 
+	 * @param key
+	 *            the normalized key, which uses / as the separator and is never empty
+	 * @return
+	 */
+	String getStoragePath(final String key);
+	
+	/**
+	 * Returns the key of a file which was stored at the path below the root
+	 * 
+	 * @param storagePath
+	 * @return the key, or null if the path was not made by this layout
+	 */
+	String getKey(final String storagePath);
+}
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+/**
+ * Decides when a {@link FileSystemCache} forces saved data to the disk. Every save replaces its file atomically, so a
+ * load never sees a partially written entry, but without a sync a crash may still lose saves which had returned.
+ */
+public enum DurabilityPolicy
+{
+	/**
+	 * Data is left to the operating system to write. A crash may lose recent saves, but never leaves a torn file.
+	 */
+	NONE,
+	
+	/**
+	 * Every save forces its file and its folder to the disk before it returns
+	 */
+	FSYNC,
+	
+	/**
+	 * Saves which happen at the same time are committed together. Each save still returns only once its data is on the
+	 * disk, but concurrent writers share the syncs which can be shared, such as that of a folder in a
+	 * {@link FileSystemCache} or of the newest segment in a {@link LogStructuredCache}.
+	 */
+	GROUP_COMMIT
+}
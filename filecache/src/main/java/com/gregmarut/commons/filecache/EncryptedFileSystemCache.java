@@ -13,10 +13,24 @@
 package com.gregmarut.commons.filecache;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
+import com.gregmarut.commons.encryption.ConcurrentEncryption;
 import com.gregmarut.commons.encryption.Encryption;
 import com.gregmarut.commons.encryption.EncryptionException;
 
+/**
+ * A {@link FileSystemCache} which encrypts its files. Every load and save, including those of the
+ * {@link StreamingFileCache} methods, passes through a cipher stream, so an entry is encrypted and decrypted a chunk at
+ * a time no matter how large it is.
+ * <p>
+ * The bulk loads and saves run the cipher of each file on the thread which reads or writes it. A plain
+ * {@link Encryption} has one cipher per mode, so those threads take turns; a {@link ConcurrentEncryption} lets them
+ * encrypt and decrypt at the same time.
+ */
 public class EncryptedFileSystemCache extends FileSystemCache
 {
 	// holds the encryption object
@@ -29,31 +43,29 @@ public class EncryptedFileSystemCache extends FileSystemCache
 		this.encryption = encryption;
 	}
 	
+	public EncryptedFileSystemCache(final File root, final Encryption encryption, final IndexMode indexMode)
+		throws EncryptionException
+	{
+		super(root, indexMode);
+		
+		this.encryption = encryption;
+	}
+	
+	public EncryptedFileSystemCache(final File root, final Encryption encryption, final IndexMode indexMode,
+		final DirectoryLayout layout) throws EncryptionException
+	{
+		super(root, indexMode, layout);
+		
+		this.encryption = encryption;
+	}
+	
 	@Override
 	public byte[] load(String relativePath)
 	{
 		try
 		{
-			// load the encrypted data from the file system
-			byte[] encryptedData = super.load(relativePath);
-			
-			// make sure the data is not null
-			if (null != encryptedData)
-			{
-				try
-				{
-					// return the decrypted data
-					return encryption.decrypt(encryptedData);
-				}
-				catch (EncryptionException e)
-				{
-					return null;
-				}
-			}
-			else
-			{
-				return null;
-			}
+			// the file is decrypted as it is read so the encrypted data is never held in memory
+			return super.load(relativePath);
 		}
 		catch (CacheException e)
 		{
@@ -61,20 +73,64 @@ public class EncryptedFileSystemCache extends FileSystemCache
 		}
 	}
 	
+	/**
+	 * Decrypts the mapped file into a heap buffer. The encrypted data is read without a heap copy, but the decrypted
+	 * data has to live somewhere, so the returned entry holds nothing which needs to be released.
+	 */
 	@Override
-	public void save(String relativePath, byte[] data) throws CacheException
+	public MappedEntry loadMapped(final String relativePath) throws CacheException
 	{
+		MappedEntry encrypted = super.loadMapped(relativePath);
+		
 		try
 		{
-			// encrypt the data
-			byte[] encryptedData = encryption.encrypt(data);
+			ByteBuffer input = encrypted.getBuffer();
+			ByteBuffer output = ByteBuffer.allocate(encryption.getDecryptedSize(input.remaining()));
 			
-			// save the encrypted data to the file system
-			super.save(relativePath, encryptedData);
+			encryption.decrypt(input, output);
+			output.flip();
+			
+			return MappedEntry.wrap(output);
 		}
 		catch (EncryptionException e)
 		{
 			throw new CacheException(e);
 		}
+		finally
+		{
+			encrypted.close();
+		}
+	}
+	
+	/**
+	 * Decrypts the file as it is read
+	 */
+	@Override
+	protected InputStream wrapInputStream(final InputStream in) throws IOException
+	{
+		try
+		{
+			return encryption.decryptingStream(in);
+		}
+		catch (EncryptionException e)
+		{
+			throw new IOException(e);
+		}
+	}
+	
+	/**
+	 * Encrypts the data as it is written to the file
+	 */
+	@Override
+	protected OutputStream wrapOutputStream(final OutputStream out) throws IOException
+	{
+		try
+		{
+			return encryption.encryptingStream(out);
+		}
+		catch (EncryptionException e)
+		{
+			throw new IOException(e);
+		}
 	}
 }
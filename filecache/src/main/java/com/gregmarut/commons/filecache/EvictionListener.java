@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+/**
+ * Notified when a bounded cache evicts an entry to stay within its maximum size. Entries which are deleted or cleared
+ * are not reported.
+ */
+public interface EvictionListener
+{
+	/**
+	 * Called after an entry has been evicted
+	 * 
+	 * @param relativePath
+	 * @param data
+	 */
+	void entryEvicted(final String relativePath, final byte[] data);
+}
@@ -0,0 +1,669 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gives the entries of any other cache a time to live. The time at which an entry expires is stored in a short header
+ * in front of its data, so it survives in a {@link FileSystemCache} across restarts just as it does in memory.
+ * <p>
+ * An expired entry is removed when it is next read. Entries which were saved through this instance are also removed by
+ * a background thread shortly after they expire; it keeps the entries ordered by the time they expire and only ever
+ * looks at the ones which are due, so it never walks the cache.
+ * <p>
+ * With a stale period, an entry which has expired less than that long ago is still returned by
+ * {@link #load(String, CacheLoader)}, which refreshes it with the loader in the background. Only one refresh of an
+ * entry runs at a time.
+ */
+public class ExpiringFileCache implements FileCache
+{
+	// ** Finals **//
+	// holds the expiry of an entry which never expires
+	public static final long NEVER = Long.MAX_VALUE;
+	
+	// holds the number of due entries which the background thread removes before it checks the queue again
+	public static final int EXPIRY_BATCH_SIZE = 64;
+	
+	// holds the number of threads which may refresh stale entries at the same time
+	public static final int MAX_REFRESH_THREADS = 4;
+	
+	// holds the first bytes of the header, and the length of the whole header
+	private static final int MAGIC = 0x45585031;
+	private static final int HEADER_LENGTH = 4 + 8;
+	
+	// holds the number of locks which saves and expiries of an entry share
+	private static final int LOCK_COUNT = 64;
+	
+	private static final String EXPIRER_THREAD_NAME = "Expiring Cache Expirer Thread";
+	private static final String REFRESH_THREAD_NAME = "Expiring Cache Refresh Thread ";
+	
+	// ** Objects **//
+	// holds the cache which the entries are stored in
+	private final FileCache delegate;
+	
+	// holds the time each entry which was saved through this instance expires at, which is NEVER for an entry which
+	// does not expire
+	private final ConcurrentMap<String, Long> expiries;
+	
+	// holds the entries which were saved through this instance, ordered by the time they expire at
+	private final PriorityQueue<Expiry> queue;
+	
+	// holds the expiry which is queued for each entry, so that an entry which is saved again is not queued twice
+	private final Map<String, Expiry> scheduled;
+	
+	// holds the entries which are being built or refreshed by a loader
+	private final ConcurrentMap<String, FutureTask<byte[]>> loading;
+	
+	// holds the locks which make the check and the delete of an expired entry safe against a save of the same entry
+	private final Object[] locks;
+	
+	// holds the threads which refresh stale entries
+	private final ThreadPoolExecutor refresher;
+	
+	// ** Primitives **//
+	private final long defaultTtl;
+	
+	// holds how long after an entry expires it may still be returned while it is refreshed
+	private volatile long stalePeriod;
+	
+	private boolean closed;
+	
+	/**
+	 * Creates a cache whose entries never expire unless they are saved with a time to live
+	 * 
+	 * @param delegate
+	 */
+	public ExpiringFileCache(final FileCache delegate)
+	{
+		this(delegate, NEVER, TimeUnit.MILLISECONDS);
+	}
+	
+	public ExpiringFileCache(final FileCache delegate, final long defaultTtl, final TimeUnit unit)
+	{
+		// make sure none of the parameters are null
+		if (null == delegate)
+		{
+			throw new IllegalArgumentException("delegate cannot be null");
+		}
+		if (null == unit)
+		{
+			throw new IllegalArgumentException("unit cannot be null");
+		}
+		if (defaultTtl <= 0)
+		{
+			throw new IllegalArgumentException("defaultTtl must be greater than 0");
+		}
+		
+		this.delegate = delegate;
+		this.defaultTtl = NEVER == defaultTtl ? NEVER : unit.toMillis(defaultTtl);
+		
+		expiries = new ConcurrentHashMap<String, Long>();
+		queue = new PriorityQueue<Expiry>();
+		scheduled = new HashMap<String, Expiry>();
+		loading = new ConcurrentHashMap<String, FutureTask<byte[]>>();
+		
+		locks = new Object[LOCK_COUNT];
+		for (int i = 0; i < locks.length; i++)
+		{
+			locks[i] = new Object();
+		}
+		
+		refresher = new ThreadPoolExecutor(MAX_REFRESH_THREADS, MAX_REFRESH_THREADS, 60, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory(REFRESH_THREAD_NAME));
+		refresher.allowCoreThreadTimeOut(true);
+		
+		Thread thread = new Thread(new Expirer(), EXPIRER_THREAD_NAME);
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Loads the data of the entry, or null if it is missing or has expired. An expired entry is deleted unless it may
+	 * still be returned as stale.
+	 */
+	@Override
+	public byte[] load(final String relativePath) throws CacheException
+	{
+		Entry entry = read(relativePath);
+		
+		// check to see if the entry is missing or has expired
+		if (null == entry)
+		{
+			return null;
+		}
+		else if (entry.isExpired(now()))
+		{
+			if (!entry.isStale(now(), stalePeriod))
+			{
+				expire(relativePath, entry.expiresAt);
+			}
+			
+			return null;
+		}
+		
+		return entry.data;
+	}
+	
+	/**
+	 * Returns the data of the entry, building it with the loader if it is missing or has expired. When several threads
+	 * ask for the same entry only one of them runs the loader, and the rest wait for its result. An entry which expired
+	 * less than the stale period ago is returned right away while the loader refreshes it in the background.
+	 * 
+	 * @param relativePath
+	 * @param loader
+	 * @return
+	 * @throws CacheException
+	 */
+	public byte[] load(final String relativePath, final CacheLoader loader) throws CacheException
+	{
+		// make sure the loader is not null
+		if (null == loader)
+		{
+			throw new IllegalArgumentException("loader cannot be null");
+		}
+		
+		Entry entry = read(relativePath);
+		long now = now();
+		
+		// check to see if the entry can be returned as it is
+		if (null != entry && !entry.isExpired(now))
+		{
+			return entry.data;
+		}
+		
+		FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>()
+		{
+			@Override
+			public byte[] call() throws Exception
+			{
+				byte[] loaded = loader.load(relativePath);
+				
+				// a loader which returns null caches nothing
+				if (null != loaded)
+				{
+					save(relativePath, loaded);
+				}
+				
+				return loaded;
+			}
+		});
+		
+		FutureTask<byte[]> existing = loading.putIfAbsent(relativePath, task);
+		
+		// a task which is done has saved its data and is only waiting to be removed, so it cannot be joined
+		while (null != existing && existing.isDone())
+		{
+			// check to see if the data it saved can be returned
+			Entry current = read(relativePath);
+			if (null != current && !current.isExpired(now()))
+			{
+				return current.data;
+			}
+			
+			// take over from the finished task so that the entry is loaded again
+			existing = loading.replace(relativePath, existing, task) ? null : loading.putIfAbsent(relativePath, task);
+		}
+		
+		// check to see if a stale entry can be returned while it is refreshed
+		if (null != entry && entry.isStale(now, stalePeriod))
+		{
+			if (null == existing)
+			{
+				refresh(relativePath, task);
+			}
+			
+			return entry.data;
+		}
+		
+		// check to see if another thread is already building this entry
+		if (null != existing)
+		{
+			return CacheTasks.await(existing);
+		}
+		
+		try
+		{
+			task.run();
+			return CacheTasks.await(task);
+		}
+		finally
+		{
+			loading.remove(relativePath, task);
+		}
+	}
+	
+	/**
+	 * Saves the entry with the default time to live
+	 */
+	@Override
+	public void save(final String relativePath, final byte[] data) throws CacheException
+	{
+		save(relativePath, data, defaultTtl, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Saves the entry, which expires once the time to live has passed
+	 * 
+	 * @param relativePath
+	 * @param data
+	 * @param ttl
+	 * @param unit
+	 * @throws CacheException
+	 */
+	public void save(final String relativePath, final byte[] data, final long ttl, final TimeUnit unit)
+		throws CacheException
+	{
+		// make sure the parameters are valid
+		if (null == data)
+		{
+			throw new IllegalArgumentException("data cannot be null");
+		}
+		if (null == unit)
+		{
+			throw new IllegalArgumentException("unit cannot be null");
+		}
+		if (ttl <= 0)
+		{
+			throw new IllegalArgumentException("ttl must be greater than 0");
+		}
+		
+		long expiresAt = NEVER == ttl ? NEVER : now() + unit.toMillis(ttl);
+		
+		// guard against an overflow of a very long time to live
+		if (expiresAt < 0)
+		{
+			expiresAt = NEVER;
+		}
+		
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + data.length);
+		buffer.putInt(MAGIC);
+		buffer.putLong(expiresAt);
+		buffer.put(data);
+		
+		synchronized (lockFor(relativePath))
+		{
+			delegate.save(relativePath, buffer.array());
+			
+			// an entry which never expires is still recorded so that an older expiry of it is not applied
+			expiries.put(relativePath, expiresAt);
+		}
+		
+		// hand the entry to the background thread
+		if (NEVER != expiresAt)
+		{
+			schedule(relativePath, expiresAt);
+		}
+	}
+	
+	@Override
+	public boolean exists(final String relativePath)
+	{
+		Long expiresAt = expiries.get(relativePath);
+		
+		// check to see if the expiry is known without reading the entry
+		if (null != expiresAt)
+		{
+			return now() < expiresAt && delegate.exists(relativePath);
+		}
+		
+		try
+		{
+			return null != load(relativePath);
+		}
+		catch (CacheException e)
+		{
+			return false;
+		}
+	}
+	
+	@Override
+	public void delete(final String relativePath)
+	{
+		delegate.delete(relativePath);
+		
+		// forget the entry along with anything in its folder
+		Iterator<String> iterator = expiries.keySet().iterator();
+		while (iterator.hasNext())
+		{
+			if (CachePaths.isAtOrUnder(iterator.next(), relativePath))
+			{
+				iterator.remove();
+			}
+		}
+	}
+	
+	@Override
+	public void clear()
+	{
+		delegate.clear();
+		expiries.clear();
+		
+		synchronized (queue)
+		{
+			queue.clear();
+			scheduled.clear();
+		}
+	}
+	
+	/**
+	 * Sets how long after an entry expires it may still be returned by {@link #load(String, CacheLoader)} while it is
+	 * refreshed. A period of 0 turns this off.
+	 * 
+	 * @param stalePeriod
+	 * @param unit
+	 */
+	public void setStalePeriod(final long stalePeriod, final TimeUnit unit)
+	{
+		// make sure the period is valid
+		if (stalePeriod < 0)
+		{
+			throw new IllegalArgumentException("stalePeriod cannot be negative");
+		}
+		
+		this.stalePeriod = unit.toMillis(stalePeriod);
+	}
+	
+	public long getStalePeriod()
+	{
+		return stalePeriod;
+	}
+	
+	public FileCache getDelegate()
+	{
+		return delegate;
+	}
+	
+	/**
+	 * Stops the background threads. Entries which expire afterwards are still removed when they are read.
+	 */
+	public void close()
+	{
+		synchronized (queue)
+		{
+			closed = true;
+			queue.notifyAll();
+		}
+		
+		refresher.shutdown();
+	}
+	
+	/**
+	 * Returns the current time in milliseconds, which expiries are measured against
+	 * 
+	 * @return
+	 */
+	protected long now()
+	{
+		return System.currentTimeMillis();
+	}
+	
+	/**
+	 * Reads the entry and its header
+	 * 
+	 * @param relativePath
+	 * @return the entry, or null if it is missing
+	 * @throws CacheException
+	 */
+	private Entry read(final String relativePath) throws CacheException
+	{
+		// a file system cache fails to load a missing entry, so make sure it exists first
+		if (!delegate.exists(relativePath))
+		{
+			return null;
+		}
+		
+		byte[] stored = delegate.load(relativePath);
+		if (null == stored)
+		{
+			return null;
+		}
+		
+		ByteBuffer buffer = ByteBuffer.wrap(stored);
+		
+		// data which was saved without a header never expires
+		if (stored.length < HEADER_LENGTH || MAGIC != buffer.getInt())
+		{
+			return new Entry(stored, NEVER);
+		}
+		
+		long expiresAt = buffer.getLong();
+		byte[] data = new byte[buffer.remaining()];
+		buffer.get(data);
+		
+		return new Entry(data, expiresAt);
+	}
+	
+	/**
+	 * Deletes the entry unless it was saved again since it was found to have expired
+	 * 
+	 * @param relativePath
+	 * @param expiresAt
+	 */
+	private void expire(final String relativePath, final long expiresAt)
+	{
+		synchronized (lockFor(relativePath))
+		{
+			Long known = expiries.get(relativePath);
+			
+			// saves through this instance update the expiry while holding the same lock, so an entry is only deleted if
+			// it still has the expiry which was found, or was never saved through this instance
+			if (null != known && known != expiresAt)
+			{
+				return;
+			}
+			
+			delegate.delete(relativePath);
+			expiries.remove(relativePath, expiresAt);
+		}
+	}
+	
+	/**
+	 * Queues the entry for the background thread unless it is already queued to expire no later. An entry which is
+	 * queued too early is queued again for its current expiry once it is due.
+	 * 
+	 * @param relativePath
+	 * @param expiresAt
+	 */
+	private void schedule(final String relativePath, final long expiresAt)
+	{
+		synchronized (queue)
+		{
+			Expiry queued = scheduled.get(relativePath);
+			if (null != queued && queued.expiresAt <= expiresAt)
+			{
+				return;
+			}
+			
+			// an expiry which is queued later than this one is skipped once it is due
+			Expiry expiry = new Expiry(relativePath, expiresAt);
+			scheduled.put(relativePath, expiry);
+			queue.add(expiry);
+			queue.notifyAll();
+		}
+	}
+	
+	private void refresh(final String relativePath, final FutureTask<byte[]> task)
+	{
+		try
+		{
+			refresher.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						task.run();
+					}
+					finally
+					{
+						loading.remove(relativePath, task);
+					}
+				}
+			});
+		}
+		catch (RuntimeException e)
+		{
+			// the cache was closed, so the entry is not refreshed
+			loading.remove(relativePath, task);
+		}
+	}
+	
+	private Object lockFor(final String relativePath)
+	{
+		return locks[(relativePath.hashCode() & Integer.MAX_VALUE) % locks.length];
+	}
+	
+	/**
+	 * The data of an entry and the time it expires at
+	 */
+	private static class Entry
+	{
+		// ** Finals **//
+		private final byte[] data;
+		
+		// ** Primitives **//
+		private final long expiresAt;
+		
+		public Entry(final byte[] data, final long expiresAt)
+		{
+			this.data = data;
+			this.expiresAt = expiresAt;
+		}
+		
+		public boolean isExpired(final long now)
+		{
+			return now >= expiresAt;
+		}
+		
+		public boolean isStale(final long now, final long stalePeriod)
+		{
+			return stalePeriod > 0 && now - expiresAt < stalePeriod;
+		}
+	}
+	
+	/**
+	 * The time an entry expires at, as queued for the background thread
+	 */
+	private static class Expiry implements Comparable<Expiry>
+	{
+		// ** Finals **//
+		private final String relativePath;
+		
+		// ** Primitives **//
+		private final long expiresAt;
+		
+		public Expiry(final String relativePath, final long expiresAt)
+		{
+			this.relativePath = relativePath;
+			this.expiresAt = expiresAt;
+		}
+		
+		@Override
+		public int compareTo(final Expiry other)
+		{
+			return expiresAt < other.expiresAt ? -1 : expiresAt == other.expiresAt ? 0 : 1;
+		}
+	}
+	
+	/**
+	 * Removes the entries which are due, a batch at a time, sleeping until the next one is due
+	 * 
+	 * @author Greg Marut
+	 */
+	private class Expirer implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			// holds the entries which are due
+			Expiry[] batch = new Expiry[EXPIRY_BATCH_SIZE];
+			
+			while (true)
+			{
+				int count = 0;
+				
+				synchronized (queue)
+				{
+					try
+					{
+						// wait until the first entry is due, including its stale period
+						while (count == 0)
+						{
+							if (closed)
+							{
+								return;
+							}
+							
+							Expiry first = queue.peek();
+							long wait = null == first ? 0 : first.expiresAt + stalePeriod - now();
+							
+							if (null != first && wait <= 0)
+							{
+								// take the entries which are due, dropping any which were replaced by an earlier expiry
+								while (count < batch.length && null != (first = queue.peek())
+									&& first.expiresAt + stalePeriod <= now())
+								{
+									queue.poll();
+									
+									if (scheduled.remove(first.relativePath, first))
+									{
+										batch[count++] = first;
+									}
+								}
+							}
+							else
+							{
+								queue.wait(wait);
+							}
+						}
+					}
+					catch (InterruptedException e)
+					{
+						return;
+					}
+				}
+				
+				for (int i = 0; i < count; i++)
+				{
+					Long known = expiries.get(batch[i].relativePath);
+					
+					// skip entries which were deleted since they were queued, and queue again the ones which were saved
+					// again with a later expiry
+					if (null != known && known == batch[i].expiresAt)
+					{
+						expire(batch[i].relativePath, batch[i].expiresAt);
+					}
+					else if (null != known && known > batch[i].expiresAt && NEVER != known)
+					{
+						schedule(batch[i].relativePath, known);
+					}
+					
+					batch[i] = null;
+				}
+			}
+		}
+	}
+}
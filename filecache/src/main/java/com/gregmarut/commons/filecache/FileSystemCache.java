@@ -12,19 +12,184 @@
  ******************************************************************************/
 package com.gregmarut.commons.filecache;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 
-public class FileSystemCache implements FileCache
+/**
+ * Stores each entry in a file under a root directory. Relative paths are checked against the root lexically, so a path
+ * can never climb above the root, but a symbolic link under the root is followed as it is and may lead outside of it.
+ * If anything other than the cache can create links under the root, call {@link #setResolveLinks(boolean)} so that
+ * every path is resolved to its real path and checked again before it is used.
+ */
+public class FileSystemCache implements StreamingFileCache, BulkFileCache
 {
+	// ** Finals **//
+	// holds the size below which mapped loads read into a pooled buffer instead of mapping the file. Mapping a file
+	// costs more than reading a small one.
+	public static final int DEFAULT_MAP_THRESHOLD = 64 * 1024;
+	
+	// holds the number of idle buffers which are kept for small mapped loads
+	public static final int DEFAULT_MAX_IDLE_BUFFERS = 32;
+	
+	// holds the suffix of the temporary files which saves write to
+	public static final String TEMP_SUFFIX = ".tmp";
+	
+	// holds the size of the buffer which streamed data is copied through
+	public static final int STREAM_BUFFER_SIZE = 8 * 1024;
+	
+	// holds the start of the names of the folders which are waiting to be deleted in the background
+	public static final String TRASH_PREFIX = ".trash-";
+	
+	// holds the name of the file which the index is saved to between runs
+	public static final String INDEX_FILE_NAME = ".index";
+	
+	// holds the number of keys which a new Bloom filter is sized for, and the share of missing keys it lets through
+	public static final int DEFAULT_BLOOM_CAPACITY = 64 * 1024;
+	public static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+	
+	// holds the fewest entries which a bulk call hands to a thread of its own. Fewer are not worth the handover.
+	public static final int MIN_BULK_SLICE = 4;
+	
+	// holds the number of threads which a bulk call spreads its entries over unless another number is given
+	public static final int DEFAULT_BULK_PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+	
+	// holds the first bytes of a saved index
+	private static final int INDEX_MAGIC = 0x46434958;
+	
+	private static final String BULK_THREAD_NAME = "Bulk File Cache Thread ";
+	private static final String BLOOM_THREAD_NAME = "File Cache Bloom Thread";
+	
+	// orders the entries of a bulk call by their files, so that files in the same folder are handled together
+	private static final Comparator<BulkEntry<?>> BY_FILE = new Comparator<BulkEntry<?>>()
+	{
+		@Override
+		public int compare(final BulkEntry<?> a, final BulkEntry<?> b)
+		{
+			return a.file.compareTo(b.file);
+		}
+	};
+	
+	// holds the pool which bulk calls run on unless a cache is given another
+	private static ExecutorService defaultBulkExecutor;
+	
 	// holds the root directory
 	protected final File root;
 	
+	// holds the canonical path of the root, which every relative path is resolved against
+	private final Path rootPath;
+	
+	private final IndexMode indexMode;
+	
+	// holds the layout which decides where under the root each key is stored
+	private final DirectoryLayout layout;
+	
+	// holds every key of the cache when the full index is kept
+	private final ConcurrentSkipListSet<String> keys;
+	
+	// holds the deleter which removes cleared and deleted folders
+	private final BackgroundDeleter deleter;
+	
+	// determines whether the bloom filter is being replaced by a larger one
+	private final AtomicBoolean bloomRebuilding;
+	
+	// holds the pool of buffers for small mapped loads, whose buffer size is the map threshold
+	private volatile DirectBufferPool bufferPool;
+	
+	// holds the policy which decides when saved data is forced to the disk
+	private volatile DurabilityPolicy durabilityPolicy;
+	
+	// holds the batches of saves which are synced together
+	private final GroupCommit groupCommit;
+	
+	// holds the filter of the keys and their folders, and the larger filter which is being built to replace it
+	private volatile BloomFilter bloom;
+	private volatile BloomFilter nextBloom;
+	
+	// holds the executor which bulk calls spread their entries over
+	private volatile Executor bulkExecutor;
+	
+	// ** Primitives **//
+	// holds the number of threads which a bulk call uses at most, including the calling thread
+	private volatile int bulkParallelism;
+	
+	// determines whether the index file matches the cache
+	private volatile boolean indexSaved;
+	
+	// determines whether symbolic links are resolved before a path is checked against the root
+	private volatile boolean resolveLinks;
+	
 	public FileSystemCache(final File root)
+	{
+		this(root, IndexMode.NONE);
+	}
+	
+	/**
+	 * Creates a cache which keeps an index of its keys in memory. The index is loaded from the index file if
+	 * {@link #saveIndex()} was called by the last instance, and otherwise built by reading every folder under the root.
+	 * The cache must then be the only writer to the root, since files which are added by anything else are not seen.
+	 * 
+	 * @param root
+	 * @param indexMode
+	 */
+	public FileSystemCache(final File root, final IndexMode indexMode)
+	{
+		this(root, indexMode, new FlatLayout());
+	}
+	
+	/**
+	 * Creates a cache which stores its files according to the layout. The files of a root which was written with a
+	 * different layout must first be moved with the {@link LayoutMigrator}.
+	 * 
+	 * @param root
+	 * @param indexMode
+	 * @param layout
+	 */
+	public FileSystemCache(final File root, final IndexMode indexMode, final DirectoryLayout layout)
 	{
 		this.root = root;
 		
@@ -42,6 +207,44 @@ public class FileSystemCache implements FileCache
 		{
 			throw new IllegalArgumentException("Root cache must be a directory.");
 		}
+		
+		// make sure the index mode is not null
+		if (null == indexMode)
+		{
+			throw new IllegalArgumentException("indexMode cannot be null");
+		}
+		
+		// make sure the layout is not null
+		if (null == layout)
+		{
+			throw new IllegalArgumentException("layout cannot be null");
+		}
+		
+		// the root is resolved once so that lookups do not have to resolve it again
+		try
+		{
+			rootPath = root.getCanonicalFile().toPath();
+		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Root cache cannot be resolved.", e);
+		}
+		
+		this.indexMode = indexMode;
+		this.layout = layout;
+		keys = IndexMode.FULL == indexMode ? new ConcurrentSkipListSet<String>() : null;
+		bloomRebuilding = new AtomicBoolean();
+		
+		bufferPool = new DirectBufferPool(DEFAULT_MAP_THRESHOLD, DEFAULT_MAX_IDLE_BUFFERS);
+		durabilityPolicy = DurabilityPolicy.NONE;
+		groupCommit = new GroupCommit();
+		
+		bulkExecutor = getDefaultBulkExecutor();
+		bulkParallelism = DEFAULT_BULK_PARALLELISM;
+		
+		deleter = BackgroundDeleter.getDefault();
+		resumeDeletes();
+		loadIndex();
 	}
 	
 	@Override
@@ -50,10 +253,7 @@ public class FileSystemCache implements FileCache
 		try
 		{
 			// retrieve the file for this path
-			File file = getFile(relativePath);
-			
-			// load the data from the file
-			return IOUtils.toByteArray(new FileInputStream(file));
+			return read(getIndexedFile(relativePath));
 		}
 		catch (IOException e)
 		{
@@ -62,151 +262,1467 @@ public class FileSystemCache implements FileCache
 		}
 	}
 	
+	/**
+	 * Loads the files in parallel. The paths are resolved first and the files are then read in the order of their
+	 * paths, with each thread taking a run of neighbouring files, so that the folders which a thread reads from stay
+	 * cached. A file which is missing is reported as a failure.
+	 */
 	@Override
-	public void save(final String relativePath, final byte[] data) throws CacheException
+	public BulkResult<byte[]> loadAll(final Collection<String> relativePaths)
 	{
-		// holds the output stream to write to
-		FileOutputStream out = null;
+		// make sure the paths are not null
+		if (null == relativePaths)
+		{
+			throw new IllegalArgumentException("relativePaths cannot be null");
+		}
 		
-		try
+		List<BulkEntry<byte[]>> entries = new ArrayList<BulkEntry<byte[]>>(relativePaths.size());
+		List<BulkEntry<byte[]>> pending = new ArrayList<BulkEntry<byte[]>>(relativePaths.size());
+		
+		for (String relativePath : new LinkedHashSet<String>(relativePaths))
 		{
-			// retrieve the file for this path
-			File file = getFile(relativePath);
-			
-			// make the necessary directories if needed
-			file.getParentFile().mkdirs();
+			BulkEntry<byte[]> entry = new BulkEntry<byte[]>(relativePath);
+			entries.add(entry);
 			
-			// write the data to the file
-			out = new FileOutputStream(file);
-			out.write(data);
+			try
+			{
+				entry.file = getIndexedFile(relativePath);
+				pending.add(entry);
+			}
+			catch (IOException e)
+			{
+				entry.failure = new CacheException(e);
+			}
+			catch (IllegalFileException e)
+			{
+				entry.failure = new CacheException(e);
+			}
 		}
-		catch (IOException e)
+		
+		runInSlices(pending, new BulkTask<byte[]>()
 		{
-			// wrap the exception
-			throw new CacheException(e);
+			@Override
+			public byte[] run(final BulkEntry<byte[]> entry) throws CacheException
+			{
+				return read(entry.file);
+			}
+		});
+		
+		return toResult(entries);
+	}
+	
+	/**
+	 * Saves the entries in parallel, in the same way as {@link #loadAll(Collection)} loads them. Each file is saved in
+	 * the same way as {@link #save(String, byte[])}, so with {@link DurabilityPolicy#GROUP_COMMIT} the files of a bulk
+	 * save share their syncs.
+	 */
+	@Override
+	public BulkResult<Long> saveAll(final Map<String, byte[]> entries)
+	{
+		// make sure the entries are not null
+		if (null == entries)
+		{
+			throw new IllegalArgumentException("entries cannot be null");
 		}
-		finally
+		
+		List<BulkEntry<Long>> saves = new ArrayList<BulkEntry<Long>>(entries.size());
+		List<BulkEntry<Long>> pending = new ArrayList<BulkEntry<Long>>(entries.size());
+		
+		for (Map.Entry<String, byte[]> entry : entries.entrySet())
 		{
-			// make sure the output stream is not null
-			if (null != out)
+			BulkEntry<Long> save = new BulkEntry<Long>(entry.getKey());
+			saves.add(save);
+			
+			// make sure the data is not null
+			if (null == entry.getValue())
 			{
-				try
-				{
-					out.close();
-				}
-				catch (IOException e)
-				{
-					// ignore this exception
-				}
+				save.failure = new CacheException(new IllegalArgumentException("data cannot be null"));
+				continue;
+			}
+			
+			try
+			{
+				save.file = getPath(entry.getKey()).toFile();
+				pending.add(save);
+			}
+			catch (IOException e)
+			{
+				save.failure = new CacheException(e);
+			}
+			catch (IllegalFileException e)
+			{
+				save.failure = new CacheException(e);
 			}
 		}
+		
+		runInSlices(pending, new BulkTask<Long>()
+		{
+			@Override
+			public Long run(final BulkEntry<Long> entry) throws CacheException
+			{
+				return write(entry.relativePath, null, entries.get(entry.relativePath));
+			}
+		});
+		
+		return toResult(saves);
 	}
 	
-	@Override
-	public boolean exists(String relativePath)
+	/**
+	 * Sets the executor which bulk calls spread their entries over, and the number of threads which each call uses at
+	 * most, including the calling thread
+	 * 
+	 * @param bulkExecutor
+	 * @param bulkParallelism
+	 */
+	public void setBulkExecutor(final Executor bulkExecutor, final int bulkParallelism)
 	{
-		try
+		// make sure the executor is not null
+		if (null == bulkExecutor)
 		{
-			// retrieve the file for this path
-			File file = getFile(relativePath);
-			return file.exists();
+			throw new IllegalArgumentException("bulkExecutor cannot be null");
 		}
-		catch (IOException e)
+		
+		// make sure the number of threads is valid
+		if (bulkParallelism < 1)
 		{
-			return false;
+			throw new IllegalArgumentException("bulkParallelism must be at least 1");
 		}
+		
+		this.bulkExecutor = bulkExecutor;
+		this.bulkParallelism = bulkParallelism;
 	}
 	
-	@Override
-	public void delete(final String relativePath)
+	public Executor getBulkExecutor()
+	{
+		return bulkExecutor;
+	}
+	
+	public int getBulkParallelism()
+	{
+		return bulkParallelism;
+	}
+	
+	/**
+	 * Reads the whole file
+	 * 
+	 * @param file
+	 * @return
+	 * @throws CacheException
+	 */
+	private byte[] read(final File file) throws CacheException
 	{
+		// holds the input stream to read from
+		InputStream in = null;
+		
 		try
 		{
-			// retrieve the file for this path
-			File file = getFile(relativePath);
+			// load the data from the file
+			FileInputStream fileIn = new FileInputStream(file);
+			in = fileIn;
+			in = wrapInputStream(fileIn);
 			
-			// delete the file/folder and all of its contents
-			recursiveDelete(file);
+			// check to see if the stream reads the file as it is, in which case the size is known up front
+			if (in == fileIn)
+			{
+				return IOUtils.toByteArray(in, fileIn.getChannel().size());
+			}
+			
+			return IOUtils.toByteArray(in);
 		}
 		catch (IOException e)
 		{
-			// ignore
+			// wrap the exception
+			throw new CacheException(e);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(in);
 		}
 	}
 	
+	/**
+	 * Saves the content to the file specified at the relative path. The data is written to a temporary file in the same
+	 * folder, which is then renamed over the file, so a load never sees a partially written entry. Whether the data is
+	 * forced to the disk before the save returns depends on the {@link DurabilityPolicy}.
+	 * 
+	 * @param relativePath
+	 * @param data
+	 * @throws CacheException
+	 */
 	@Override
-	public void clear()
+	public void save(final String relativePath, final byte[] data) throws CacheException
 	{
-		// recursively delete the root folder
-		recursiveDelete(root.listFiles());
+		// make sure the data is not null
+		if (null == data)
+		{
+			throw new IllegalArgumentException("data cannot be null");
+		}
+		
+		write(relativePath, null, data);
 	}
 	
 	/**
-	 * Recursively deletes the file/folder and any of its children
-	 * 
-	 * @param file
+	 * Saves everything which is left in the stream to the file, in the same way as {@link #save(String, byte[])}. The
+	 * stream is not closed.
 	 */
-	private void recursiveDelete(final File... files)
+	@Override
+	public long save(final String relativePath, final InputStream in) throws CacheException
 	{
-		// make sure the array of files is not null
-		if (null != files)
+		// make sure the stream is not null
+		if (null == in)
 		{
-			// for each of the files
-			for (File file : files)
-			{
-				// make sure this file is not null
-				if (null != file)
-				{
-					// check to see if this file is a directory
-					if (file.isDirectory())
-					{
-						// get all of the files in this folder
-						File[] children = file.listFiles();
-						
-						// make sure the files are not null
-						if (null != children)
-						{
-							// recursively delete the files
-							recursiveDelete(children);
-						}
-					}
-					
-					// delete the file
-					file.delete();
-				}
-			}
+			throw new IllegalArgumentException("in cannot be null");
+		}
+		
+		return write(relativePath, Channels.newChannel(in), null);
+	}
+	
+	/**
+	 * Saves everything which is left in the channel to the file, in the same way as {@link #save(String, byte[])}. Unless
+	 * a subclass transforms the data, it is moved into the file with {@link FileChannel#transferFrom}. The channel is not
+	 * closed.
+	 */
+	@Override
+	public long save(final String relativePath, final ReadableByteChannel source) throws CacheException
+	{
+		// make sure the channel is not null
+		if (null == source)
+		{
+			throw new IllegalArgumentException("source cannot be null");
 		}
+		
+		return write(relativePath, source, null);
 	}
 	
-	private File getFile(final String relativePath) throws IOException
+	/**
+	 * Opens a stream over the data of the file, which the caller must close
+	 */
+	@Override
+	public InputStream openInputStream(final String relativePath) throws CacheException
 	{
-		StringBuilder sb = new StringBuilder();
-		sb.append(root.getAbsolutePath());
+		// holds the input stream to read from
+		FileInputStream fileIn = null;
 		
-		// check to see if a / is needed
-		if (!relativePath.startsWith("/") && !relativePath.startsWith("\\"))
+		try
 		{
-			sb.append("/");
+			fileIn = new FileInputStream(getIndexedFile(relativePath));
+			InputStream in = wrapInputStream(fileIn);
+			fileIn = null;
+			
+			return in;
+		}
+		catch (IOException e)
+		{
+			// wrap the exception
+			throw new CacheException(e);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(fileIn);
+		}
+	}
+	
+	/**
+	 * Writes the data of the file to the channel. Unless a subclass transforms the data, it is moved with
+	 * {@link FileChannel#transferTo}, which the operating system can send to a socket without copying it through the
+	 * heap. The channel is not closed.
+	 */
+	@Override
+	public long load(final String relativePath, final WritableByteChannel target) throws CacheException
+	{
+		// make sure the channel is not null
+		if (null == target)
+		{
+			throw new IllegalArgumentException("target cannot be null");
 		}
 		
-		// append the relative path
-		sb.append(relativePath);
-		
-		File file = new File(sb.toString());
+		// holds the input stream to read from
+		InputStream in = null;
 		
-		// for security reasons, make sure that this path is not above the root
-		if (file.getCanonicalPath().contains(root.getCanonicalPath()))
+		try
+		{
+			FileInputStream fileIn = new FileInputStream(getIndexedFile(relativePath));
+			in = fileIn;
+			in = wrapInputStream(fileIn);
+			
+			// check to see if the file can be moved to the channel as it is
+			if (in == fileIn)
+			{
+				FileChannel channel = fileIn.getChannel();
+				long size = channel.size();
+				long position = 0;
+				
+				while (position < size)
+				{
+					position += channel.transferTo(position, size - position, target);
+				}
+				
+				return position;
+			}
+			
+			// the data is copied through a buffer which the transformed stream is read into
+			long count = 0;
+			byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+			int read;
+			
+			while ((read = in.read(buffer)) >= 0)
+			{
+				ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+				while (chunk.hasRemaining())
+				{
+					target.write(chunk);
+				}
+				
+				count += read;
+			}
+			
+			return count;
+		}
+		catch (IOException e)
 		{
-			return new File(sb.toString());
+			// wrap the exception
+			throw new CacheException(e);
 		}
-		else
+		finally
 		{
-			throw new IllegalFileException("relativePath is outside of the root directory");
+			IOUtils.closeQuietly(in);
 		}
 	}
 	
-	public File getRoot()
+	/**
+	 * Writes either the channel or the data to a temporary file next to the file, and then renames it over the file
+	 * 
+	 * @param relativePath
+	 * @param source
+	 * @param data
+	 * @return the number of bytes which were saved
+	 * @throws CacheException
+	 */
+	private long write(final String relativePath, final ReadableByteChannel source, final byte[] data)
+		throws CacheException
 	{
-		return root;
+		// holds the temporary file and the stream which writes to it
+		File temp = null;
+		FileOutputStream fileOut = null;
+		
+		try
+		{
+			// retrieve the file for this path
+			Path path = getPath(relativePath);
+			File file = path.toFile();
+			
+			// make the necessary directories if needed
+			file.getParentFile().mkdirs();
+			invalidateSavedIndex();
+			
+			// write the data to a temporary file next to the target
+			temp = File.createTempFile("." + file.getName() + ".", TEMP_SUFFIX, file.getParentFile());
+			fileOut = new FileOutputStream(temp);
+			
+			// the wrapped stream is closed to write the last of its data, but the file stays open until it is synced
+			OutputStream shield = new CloseShieldOutputStream(fileOut);
+			OutputStream out = wrapOutputStream(shield);
+			long count;
+			
+			if (null != data)
+			{
+				out.write(data);
+				count = data.length;
+			}
+			else if (out == shield)
+			{
+				// the data is not transformed, so it can be moved into the file directly
+				FileChannel channel = fileOut.getChannel();
+				long transferred;
+				count = 0;
+				
+				while ((transferred = channel.transferFrom(source, count, STREAM_BUFFER_SIZE * 16L)) > 0)
+				{
+					count += transferred;
+				}
+			}
+			else
+			{
+				count = 0;
+				ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+				int read;
+				
+				while ((read = source.read(buffer)) >= 0)
+				{
+					out.write(buffer.array(), 0, read);
+					buffer.clear();
+					count += read;
+				}
+			}
+			
+			out.close();
+			
+			// every writer forces its own file so that concurrent saves sync their data in parallel
+			DurabilityPolicy policy = durabilityPolicy;
+			if (DurabilityPolicy.NONE != policy)
+			{
+				fileOut.getChannel().force(true);
+			}
+			
+			fileOut.close();
+			fileOut = null;
+			
+			if (DurabilityPolicy.GROUP_COMMIT == policy)
+			{
+				// the group commit renames the file and shares the sync of its folder
+				groupCommit.commit(temp, file);
+			}
+			else
+			{
+				GroupCommit.replace(temp, file);
+				
+				if (DurabilityPolicy.FSYNC == policy)
+				{
+					GroupCommit.syncDirectory(file.getParentFile());
+				}
+			}
+			
+			temp = null;
+			addToIndex(getKey(path));
+			
+			return count;
+		}
+		catch (IOException e)
+		{
+			// wrap the exception
+			throw new CacheException(e);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(fileOut);
+			
+			// make sure a failed save does not leave its temporary file behind
+			if (null != temp)
+			{
+				temp.delete();
+			}
+		}
+	}
+	
+	/**
+	 * Loads the contents of a file as a read-only buffer without copying it into the heap. Files smaller than the map
+	 * threshold are read into a pooled direct buffer and larger ones are mapped into memory. The entry must be closed
+	 * once the data is no longer needed.
+	 * 
+	 * @param relativePath
+	 * @return
+	 * @throws CacheException
+	 */
+	public MappedEntry loadMapped(final String relativePath) throws CacheException
+	{
+		// holds the channel to read from
+		FileChannel channel = null;
+		
+		try
+		{
+			// retrieve the file for this path
+			File file = getIndexedFile(relativePath);
+			
+			channel = new RandomAccessFile(file, "r").getChannel();
+			long size = channel.size();
+			
+			DirectBufferPool pool = bufferPool;
+			
+			// check to see if the file is small enough for a pooled buffer
+			if (size <= pool.getBufferSize())
+			{
+				ByteBuffer buffer = pool.acquire();
+				
+				try
+				{
+					buffer.limit((int) size);
+					while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+					{
+					}
+					buffer.flip();
+				}
+				catch (IOException e)
+				{
+					pool.release(buffer);
+					throw e;
+				}
+				
+				return MappedEntry.pooled(buffer, pool);
+			}
+			
+			// make sure the file fits into a single buffer
+			if (size > Integer.MAX_VALUE)
+			{
+				throw new IOException("File is too large to map: " + size + " bytes");
+			}
+			
+			// the mapping stays valid once the channel is closed
+			return MappedEntry.mapped(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		}
+		catch (IOException e)
+		{
+			// wrap the exception
+			throw new CacheException(e);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(channel);
+		}
+	}
+	
+	/**
+	 * Sets the size up to which {@link #loadMapped(String)} reads a file into a pooled direct buffer instead of mapping
+	 * it. The buffers of the previous threshold are left to the garbage collector.
+	 * 
+	 * @param mapThreshold
+	 */
+	public void setMapThreshold(final int mapThreshold)
+	{
+		bufferPool = new DirectBufferPool(mapThreshold, DEFAULT_MAX_IDLE_BUFFERS);
+	}
+	
+	public int getMapThreshold()
+	{
+		return bufferPool.getBufferSize();
+	}
+	
+	/**
+	 * Wraps the stream which the data of a file is loaded from. Subclasses may wrap the stream to transform the data as
+	 * it is read.
+	 * 
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	protected InputStream wrapInputStream(final InputStream in) throws IOException
+	{
+		return in;
+	}
+	
+	/**
+	 * Wraps the stream which the data of a file is saved to. Subclasses may wrap the stream to transform the data as it
+	 * is written. The returned stream is closed once all of the data has been written.
+	 * 
+	 * @param out
+	 * @return
+	 * @throws IOException
+	 */
+	protected OutputStream wrapOutputStream(final OutputStream out) throws IOException
+	{
+		return out;
+	}
+	
+	/**
+	 * Sets whether saved data is forced to the disk before a save returns
+	 * 
+	 * @param durabilityPolicy
+	 */
+	public void setDurabilityPolicy(final DurabilityPolicy durabilityPolicy)
+	{
+		// make sure the policy is not null
+		if (null == durabilityPolicy)
+		{
+			throw new IllegalArgumentException("durabilityPolicy cannot be null");
+		}
+		
+		this.durabilityPolicy = durabilityPolicy;
+	}
+	
+	public DurabilityPolicy getDurabilityPolicy()
+	{
+		return durabilityPolicy;
+	}
+	
+	/**
+	 * Sets whether every path is resolved to its real path, following any symbolic links, and checked against the root
+	 * before it is used. This keeps a link under the root from leading outside of it, at the cost of asking the file
+	 * system about each folder of the path.
+	 * 
+	 * @param resolveLinks
+	 */
+	public void setResolveLinks(final boolean resolveLinks)
+	{
+		this.resolveLinks = resolveLinks;
+	}
+	
+	public boolean isResolveLinks()
+	{
+		return resolveLinks;
+	}
+	
+	@Override
+	public boolean exists(String relativePath)
+	{
+		try
+		{
+			// retrieve the file for this path
+			Path path = getPath(relativePath);
+			
+			// check to see if the index can answer without asking the file system
+			if (IndexMode.NONE != indexMode)
+			{
+				String key = getKey(path);
+				if (!isIndexed(key))
+				{
+					return false;
+				}
+				else if (IndexMode.FULL == indexMode)
+				{
+					return true;
+				}
+			}
+			
+			return path.toFile().exists();
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+	
+	@Override
+	public void delete(final String relativePath)
+	{
+		try
+		{
+			// retrieve the file for this path
+			Path path = getPath(relativePath);
+			String key = getKey(path);
+			
+			// check to see if there is anything to delete
+			if (!isIndexed(key))
+			{
+				return;
+			}
+			
+			// deleting the root is the same as clearing the cache
+			if (key.isEmpty())
+			{
+				clear();
+				return;
+			}
+			
+			invalidateSavedIndex();
+			
+			// a folder is moved out of the way and deleted in the background, while a file is simply deleted
+			if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+			{
+				moveToTrash(path);
+			}
+			else
+			{
+				Files.deleteIfExists(path);
+			}
+			
+			removeFromIndex(key);
+		}
+		catch (IOException e)
+		{
+			// ignore
+		}
+	}
+	
+	/**
+	 * Clears the entire cache. The root is renamed out of the way and replaced by an empty folder, so the cache is empty
+	 * as soon as this returns, while the old files are deleted in the background. If the root cannot be renamed, each of
+	 * its children is moved into a trash folder inside it instead.
+	 */
+	@Override
+	public void clear()
+	{
+		invalidateSavedIndex();
+		
+		try
+		{
+			Path parent = rootPath.getParent();
+			Path trash = null;
+			
+			if (null != parent)
+			{
+				trash = parent.resolve(rootPath.getFileName() + TRASH_PREFIX + UUID.randomUUID());
+			}
+			
+			if (null == trash || !moveQuietly(rootPath, trash))
+			{
+				// the root may be a mount point or its parent may not be writable
+				trash = rootPath.resolve(TRASH_PREFIX + UUID.randomUUID());
+				Files.createDirectory(trash);
+				
+				try (DirectoryStream<Path> children = Files.newDirectoryStream(rootPath))
+				{
+					for (Path child : children)
+					{
+						if (!isTrash(child) && !moveQuietly(child, trash.resolve(child.getFileName())))
+						{
+							recursiveDelete(child.toFile());
+						}
+					}
+				}
+			}
+			
+			Files.createDirectories(rootPath);
+			deleter.delete(trash);
+		}
+		catch (IOException e)
+		{
+			// fall back to deleting everything right away
+			recursiveDelete(root.listFiles());
+		}
+		
+		if (IndexMode.FULL == indexMode)
+		{
+			keys.clear();
+		}
+		else if (IndexMode.BLOOM == indexMode)
+		{
+			bloom = new BloomFilter(DEFAULT_BLOOM_CAPACITY, BLOOM_FALSE_POSITIVE_RATE);
+		}
+	}
+	
+	/**
+	 * Saves the index so that the next instance on this root can load it instead of reading every folder. The saved
+	 * index is dropped by the first change after this call, so this is best called once the cache is no longer used.
+	 * 
+	 * @throws CacheException
+	 */
+	public void saveIndex() throws CacheException
+	{
+		// make sure there is an index to save
+		if (IndexMode.NONE == indexMode)
+		{
+			return;
+		}
+		
+		// holds the temporary file and the stream which writes to it
+		File temp = null;
+		DataOutputStream out = null;
+		
+		try
+		{
+			temp = File.createTempFile(INDEX_FILE_NAME + ".", TEMP_SUFFIX, root);
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			out.writeInt(INDEX_MAGIC);
+			out.writeByte(indexMode.ordinal());
+			
+			if (IndexMode.FULL == indexMode)
+			{
+				List<String> snapshot = new ArrayList<String>(keys);
+				out.writeInt(snapshot.size());
+				
+				for (String key : snapshot)
+				{
+					out.writeUTF(key);
+				}
+			}
+			else
+			{
+				bloom.writeTo(out);
+			}
+			
+			out.close();
+			out = null;
+			
+			GroupCommit.replace(temp, new File(root, INDEX_FILE_NAME));
+			temp = null;
+			indexSaved = true;
+		}
+		catch (IOException e)
+		{
+			// wrap the exception
+			throw new CacheException(e);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(out);
+			
+			if (null != temp)
+			{
+				temp.delete();
+			}
+		}
+	}
+	
+	public IndexMode getIndexMode()
+	{
+		return indexMode;
+	}
+	
+	public DirectoryLayout getLayout()
+	{
+		return layout;
+	}
+	
+	/**
+	 * Returns the deleter which removes cleared and deleted folders in the background, whose counters show its progress
+	 * 
+	 * @return
+	 */
+	public BackgroundDeleter getDeleter()
+	{
+		return deleter;
+	}
+	
+	/**
+	 * Moves a folder of the cache into a trash folder inside the root and hands it to the background deleter. The folder
+	 * is deleted right away if it cannot be moved.
+	 * 
+	 * @param directory
+	 */
+	private void moveToTrash(final Path directory)
+	{
+		Path trash = rootPath.resolve(TRASH_PREFIX + UUID.randomUUID());
+		
+		if (moveQuietly(directory, trash))
+		{
+			deleter.delete(trash);
+		}
+		else
+		{
+			recursiveDelete(directory.toFile());
+		}
+	}
+	
+	/**
+	 * Renames the file or folder atomically
+	 * 
+	 * @param source
+	 * @param target
+	 * @return false if it could not be renamed
+	 */
+	private static boolean moveQuietly(final Path source, final Path target)
+	{
+		try
+		{
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+			return true;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+	
+	/**
+	 * Hands the trash which was left behind by an earlier instance, before its background delete finished, to the
+	 * deleter
+	 */
+	private void resumeDeletes()
+	{
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(rootPath, TRASH_PREFIX + "*"))
+		{
+			for (Path child : children)
+			{
+				deleter.delete(child);
+			}
+		}
+		catch (IOException e)
+		{
+			// ignore
+		}
+		
+		Path parent = rootPath.getParent();
+		if (null != parent)
+		{
+			try (DirectoryStream<Path> siblings = Files.newDirectoryStream(parent, rootPath.getFileName() + TRASH_PREFIX
+				+ "*"))
+			{
+				for (Path sibling : siblings)
+				{
+					deleter.delete(sibling);
+				}
+			}
+			catch (IOException e)
+			{
+				// ignore
+			}
+		}
+	}
+	
+	/**
+	 * Checks to see if the path is a trash folder inside the root
+	 * 
+	 * @param path
+	 * @return
+	 */
+	private boolean isTrash(final Path path)
+	{
+		return rootPath.equals(path.getParent()) && path.getFileName().toString().startsWith(TRASH_PREFIX);
+	}
+	
+	/**
+	 * Recursively deletes the file/folder and any of its children
+	 * 
+	 * @param file
+	 */
+	private void recursiveDelete(final File... files)
+	{
+		// make sure the array of files is not null
+		if (null != files)
+		{
+			// for each of the files
+			for (File file : files)
+			{
+				// make sure this file is not null
+				if (null != file)
+				{
+					// check to see if this file is a directory
+					if (file.isDirectory())
+					{
+						// get all of the files in this folder
+						File[] children = file.listFiles();
+						
+						// make sure the files are not null
+						if (null != children)
+						{
+							// recursively delete the files
+							recursiveDelete(children);
+						}
+					}
+					
+					// delete the file
+					file.delete();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Resolves the relative path against the root, at the place where the layout stores it. The path is checked
+	 * lexically, which needs no calls to the file system; a symbolic link inside the root is followed as it is unless
+	 * links are resolved.
+	 * 
+	 * @param relativePath
+	 * @return
+	 * @throws IOException
+	 */
+	private Path getPath(final String relativePath) throws IOException
+	{
+		// skip the leading separators so that the path is resolved against the root
+		int start = 0;
+		while (start < relativePath.length()
+			&& ('/' == relativePath.charAt(start) || '\\' == relativePath.charAt(start)))
+		{
+			start++;
+		}
+		
+		Path path;
+		
+		try
+		{
+			path = rootPath.resolve(relativePath.substring(start)).normalize();
+		}
+		catch (InvalidPathException e)
+		{
+			throw new IOException(e);
+		}
+		
+		// for security reasons, make sure that this path is not above the root
+		if (!path.startsWith(rootPath))
+		{
+			throw new IllegalFileException("relativePath is outside of the root directory");
+		}
+		
+		// make sure the path cannot be mistaken for the index, a temporary file or a folder which is waiting to be
+		// deleted
+		for (Path name : rootPath.relativize(path))
+		{
+			if (CachePaths.isInternal(name))
+			{
+				throw new IllegalFileException("relativePath uses a name which is reserved by the cache");
+			}
+		}
+		
+		// the root itself is the same in every layout
+		String key = getKey(path);
+		if (!key.isEmpty())
+		{
+			path = rootPath.resolve(layout.getStoragePath(key));
+		}
+		
+		// a symbolic link under the root may lead outside of it, which only the real path shows
+		if (resolveLinks && !path.toFile().getCanonicalFile().toPath().startsWith(rootPath))
+		{
+			throw new IllegalFileException("relativePath is outside of the root directory");
+		}
+		
+		return path;
+	}
+	
+	/**
+	 * Resolves the relative path against the root, failing without asking the file system if the index rules the file
+	 * out
+	 * 
+	 * @param relativePath
+	 * @return
+	 * @throws IOException
+	 */
+	private File getIndexedFile(final String relativePath) throws IOException
+	{
+		Path path = getPath(relativePath);
+		
+		// make sure the file may exist
+		if (!isIndexed(getKey(path)))
+		{
+			throw new FileNotFoundException(path.toString());
+		}
+		
+		return path.toFile();
+	}
+	
+	/**
+	 * Returns the key of a resolved path, which is its path below the root with / as the separator. The index holds
+	 * these keys, so that it follows the files on the disk whatever the layout is.
+	 * 
+	 * @param path
+	 * @return
+	 */
+	private String getKey(final Path path)
+	{
+		return rootPath.relativize(path).toString().replace(File.separatorChar, '/');
+	}
+	
+	/**
+	 * Checks to see if the file or folder of the key may exist
+	 * 
+	 * @param key
+	 * @return false only if the file or folder certainly does not exist
+	 */
+	private boolean isIndexed(final String key)
+	{
+		switch (indexMode)
+		{
+			case FULL:
+				// a folder exists as long as it holds a key
+				if (key.isEmpty() || keys.contains(key))
+				{
+					return true;
+				}
+				
+				String child = keys.ceiling(key + "/");
+				return null != child && child.startsWith(key + "/");
+				
+			case BLOOM:
+				return key.isEmpty() || bloom.mightContain(key);
+				
+			default:
+				return true;
+		}
+	}
+	
+	/**
+	 * Adds a saved key to the index
+	 * 
+	 * @param key
+	 */
+	private void addToIndex(final String key)
+	{
+		if (IndexMode.FULL == indexMode)
+		{
+			keys.add(key);
+		}
+		else if (IndexMode.BLOOM == indexMode)
+		{
+			BloomFilter filter = bloom;
+			addToBloom(filter, key);
+			
+			// a filter which is being built may already have read the folder of the key
+			BloomFilter next = nextBloom;
+			if (null != next)
+			{
+				addToBloom(next, key);
+			}
+			
+			// check to see if the filter was replaced in the meantime. The new filter is published before the next
+			// one is dropped, so a key which missed both of them is added to the filter which replaced them.
+			BloomFilter current = bloom;
+			if (current != filter && current != next)
+			{
+				addToBloom(current, key);
+			}
+			
+			// replace the filter with a larger one once it holds more keys than it was sized for
+			if (filter.getCount() > filter.getExpectedInsertions() && bloomRebuilding.compareAndSet(false, true))
+			{
+				startBloomRebuild(filter.getExpectedInsertions() * 2);
+			}
+		}
+	}
+	
+	/**
+	 * Adds the key and each of its folders to the filter, so that the folders are found by {@link #exists(String)}
+	 * 
+	 * @param filter
+	 * @param key
+	 */
+	private static void addToBloom(final BloomFilter filter, final String key)
+	{
+		for (int end = key.length(); end > 0; end = key.lastIndexOf('/', end - 1))
+		{
+			filter.put(key.substring(0, end));
+		}
+	}
+	
+	/**
+	 * Removes a deleted key, and every key under it, from the full index. A Bloom filter cannot forget a key.
+	 * 
+	 * @param key
+	 */
+	private void removeFromIndex(final String key)
+	{
+		if (IndexMode.FULL == indexMode)
+		{
+			if (key.isEmpty())
+			{
+				keys.clear();
+			}
+			else
+			{
+				keys.remove(key);
+				keys.subSet(key + "/", key + "0").clear();
+			}
+		}
+	}
+	
+	/**
+	 * Loads the saved index, or builds the index from the files under the root if there is no usable saved index
+	 */
+	private void loadIndex()
+	{
+		// make sure there is an index to load
+		if (IndexMode.NONE == indexMode)
+		{
+			return;
+		}
+		
+		File file = new File(root, INDEX_FILE_NAME);
+		
+		try
+		{
+			if (file.isFile() && readIndex(file))
+			{
+				indexSaved = true;
+				return;
+			}
+		}
+		catch (IOException e)
+		{
+			// the index is built from the files instead
+		}
+		
+		if (IndexMode.FULL == indexMode)
+		{
+			keys.clear();
+			keys.addAll(listKeys());
+		}
+		else
+		{
+			rebuildBloom(DEFAULT_BLOOM_CAPACITY);
+		}
+	}
+	
+	/**
+	 * Reads the saved index
+	 * 
+	 * @param file
+	 * @return false if the index was saved with a different mode
+	 * @throws IOException
+	 */
+	private boolean readIndex(final File file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		
+		try
+		{
+			// make sure the index is of the same kind
+			if (INDEX_MAGIC != in.readInt() || indexMode.ordinal() != in.readByte())
+			{
+				return false;
+			}
+			
+			if (IndexMode.FULL == indexMode)
+			{
+				int count = in.readInt();
+				for (int i = 0; i < count; i++)
+				{
+					keys.add(in.readUTF());
+				}
+			}
+			else
+			{
+				bloom = BloomFilter.readFrom(in);
+			}
+			
+			return true;
+		}
+		finally
+		{
+			IOUtils.closeQuietly(in);
+		}
+	}
+	
+	/**
+	 * Rebuilds the filter on a background thread so that the save which filled it does not wait for the folders to be
+	 * read. The current filter keeps answering until the new one replaces it.
+	 * 
+	 * @param capacity
+	 */
+	private void startBloomRebuild(final int capacity)
+	{
+		Thread thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					rebuildBloom(capacity);
+				}
+				finally
+				{
+					bloomRebuilding.set(false);
+				}
+			}
+		}, BLOOM_THREAD_NAME);
+		
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Builds a new filter from the files under the root, sized for at least the given number of keys, and replaces the
+	 * current filter with it
+	 * 
+	 * @param capacity
+	 */
+	private void rebuildBloom(final int capacity)
+	{
+		// size the filter from the keys counted so far, since the folders are only read once it is published
+		BloomFilter current = bloom;
+		int count = null == current ? 0 : current.getCount();
+		BloomFilter filter = new BloomFilter(Math.max(capacity, count * 2), BLOOM_FALSE_POSITIVE_RATE);
+		
+		// saves from now on are added to the new filter as well, so a save is either added by its own thread or its
+		// file is found by the walk below
+		nextBloom = filter;
+		
+		for (String key : listKeys())
+		{
+			addToBloom(filter, key);
+		}
+		
+		// the new filter is published before the next one is dropped, which addToIndex relies on
+		bloom = filter;
+		nextBloom = null;
+	}
+	
+	/**
+	 * Lists the key of every file under the root, leaving out the index and any temporary files
+	 * 
+	 * @return
+	 */
+	private List<String> listKeys()
+	{
+		final List<String> found = new ArrayList<String>();
+		
+		try
+		{
+			Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>()
+			{
+				@Override
+				public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+				{
+					if (!CachePaths.isInternal(file))
+					{
+						found.add(getKey(file));
+					}
+					
+					return FileVisitResult.CONTINUE;
+				}
+				
+				@Override
+				public FileVisitResult visitFileFailed(final Path file, final IOException e)
+				{
+					return FileVisitResult.CONTINUE;
+				}
+				
+				@Override
+				public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+				{
+					// the files in the trash are gone as far as the cache is concerned
+					return !rootPath.equals(dir) && CachePaths.isInternal(dir) ? FileVisitResult.SKIP_SUBTREE
+						: FileVisitResult.CONTINUE;
+				}
+			});
+		}
+		catch (IOException e)
+		{
+			// the files which were found so far are used
+		}
+		
+		return found;
+	}
+	
+	/**
+	 * Deletes the saved index once the cache changes, since it no longer matches the files
+	 */
+	private void invalidateSavedIndex()
+	{
+		if (indexSaved)
+		{
+			indexSaved = false;
+			new File(root, INDEX_FILE_NAME).delete();
+		}
+	}
+	
+	/**
+	 * Sorts the entries by their files and runs the task on each of them, spread over contiguous runs which are handled
+	 * in parallel. The calling thread handles the first run itself. An error of one entry is kept on the entry.
+	 * 
+	 * @param entries
+	 * @param task
+	 */
+	private <T> void runInSlices(final List<BulkEntry<T>> entries, final BulkTask<T> task)
+	{
+		// make sure there is anything to run
+		if (entries.isEmpty())
+		{
+			return;
+		}
+		
+		Collections.sort(entries, BY_FILE);
+		
+		int size = entries.size();
+		int slices = Math.min(bulkParallelism, (size + MIN_BULK_SLICE - 1) / MIN_BULK_SLICE);
+		List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>(slices);
+		
+		for (int i = 1; i < slices; i++)
+		{
+			final List<BulkEntry<T>> slice = entries.subList(i * size / slices, (i + 1) * size / slices);
+			Runnable runnable = new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					runSlice(slice, task);
+				}
+			};
+			
+			try
+			{
+				futures.add(CompletableFuture.runAsync(runnable, bulkExecutor));
+			}
+			catch (RejectedExecutionException e)
+			{
+				runnable.run();
+			}
+		}
+		
+		runSlice(entries.subList(0, size / slices), task);
+		
+		// the results of the other threads are visible once their futures are joined
+		for (CompletableFuture<Void> future : futures)
+		{
+			future.join();
+		}
+	}
+	
+	private static <T> void runSlice(final List<BulkEntry<T>> slice, final BulkTask<T> task)
+	{
+		for (BulkEntry<T> entry : slice)
+		{
+			try
+			{
+				entry.value = task.run(entry);
+			}
+			catch (CacheException e)
+			{
+				entry.failure = e;
+			}
+			catch (RuntimeException e)
+			{
+				entry.failure = new CacheException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Collects the values and errors of the entries, in the order in which they were given
+	 * 
+	 * @param entries
+	 * @return
+	 */
+	private static <T> BulkResult<T> toResult(final List<BulkEntry<T>> entries)
+	{
+		Map<String, T> values = new LinkedHashMap<String, T>();
+		Map<String, CacheException> failures = new LinkedHashMap<String, CacheException>();
+		
+		for (BulkEntry<T> entry : entries)
+		{
+			if (null != entry.failure)
+			{
+				failures.put(entry.relativePath, entry.failure);
+			}
+			else
+			{
+				values.put(entry.relativePath, entry.value);
+			}
+		}
+		
+		return new BulkResult<T>(values, failures);
+	}
+	
+	/**
+	 * Returns the pool of daemon threads which bulk calls run on unless a cache is given another executor
+	 * 
+	 * @return
+	 */
+	private static synchronized ExecutorService getDefaultBulkExecutor()
+	{
+		if (null == defaultBulkExecutor)
+		{
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_BULK_PARALLELISM, DEFAULT_BULK_PARALLELISM, 30,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory(BULK_THREAD_NAME));
+			executor.allowCoreThreadTimeOut(true);
+			
+			defaultBulkExecutor = executor;
+		}
+		
+		return defaultBulkExecutor;
+	}
+	
+	public File getRoot()
+	{
+		return root;
+	}
+	
+	/**
+	 * Runs one entry of a bulk call
+	 * 
+	 * @author Greg Marut
+	 */
+	private interface BulkTask<T>
+	{
+		T run(final BulkEntry<T> entry) throws CacheException;
+	}
+	
+	/**
+	 * An entry of a bulk call, which holds its file and, once it has run, its value or its error
+	 * 
+	 * @author Greg Marut
+	 */
+	private static class BulkEntry<T>
+	{
+		// ** Finals **//
+		private final String relativePath;
+		
+		// ** Objects **//
+		private File file;
+		private T value;
+		private CacheException failure;
+		
+		public BulkEntry(final String relativePath)
+		{
+			this.relativePath = relativePath;
+		}
 	}
 }
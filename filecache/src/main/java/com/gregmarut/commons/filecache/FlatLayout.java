@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+/**
+ * Stores the file of each key at the key itself, so the folders of the cache are the folders of the keys
+ */
+public class FlatLayout implements DirectoryLayout
+{
+	@Override
+	public String getStoragePath(final String key)
+	{
+		return key;
+	}
+	
+	@Override
+	public String getKey(final String storagePath)
+	{
+		return storagePath;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "flat";
+	}
+}
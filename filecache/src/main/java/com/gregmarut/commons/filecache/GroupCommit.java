@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Renames the temporary files of concurrent saves in batches. Each save forces its own file before it joins, so the
+ * writers sync their data in parallel; the first save to arrive then renames every save which is waiting, while the
+ * saves which arrive in the meantime wait for the next batch. A folder is only synced once per batch no matter how many
+ * of its files were replaced.
+ */
+class GroupCommit
+{
+	// ** Finals **//
+	// holds the lock which guards the queue
+	private final Object lock;
+	
+	// ** Objects **//
+	// holds the saves which are waiting for the next batch
+	private List<Commit> queue;
+	
+	// ** Primitives **//
+	// determines whether a batch is being committed
+	private boolean committing;
+	
+	public GroupCommit()
+	{
+		lock = new Object();
+		queue = new ArrayList<Commit>();
+	}
+	
+	/**
+	 * Renames the temporary file over the target and returns once the rename has been synced. The temporary file must
+	 * already have been forced to the disk and closed.
+	 * 
+	 * @param temp
+	 * @param target
+	 * @throws IOException
+	 */
+	public void commit(final File temp, final File target) throws IOException
+	{
+		Commit commit = new Commit(temp, target);
+		
+		// holds the saves which this thread commits, if it leads the batch
+		List<Commit> batch;
+		boolean interrupted = false;
+		
+		synchronized (lock)
+		{
+			queue.add(commit);
+			
+			// wait until another thread has committed this save, or until this thread can lead the next batch
+			while (committing && !commit.done)
+			{
+				try
+				{
+					lock.wait();
+				}
+				catch (InterruptedException e)
+				{
+					// the save cannot be taken back once it is queued, so the interrupt is restored afterwards
+					interrupted = true;
+				}
+			}
+			
+			if (commit.done)
+			{
+				batch = null;
+			}
+			else
+			{
+				committing = true;
+				batch = queue;
+				queue = new ArrayList<Commit>();
+			}
+		}
+		
+		if (null != batch)
+		{
+			try
+			{
+				commit(batch);
+			}
+			finally
+			{
+				synchronized (lock)
+				{
+					for (Commit committed : batch)
+					{
+						committed.done = true;
+					}
+					
+					committing = false;
+					lock.notifyAll();
+				}
+			}
+		}
+		
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+		
+		// make sure the error of this save is seen by its caller
+		if (null != commit.error)
+		{
+			throw commit.error;
+		}
+	}
+	
+	/**
+	 * Renames every save of the batch and syncs each of their folders once
+	 * 
+	 * @param batch
+	 */
+	private void commit(final List<Commit> batch)
+	{
+		// holds the folders which need to be synced
+		Set<File> folders = new LinkedHashSet<File>();
+		
+		for (Commit commit : batch)
+		{
+			try
+			{
+				replace(commit.temp, commit.target);
+				folders.add(commit.target.getParentFile());
+			}
+			catch (IOException e)
+			{
+				commit.error = e;
+			}
+		}
+		
+		for (File folder : folders)
+		{
+			syncDirectory(folder);
+		}
+	}
+	
+	/**
+	 * Renames the temporary file over the target. The rename is atomic wherever the file system supports it.
+	 * 
+	 * @param temp
+	 * @param target
+	 * @throws IOException
+	 */
+	public static void replace(final File temp, final File target) throws IOException
+	{
+		try
+		{
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	/**
+	 * Forces the entries of the folder to the disk so that a rename within it survives a crash. Some platforms cannot
+	 * open a folder, in which case nothing is done.
+	 * 
+	 * @param folder
+	 */
+	public static void syncDirectory(final File folder)
+	{
+		try (FileChannel channel = FileChannel.open(folder.toPath(), StandardOpenOption.READ))
+		{
+			channel.force(true);
+		}
+		catch (IOException e)
+		{
+			// ignore
+		}
+	}
+	
+	/**
+	 * A save which is waiting to be committed
+	 */
+	private static class Commit
+	{
+		// ** Finals **//
+		private final File temp;
+		private final File target;
+		
+		// ** Objects **//
+		// holds the error of this save, if there was one
+		private IOException error;
+		
+		// ** Primitives **//
+		private boolean done;
+		
+		public Commit(final File temp, final File target)
+		{
+			this.temp = temp;
+			this.target = target;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+/**
+ * Spreads the files over levels of 256 bucket folders, which are named by the hash of the first name of the key, so
+ * that no folder of the root ends up with a huge number of files when the keys are flat. Only the first name is
+ * hashed, so every key in a folder lands in the same bucket and folders can still be checked and deleted as a whole.
+ * <p>
+ * The bucket of a key is derived from {@link String#hashCode()}, which is fixed by the language, so files stored by
+ * one run are found by the next.
+ */
+public class HashedLayout implements DirectoryLayout
+{
+	// ** Finals **//
+	// holds the number of levels of buckets which is used unless another is given, for 65536 buckets in all
+	public static final int DEFAULT_LEVELS = 2;
+	
+	// holds the most levels there can be, one for each byte of the hash
+	public static final int MAX_LEVELS = 4;
+	
+	// ** Primitives **//
+	// holds the number of levels of bucket folders above each file
+	private final int levels;
+	
+	public HashedLayout()
+	{
+		this(DEFAULT_LEVELS);
+	}
+	
+	public HashedLayout(final int levels)
+	{
+		// make sure the number of levels is valid
+		if (levels < 1 || levels > MAX_LEVELS)
+		{
+			throw new IllegalArgumentException("levels must be between 1 and " + MAX_LEVELS);
+		}
+		
+		this.levels = levels;
+	}
+	
+	@Override
+	public String getStoragePath(final String key)
+	{
+		return getBuckets(key) + key;
+	}
+	
+	@Override
+	public String getKey(final String storagePath)
+	{
+		// the buckets take up three characters for each level
+		int length = levels * 3;
+		if (storagePath.length() <= length)
+		{
+			return null;
+		}
+		
+		String key = storagePath.substring(length);
+		
+		// make sure the file is in the bucket of its key
+		return storagePath.startsWith(getBuckets(key)) ? key : null;
+	}
+	
+	public int getLevels()
+	{
+		return levels;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "hashed" + levels;
+	}
+	
+	/**
+	 * Returns the bucket folders of the key, each followed by a /
+	 * 
+	 * @param key
+	 * @return
+	 */
+	private String getBuckets(final String key)
+	{
+		// only the first name of the key is hashed
+		int slash = key.indexOf('/');
+		int hash = mix((slash < 0 ? key : key.substring(0, slash)).hashCode());
+		
+		StringBuilder buckets = new StringBuilder(levels * 3);
+		for (int i = 0; i < levels; i++)
+		{
+			int bucket = (hash >>> (i * 8)) & 0xFF;
+			buckets.append(Character.forDigit(bucket >>> 4, 16)).append(Character.forDigit(bucket & 0xF, 16)).append('/');
+		}
+		
+		return buckets.toString();
+	}
+	
+	/**
+	 * Spreads the bits of the hash, since the hashes of keys which differ only in their last character are close
+	 * together
+	 * 
+	 * @param hash
+	 * @return
+	 */
+	private static int mix(int hash)
+	{
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+}
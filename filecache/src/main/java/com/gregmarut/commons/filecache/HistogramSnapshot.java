@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+/**
+ * An immutable copy of the counts of a {@link LatencyHistogram}
+ */
+public class HistogramSnapshot
+{
+	// ** Finals **//
+	// holds a snapshot of a histogram which has counted nothing
+	public static final HistogramSnapshot EMPTY = new HistogramSnapshot(new long[LatencyHistogram.BUCKET_COUNT], 0, 0);
+	
+	// ** Objects **//
+	// holds the number of values in each bucket
+	private final long[] counts;
+	
+	// ** Primitives **//
+	private final long count;
+	private final long sum;
+	private final long max;
+	
+	HistogramSnapshot(final long[] counts, final long sum, final long max)
+	{
+		this.counts = counts;
+		this.sum = sum;
+		this.max = max;
+		
+		long total = 0;
+		for (long bucketCount : counts)
+		{
+			total += bucketCount;
+		}
+		
+		this.count = total;
+	}
+	
+	/**
+	 * Returns the number of values which were counted
+	 * 
+	 * @return
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+	
+	/**
+	 * Returns the mean of the values, or 0 if there are none
+	 * 
+	 * @return
+	 */
+	public double getMean()
+	{
+		return 0 == count ? 0 : (double) sum / count;
+	}
+	
+	public long getMax()
+	{
+		return max;
+	}
+	
+	/**
+	 * Returns the value which the given share of the values are at or below. The value is the upper bound of its
+	 * bucket, but never more than the largest value.
+	 * 
+	 * @param percentile
+	 *            between 0 and 100
+	 * @return the value, or 0 if there are none
+	 */
+	public long getPercentile(final double percentile)
+	{
+		// make sure the percentile is valid
+		if (percentile < 0 || percentile > 100)
+		{
+			throw new IllegalArgumentException("percentile must be between 0 and 100");
+		}
+		
+		if (0 == count)
+		{
+			return 0;
+		}
+		
+		// holds the number of values which are at or below the percentile, which is at least one
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		
+		for (int i = 0; i < counts.length; i++)
+		{
+			seen += counts[i];
+			if (seen >= rank)
+			{
+				return Math.min(LatencyHistogram.getUpperBound(i), max);
+			}
+		}
+		
+		return max;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "HistogramSnapshot[count=" + count + ", mean=" + getMean() + ", p50=" + getPercentile(50) + ", p99="
+			+ getPercentile(99) + ", max=" + max + "]";
+	}
+}
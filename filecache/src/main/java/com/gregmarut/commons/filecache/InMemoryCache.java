@@ -12,23 +12,25 @@
  ******************************************************************************/
 package com.gregmarut.commons.filecache;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 public class InMemoryCache implements FileCache
 {
 	// holds the map that will contain the in-memory cache
-	private final Map<String, byte[]> cache;
+	private final SortedMap<String, byte[]> cache;
 	
 	public InMemoryCache()
 	{
-		cache = new HashMap<String, byte[]>();
+		cache = new TreeMap<String, byte[]>();
 	}
 	
 	@Override
 	public void delete(String relativePath)
 	{
+		// remove the entry along with anything in its folder
 		cache.remove(relativePath);
+		CachePaths.under(cache, relativePath).clear();
 	}
 	
 	@Override
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+/**
+ * Decides what a {@link FileSystemCache} keeps in memory about the files it holds, so that lookups of missing entries
+ * do not have to ask the file system
+ */
+public enum IndexMode
+{
+	/**
+	 * Nothing is kept in memory. Every lookup asks the file system.
+	 */
+	NONE,
+	
+	/**
+	 * A Bloom filter of the keys and their folders is kept. A lookup of an entry which was never saved is answered from
+	 * memory; the rare lookup which the filter cannot rule out, and every lookup of a deleted entry, asks the file
+	 * system.
+	 */
+	BLOOM,
+	
+	/**
+	 * Every key is kept in memory. A lookup of a missing entry and every existence check is answered from memory.
+	 */
+	FULL
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Records the hits, misses, saves, bytes and latencies of any {@link FileCache} in a {@link StatsRecorder}. A load
+ * which returns null, or which fails because the file does not exist, is a miss. The evictions of a
+ * {@link BoundedInMemoryCache} are recorded as well.
+ */
+public class InstrumentedFileCache implements FileCache
+{
+	// ** Finals **//
+	// holds the cache which the calls are passed on to
+	private final FileCache cache;
+	
+	// holds the recorder of the counters
+	private final StatsRecorder recorder;
+	
+	public InstrumentedFileCache(final FileCache cache)
+	{
+		this(cache, new StatsRecorder());
+	}
+	
+	/**
+	 * Creates a cache which records into the given recorder, which may be shared by several caches to count them
+	 * together
+	 * 
+	 * @param cache
+	 * @param recorder
+	 */
+	public InstrumentedFileCache(final FileCache cache, final StatsRecorder recorder)
+	{
+		// make sure the cache is not null
+		if (null == cache)
+		{
+			throw new IllegalArgumentException("cache cannot be null");
+		}
+		
+		// make sure the recorder is not null
+		if (null == recorder)
+		{
+			throw new IllegalArgumentException("recorder cannot be null");
+		}
+		
+		this.cache = cache;
+		this.recorder = recorder;
+		
+		// check to see if the cache evicts entries which can be counted
+		if (cache instanceof BoundedInMemoryCache)
+		{
+			((BoundedInMemoryCache) cache).addEvictionListener(recorder);
+		}
+	}
+	
+	@Override
+	public byte[] load(final String relativePath) throws CacheException
+	{
+		long start = System.nanoTime();
+		
+		try
+		{
+			byte[] data = cache.load(relativePath);
+			
+			if (null == data)
+			{
+				recorder.recordMiss(System.nanoTime() - start);
+			}
+			else
+			{
+				recorder.recordHit(data.length, System.nanoTime() - start);
+			}
+			
+			return data;
+		}
+		catch (CacheException e)
+		{
+			// a file which does not exist is a miss rather than an error
+			if (e.getCause() instanceof FileNotFoundException)
+			{
+				recorder.recordMiss(System.nanoTime() - start);
+			}
+			else
+			{
+				recorder.recordLoadError(System.nanoTime() - start);
+			}
+			
+			throw e;
+		}
+		catch (RuntimeException e)
+		{
+			recorder.recordLoadError(System.nanoTime() - start);
+			throw e;
+		}
+	}
+	
+	@Override
+	public void save(final String relativePath, final byte[] data) throws CacheException
+	{
+		long start = System.nanoTime();
+		
+		try
+		{
+			cache.save(relativePath, data);
+			recorder.recordSave(null == data ? 0 : data.length, System.nanoTime() - start);
+		}
+		catch (CacheException e)
+		{
+			recorder.recordSaveError(System.nanoTime() - start);
+			throw e;
+		}
+		catch (RuntimeException e)
+		{
+			recorder.recordSaveError(System.nanoTime() - start);
+			throw e;
+		}
+	}
+	
+	@Override
+	public boolean exists(final String relativePath)
+	{
+		return cache.exists(relativePath);
+	}
+	
+	@Override
+	public void delete(final String relativePath)
+	{
+		cache.delete(relativePath);
+	}
+	
+	@Override
+	public void clear()
+	{
+		cache.clear();
+	}
+	
+	/**
+	 * Returns a snapshot of the counters
+	 * 
+	 * @return
+	 */
+	public CacheStats getStats()
+	{
+		return recorder.snapshot();
+	}
+	
+	public StatsRecorder getRecorder()
+	{
+		return recorder;
+	}
+	
+	public FileCache getCache()
+	{
+		return cache;
+	}
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts values, such as latencies in nanoseconds, in buckets whose width grows with the value. Each power of two is
+ * split into 16 buckets, so a percentile which is read back is within about 6% of the value which was recorded, from
+ * one nanosecond up to the largest long. Recording a value only increments counters, so it allocates nothing and never
+ * blocks, and any number of threads may record at once.
+ */
+public class LatencyHistogram
+{
+	// ** Finals **//
+	// holds the number of bits of each value below its highest bit which pick its bucket within its power of two
+	static final int SUB_BUCKET_BITS = 4;
+	static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	
+	// holds the number of buckets which cover every long. Values below the sub-bucket count each have a bucket.
+	static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+	
+	// ** Objects **//
+	// holds the number of values in each bucket
+	private final AtomicLongArray counts;
+	
+	// holds the sum of the values and the largest value
+	private final LongAdder sum;
+	private final AtomicLong max;
+	
+	public LatencyHistogram()
+	{
+		counts = new AtomicLongArray(BUCKET_COUNT);
+		sum = new LongAdder();
+		max = new AtomicLong();
+	}
+	
+	/**
+	 * Counts the value. Negative values are counted as zero.
+	 * 
+	 * @param value
+	 */
+	public void record(final long value)
+	{
+		long v = Math.max(0, value);
+		
+		counts.incrementAndGet(getBucket(v));
+		sum.add(v);
+		
+		// only a new largest value has to be written
+		long current;
+		while (v > (current = max.get()) && !max.compareAndSet(current, v))
+		{
+		}
+	}
+	
+	/**
+	 * Returns the values which have been counted so far. Values which are counted while the snapshot is taken may or
+	 * may not be part of it.
+	 * 
+	 * @return
+	 */
+	public HistogramSnapshot snapshot()
+	{
+		long[] copy = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			copy[i] = counts.get(i);
+		}
+		
+		return new HistogramSnapshot(copy, sum.sum(), max.get());
+	}
+	
+	/**
+	 * Forgets every value. Values which are counted at the same time may be kept in part.
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			counts.set(i, 0);
+		}
+		
+		sum.reset();
+		max.set(0);
+	}
+	
+	/**
+	 * Returns the bucket of a value which is not negative
+	 * 
+	 * @param value
+	 * @return
+	 */
+	static int getBucket(final long value)
+	{
+		if (value < SUB_BUCKET_COUNT)
+		{
+			return (int) value;
+		}
+		
+		// the highest bit picks the power of two and the bits below it pick the bucket within it
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+		
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+	
+	/**
+	 * Returns the largest value which is counted in the bucket
+	 * 
+	 * @param bucket
+	 * @return
+	 */
+	static long getUpperBound(final int bucket)
+	{
+		if (bucket < SUB_BUCKET_COUNT)
+		{
+			return bucket;
+		}
+		
+		int exponent = bucket / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKET_COUNT;
+		int shift = exponent - SUB_BUCKET_BITS;
+		
+		// the last bucket ends at the largest long
+		return ((SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves the files of an existing cache root from one {@link DirectoryLayout} to another. No cache may be open on the
+ * root while it runs. A migration which is stopped part of the way can be run again, since files which are already
+ * where the new layout stores them are left alone.
+ * <p>
+ * It can be run from the command line with the root and the names of the two layouts, such as
+ * <code>java com.gregmarut.commons.filecache.LayoutMigrator /var/cache/images flat hashed</code>. A layout is named
+ * <code>flat</code>, <code>hashed</code> or <code>hashed</code> followed by its number of levels.
+ */
+public class LayoutMigrator
+{
+	// ** Finals **//
+	// holds the names of the layouts on the command line
+	public static final String FLAT = "flat";
+	public static final String HASHED = "hashed";
+	
+	private LayoutMigrator()
+	{
+		
+	}
+	
+	public static void main(final String[] args) throws CacheException
+	{
+		// make sure the arguments are valid
+		if (args.length != 3)
+		{
+			System.err.println("Usage: LayoutMigrator <root> <from layout> <to layout>");
+			System.exit(1);
+		}
+		
+		int moved = migrate(new File(args[0]), parseLayout(args[1]), parseLayout(args[2]));
+		System.out.println("Moved " + moved + " files");
+	}
+	
+	/**
+	 * Moves every file under the root from where the first layout stores it to where the second layout stores it, and
+	 * deletes the folders which are left empty. Files which the first layout did not store, such as those of a
+	 * different layout, are left alone. Every file which can be moved is moved, even if some of them cannot be.
+	 * 
+	 * @param root
+	 * @param from
+	 * @param to
+	 * @return the number of files which were moved
+	 * @throws CacheException
+	 *             if any of the files could not be moved
+	 */
+	public static int migrate(final File root, final DirectoryLayout from, final DirectoryLayout to)
+		throws CacheException
+	{
+		// make sure the arguments are not null
+		if (null == root || null == from || null == to)
+		{
+			throw new IllegalArgumentException("root and layouts cannot be null");
+		}
+		
+		final Path rootPath = root.toPath();
+		
+		// the saved index holds the paths of the old layout
+		new File(root, FileSystemCache.INDEX_FILE_NAME).delete();
+		
+		// the files are listed before any is moved, so that a moved file is not visited again
+		List<Path> files = listFiles(rootPath);
+		
+		IOException failure = null;
+		int moved = 0;
+		
+		for (Path file : files)
+		{
+			String storagePath = rootPath.relativize(file).toString().replace(File.separatorChar, '/');
+			
+			// check to see if the file was already moved by an earlier run. The flat layout takes any path as a key, so
+			// only a layout which tells its own files apart can say so.
+			if (!(to instanceof FlatLayout) && null != to.getKey(storagePath))
+			{
+				continue;
+			}
+			
+			String key = from.getKey(storagePath);
+			if (null == key)
+			{
+				continue;
+			}
+			
+			Path target = rootPath.resolve(to.getStoragePath(key));
+			if (target.equals(file))
+			{
+				continue;
+			}
+			
+			try
+			{
+				Files.createDirectories(target.getParent());
+				Files.move(file, target);
+				moved++;
+			}
+			catch (IOException e)
+			{
+				// keep the first failure and move the rest of the files
+				if (null == failure)
+				{
+					failure = e;
+				}
+			}
+		}
+		
+		deleteEmptyFolders(rootPath);
+		
+		if (null != failure)
+		{
+			throw new CacheException(failure);
+		}
+		
+		return moved;
+	}
+	
+	/**
+	 * Returns the layout with the given name
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public static DirectoryLayout parseLayout(final String name)
+	{
+		if (FLAT.equals(name))
+		{
+			return new FlatLayout();
+		}
+		else if (HASHED.equals(name))
+		{
+			return new HashedLayout();
+		}
+		else if (null != name && name.startsWith(HASHED))
+		{
+			try
+			{
+				return new HashedLayout(Integer.parseInt(name.substring(HASHED.length())));
+			}
+			catch (NumberFormatException e)
+			{
+				// the name is not valid
+			}
+		}
+		
+		throw new IllegalArgumentException("Unknown layout: " + name);
+	}
+	
+	/**
+	 * Lists the files of the cache, leaving out the index, temporary files and the trash
+	 * 
+	 * @param rootPath
+	 * @return
+	 * @throws CacheException
+	 */
+	private static List<Path> listFiles(final Path rootPath) throws CacheException
+	{
+		final List<Path> files = new ArrayList<Path>();
+		
+		try
+		{
+			Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>()
+			{
+				@Override
+				public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+				{
+					return !rootPath.equals(dir) && CachePaths.isInternal(dir) ? FileVisitResult.SKIP_SUBTREE
+						: FileVisitResult.CONTINUE;
+				}
+				
+				@Override
+				public FileVisitResult visitFileFailed(final Path file, final IOException e)
+				{
+					// the trash may be deleted in the background while the root is walked
+					return FileVisitResult.CONTINUE;
+				}
+				
+				@Override
+				public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+				{
+					if (!CachePaths.isInternal(file))
+					{
+						files.add(file);
+					}
+					
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+		catch (IOException e)
+		{
+			// wrap the exception
+			throw new CacheException(e);
+		}
+		
+		return files;
+	}
+	
+	/**
+	 * Deletes every folder under the root which holds nothing once its own empty folders are gone
+	 * 
+	 * @param rootPath
+	 */
+	private static void deleteEmptyFolders(final Path rootPath)
+	{
+		try
+		{
+			Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>()
+			{
+				@Override
+				public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+				{
+					return !rootPath.equals(dir) && CachePaths.isInternal(dir) ? FileVisitResult.SKIP_SUBTREE
+						: FileVisitResult.CONTINUE;
+				}
+				
+				@Override
+				public FileVisitResult visitFileFailed(final Path file, final IOException e)
+				{
+					// the trash may be deleted in the background while the root is walked
+					return FileVisitResult.CONTINUE;
+				}
+				
+				@Override
+				public FileVisitResult postVisitDirectory(final Path dir, final IOException e)
+				{
+					if (!dir.equals(rootPath))
+					{
+						try
+						{
+							Files.delete(dir);
+						}
+						catch (IOException ex)
+						{
+							// the folder is not empty
+						}
+					}
+					
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+		catch (IOException e)
+		{
+			// ignore
+		}
+	}
+	
+}
@@ -0,0 +1,1174 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Stores every entry in a few large segment files instead of one file per entry. Saves and deletes are appended to the
+ * newest segment, and an index in memory maps each key to the record which holds its data, so a load is a single read
+ * from a file which is already open. The index is rebuilt from the segments when the cache is opened.
+ * <p>
+ * Each record carries a CRC and a sequence number. A delete appends a tombstone, which hides every older record of the
+ * key and of anything under it. Once enough of an older segment has been replaced or deleted, a background thread
+ * copies its live records to the newest segment and deletes it. A torn record at the end of a segment, left by a crash
+ * during a save, fails its CRC and is cut off when the cache is opened.
+ * <p>
+ * The root folder may only be used by a single instance at a time. {@link #close()} must be called once the cache is no
+ * longer needed.
+ */
+public class LogStructuredCache implements FileCache
+{
+	// ** Finals **//
+	// holds the size at which the newest segment is closed and a new one is started
+	public static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * 1024 * 1024;
+	
+	// holds the share of a segment which must be replaced or deleted before the segment is compacted
+	public static final double COMPACTION_THRESHOLD = 0.5;
+	
+	// holds the extension of the segment files
+	public static final String SEGMENT_EXTENSION = ".segment";
+	
+	// holds the length of a record before its key: the crc, sequence, type, key length and data length
+	private static final int HEADER_LENGTH = 4 + 8 + 1 + 4 + 4;
+	
+	private static final byte TYPE_PUT = 1;
+	private static final byte TYPE_TOMBSTONE = 2;
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte[] EMPTY = new byte[0];
+	
+	private static final String COMPACTOR_THREAD_NAME = "Log Structured Cache Compactor Thread";
+	
+	// holds the root directory
+	private final File root;
+	
+	// ** Objects **//
+	// holds the record of every live key, sorted so that the keys under a folder are next to each other
+	private final TreeMap<String, Location> index;
+	
+	// holds every segment by its id
+	private final TreeMap<Integer, Segment> segments;
+	
+	// holds the lock which loads share and which writes, deletes and compaction hold alone
+	private final ReentrantReadWriteLock lock;
+	
+	// holds the lock which is held while forcing the newest segment to the disk for a group commit
+	private final Object syncLock;
+	
+	// holds the lock which is held while compacting, so that a segment is only compacted once
+	private final Object compactionLock;
+	
+	// holds the monitor which wakes the background compactor
+	private final Object compactionSignal;
+	
+	// holds the segment which records are appended to
+	private Segment active;
+	
+	private volatile DurabilityPolicy durabilityPolicy;
+	
+	// ** Primitives **//
+	private final long maxSegmentSize;
+	
+	// holds the sequence number of the next record
+	private long nextSequence;
+	
+	// holds the sequence number below which every record is known to be on the disk
+	private long syncedSequence;
+	
+	private boolean compactionRequested;
+	
+	// determines if the cache has been closed, which is read on every call without taking a lock
+	private volatile boolean closed;
+	
+	public LogStructuredCache(final File root) throws CacheException
+	{
+		this(root, DEFAULT_MAX_SEGMENT_SIZE);
+	}
+	
+	public LogStructuredCache(final File root, final long maxSegmentSize) throws CacheException
+	{
+		// make sure the file is not null
+		if (null == root)
+		{
+			throw new IllegalArgumentException("Root cache cannot be null.");
+		}
+		if (maxSegmentSize < 1)
+		{
+			throw new IllegalArgumentException("maxSegmentSize must be at least 1");
+		}
+		
+		// make the directories if needed
+		root.mkdirs();
+		
+		// make sure the file is a directory
+		if (!root.isDirectory())
+		{
+			throw new IllegalArgumentException("Root cache must be a directory.");
+		}
+		
+		this.root = root;
+		this.maxSegmentSize = maxSegmentSize;
+		
+		index = new TreeMap<String, Location>();
+		segments = new TreeMap<Integer, Segment>();
+		lock = new ReentrantReadWriteLock();
+		syncLock = new Object();
+		compactionLock = new Object();
+		compactionSignal = new Object();
+		durabilityPolicy = DurabilityPolicy.NONE;
+		
+		try
+		{
+			rebuild();
+		}
+		catch (IOException e)
+		{
+			closeSegments();
+			throw new CacheException(e);
+		}
+		
+		Thread thread = new Thread(new Compactor(), COMPACTOR_THREAD_NAME);
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	@Override
+	public byte[] load(final String relativePath) throws CacheException
+	{
+		lock.readLock().lock();
+		
+		try
+		{
+			ensureOpen();
+			
+			// check to see if the key has a record
+			Location location = index.get(relativePath);
+			if (null == location)
+			{
+				return null;
+			}
+			
+			ByteBuffer buffer = ByteBuffer.allocate(location.length);
+			Record record = null;
+			
+			if (readFully(location.segment.channel, buffer, location.position))
+			{
+				buffer.flip();
+				record = decode(buffer);
+			}
+			
+			// make sure the record was not damaged since it was written
+			if (null == record || !relativePath.equals(record.key))
+			{
+				throw new IOException("Record of " + relativePath + " is corrupt");
+			}
+			
+			return record.data;
+		}
+		catch (IOException e)
+		{
+			// wrap the exception
+			throw new CacheException(e);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public void save(final String relativePath, final byte[] data) throws CacheException
+	{
+		// make sure the data is not null
+		if (null == data)
+		{
+			throw new IllegalArgumentException("data cannot be null");
+		}
+		
+		long sequence;
+		
+		lock.writeLock().lock();
+		
+		try
+		{
+			ensureOpen();
+			
+			sequence = nextSequence++;
+			Location location = append(sequence, TYPE_PUT, relativePath, data);
+			
+			// the previous record of the key is now garbage
+			Location previous = index.put(relativePath, location);
+			if (null != previous)
+			{
+				addGarbage(previous.segment, previous.length);
+			}
+		}
+		catch (IOException e)
+		{
+			// wrap the exception
+			throw new CacheException(e);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+		
+		sync(sequence);
+	}
+	
+	@Override
+	public boolean exists(final String relativePath)
+	{
+		lock.readLock().lock();
+		
+		try
+		{
+			return index.containsKey(relativePath);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public void delete(final String relativePath)
+	{
+		long sequence;
+		
+		lock.writeLock().lock();
+		
+		try
+		{
+			ensureOpen();
+			
+			// find the key and every key in its folder
+			List<String> keys = new ArrayList<String>();
+			if (index.containsKey(relativePath))
+			{
+				keys.add(relativePath);
+			}
+			keys.addAll(index.subMap(relativePath + "/", relativePath + "0").keySet());
+			
+			// nothing needs to be written if the key is not cached, since every older record is already hidden
+			if (keys.isEmpty())
+			{
+				return;
+			}
+			
+			// the tombstone is written first so that the entries are only forgotten once the delete will survive
+			sequence = nextSequence++;
+			Location tombstone = append(sequence, TYPE_TOMBSTONE, relativePath, EMPTY);
+			addGarbage(tombstone.segment, tombstone.length);
+			
+			for (String key : keys)
+			{
+				Location previous = index.remove(key);
+				addGarbage(previous.segment, previous.length);
+			}
+		}
+		catch (IOException e)
+		{
+			// ignore
+			return;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+		
+		try
+		{
+			sync(sequence);
+		}
+		catch (CacheException e)
+		{
+			// ignore
+		}
+	}
+	
+	/**
+	 * Clears the entire cache by deleting every segment, which takes as long for a million entries as it does for one
+	 */
+	@Override
+	public void clear()
+	{
+		lock.writeLock().lock();
+		
+		try
+		{
+			ensureOpen();
+			
+			index.clear();
+			closeSegments();
+			
+			for (Segment segment : segments.values())
+			{
+				segment.file.delete();
+			}
+			
+			segments.clear();
+			active = null;
+			
+			roll();
+		}
+		catch (IOException e)
+		{
+			// ignore
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Compacts every segment but the newest which holds any replaced or deleted records, instead of waiting for the
+	 * background thread to compact the segments which are mostly garbage
+	 * 
+	 * @throws CacheException
+	 */
+	public void compact() throws CacheException
+	{
+		try
+		{
+			compact(0);
+		}
+		catch (IOException e)
+		{
+			// wrap the exception
+			throw new CacheException(e);
+		}
+	}
+	
+	/**
+	 * Stops the background compactor and closes every segment. Anything which was saved is forced to the disk first.
+	 * 
+	 * @throws CacheException
+	 */
+	public void close() throws CacheException
+	{
+		synchronized (compactionSignal)
+		{
+			closed = true;
+			compactionSignal.notifyAll();
+		}
+		
+		// wait for a running compaction to finish
+		synchronized (compactionLock)
+		{
+			lock.writeLock().lock();
+			
+			try
+			{
+				if (null != active && active.channel.isOpen())
+				{
+					active.channel.force(false);
+				}
+			}
+			catch (IOException e)
+			{
+				// wrap the exception
+				throw new CacheException(e);
+			}
+			finally
+			{
+				closeSegments();
+				lock.writeLock().unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Sets whether saved data is forced to the disk before a save returns. With {@link DurabilityPolicy#GROUP_COMMIT},
+	 * a single sync of the newest segment covers every record which was appended before it started.
+	 * 
+	 * @param durabilityPolicy
+	 */
+	public void setDurabilityPolicy(final DurabilityPolicy durabilityPolicy)
+	{
+		// make sure the policy is not null
+		if (null == durabilityPolicy)
+		{
+			throw new IllegalArgumentException("durabilityPolicy cannot be null");
+		}
+		
+		this.durabilityPolicy = durabilityPolicy;
+	}
+	
+	public DurabilityPolicy getDurabilityPolicy()
+	{
+		return durabilityPolicy;
+	}
+	
+	public File getRoot()
+	{
+		return root;
+	}
+	
+	/**
+	 * Returns the number of entries in the cache
+	 * 
+	 * @return
+	 */
+	public int size()
+	{
+		lock.readLock().lock();
+		
+		try
+		{
+			return index.size();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns the number of segment files
+	 * 
+	 * @return
+	 */
+	public int getSegmentCount()
+	{
+		lock.readLock().lock();
+		
+		try
+		{
+			return segments.size();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Appends a record to the newest segment, starting a new segment first if the record does not fit. The caller must
+	 * hold the write lock.
+	 * 
+	 * @param sequence
+	 * @param type
+	 * @param key
+	 * @param data
+	 * @return
+	 * @throws IOException
+	 */
+	private Location append(final long sequence, final byte type, final String key, final byte[] data)
+		throws IOException
+	{
+		ByteBuffer buffer = encode(sequence, type, key, data);
+		
+		// check to see if the newest segment is full
+		if (active.size > 0 && active.size + buffer.remaining() > maxSegmentSize)
+		{
+			roll();
+		}
+		
+		Segment segment = active;
+		long position = segment.size;
+		int length = buffer.remaining();
+		
+		try
+		{
+			long offset = position;
+			while (buffer.hasRemaining())
+			{
+				offset += segment.channel.write(buffer, offset);
+			}
+		}
+		catch (IOException e)
+		{
+			// cut off whatever part of the record was written so that the next record follows the last good one
+			segment.channel.truncate(position);
+			throw e;
+		}
+		
+		segment.size += length;
+		segment.minSequence = Math.min(segment.minSequence, sequence);
+		
+		return new Location(segment, position, length);
+	}
+	
+	/**
+	 * Waits until the record with this sequence number is on the disk. This is called after the write lock has been
+	 * released so that other writers are not held up while the disk syncs. With {@link DurabilityPolicy#FSYNC} every
+	 * record forces the newest segment itself. When the saves are group committed, the first thread to get here syncs
+	 * the newest segment, which covers the records of the threads which arrive in the meantime.
+	 * 
+	 * @param sequence
+	 * @throws CacheException
+	 */
+	private void sync(final long sequence) throws CacheException
+	{
+		DurabilityPolicy policy = durabilityPolicy;
+		
+		if (DurabilityPolicy.FSYNC == policy)
+		{
+			forceActive();
+		}
+		else if (DurabilityPolicy.GROUP_COMMIT == policy)
+		{
+			synchronized (syncLock)
+			{
+				// check to see if another thread has already synced this record
+				if (syncedSequence > sequence)
+				{
+					return;
+				}
+				
+				syncedSequence = forceActive();
+			}
+		}
+	}
+	
+	/**
+	 * Forces the newest segment to the disk. A record which was written to an older segment is already on the disk,
+	 * since a segment is forced when it is closed.
+	 * 
+	 * @return the sequence number below which every record is on the disk
+	 * @throws CacheException
+	 */
+	private long forceActive() throws CacheException
+	{
+		// the read lock keeps the segment open while it is forced
+		lock.readLock().lock();
+		
+		try
+		{
+			long target = nextSequence;
+			
+			if (null != active && active.channel.isOpen())
+			{
+				active.channel.force(false);
+			}
+			
+			return target;
+		}
+		catch (IOException e)
+		{
+			// wrap the exception
+			throw new CacheException(e);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Closes the newest segment and starts a new one. The caller must hold the write lock.
+	 * 
+	 * @throws IOException
+	 */
+	private void roll() throws IOException
+	{
+		if (null != active)
+		{
+			// a segment is never written again once it is closed, so make sure its records are on the disk
+			if (DurabilityPolicy.NONE != durabilityPolicy)
+			{
+				active.channel.force(false);
+			}
+			
+			requestCompactionIfNeeded(active);
+		}
+		
+		int id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+		active = open(id);
+		segments.put(id, active);
+	}
+	
+	/**
+	 * Marks part of a segment as garbage and wakes the compactor once the segment is worth compacting. The caller must
+	 * hold the write lock.
+	 * 
+	 * @param segment
+	 * @param length
+	 */
+	private void addGarbage(final Segment segment, final int length)
+	{
+		segment.garbage += length;
+		
+		if (segment != active)
+		{
+			requestCompactionIfNeeded(segment);
+		}
+	}
+	
+	private void requestCompactionIfNeeded(final Segment segment)
+	{
+		if (segment.getGarbageRatio() >= COMPACTION_THRESHOLD)
+		{
+			synchronized (compactionSignal)
+			{
+				compactionRequested = true;
+				compactionSignal.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Compacts every segment but the newest whose share of garbage is at least the threshold
+	 * 
+	 * @param threshold
+	 * @throws IOException
+	 */
+	private void compact(final double threshold) throws IOException
+	{
+		synchronized (compactionLock)
+		{
+			// holds the segments to compact, oldest first
+			List<Segment> candidates = new ArrayList<Segment>();
+			
+			lock.readLock().lock();
+			
+			try
+			{
+				ensureOpen();
+				
+				for (Segment segment : segments.values())
+				{
+					if (segment != active && segment.garbage > 0 && segment.getGarbageRatio() >= threshold)
+					{
+						candidates.add(segment);
+					}
+				}
+			}
+			finally
+			{
+				lock.readLock().unlock();
+			}
+			
+			for (Segment segment : candidates)
+			{
+				compact(segment);
+			}
+		}
+	}
+	
+	/**
+	 * Copies the live records of the segment to the newest segment and deletes it. The write lock is taken for one
+	 * record at a time so that loads and saves are not held up for the whole segment.
+	 * 
+	 * @param segment
+	 * @throws IOException
+	 */
+	private void compact(final Segment segment) throws IOException
+	{
+		long position = 0;
+		
+		while (true)
+		{
+			lock.writeLock().lock();
+			
+			try
+			{
+				// make sure the segment was not cleared in the meantime
+				if (segments.get(segment.id) != segment)
+				{
+					return;
+				}
+				
+				if (position >= segment.size)
+				{
+					// the copies must be on the disk before the only other copy is deleted
+					active.channel.force(false);
+					
+					segments.remove(segment.id);
+					segment.channel.close();
+					segment.file.delete();
+					
+					return;
+				}
+				
+				Record record = read(segment, position);
+				if (null == record)
+				{
+					throw new IOException("Segment " + segment.file + " is corrupt at " + position);
+				}
+				
+				if (TYPE_PUT == record.type)
+				{
+					// check to see if the index still points at this record
+					Location location = index.get(record.key);
+					if (null != location && location.segment == segment && location.position == position)
+					{
+						index.put(record.key, append(record.sequence, TYPE_PUT, record.key, record.data));
+					}
+				}
+				else if (isTombstoneNeeded(segment, record.sequence))
+				{
+					Location tombstone = append(record.sequence, TYPE_TOMBSTONE, record.key, EMPTY);
+					tombstone.segment.garbage += tombstone.length;
+				}
+				
+				position += record.length;
+			}
+			finally
+			{
+				lock.writeLock().unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Checks to see if a tombstone may still hide a record in another segment. Records keep their sequence number when
+	 * they are copied, so no segment whose records are all newer than the tombstone can hold a record which it hides.
+	 * 
+	 * @param compacted
+	 * @param sequence
+	 * @return
+	 */
+	private boolean isTombstoneNeeded(final Segment compacted, final long sequence)
+	{
+		for (Segment segment : segments.values())
+		{
+			if (segment != compacted && segment.minSequence < sequence)
+			{
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Reads the segments and rebuilds the index. A record which fails its CRC ends its segment; the segment is cut off
+	 * there so that new records are not appended after the damage.
+	 * 
+	 * @throws IOException
+	 */
+	private void rebuild() throws IOException
+	{
+		File[] files = root.listFiles(new FilenameFilter()
+		{
+			@Override
+			public boolean accept(final File dir, final String name)
+			{
+				return name.endsWith(SEGMENT_EXTENSION)
+					&& name.substring(0, name.length() - SEGMENT_EXTENSION.length()).matches("[0-9]+");
+			}
+		});
+		
+		if (null != files)
+		{
+			for (File file : files)
+			{
+				int id = Integer.parseInt(file.getName().substring(0, file.getName().length()
+					- SEGMENT_EXTENSION.length()));
+				segments.put(id, open(id));
+			}
+		}
+		
+		// holds the highest sequence number of the tombstone of each path
+		Map<String, Long> tombstones = new HashMap<String, Long>();
+		
+		// holds the newest record of each key, and its sequence number
+		Map<String, Location> puts = new HashMap<String, Location>();
+		Map<String, Long> putSequences = new HashMap<String, Long>();
+		
+		nextSequence = 1;
+		
+		for (Segment segment : segments.values())
+		{
+			long position = 0;
+			long size = segment.channel.size();
+			
+			while (position < size)
+			{
+				Record record = read(segment, position);
+				if (null == record)
+				{
+					break;
+				}
+				
+				if (TYPE_PUT == record.type)
+				{
+					Long previous = putSequences.get(record.key);
+					if (null == previous || previous < record.sequence)
+					{
+						puts.put(record.key, new Location(segment, position, record.length));
+						putSequences.put(record.key, record.sequence);
+					}
+				}
+				else
+				{
+					Long previous = tombstones.get(record.key);
+					if (null == previous || previous < record.sequence)
+					{
+						tombstones.put(record.key, record.sequence);
+					}
+				}
+				
+				segment.minSequence = Math.min(segment.minSequence, record.sequence);
+				nextSequence = Math.max(nextSequence, record.sequence + 1);
+				position += record.length;
+			}
+			
+			// cut off a torn or damaged tail
+			if (position < size)
+			{
+				segment.channel.truncate(position);
+			}
+			
+			segment.size = position;
+			segment.garbage = position;
+		}
+		
+		// keep every record which is not hidden by a newer tombstone of its key or of one of its folders
+		for (Map.Entry<String, Location> entry : puts.entrySet())
+		{
+			if (!isHidden(entry.getKey(), putSequences.get(entry.getKey()), tombstones))
+			{
+				Location location = entry.getValue();
+				index.put(entry.getKey(), location);
+				location.segment.garbage -= location.length;
+			}
+		}
+		
+		syncedSequence = nextSequence;
+		
+		// continue appending to the newest segment
+		if (segments.isEmpty())
+		{
+			roll();
+		}
+		else
+		{
+			active = segments.get(segments.lastKey());
+		}
+	}
+	
+	/**
+	 * Checks to see if a tombstone of the key, or of a folder above it, is newer than the record
+	 * 
+	 * @param key
+	 * @param sequence
+	 * @param tombstones
+	 * @return
+	 */
+	private static boolean isHidden(final String key, final long sequence, final Map<String, Long> tombstones)
+	{
+		for (int i = key.indexOf('/'); i >= 0; i = key.indexOf('/', i + 1))
+		{
+			Long tombstone = tombstones.get(key.substring(0, i));
+			if (null != tombstone && tombstone > sequence)
+			{
+				return true;
+			}
+		}
+		
+		Long tombstone = tombstones.get(key);
+		return null != tombstone && tombstone > sequence;
+	}
+	
+	/**
+	 * Reads the record at the position of the segment
+	 * 
+	 * @param segment
+	 * @param position
+	 * @return the record, or null if it is torn or fails its CRC
+	 * @throws IOException
+	 */
+	private static Record read(final Segment segment, final long position) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		if (!readFully(segment.channel, header, position))
+		{
+			return null;
+		}
+		
+		int keyLength = header.getInt(13);
+		int dataLength = header.getInt(17);
+		
+		// make sure the lengths are sane before allocating anything
+		if (keyLength < 0 || dataLength < 0 || (long) HEADER_LENGTH + keyLength + dataLength > segment.channel.size()
+			- position)
+		{
+			return null;
+		}
+		
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + keyLength + dataLength);
+		if (!readFully(segment.channel, buffer, position))
+		{
+			return null;
+		}
+		
+		buffer.flip();
+		return decode(buffer);
+	}
+	
+	/**
+	 * Reads from the channel until the buffer is full
+	 * 
+	 * @param channel
+	 * @param buffer
+	 * @param position
+	 * @return false if the end of the channel was reached first
+	 * @throws IOException
+	 */
+	private static boolean readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+		throws IOException
+	{
+		long offset = position;
+		
+		while (buffer.hasRemaining())
+		{
+			int read = channel.read(buffer, offset);
+			if (read < 0)
+			{
+				return false;
+			}
+			
+			offset += read;
+		}
+		
+		return true;
+	}
+	
+	private static ByteBuffer encode(final long sequence, final byte type, final String key, final byte[] data)
+	{
+		byte[] keyBytes = key.getBytes(UTF8);
+		
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + keyBytes.length + data.length);
+		buffer.putInt(0);
+		buffer.putLong(sequence);
+		buffer.put(type);
+		buffer.putInt(keyBytes.length);
+		buffer.putInt(data.length);
+		buffer.put(keyBytes);
+		buffer.put(data);
+		
+		// the crc covers everything after itself
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 4, buffer.capacity() - 4);
+		buffer.putInt(0, (int) crc.getValue());
+		
+		buffer.flip();
+		return buffer;
+	}
+	
+	/**
+	 * Decodes a whole record
+	 * 
+	 * @param buffer
+	 * @return the record, or null if it fails its CRC
+	 */
+	private static Record decode(final ByteBuffer buffer)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 4, buffer.limit() - 4);
+		
+		if (buffer.getInt(0) != (int) crc.getValue())
+		{
+			return null;
+		}
+		
+		buffer.position(4);
+		long sequence = buffer.getLong();
+		byte type = buffer.get();
+		byte[] key = new byte[buffer.getInt()];
+		byte[] data = new byte[buffer.getInt()];
+		buffer.get(key);
+		buffer.get(data);
+		
+		// make sure the type is known
+		if (TYPE_PUT != type && TYPE_TOMBSTONE != type)
+		{
+			return null;
+		}
+		
+		return new Record(sequence, type, new String(key, UTF8), data, buffer.limit());
+	}
+	
+	private Segment open(final int id) throws IOException
+	{
+		File file = new File(root, String.format("%010d", id) + SEGMENT_EXTENSION);
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+			StandardOpenOption.WRITE);
+		
+		return new Segment(id, file, channel);
+	}
+	
+	/**
+	 * Closes the channel of every segment. The caller must hold the write lock.
+	 */
+	private void closeSegments()
+	{
+		for (Segment segment : segments.values())
+		{
+			try
+			{
+				segment.channel.close();
+			}
+			catch (IOException e)
+			{
+				// ignore
+			}
+		}
+	}
+	
+	private void ensureOpen()
+	{
+		if (closed)
+		{
+			throw new IllegalStateException("cache is closed");
+		}
+	}
+	
+	/**
+	 * A segment file
+	 */
+	private static class Segment
+	{
+		// ** Finals **//
+		private final int id;
+		private final File file;
+		private final FileChannel channel;
+		
+		// ** Primitives **//
+		// holds the length of the records of the segment
+		private long size;
+		
+		// holds the length of the records which were replaced or deleted
+		private long garbage;
+		
+		// holds the lowest sequence number of the records of the segment
+		private long minSequence;
+		
+		public Segment(final int id, final File file, final FileChannel channel)
+		{
+			this.id = id;
+			this.file = file;
+			this.channel = channel;
+			
+			minSequence = Long.MAX_VALUE;
+		}
+		
+		public double getGarbageRatio()
+		{
+			return size > 0 ? (double) garbage / size : 0;
+		}
+	}
+	
+	/**
+	 * The place of a record within the segments
+	 */
+	private static class Location
+	{
+		// ** Finals **//
+		private final Segment segment;
+		
+		// ** Primitives **//
+		private final long position;
+		private final int length;
+		
+		public Location(final Segment segment, final long position, final int length)
+		{
+			this.segment = segment;
+			this.position = position;
+			this.length = length;
+		}
+	}
+	
+	/**
+	 * A record which was read from a segment
+	 */
+	private static class Record
+	{
+		// ** Finals **//
+		private final String key;
+		private final byte[] data;
+		
+		// ** Primitives **//
+		private final long sequence;
+		private final byte type;
+		private final int length;
+		
+		public Record(final long sequence, final byte type, final String key, final byte[] data, final int length)
+		{
+			this.sequence = sequence;
+			this.type = type;
+			this.key = key;
+			this.data = data;
+			this.length = length;
+		}
+	}
+	
+	/**
+	 * Compacts the segments which are mostly garbage whenever a save, delete or new segment may have made one
+	 * 
+	 * @author Greg Marut
+	 */
+	private class Compactor implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			while (true)
+			{
+				synchronized (compactionSignal)
+				{
+					while (!compactionRequested)
+					{
+						if (closed)
+						{
+							return;
+						}
+						
+						try
+						{
+							compactionSignal.wait();
+						}
+						catch (InterruptedException e)
+						{
+							return;
+						}
+					}
+					
+					compactionRequested = false;
+				}
+				
+				try
+				{
+					compact(COMPACTION_THRESHOLD);
+				}
+				catch (IOException e)
+				{
+					// the segment is left as it is and compacted again on the next request
+				}
+				catch (IllegalStateException e)
+				{
+					// the cache was closed
+					return;
+				}
+			}
+		}
+	}
+}
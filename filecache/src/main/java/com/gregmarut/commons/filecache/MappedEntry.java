@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The data of a cache entry exposed as a read-only buffer, without copying it into the heap. Large files are mapped
+ * into memory and small ones are read into a pooled direct buffer. The entry must be closed once its data is no
+ * longer needed, which unmaps the file or returns the buffer to its pool right away.
+ * <p>
+ * The buffer, and any view or slice of it, must not be used after the entry is closed. The memory behind it may have
+ * been unmapped or handed to another entry, so reading it can return the wrong data or crash the JVM.
+ */
+public final class MappedEntry implements Closeable
+{
+	// ** Objects **//
+	// holds the read-only view of the data which is handed out
+	private final ByteBuffer buffer;
+	
+	// holds the buffer which owns the memory
+	private final ByteBuffer owner;
+	
+	// holds the pool the buffer is returned to, or null if the buffer is unmapped instead
+	private final DirectBufferPool pool;
+	
+	// holds whether or not the entry has been closed
+	private final AtomicBoolean closed;
+	
+	// ** Primitives **//
+	// holds whether or not the memory of the owner is freed when the entry is closed
+	private final boolean free;
+	
+	private MappedEntry(final ByteBuffer owner, final DirectBufferPool pool, final boolean free)
+	{
+		this.owner = owner;
+		this.pool = pool;
+		this.free = free;
+		
+		buffer = owner.asReadOnlyBuffer();
+		closed = new AtomicBoolean();
+	}
+	
+	/**
+	 * Creates an entry whose memory is unmapped when it is closed
+	 * 
+	 * @param mapped
+	 * @return
+	 */
+	static MappedEntry mapped(final ByteBuffer mapped)
+	{
+		return new MappedEntry(mapped, null, true);
+	}
+	
+	/**
+	 * Creates an entry whose buffer is returned to the pool when it is closed
+	 * 
+	 * @param buffer
+	 * @param pool
+	 * @return
+	 */
+	static MappedEntry pooled(final ByteBuffer buffer, final DirectBufferPool pool)
+	{
+		return new MappedEntry(buffer, pool, false);
+	}
+	
+	/**
+	 * Creates an entry over a heap buffer, which needs nothing done when it is closed
+	 * 
+	 * @param buffer
+	 * @return
+	 */
+	public static MappedEntry wrap(final ByteBuffer buffer)
+	{
+		return new MappedEntry(buffer, null, false);
+	}
+	
+	/**
+	 * Returns a read-only buffer holding the data of the entry. Each call returns a new view, so the position of one
+	 * does not affect another.
+	 * 
+	 * @return
+	 */
+	public ByteBuffer getBuffer()
+	{
+		// make sure the memory is still valid
+		if (closed.get())
+		{
+			throw new IllegalStateException("entry is closed");
+		}
+		
+		return buffer.duplicate();
+	}
+	
+	/**
+	 * Returns the number of bytes of the entry
+	 * 
+	 * @return
+	 */
+	public int size()
+	{
+		return buffer.remaining();
+	}
+	
+	/**
+	 * Copies the data of the entry into a new array
+	 * 
+	 * @return
+	 */
+	public byte[] toByteArray()
+	{
+		ByteBuffer view = getBuffer();
+		byte[] data = new byte[view.remaining()];
+		view.get(data);
+		
+		return data;
+	}
+	
+	public boolean isClosed()
+	{
+		return closed.get();
+	}
+	
+	/**
+	 * Unmaps the file or returns the buffer to its pool. Closing an entry more than once does nothing.
+	 */
+	@Override
+	public void close()
+	{
+		// make sure the memory is only released once
+		if (!closed.compareAndSet(false, true))
+		{
+			return;
+		}
+		
+		if (null != pool)
+		{
+			pool.release(owner);
+		}
+		else if (free)
+		{
+			BufferCleaner.clean(owner);
+		}
+	}
+}
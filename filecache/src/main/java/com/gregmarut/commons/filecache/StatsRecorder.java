@@ -0,0 +1,347 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts what happens to a cache. Recording only adds to counters which are striped over threads, so it allocates
+ * nothing and threads do not wait for each other. The counters can be read as a {@link CacheStats} snapshot, or over
+ * JMX once the recorder is registered.
+ * <p>
+ * A recorder can be added to a {@link BoundedInMemoryCache} as an {@link EvictionListener} to count its evictions.
+ */
+public class StatsRecorder implements CacheStatsMXBean, EvictionListener
+{
+	// ** Finals **//
+	// holds the domain and type of the names which recorders are registered under
+	public static final String JMX_DOMAIN = "com.gregmarut.commons.filecache";
+	public static final String JMX_TYPE = "CacheStats";
+	
+	// ** Objects **//
+	// holds the counters
+	private final LongAdder hitCount;
+	private final LongAdder missCount;
+	private final LongAdder loadErrorCount;
+	private final LongAdder saveCount;
+	private final LongAdder saveErrorCount;
+	private final LongAdder evictionCount;
+	private final LongAdder evictionWeight;
+	private final LongAdder bytesRead;
+	private final LongAdder bytesWritten;
+	
+	// holds the latencies of the loads and saves in nanoseconds
+	private final LatencyHistogram loadLatency;
+	private final LatencyHistogram saveLatency;
+	
+	// holds the name which the recorder is registered under, if it is
+	private ObjectName objectName;
+	
+	public StatsRecorder()
+	{
+		hitCount = new LongAdder();
+		missCount = new LongAdder();
+		loadErrorCount = new LongAdder();
+		saveCount = new LongAdder();
+		saveErrorCount = new LongAdder();
+		evictionCount = new LongAdder();
+		evictionWeight = new LongAdder();
+		bytesRead = new LongAdder();
+		bytesWritten = new LongAdder();
+		
+		loadLatency = new LatencyHistogram();
+		saveLatency = new LatencyHistogram();
+	}
+	
+	/**
+	 * Records a load which found the entry
+	 * 
+	 * @param bytes
+	 *            the size of the entry
+	 * @param nanos
+	 *            the time the load took
+	 */
+	public void recordHit(final long bytes, final long nanos)
+	{
+		hitCount.increment();
+		bytesRead.add(bytes);
+		loadLatency.record(nanos);
+	}
+	
+	/**
+	 * Records a load which did not find the entry
+	 * 
+	 * @param nanos
+	 */
+	public void recordMiss(final long nanos)
+	{
+		missCount.increment();
+		loadLatency.record(nanos);
+	}
+	
+	/**
+	 * Records a load which failed
+	 * 
+	 * @param nanos
+	 */
+	public void recordLoadError(final long nanos)
+	{
+		loadErrorCount.increment();
+		loadLatency.record(nanos);
+	}
+	
+	/**
+	 * Records a save
+	 * 
+	 * @param bytes
+	 * @param nanos
+	 */
+	public void recordSave(final long bytes, final long nanos)
+	{
+		saveCount.increment();
+		bytesWritten.add(bytes);
+		saveLatency.record(nanos);
+	}
+	
+	/**
+	 * Records a save which failed
+	 * 
+	 * @param nanos
+	 */
+	public void recordSaveError(final long nanos)
+	{
+		saveErrorCount.increment();
+		saveLatency.record(nanos);
+	}
+	
+	/**
+	 * Records an entry which was evicted
+	 * 
+	 * @param bytes
+	 */
+	public void recordEviction(final long bytes)
+	{
+		evictionCount.increment();
+		evictionWeight.add(bytes);
+	}
+	
+	@Override
+	public void entryEvicted(final String relativePath, final byte[] data)
+	{
+		recordEviction(null == data ? 0 : data.length);
+	}
+	
+	/**
+	 * Returns a snapshot of the counters
+	 * 
+	 * @return
+	 */
+	public CacheStats snapshot()
+	{
+		return new CacheStats(hitCount.sum(), missCount.sum(), loadErrorCount.sum(), saveCount.sum(),
+			saveErrorCount.sum(), evictionCount.sum(), evictionWeight.sum(), bytesRead.sum(), bytesWritten.sum(),
+			loadLatency.snapshot(), saveLatency.snapshot());
+	}
+	
+	@Override
+	public void reset()
+	{
+		hitCount.reset();
+		missCount.reset();
+		loadErrorCount.reset();
+		saveCount.reset();
+		saveErrorCount.reset();
+		evictionCount.reset();
+		evictionWeight.reset();
+		bytesRead.reset();
+		bytesWritten.reset();
+		
+		loadLatency.reset();
+		saveLatency.reset();
+	}
+	
+	/**
+	 * Registers the recorder with the platform MBean server under the given name, replacing a recorder which was
+	 * registered under the same name before
+	 * 
+	 * @param name
+	 * @return the name of the MBean
+	 * @throws CacheException
+	 */
+	public synchronized ObjectName register(final String name) throws CacheException
+	{
+		// make sure the name is not null
+		if (null == name)
+		{
+			throw new IllegalArgumentException("name cannot be null");
+		}
+		
+		unregister();
+		
+		try
+		{
+			ObjectName registered = new ObjectName(JMX_DOMAIN + ":type=" + JMX_TYPE + ",name="
+				+ ObjectName.quote(name));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			
+			// the name may be left over by a recorder which was never unregistered
+			if (server.isRegistered(registered))
+			{
+				server.unregisterMBean(registered);
+			}
+			
+			server.registerMBean(this, registered);
+			objectName = registered;
+			
+			return registered;
+		}
+		catch (JMException e)
+		{
+			// wrap the exception
+			throw new CacheException(e);
+		}
+	}
+	
+	/**
+	 * Removes the recorder from the platform MBean server, if it is registered
+	 */
+	public synchronized void unregister()
+	{
+		if (null != objectName)
+		{
+			try
+			{
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			}
+			catch (JMException e)
+			{
+				// ignore
+			}
+			
+			objectName = null;
+		}
+	}
+	
+	@Override
+	public long getHitCount()
+	{
+		return hitCount.sum();
+	}
+	
+	@Override
+	public long getMissCount()
+	{
+		return missCount.sum();
+	}
+	
+	@Override
+	public double getHitRate()
+	{
+		return snapshot().getHitRate();
+	}
+	
+	@Override
+	public long getLoadErrorCount()
+	{
+		return loadErrorCount.sum();
+	}
+	
+	@Override
+	public long getSaveCount()
+	{
+		return saveCount.sum();
+	}
+	
+	@Override
+	public long getSaveErrorCount()
+	{
+		return saveErrorCount.sum();
+	}
+	
+	@Override
+	public long getEvictionCount()
+	{
+		return evictionCount.sum();
+	}
+	
+	@Override
+	public long getEvictionWeight()
+	{
+		return evictionWeight.sum();
+	}
+	
+	@Override
+	public long getBytesRead()
+	{
+		return bytesRead.sum();
+	}
+	
+	@Override
+	public long getBytesWritten()
+	{
+		return bytesWritten.sum();
+	}
+	
+	@Override
+	public double getLoadLatencyMean()
+	{
+		return loadLatency.snapshot().getMean();
+	}
+	
+	@Override
+	public long getLoadLatency50thPercentile()
+	{
+		return loadLatency.snapshot().getPercentile(50);
+	}
+	
+	@Override
+	public long getLoadLatency99thPercentile()
+	{
+		return loadLatency.snapshot().getPercentile(99);
+	}
+	
+	@Override
+	public long getLoadLatencyMax()
+	{
+		return loadLatency.snapshot().getMax();
+	}
+	
+	@Override
+	public double getSaveLatencyMean()
+	{
+		return saveLatency.snapshot().getMean();
+	}
+	
+	@Override
+	public long getSaveLatency50thPercentile()
+	{
+		return saveLatency.snapshot().getPercentile(50);
+	}
+	
+	@Override
+	public long getSaveLatency99thPercentile()
+	{
+		return saveLatency.snapshot().getPercentile(99);
+	}
+	
+	@Override
+	public long getSaveLatencyMax()
+	{
+		return saveLatency.snapshot().getMax();
+	}
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A cache whose entries can be read and written as streams, so that an entry never has to fit in memory as a whole
+ */
+public interface StreamingFileCache extends FileCache
+{
+	/**
+	 * Opens a stream over the contents of a file. The caller must close the stream.
+	 * 
+	 * @param relativePath
+	 * @return
+	 * @throws CacheException
+	 */
+	InputStream openInputStream(final String relativePath) throws CacheException;
+	
+	/**
+	 * Writes the contents of a file to the channel
+	 * 
+	 * @param relativePath
+	 * @param target
+	 * @return the number of bytes which were written
+	 * @throws CacheException
+	 */
+	long load(final String relativePath, final WritableByteChannel target) throws CacheException;
+	
+	/**
+	 * Saves everything which is left in the stream to the file specified at the relative path
+	 * 
+	 * @param relativePath
+	 * @param in
+	 * @return the number of bytes which were saved
+	 * @throws CacheException
+	 */
+	long save(final String relativePath, final InputStream in) throws CacheException;
+	
+	/**
+	 * Saves everything which is left in the channel to the file specified at the relative path
+	 * 
+	 * @param relativePath
+	 * @param source
+	 * @return the number of bytes which were saved
+	 * @throws CacheException
+	 */
+	long save(final String relativePath, final ReadableByteChannel source) throws CacheException;
+}
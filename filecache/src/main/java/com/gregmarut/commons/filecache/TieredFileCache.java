@@ -0,0 +1,464 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Places a fast cache, such as an {@link InMemoryCache}, in front of a slower one, such as a {@link FileSystemCache}.
+ * Loads are served from the upper tier when possible; entries which are only found in the lower tier are promoted to
+ * the upper tier, unless the cache was changed while the lower tier was read, so that a promotion never brings back a
+ * deleted or replaced entry. Saves always go to both tiers, either before the save returns or in the background,
+ * depending on the {@link WriteMode}. Deletes and clears are applied to both tiers and to any writes which are still waiting.
+ * <p>
+ * The tiers must be safe to call from several threads when {@link WriteMode#WRITE_BEHIND} is used, since the lower tier
+ * is written by a background thread.
+ */
+public class TieredFileCache implements FileCache
+{
+	// ** Finals **//
+	// holds the number of waiting writes at which saves start to wait for the background thread
+	public static final int DEFAULT_MAX_PENDING = 1024;
+	
+	private static final String WRITER_THREAD_NAME = "Tiered Cache Writer Thread";
+	
+	// ** Objects **//
+	// holds the two tiers of the cache
+	private final FileCache upper;
+	private final FileCache lower;
+	
+	private final WriteMode writeMode;
+	
+	// holds the data which is waiting to be written to the lower tier, in the order it was saved
+	private final LinkedHashMap<String, byte[]> pending;
+	
+	// holds the lock which is held while the lower tier is written, deleted from or cleared
+	private final Object lowerLock;
+	
+	// holds the lock which is held while the upper tier is written, deleted from or cleared
+	private final Object upperLock;
+	
+	// holds the first error of the background thread since the last flush
+	private CacheException writeError;
+	
+	// ** Primitives **//
+	private final int maxPending;
+	
+	// holds the number of changes made to the upper tier, guarded by the upper lock
+	private long version;
+	
+	// holds the number of writes which the background thread has taken but not finished
+	private int writing;
+	private boolean closed;
+	
+	public TieredFileCache(final FileCache upper, final FileCache lower)
+	{
+		this(upper, lower, WriteMode.WRITE_THROUGH);
+	}
+	
+	public TieredFileCache(final FileCache upper, final FileCache lower, final WriteMode writeMode)
+	{
+		this(upper, lower, writeMode, DEFAULT_MAX_PENDING);
+	}
+	
+	public TieredFileCache(final FileCache upper, final FileCache lower, final WriteMode writeMode,
+		final int maxPending)
+	{
+		// make sure none of the parameters are null
+		if (null == upper || null == lower)
+		{
+			throw new IllegalArgumentException("tiers cannot be null");
+		}
+		if (null == writeMode)
+		{
+			throw new IllegalArgumentException("writeMode cannot be null");
+		}
+		if (maxPending < 1)
+		{
+			throw new IllegalArgumentException("maxPending must be at least 1");
+		}
+		
+		this.upper = upper;
+		this.lower = lower;
+		this.writeMode = writeMode;
+		this.maxPending = maxPending;
+		
+		pending = new LinkedHashMap<String, byte[]>();
+		lowerLock = new Object();
+		upperLock = new Object();
+		
+		// check to see if a background writer is needed
+		if (WriteMode.WRITE_BEHIND == writeMode)
+		{
+			Thread thread = new Thread(new Writer(), WRITER_THREAD_NAME);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+	
+	@Override
+	public byte[] load(final String relativePath) throws CacheException
+	{
+		byte[] data = upper.load(relativePath);
+		
+		// check to see if the upper tier has the entry
+		if (null != data)
+		{
+			return data;
+		}
+		
+		// remember the version so that a save or delete made while the lower tier is read is not overwritten
+		final long loadVersion;
+		synchronized (upperLock)
+		{
+			loadVersion = version;
+		}
+		
+		// the upper tier may have dropped an entry which has not been written to the lower tier yet
+		synchronized (pending)
+		{
+			data = pending.get(relativePath);
+		}
+		
+		if (null == data && lower.exists(relativePath))
+		{
+			data = lower.load(relativePath);
+		}
+		
+		// promote the entry to the upper tier unless it was changed in the meantime
+		if (null != data)
+		{
+			synchronized (upperLock)
+			{
+				if (loadVersion == version)
+				{
+					upper.save(relativePath, data);
+				}
+			}
+		}
+		
+		return data;
+	}
+	
+	@Override
+	public void save(final String relativePath, final byte[] data) throws CacheException
+	{
+		// both tiers are changed under the same locks, taken in the same order as a delete, so that another save or a
+		// delete cannot come between them
+		if (WriteMode.WRITE_THROUGH == writeMode)
+		{
+			synchronized (lowerLock)
+			{
+				// the lower tier is written first so that a failure leaves the tiers as they were
+				lower.save(relativePath, data);
+				saveUpper(relativePath, data);
+			}
+		}
+		else
+		{
+			// the lower lock is not needed since the lower tier is only written by the background thread, which takes
+			// the write from the pending map under the lower lock
+			synchronized (pending)
+			{
+				// make sure the background thread is still running
+				if (closed)
+				{
+					throw new IllegalStateException("cache is closed");
+				}
+				
+				// wait for the background thread once too many writes are waiting
+				while (pending.size() >= maxPending && !pending.containsKey(relativePath))
+				{
+					awaitPending();
+				}
+				
+				saveUpper(relativePath, data);
+				
+				// a newer save replaces any data of the same entry which is still waiting
+				pending.remove(relativePath);
+				pending.put(relativePath, data);
+				pending.notifyAll();
+			}
+		}
+	}
+	
+	@Override
+	public boolean exists(final String relativePath)
+	{
+		// check each of the places the entry may be in
+		if (upper.exists(relativePath))
+		{
+			return true;
+		}
+		
+		synchronized (pending)
+		{
+			if (pending.containsKey(relativePath))
+			{
+				return true;
+			}
+		}
+		
+		return lower.exists(relativePath);
+	}
+	
+	@Override
+	public void delete(final String relativePath)
+	{
+		synchronized (lowerLock)
+		{
+			// forget any waiting writes of the entry or of anything under it
+			synchronized (pending)
+			{
+				Iterator<String> iterator = pending.keySet().iterator();
+				while (iterator.hasNext())
+				{
+					if (CachePaths.isAtOrUnder(iterator.next(), relativePath))
+					{
+						iterator.remove();
+					}
+				}
+				
+				pending.notifyAll();
+				
+				synchronized (upperLock)
+				{
+					version++;
+					upper.delete(relativePath);
+				}
+			}
+			
+			lower.delete(relativePath);
+		}
+	}
+	
+	@Override
+	public void clear()
+	{
+		synchronized (lowerLock)
+		{
+			synchronized (pending)
+			{
+				pending.clear();
+				pending.notifyAll();
+				
+				synchronized (upperLock)
+				{
+					version++;
+					upper.clear();
+				}
+			}
+			
+			lower.clear();
+		}
+	}
+	
+	/**
+	 * Waits until every save so far has been written to the lower tier. Any error which the background thread hit
+	 * since the last flush is thrown here.
+	 * 
+	 * @throws CacheException
+	 */
+	public void flush() throws CacheException
+	{
+		synchronized (pending)
+		{
+			// wait for the waiting writes and the one being written
+			while ((!pending.isEmpty() || writing > 0) && !closed)
+			{
+				awaitPending();
+			}
+			
+			// report the first error since the last flush
+			CacheException error = writeError;
+			writeError = null;
+			
+			if (null != error)
+			{
+				throw error;
+			}
+		}
+	}
+	
+	/**
+	 * Writes every waiting save to the lower tier and stops the background thread
+	 * 
+	 * @throws CacheException
+	 */
+	public void close() throws CacheException
+	{
+		try
+		{
+			flush();
+		}
+		finally
+		{
+			synchronized (pending)
+			{
+				closed = true;
+				pending.notifyAll();
+			}
+		}
+	}
+	
+	public FileCache getUpper()
+	{
+		return upper;
+	}
+	
+	public FileCache getLower()
+	{
+		return lower;
+	}
+	
+	public WriteMode getWriteMode()
+	{
+		return writeMode;
+	}
+	
+	/**
+	 * Returns the number of saves which have not been written to the lower tier yet
+	 * 
+	 * @return
+	 */
+	public int getPendingCount()
+	{
+		synchronized (pending)
+		{
+			return pending.size() + writing;
+		}
+	}
+	
+	/**
+	 * Saves the data to the upper tier, which keeps a promotion that started earlier from overwriting it
+	 * 
+	 * @param relativePath
+	 * @param data
+	 * @throws CacheException
+	 */
+	private void saveUpper(final String relativePath, final byte[] data) throws CacheException
+	{
+		synchronized (upperLock)
+		{
+			version++;
+			upper.save(relativePath, data);
+		}
+	}
+	
+	/**
+	 * Waits to be notified of a change to the waiting writes. The caller must hold the lock of the pending map.
+	 */
+	private void awaitPending()
+	{
+		try
+		{
+			pending.wait();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Writes the waiting saves to the lower tier, oldest first
+	 * 
+	 * @author Greg Marut
+	 */
+	private class Writer implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			while (true)
+			{
+				synchronized (pending)
+				{
+					// wait until there is something to write, without holding the lower lock
+					while (pending.isEmpty())
+					{
+						if (closed)
+						{
+							return;
+						}
+						
+						try
+						{
+							pending.wait();
+						}
+						catch (InterruptedException e)
+						{
+							return;
+						}
+					}
+				}
+				
+				// the entry is taken while holding the lower lock so that a delete cannot slip in before it is written
+				synchronized (lowerLock)
+				{
+					Map.Entry<String, byte[]> entry;
+					
+					synchronized (pending)
+					{
+						// make sure a delete or clear did not remove the write in the meantime
+						if (pending.isEmpty())
+						{
+							continue;
+						}
+						
+						Iterator<Map.Entry<String, byte[]>> iterator = pending.entrySet().iterator();
+						entry = iterator.next();
+						iterator.remove();
+						writing++;
+					}
+					
+					try
+					{
+						lower.save(entry.getKey(), entry.getValue());
+					}
+					catch (CacheException e)
+					{
+						recordError(e);
+					}
+					catch (RuntimeException e)
+					{
+						recordError(new CacheException(e));
+					}
+					finally
+					{
+						synchronized (pending)
+						{
+							writing--;
+							pending.notifyAll();
+						}
+					}
+				}
+			}
+		}
+		
+		private void recordError(final CacheException e)
+		{
+			synchronized (pending)
+			{
+				// only the first error is kept until it is reported
+				if (null == writeError)
+				{
+					writeError = e;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache;
+
+/**
+ * Decides when a {@link TieredFileCache} writes saved data to its lower tier
+ */
+public enum WriteMode
+{
+	/**
+	 * Data is written to the lower tier before the save returns
+	 */
+	WRITE_THROUGH,
+	
+	/**
+	 * Data is written to the lower tier by a background thread after the save returns. Several saves of the same entry
+	 * which are still waiting are written only once.
+	 */
+	WRITE_BEHIND
+}
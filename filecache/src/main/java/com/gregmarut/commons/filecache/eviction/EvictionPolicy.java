@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache.eviction;
+
+/**
+ * Decides which entries of a bounded cache are evicted once the total weight of its entries is larger than the
+ * maximum weight of the policy. The weight of an entry is the number of bytes it holds. A policy is not thread safe;
+ * the cache which owns it must guard every call.
+ */
+public interface EvictionPolicy
+{
+	/**
+	 * Returns the largest total weight of the entries which the cache may hold
+	 * 
+	 * @return
+	 */
+	long getMaximumWeight();
+	
+	/**
+	 * Called when a new entry is added to the cache
+	 * 
+	 * @param key
+	 * @param weight
+	 */
+	void add(final String key, final int weight);
+	
+	/**
+	 * Called when an existing entry is replaced with a new value
+	 * 
+	 * @param key
+	 * @param weight
+	 *            the weight of the new value
+	 */
+	void update(final String key, final int weight);
+	
+	/**
+	 * Called when an entry is read from the cache
+	 * 
+	 * @param key
+	 */
+	void access(final String key);
+	
+	/**
+	 * Called when an entry is removed from the cache by anything other than this policy
+	 * 
+	 * @param key
+	 */
+	void remove(final String key);
+	
+	/**
+	 * Chooses the next entry to evict and forgets it. This is only called while the total weight is larger than the
+	 * maximum weight, so there is always at least one entry.
+	 * 
+	 * @return the key of the entry to evict
+	 */
+	String evict();
+	
+	/**
+	 * Forgets every entry
+	 */
+	void clear();
+}
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache.eviction;
+
+/**
+ * A count-min sketch which estimates how often each key has been used, using four 4-bit counters per key. Once the
+ * number of increments reaches the sample size every counter is halved, so that keys which were popular a long time
+ * ago are gradually forgotten.
+ */
+class FrequencySketch
+{
+	// ** Finals **//
+	// holds the seeds of the four hash functions
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+		0xcbf29ce484222325L };
+	
+	// holds a mask which clears the high bit of every counter after a shift
+	private static final long RESET_MASK = 0x7777777777777777L;
+	
+	// holds the largest value of a counter
+	private static final int MAX_COUNT = 15;
+	
+	// ** Objects **//
+	// holds the counters, sixteen to a long
+	private long[] table;
+	
+	// ** Primitives **//
+	private int tableMask;
+	private int sampleSize;
+	private int size;
+	
+	FrequencySketch()
+	{
+		ensureCapacity(16);
+	}
+	
+	/**
+	 * Grows the sketch so that it can estimate the frequency of the given number of keys. The counts are forgotten
+	 * when the sketch grows.
+	 * 
+	 * @param maximumSize
+	 */
+	void ensureCapacity(final int maximumSize)
+	{
+		int length = Integer.highestOneBit(Math.max(16, Math.min(maximumSize, 1 << 24)) - 1) << 1;
+		
+		// check to see if the table is already large enough
+		if (null != table && table.length >= length)
+		{
+			return;
+		}
+		
+		table = new long[length];
+		tableMask = length - 1;
+		sampleSize = 10 * length;
+		size = 0;
+	}
+	
+	/**
+	 * Returns the estimated number of times the key has been used, up to 15
+	 * 
+	 * @param key
+	 * @return
+	 */
+	int frequency(final String key)
+	{
+		int hash = spread(key.hashCode());
+		int start = (hash & 3) << 2;
+		int frequency = MAX_COUNT;
+		
+		for (int i = 0; i < 4; i++)
+		{
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xF);
+			frequency = Math.min(frequency, count);
+		}
+		
+		return frequency;
+	}
+	
+	/**
+	 * Records a use of the key
+	 * 
+	 * @param key
+	 */
+	void increment(final String key)
+	{
+		int hash = spread(key.hashCode());
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		
+		for (int i = 0; i < 4; i++)
+		{
+			int index = indexOf(hash, i);
+			int offset = (start + i) << 2;
+			
+			// make sure the counter has not reached its limit
+			if (((table[index] >>> offset) & 0xF) < MAX_COUNT)
+			{
+				table[index] += 1L << offset;
+				added = true;
+			}
+		}
+		
+		// age the counts once enough uses have been sampled
+		if (added && ++size == sampleSize)
+		{
+			reset();
+		}
+	}
+	
+	/**
+	 * Forgets every count
+	 */
+	void clear()
+	{
+		for (int i = 0; i < table.length; i++)
+		{
+			table[i] = 0;
+		}
+		
+		size = 0;
+	}
+	
+	/**
+	 * Halves every counter
+	 */
+	private void reset()
+	{
+		for (int i = 0; i < table.length; i++)
+		{
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		
+		size /= 2;
+	}
+	
+	/**
+	 * Returns the index in the table of the counter of the hash for the given hash function
+	 * 
+	 * @param hash
+	 * @param i
+	 * @return
+	 */
+	private int indexOf(final int hash, final int i)
+	{
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 32;
+		
+		return (int) h & tableMask;
+	}
+	
+	/**
+	 * Spreads the bits of a hash code so that similar keys do not share counters
+	 * 
+	 * @param x
+	 * @return
+	 */
+	private static int spread(final int x)
+	{
+		int h = ((x >>> 16) ^ x) * 0x45d9f3b;
+		h = ((h >>> 16) ^ h) * 0x45d9f3b;
+		
+		return (h >>> 16) ^ h;
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache.eviction;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Evicts the entry which was used least recently
+ */
+public class LruPolicy implements EvictionPolicy
+{
+	// ** Objects **//
+	// holds the weight of every entry, ordered from the least to the most recently used
+	private final LinkedHashMap<String, Integer> entries;
+	
+	// ** Primitives **//
+	private final long maximumWeight;
+	
+	public LruPolicy(final long maximumWeight)
+	{
+		// make sure the weight is valid
+		if (maximumWeight <= 0)
+		{
+			throw new IllegalArgumentException("maximumWeight must be greater than 0");
+		}
+		
+		this.maximumWeight = maximumWeight;
+		
+		entries = new LinkedHashMap<String, Integer>(16, 0.75f, true);
+	}
+	
+	@Override
+	public long getMaximumWeight()
+	{
+		return maximumWeight;
+	}
+	
+	@Override
+	public void add(final String key, final int weight)
+	{
+		entries.put(key, weight);
+	}
+	
+	@Override
+	public void update(final String key, final int weight)
+	{
+		entries.put(key, weight);
+	}
+	
+	@Override
+	public void access(final String key)
+	{
+		// reading the entry moves it to the end of the access order
+		entries.get(key);
+	}
+	
+	@Override
+	public void remove(final String key)
+	{
+		entries.remove(key);
+	}
+	
+	@Override
+	public String evict()
+	{
+		Iterator<String> iterator = entries.keySet().iterator();
+		String key = iterator.next();
+		iterator.remove();
+		
+		return key;
+	}
+	
+	@Override
+	public void clear()
+	{
+		entries.clear();
+	}
+}
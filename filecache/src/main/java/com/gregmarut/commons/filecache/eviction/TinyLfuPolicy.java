@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * <pre>
+ * Copyright (c) 2015 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Greg Marut - initial API and implementation
+ * </pre>
+ ******************************************************************************/
+package com.gregmarut.commons.filecache.eviction;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A W-TinyLFU policy. New entries enter a small LRU window. Entries which leave the window compete with the least
+ * recently used entry of the main space, and only the one which has been used more often, as estimated by a
+ * {@link FrequencySketch}, is kept. The main space is a segmented LRU: entries start on probation and are protected
+ * once they are used again. This keeps frequently used entries from being flushed out by a scan of entries which are
+ * only used once, while the window still lets a burst of new entries be cached.
+ */
+public class TinyLfuPolicy implements EvictionPolicy
+{
+	// ** Finals **//
+	// holds the share of the maximum weight which is given to the window
+	public static final double WINDOW_SHARE = 0.01;
+	
+	// holds the share of the main space which is given to protected entries
+	public static final double PROTECTED_SHARE = 0.80;
+	
+	// ** Objects **//
+	// holds the estimated frequency of every key which was used recently
+	private final FrequencySketch sketch;
+	
+	// holds the weight of the entries of each segment, ordered from the least to the most recently used
+	private final LinkedHashMap<String, Integer> window;
+	private final LinkedHashMap<String, Integer> probation;
+	private final LinkedHashMap<String, Integer> protectedEntries;
+	
+	// ** Primitives **//
+	private final long maximumWeight;
+	private final long windowMaximum;
+	private final long protectedMaximum;
+	
+	// holds the total weight of the entries of each segment
+	private long windowWeight;
+	private long probationWeight;
+	private long protectedWeight;
+	
+	public TinyLfuPolicy(final long maximumWeight)
+	{
+		// make sure the weight is valid
+		if (maximumWeight <= 0)
+		{
+			throw new IllegalArgumentException("maximumWeight must be greater than 0");
+		}
+		
+		this.maximumWeight = maximumWeight;
+		windowMaximum = Math.max(1, (long) (maximumWeight * WINDOW_SHARE));
+		protectedMaximum = (long) ((maximumWeight - windowMaximum) * PROTECTED_SHARE);
+		
+		sketch = new FrequencySketch();
+		window = new LinkedHashMap<String, Integer>(16, 0.75f, true);
+		probation = new LinkedHashMap<String, Integer>(16, 0.75f, true);
+		protectedEntries = new LinkedHashMap<String, Integer>(16, 0.75f, true);
+	}
+	
+	@Override
+	public long getMaximumWeight()
+	{
+		return maximumWeight;
+	}
+	
+	@Override
+	public void add(final String key, final int weight)
+	{
+		sketch.ensureCapacity(window.size() + probation.size() + protectedEntries.size() + 1);
+		sketch.increment(key);
+		
+		window.put(key, weight);
+		windowWeight += weight;
+		
+		// while the cache has room, entries which leave the window move to the main space without competing
+		while (windowWeight > windowMaximum && window.size() > 1
+			&& windowWeight + probationWeight + protectedWeight <= maximumWeight)
+		{
+			Map.Entry<String, Integer> eldest = removeEldest(window);
+			windowWeight -= eldest.getValue();
+			
+			probation.put(eldest.getKey(), eldest.getValue());
+			probationWeight += eldest.getValue();
+		}
+	}
+	
+	@Override
+	public void update(final String key, final int weight)
+	{
+		Integer previous;
+		
+		// replace the weight in whichever segment holds the entry
+		if (null != (previous = window.get(key)))
+		{
+			window.put(key, weight);
+			windowWeight += weight - previous;
+		}
+		else if (null != (previous = probation.get(key)))
+		{
+			probation.put(key, weight);
+			probationWeight += weight - previous;
+		}
+		else if (null != (previous = protectedEntries.get(key)))
+		{
+			protectedEntries.put(key, weight);
+			protectedWeight += weight - previous;
+		}
+		
+		access(key);
+	}
+	
+	@Override
+	public void access(final String key)
+	{
+		sketch.increment(key);
+		
+		// reading the entry moves it to the end of the access order of its segment
+		if (null != window.get(key) || null != protectedEntries.get(key))
+		{
+			return;
+		}
+		
+		// an entry on probation which is used again is protected
+		Integer weight = probation.remove(key);
+		if (null != weight)
+		{
+			probationWeight -= weight;
+			protectedEntries.put(key, weight);
+			protectedWeight += weight;
+			
+			// demote the least recently used protected entries once there are too many
+			while (protectedWeight > protectedMaximum && protectedEntries.size() > 1)
+			{
+				Map.Entry<String, Integer> eldest = removeEldest(protectedEntries);
+				protectedWeight -= eldest.getValue();
+				
+				probation.put(eldest.getKey(), eldest.getValue());
+				probationWeight += eldest.getValue();
+			}
+		}
+	}
+	
+	@Override
+	public void remove(final String key)
+	{
+		Integer weight;
+		
+		if (null != (weight = window.remove(key)))
+		{
+			windowWeight -= weight;
+		}
+		else if (null != (weight = probation.remove(key)))
+		{
+			probationWeight -= weight;
+		}
+		else if (null != (weight = protectedEntries.remove(key)))
+		{
+			protectedWeight -= weight;
+		}
+	}
+	
+	@Override
+	public String evict()
+	{
+		// check to see if the main space is empty
+		if (probation.isEmpty() && protectedEntries.isEmpty())
+		{
+			Map.Entry<String, Integer> eldest = removeEldest(window);
+			windowWeight -= eldest.getValue();
+			
+			return eldest.getKey();
+		}
+		
+		// the victim is the least recently used entry of the main space, preferring entries on probation
+		LinkedHashMap<String, Integer> victims = probation.isEmpty() ? protectedEntries : probation;
+		String victim = victims.keySet().iterator().next();
+		
+		// check to see if the window has an entry which should compete with the victim
+		if (windowWeight > windowMaximum && !window.isEmpty())
+		{
+			Map.Entry<String, Integer> candidate = removeEldest(window);
+			windowWeight -= candidate.getValue();
+			
+			// the candidate is only admitted if it has been used more often than the victim
+			if (sketch.frequency(candidate.getKey()) <= sketch.frequency(victim))
+			{
+				return candidate.getKey();
+			}
+			
+			probation.put(candidate.getKey(), candidate.getValue());
+			probationWeight += candidate.getValue();
+		}
+		
+		remove(victim);
+		return victim;
+	}
+	
+	@Override
+	public void clear()
+	{
+		window.clear();
+		probation.clear();
+		protectedEntries.clear();
+		sketch.clear();
+		
+		windowWeight = 0;
+		probationWeight = 0;
+		protectedWeight = 0;
+	}
+	
+	/**
+	 * Removes and returns the least recently used entry of the segment
+	 * 
+	 * @param segment
+	 * @return
+	 */
+	private Map.Entry<String, Integer> removeEldest(final LinkedHashMap<String, Integer> segment)
+	{
+		Iterator<Map.Entry<String, Integer>> iterator = segment.entrySet().iterator();
+		Map.Entry<String, Integer> eldest = iterator.next();
+		iterator.remove();
+		
+		return eldest;
+	}
+}
@@ -0,0 +1,145 @@
+package filecache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.gregmarut.commons.filecache.AsyncFileCache;
+import com.gregmarut.commons.filecache.InMemoryCache;
+
+public class AsyncFileCacheTest
+{
+	public static final String FILE_NAME = "text.txt";
+	public static final String FILE_CONTENT = "Hello World";
+	
+	@Test
+	public void readWriteTest() throws Exception
+	{
+		AsyncFileCache cache = new AsyncFileCache(new InMemoryCache());
+		
+		try
+		{
+			cache.saveAsync(FILE_NAME, FILE_CONTENT.getBytes()).get(10, TimeUnit.SECONDS);
+			Assert.assertEquals(FILE_CONTENT, new String(cache.loadAsync(FILE_NAME).get(10, TimeUnit.SECONDS)));
+			
+			cache.deleteAsync(FILE_NAME).get(10, TimeUnit.SECONDS);
+			Assert.assertFalse(cache.getCache().exists(FILE_NAME));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+	
+	@Test
+	public void coalescedLoadTest() throws Exception
+	{
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger reads = new AtomicInteger();
+		
+		InMemoryCache slowCache = new InMemoryCache()
+		{
+			@Override
+			public byte[] load(final String relativePath)
+			{
+				reads.incrementAndGet();
+				
+				try
+				{
+					release.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				
+				return super.load(relativePath);
+			}
+		};
+		slowCache.save(FILE_NAME, FILE_CONTENT.getBytes());
+		
+		ExecutorService executor = Executors.newCachedThreadPool();
+		AsyncFileCache cache = new AsyncFileCache(slowCache, executor);
+		
+		// the loads which arrive while the first is reading wait for it instead of reading again
+		CompletableFuture<byte[]> first = cache.loadAsync(FILE_NAME);
+		CompletableFuture<byte[]> second = cache.loadAsync(FILE_NAME);
+		CompletableFuture<byte[]> third = cache.loadAsync(FILE_NAME);
+		Assert.assertEquals(1, cache.getPendingLoads());
+		
+		// a waiter who cancels does not cancel the load of the others
+		third.cancel(true);
+		release.countDown();
+		
+		Assert.assertEquals(FILE_CONTENT, new String(first.get(10, TimeUnit.SECONDS)));
+		Assert.assertEquals(FILE_CONTENT, new String(second.get(10, TimeUnit.SECONDS)));
+		Assert.assertEquals(1, reads.get());
+		Assert.assertEquals(0, cache.getPendingLoads());
+		
+		// a load after the first is finished reads again
+		cache.loadAsync(FILE_NAME).get(10, TimeUnit.SECONDS);
+		Assert.assertEquals(2, reads.get());
+		
+		executor.shutdown();
+	}
+	
+	@Test
+	public void failedLoadTest() throws Exception
+	{
+		AsyncFileCache cache = new AsyncFileCache(new InMemoryCache()
+		{
+			@Override
+			public byte[] load(final String relativePath)
+			{
+				throw new IllegalStateException();
+			}
+		});
+		
+		try
+		{
+			cache.loadAsync(FILE_NAME).get(10, TimeUnit.SECONDS);
+			Assert.fail();
+		}
+		catch (ExecutionException e)
+		{
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+	
+	@Test
+	public void rejectedLoadTest() throws Exception
+	{
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		AsyncFileCache cache = new AsyncFileCache(new InMemoryCache(), executor);
+		executor.shutdown();
+		
+		// a load which the executor refuses fails and is not kept for later loads to join
+		for (int i = 0; i < 2; i++)
+		{
+			try
+			{
+				cache.loadAsync(FILE_NAME).get(10, TimeUnit.SECONDS);
+				Assert.fail();
+			}
+			catch (ExecutionException e)
+			{
+				Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+			}
+			
+			Assert.assertEquals(0, cache.getPendingLoads());
+		}
+	}
+}
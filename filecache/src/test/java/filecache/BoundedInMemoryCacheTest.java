@@ -0,0 +1,141 @@
+package filecache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.gregmarut.commons.filecache.BoundedInMemoryCache;
+import com.gregmarut.commons.filecache.CacheStats;
+import com.gregmarut.commons.filecache.EvictionListener;
+import com.gregmarut.commons.filecache.eviction.LruPolicy;
+import com.gregmarut.commons.filecache.eviction.TinyLfuPolicy;
+
+public class BoundedInMemoryCacheTest
+{
+	@Test
+	public void lruTest()
+	{
+		BoundedInMemoryCache cache = new BoundedInMemoryCache(new LruPolicy(300));
+		
+		final List<String> evicted = new ArrayList<String>();
+		cache.addEvictionListener(new EvictionListener()
+		{
+			@Override
+			public void entryEvicted(String relativePath, byte[] data)
+			{
+				evicted.add(relativePath);
+			}
+		});
+		
+		cache.save("a", new byte[100]);
+		cache.save("b", new byte[100]);
+		cache.save("c", new byte[100]);
+		
+		// reading a makes b the least recently used entry
+		Assert.assertNotNull(cache.load("a"));
+		cache.save("d", new byte[100]);
+		
+		Assert.assertEquals(1, evicted.size());
+		Assert.assertEquals("b", evicted.get(0));
+		Assert.assertFalse(cache.exists("b"));
+		Assert.assertEquals(300, cache.getWeight());
+		
+		// one large entry can push out several small ones
+		cache.save("e", new byte[250]);
+		Assert.assertTrue(cache.getWeight() <= 300);
+		Assert.assertTrue(cache.exists("e"));
+		
+		CacheStats stats = cache.getStats();
+		Assert.assertEquals(1, stats.getHitCount());
+		Assert.assertEquals(evicted.size(), stats.getEvictionCount());
+	}
+	
+	@Test
+	public void oversizedTest()
+	{
+		BoundedInMemoryCache cache = new BoundedInMemoryCache(new LruPolicy(100));
+		cache.save("a", new byte[10]);
+		
+		// data larger than the whole cache is never kept, and does not leave the old value behind
+		cache.save("a", new byte[101]);
+		Assert.assertFalse(cache.exists("a"));
+		Assert.assertNull(cache.load("a"));
+		Assert.assertEquals(0, cache.getWeight());
+		Assert.assertEquals(1, cache.getStats().getMissCount());
+	}
+	
+	@Test
+	public void replaceTest()
+	{
+		BoundedInMemoryCache cache = new BoundedInMemoryCache(200);
+		cache.save("a", new byte[100]);
+		cache.save("a", new byte[50]);
+		
+		Assert.assertEquals(50, cache.getWeight());
+		Assert.assertEquals(50, cache.load("a").length);
+		
+		cache.delete("a");
+		Assert.assertEquals(0, cache.getWeight());
+		Assert.assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void folderDeleteTest()
+	{
+		BoundedInMemoryCache cache = new BoundedInMemoryCache(1000);
+		cache.save("dir", new byte[10]);
+		cache.save("dir/a", new byte[20]);
+		cache.save("dir/sub/b", new byte[30]);
+		cache.save("dir-a", new byte[40]);
+		cache.save("dir0", new byte[50]);
+		
+		// the folder goes along with the entry, but entries which only share its prefix stay
+		cache.delete("dir");
+		Assert.assertFalse(cache.exists("dir"));
+		Assert.assertFalse(cache.exists("dir/a"));
+		Assert.assertFalse(cache.exists("dir/sub/b"));
+		Assert.assertTrue(cache.exists("dir-a"));
+		Assert.assertTrue(cache.exists("dir0"));
+		Assert.assertEquals(90, cache.getWeight());
+	}
+	
+	@Test
+	public void scanResistanceTest()
+	{
+		final int entries = 100;
+		final int size = 100;
+		
+		BoundedInMemoryCache lru = new BoundedInMemoryCache(new LruPolicy(entries * size));
+		BoundedInMemoryCache tinyLfu = new BoundedInMemoryCache(new TinyLfuPolicy(entries * size));
+		
+		for (BoundedInMemoryCache cache : new BoundedInMemoryCache[] { lru, tinyLfu })
+		{
+			for (int round = 0; round < 20; round++)
+			{
+				// a hot set which fits in half of the cache is used over and over
+				for (int i = 0; i < entries / 2; i++)
+				{
+					String key = "hot" + i;
+					if (null == cache.load(key))
+					{
+						cache.save(key, new byte[size]);
+					}
+				}
+				
+				// and a scan of entries which are only used once passes through the cache
+				for (int i = 0; i < entries; i++)
+				{
+					cache.save("scan" + round + "_" + i, new byte[size]);
+				}
+			}
+		}
+		
+		// the scan flushes the hot set out of the LRU cache every time, but not out of the W-TinyLFU cache
+		Assert.assertTrue(lru.getStats().getHitRate() < 0.1);
+		Assert.assertTrue(tinyLfu.getStats().getHitRate() > 0.8);
+		Assert.assertTrue(tinyLfu.getWeight() <= tinyLfu.getMaximumWeight());
+	}
+}
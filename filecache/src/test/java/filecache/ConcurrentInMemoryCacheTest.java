@@ -0,0 +1,167 @@
+package filecache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.gregmarut.commons.filecache.CacheException;
+import com.gregmarut.commons.filecache.CacheLoader;
+import com.gregmarut.commons.filecache.ConcurrentInMemoryCache;
+
+public class ConcurrentInMemoryCacheTest
+{
+	private static final int THREADS = 16;
+	
+	@Test
+	public void concurrentTest() throws Exception
+	{
+		final ConcurrentInMemoryCache cache = new ConcurrentInMemoryCache();
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		
+		try
+		{
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < THREADS; i++)
+			{
+				final int thread = i;
+				results.add(executor.submit(new Callable<Boolean>()
+				{
+					@Override
+					public Boolean call() throws Exception
+					{
+						// every thread saves and reads back its own entries while the others do the same
+						for (int j = 0; j < 1000; j++)
+						{
+							String key = thread + "/" + j;
+							cache.save(key, key.getBytes());
+							
+							if (!key.equals(new String(cache.load(key))))
+							{
+								return false;
+							}
+						}
+						
+						return true;
+					}
+				}));
+			}
+			
+			for (Future<Boolean> result : results)
+			{
+				Assert.assertTrue(result.get());
+			}
+			
+			Assert.assertEquals(THREADS * 1000, cache.size());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void singleFlightTest() throws Exception
+	{
+		final ConcurrentInMemoryCache cache = new ConcurrentInMemoryCache();
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		
+		final CacheLoader loader = new CacheLoader()
+		{
+			@Override
+			public byte[] load(String relativePath) throws CacheException
+			{
+				loads.incrementAndGet();
+				
+				try
+				{
+					// give the other threads time to ask for the same entry
+					Thread.sleep(200);
+				}
+				catch (InterruptedException e)
+				{
+					throw new CacheException(e);
+				}
+				
+				return relativePath.getBytes();
+			}
+		};
+		
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		
+		try
+		{
+			List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+			for (int i = 0; i < THREADS; i++)
+			{
+				results.add(executor.submit(new Callable<byte[]>()
+				{
+					@Override
+					public byte[] call() throws Exception
+					{
+						start.await();
+						return cache.load("entry", loader);
+					}
+				}));
+			}
+			
+			start.countDown();
+			
+			for (Future<byte[]> result : results)
+			{
+				Assert.assertEquals("entry", new String(result.get()));
+			}
+			
+			// only one thread built the entry
+			Assert.assertEquals(1, loads.get());
+			Assert.assertEquals("entry", new String(cache.load("entry")));
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void failedLoadTest() throws CacheException
+	{
+		ConcurrentInMemoryCache cache = new ConcurrentInMemoryCache();
+		
+		try
+		{
+			cache.load("entry", new CacheLoader()
+			{
+				@Override
+				public byte[] load(String relativePath) throws CacheException
+				{
+					throw new CacheException();
+				}
+			});
+			Assert.fail();
+		}
+		catch (CacheException e)
+		{
+			// expected
+		}
+		
+		// nothing was cached, so the next load tries again
+		Assert.assertFalse(cache.exists("entry"));
+		Assert.assertEquals("ok", new String(cache.load("entry", new CacheLoader()
+		{
+			@Override
+			public byte[] load(String relativePath)
+			{
+				return "ok".getBytes();
+			}
+		})));
+	}
+}
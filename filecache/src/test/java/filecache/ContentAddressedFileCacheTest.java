@@ -0,0 +1,211 @@
+package filecache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.gregmarut.commons.filecache.CacheException;
+import com.gregmarut.commons.filecache.ContentAddressedFileCache;
+import com.gregmarut.commons.filecache.IllegalFileException;
+
+public class ContentAddressedFileCacheTest
+{
+	public static final String ROOT = "target/contentAddressedFileCache";
+	public static final String FILE_CONTENT = "Hello World";
+	
+	@Test
+	public void deduplicationTest() throws CacheException
+	{
+		ContentAddressedFileCache cache = new ContentAddressedFileCache(new File(ROOT, "dedup"));
+		cache.clear();
+		
+		// the same data under two keys is stored once
+		cache.save("a/image.png", FILE_CONTENT.getBytes());
+		cache.save("b/image.png", FILE_CONTENT.getBytes());
+		cache.save("c.txt", "other".getBytes());
+		
+		String hash = ContentAddressedFileCache.hash(FILE_CONTENT.getBytes());
+		Assert.assertEquals(hash, cache.getHash("a/image.png"));
+		Assert.assertEquals(2, cache.getReferenceCount(hash));
+		Assert.assertEquals(2, cache.getBlobCount());
+		Assert.assertTrue(cache.containsContent(FILE_CONTENT.getBytes()));
+		Assert.assertEquals(FILE_CONTENT, new String(cache.load("b/image.png")));
+		
+		// the blob is kept until the last key which refers to it is gone
+		cache.delete("a");
+		Assert.assertFalse(cache.exists("a/image.png"));
+		Assert.assertEquals(1, cache.getReferenceCount(hash));
+		Assert.assertEquals(FILE_CONTENT, new String(cache.load("b/image.png")));
+		
+		cache.save("b/image.png", "new".getBytes());
+		Assert.assertFalse(cache.containsHash(hash));
+		Assert.assertEquals(2, cache.getBlobCount());
+	}
+	
+	@Test
+	public void normalizedKeyTest() throws CacheException
+	{
+		ContentAddressedFileCache cache = new ContentAddressedFileCache(new File(ROOT, "normalized"));
+		cache.clear();
+		
+		// every spelling of the same path is the same key
+		cache.save("/dir/a.txt", FILE_CONTENT.getBytes());
+		cache.save("dir/b/../a.txt", FILE_CONTENT.getBytes());
+		Assert.assertEquals(1, cache.size());
+		Assert.assertEquals(1, cache.getReferenceCount(ContentAddressedFileCache.hash(FILE_CONTENT.getBytes())));
+		Assert.assertEquals(FILE_CONTENT, new String(cache.load("dir/a.txt")));
+		Assert.assertTrue(cache.exists("/dir"));
+		
+		cache.delete("/dir/a.txt");
+		Assert.assertFalse(cache.exists("dir/a.txt"));
+		Assert.assertEquals(0, cache.getBlobCount());
+		
+		// a key above the root is refused
+		try
+		{
+			cache.save("../outside.txt", FILE_CONTENT.getBytes());
+			Assert.fail();
+		}
+		catch (IllegalFileException e)
+		{
+			// expected
+		}
+	}
+	
+	@Test
+	public void concurrentLoadTest() throws Exception
+	{
+		final ContentAddressedFileCache cache = new ContentAddressedFileCache(new File(ROOT, "concurrent"));
+		cache.clear();
+		
+		// holds the first error or unexpected value of the reader
+		final AtomicReference<Object> error = new AtomicReference<Object>();
+		
+		// keep replacing and deleting the entry, which deletes the blob that a load may be about to read
+		Thread writer = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					for (int i = 0; i < 500; i++)
+					{
+						cache.save("entry", ("v" + (i % 2)).getBytes());
+						
+						if (i % 5 == 0)
+						{
+							cache.delete("entry");
+						}
+					}
+				}
+				catch (Throwable e)
+				{
+					error.compareAndSet(null, e);
+				}
+			}
+		};
+		writer.start();
+		
+		// every load finds the old data, the new data or nothing, but never a missing blob
+		while (writer.isAlive())
+		{
+			byte[] data = cache.load("entry");
+			if (null != data && !"v0".equals(new String(data)) && !"v1".equals(new String(data)))
+			{
+				error.compareAndSet(null, new String(data));
+			}
+		}
+		
+		writer.join();
+		Assert.assertNull(error.get());
+	}
+	
+	@Test
+	public void concurrentSaveTest() throws Exception
+	{
+		final ContentAddressedFileCache cache = new ContentAddressedFileCache(new File(ROOT, "concurrentSave"));
+		cache.clear();
+		
+		// holds the first error of the writers
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		
+		// save the same data under several keys while deleting them, which deletes the blob that a save may be writing
+		Thread[] writers = new Thread[4];
+		for (int t = 0; t < writers.length; t++)
+		{
+			final String key = "key" + t;
+			writers[t] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						for (int i = 0; i < 200; i++)
+						{
+							cache.save(key, FILE_CONTENT.getBytes());
+							
+							if (i % 3 == 0)
+							{
+								cache.delete(key);
+							}
+						}
+						
+						cache.save(key, FILE_CONTENT.getBytes());
+					}
+					catch (Throwable e)
+					{
+						error.compareAndSet(null, e);
+					}
+				}
+			};
+			writers[t].start();
+		}
+		
+		for (Thread writer : writers)
+		{
+			writer.join();
+		}
+		Assert.assertNull(error.get());
+		
+		// every key still finds the single blob of the data
+		for (int t = 0; t < writers.length; t++)
+		{
+			Assert.assertEquals(FILE_CONTENT, new String(cache.load("key" + t)));
+		}
+		Assert.assertEquals(1, cache.getBlobCount());
+		Assert.assertEquals(writers.length,
+			cache.getReferenceCount(ContentAddressedFileCache.hash(FILE_CONTENT.getBytes())));
+	}
+	
+	@Test
+	public void rebuildTest() throws CacheException, IOException
+	{
+		File root = new File(ROOT, "rebuild");
+		ContentAddressedFileCache cache = new ContentAddressedFileCache(root);
+		cache.clear();
+		
+		cache.save("one", FILE_CONTENT.getBytes());
+		cache.save("two", FILE_CONTENT.getBytes());
+		cache.save("three", "other".getBytes());
+		
+		// a blob without a reference, as a crash between the two writes would leave, is removed on startup
+		String orphan = ContentAddressedFileCache.hash("orphan".getBytes());
+		File orphanFile = new File(root, ContentAddressedFileCache.BLOBS_FOLDER + "/" + orphan.substring(0, 2) + "/"
+			+ orphan.substring(2));
+		orphanFile.getParentFile().mkdirs();
+		Files.write(orphanFile.toPath(), "orphan".getBytes());
+		
+		cache = new ContentAddressedFileCache(root);
+		Assert.assertEquals(3, cache.size());
+		Assert.assertEquals(2, cache.getReferenceCount(ContentAddressedFileCache.hash(FILE_CONTENT.getBytes())));
+		Assert.assertEquals("other", new String(cache.load("three")));
+		Assert.assertFalse(orphanFile.exists());
+	}
+}
@@ -0,0 +1,140 @@
+package filecache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.gregmarut.commons.encryption.AESEncryption;
+import com.gregmarut.commons.encryption.ConcurrentEncryption;
+import com.gregmarut.commons.encryption.Encryption;
+import com.gregmarut.commons.encryption.EncryptionException;
+import com.gregmarut.commons.filecache.BulkResult;
+import com.gregmarut.commons.filecache.CacheException;
+import com.gregmarut.commons.filecache.EncryptedFileSystemCache;
+import com.gregmarut.commons.filecache.FileCache;
+import com.gregmarut.commons.filecache.MappedEntry;
+
+public class EncryptedFileSystemCacheTest
+{
+	public static final String ROOT = "target/encryptedFileCache";
+	public static final String FILE_NAME = "data.bin";
+	
+	private static final byte[] KEY = "0123456789abcdef".getBytes();
+	
+	@Test
+	public void readWriteLargeFileTest() throws CacheException, EncryptionException, IOException
+	{
+		Encryption encryption = new AESEncryption(KEY);
+		FileCache fileCache = new EncryptedFileSystemCache(new File(ROOT), encryption);
+		
+		byte[] data = new byte[3 * 1024 * 1024 + 5];
+		new Random(1).nextBytes(data);
+		
+		fileCache.save(FILE_NAME, data);
+		
+		// the file on disk holds the encrypted data
+		byte[] stored = FileUtils.readFileToByteArray(new File(ROOT, FILE_NAME));
+		Assert.assertTrue(Arrays.equals(encryption.encrypt(data), stored));
+		
+		Assert.assertTrue(Arrays.equals(data, fileCache.load(FILE_NAME)));
+	}
+	
+	@Test
+	public void corruptFileTest() throws CacheException, EncryptionException, IOException
+	{
+		FileCache fileCache = new EncryptedFileSystemCache(new File(ROOT), new AESEncryption(KEY));
+		
+		// a file which cannot be decrypted is treated as missing
+		FileUtils.writeByteArrayToFile(new File(ROOT, FILE_NAME), new byte[17]);
+		Assert.assertNull(fileCache.load(FILE_NAME));
+		Assert.assertNull(fileCache.load("missing.bin"));
+	}
+	
+	@Test
+	public void mappedLoadTest() throws CacheException, EncryptionException
+	{
+		EncryptedFileSystemCache fileCache = new EncryptedFileSystemCache(new File(ROOT), new AESEncryption(KEY));
+		
+		byte[] data = new byte[200000];
+		new Random(2).nextBytes(data);
+		fileCache.save(FILE_NAME, data);
+		
+		// the mapped entry holds the decrypted data
+		MappedEntry entry = fileCache.loadMapped(FILE_NAME);
+		Assert.assertTrue(Arrays.equals(data, entry.toByteArray()));
+		entry.close();
+	}
+	
+	@Test
+	public void streamingTest() throws CacheException, EncryptionException, IOException
+	{
+		EncryptedFileSystemCache fileCache = new EncryptedFileSystemCache(new File(ROOT), new AESEncryption(KEY));
+		
+		byte[] data = new byte[3 * 1024 * 1024 + 5];
+		new Random(3).nextBytes(data);
+		
+		// the entry is written from a channel and read back to one without holding it in a byte array
+		ReadableByteChannel source = Channels.newChannel(new ByteArrayInputStream(data));
+		Assert.assertEquals(data.length, fileCache.save("stream/" + FILE_NAME, source));
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Assert.assertEquals(data.length, fileCache.load("stream/" + FILE_NAME, Channels.newChannel(out)));
+		Assert.assertTrue(Arrays.equals(data, out.toByteArray()));
+		
+		// the stream overloads agree with the byte array ones
+		fileCache.save("stream/small", new ByteArrayInputStream(data, 0, 100));
+		InputStream in = fileCache.openInputStream("stream/small");
+		try
+		{
+			Assert.assertTrue(Arrays.equals(Arrays.copyOf(data, 100), IOUtils.toByteArray(in)));
+		}
+		finally
+		{
+			in.close();
+		}
+		
+		Assert.assertTrue(Arrays.equals(Arrays.copyOf(data, 100), fileCache.load("stream/small")));
+	}
+	
+	@Test
+	public void bulkTest() throws CacheException, EncryptionException
+	{
+		EncryptedFileSystemCache fileCache = new EncryptedFileSystemCache(new File(ROOT, "bulk"),
+			new ConcurrentEncryption(KEY, "AES"));
+		
+		Map<String, byte[]> entries = new HashMap<String, byte[]>();
+		Random random = new Random(4);
+		for (int i = 0; i < 40; i++)
+		{
+			byte[] data = new byte[random.nextInt(5000)];
+			random.nextBytes(data);
+			entries.put(i + "/" + FILE_NAME, data);
+		}
+		
+		Assert.assertTrue(fileCache.saveAll(entries).isSuccessful());
+		
+		// every file is decrypted, whichever thread read it
+		BulkResult<byte[]> loaded = fileCache.loadAll(entries.keySet());
+		Assert.assertTrue(loaded.isSuccessful());
+		
+		for (Map.Entry<String, byte[]> entry : entries.entrySet())
+		{
+			Assert.assertTrue(Arrays.equals(entry.getValue(), loaded.get(entry.getKey())));
+			Assert.assertTrue(Arrays.equals(entry.getValue(), fileCache.load(entry.getKey())));
+		}
+	}
+}
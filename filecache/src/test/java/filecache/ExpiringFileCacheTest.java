@@ -0,0 +1,336 @@
+package filecache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.gregmarut.commons.filecache.CacheException;
+import com.gregmarut.commons.filecache.CacheLoader;
+import com.gregmarut.commons.filecache.ConcurrentInMemoryCache;
+import com.gregmarut.commons.filecache.ExpiringFileCache;
+import com.gregmarut.commons.filecache.FileSystemCache;
+
+public class ExpiringFileCacheTest
+{
+	public static final String ROOT = "target/expiringFileCache";
+	public static final String FILE_NAME = "text.txt";
+	public static final String FILE_CONTENT = "Hello World";
+	
+	@Test
+	public void lazyExpiryTest() throws CacheException
+	{
+		final AtomicLong clock = new AtomicLong(1000);
+		FileSystemCache fileCache = new FileSystemCache(new File(ROOT, "lazy"));
+		ExpiringFileCache cache = new ExpiringFileCache(fileCache, 10, TimeUnit.SECONDS)
+		{
+			@Override
+			protected long now()
+			{
+				return clock.get();
+			}
+		};
+		
+		try
+		{
+			cache.save(FILE_NAME, FILE_CONTENT.getBytes());
+			cache.save("long.txt", FILE_CONTENT.getBytes(), 1, TimeUnit.HOURS);
+			Assert.assertEquals(FILE_CONTENT, new String(cache.load(FILE_NAME)));
+			
+			// the expiry is stored with the entry, so a new instance sees it as well
+			clock.addAndGet(TimeUnit.SECONDS.toMillis(11));
+			ExpiringFileCache reopened = new ExpiringFileCache(fileCache)
+			{
+				@Override
+				protected long now()
+				{
+					return clock.get();
+				}
+			};
+			
+			Assert.assertFalse(reopened.exists(FILE_NAME));
+			Assert.assertNull(reopened.load(FILE_NAME));
+			reopened.close();
+			
+			// the expired entry was deleted when it was read
+			Assert.assertFalse(fileCache.exists(FILE_NAME));
+			Assert.assertEquals(FILE_CONTENT, new String(cache.load("long.txt")));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+	
+	@Test
+	public void backgroundExpiryTest() throws Exception
+	{
+		ConcurrentInMemoryCache memory = new ConcurrentInMemoryCache();
+		ExpiringFileCache cache = new ExpiringFileCache(memory);
+		
+		try
+		{
+			cache.save(FILE_NAME, FILE_CONTENT.getBytes(), 50, TimeUnit.MILLISECONDS);
+			cache.save("kept.txt", FILE_CONTENT.getBytes());
+			
+			// the entry is removed without being read
+			long deadline = System.currentTimeMillis() + 5000;
+			while (memory.exists(FILE_NAME) && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(10);
+			}
+			
+			Assert.assertFalse(memory.exists(FILE_NAME));
+			Assert.assertTrue(cache.exists("kept.txt"));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+	
+	@Test
+	public void resavedExpiryTest() throws Exception
+	{
+		ConcurrentInMemoryCache memory = new ConcurrentInMemoryCache();
+		ExpiringFileCache cache = new ExpiringFileCache(memory);
+		
+		try
+		{
+			// an entry which is saved again with a longer time to live is kept past its first expiry
+			cache.save(FILE_NAME, FILE_CONTENT.getBytes(), 50, TimeUnit.MILLISECONDS);
+			cache.save(FILE_NAME, FILE_CONTENT.getBytes(), 1, TimeUnit.HOURS);
+			Thread.sleep(300);
+			Assert.assertTrue(memory.exists(FILE_NAME));
+			
+			// a shorter time to live is still honored while the longer expiry is queued
+			cache.save(FILE_NAME, FILE_CONTENT.getBytes(), 50, TimeUnit.MILLISECONDS);
+			
+			long deadline = System.currentTimeMillis() + 5000;
+			while (memory.exists(FILE_NAME) && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(10);
+			}
+			
+			Assert.assertFalse(memory.exists(FILE_NAME));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+	
+	@Test
+	public void neverExpiryTest() throws Exception
+	{
+		final AtomicLong clock = new AtomicLong(1000);
+		final AtomicReference<Runnable> onLoad = new AtomicReference<Runnable>();
+		
+		// a delegate which lets the test save the entry again while a load is reading the old one
+		ConcurrentInMemoryCache memory = new ConcurrentInMemoryCache()
+		{
+			@Override
+			public byte[] load(final String relativePath)
+			{
+				byte[] data = super.load(relativePath);
+				
+				Runnable runnable = onLoad.getAndSet(null);
+				if (null != runnable)
+				{
+					runnable.run();
+				}
+				
+				return data;
+			}
+		};
+		
+		final ExpiringFileCache cache = new ExpiringFileCache(memory)
+		{
+			@Override
+			protected long now()
+			{
+				return clock.get();
+			}
+		};
+		
+		try
+		{
+			cache.save(FILE_NAME, "old".getBytes(), 10, TimeUnit.SECONDS);
+			clock.addAndGet(TimeUnit.SECONDS.toMillis(11));
+			
+			// an entry which never expires is saved after the load found the old entry expired
+			onLoad.set(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						cache.save(FILE_NAME, FILE_CONTENT.getBytes());
+					}
+					catch (CacheException e)
+					{
+						throw new IllegalStateException(e);
+					}
+				}
+			});
+			Assert.assertNull(cache.load(FILE_NAME));
+			
+			// the expiry of the old entry must not delete the new one
+			Assert.assertTrue(cache.exists(FILE_NAME));
+			Assert.assertEquals(FILE_CONTENT, new String(cache.load(FILE_NAME)));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+	
+	@Test
+	public void singleLoadTest() throws Exception
+	{
+		final ExpiringFileCache cache = new ExpiringFileCache(new ConcurrentInMemoryCache());
+		
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		final CacheLoader loader = new CacheLoader()
+		{
+			@Override
+			public byte[] load(final String relativePath) throws CacheException
+			{
+				try
+				{
+					release.await();
+				}
+				catch (InterruptedException e)
+				{
+					throw new CacheException(e);
+				}
+				
+				return ("v" + loads.incrementAndGet()).getBytes();
+			}
+		};
+		
+		// holds the first error or unexpected value of any of the threads
+		final AtomicReference<Object> error = new AtomicReference<Object>();
+		
+		try
+		{
+			// several threads ask for the same missing entry, some of them while it is being saved
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int i = 0; i < 8; i++)
+			{
+				Thread thread = new Thread()
+				{
+					@Override
+					public void run()
+					{
+						try
+						{
+							String value = new String(cache.load(FILE_NAME, loader));
+							if (!"v1".equals(value))
+							{
+								error.compareAndSet(null, value);
+							}
+						}
+						catch (Throwable e)
+						{
+							error.compareAndSet(null, e);
+						}
+					}
+				};
+				thread.start();
+				threads.add(thread);
+				
+				if (i == 3)
+				{
+					release.countDown();
+				}
+			}
+			
+			for (Thread thread : threads)
+			{
+				thread.join();
+			}
+			
+			// the loader ran once and every thread got its result
+			Assert.assertNull(error.get());
+			Assert.assertEquals(1, loads.get());
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+	
+	@Test
+	public void staleWhileRevalidateTest() throws Exception
+	{
+		final AtomicLong clock = new AtomicLong(1000);
+		ExpiringFileCache cache = new ExpiringFileCache(new ConcurrentInMemoryCache(), 10, TimeUnit.SECONDS)
+		{
+			@Override
+			protected long now()
+			{
+				return clock.get();
+			}
+		};
+		cache.setStalePeriod(1, TimeUnit.MINUTES);
+		
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		CacheLoader loader = new CacheLoader()
+		{
+			@Override
+			public byte[] load(final String relativePath) throws CacheException
+			{
+				try
+				{
+					release.await();
+				}
+				catch (InterruptedException e)
+				{
+					throw new CacheException(e);
+				}
+				
+				return ("v" + loads.incrementAndGet()).getBytes();
+			}
+		};
+		
+		try
+		{
+			cache.save(FILE_NAME, "v0".getBytes());
+			clock.addAndGet(TimeUnit.SECONDS.toMillis(20));
+			
+			// the stale value is served while a single refresh runs in the background
+			Assert.assertEquals("v0", new String(cache.load(FILE_NAME, loader)));
+			Assert.assertEquals("v0", new String(cache.load(FILE_NAME, loader)));
+			release.countDown();
+			
+			long deadline = System.currentTimeMillis() + 5000;
+			while (!"v1".equals(new String(cache.load(FILE_NAME, loader))) && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(10);
+			}
+			
+			Assert.assertEquals("v1", new String(cache.load(FILE_NAME, loader)));
+			Assert.assertEquals(1, loads.get());
+			
+			// an entry which is past its stale period is loaded before it is returned
+			clock.addAndGet(TimeUnit.MINUTES.toMillis(5));
+			Assert.assertEquals("v2", new String(cache.load(FILE_NAME, loader)));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+}
@@ -1,16 +1,42 @@
 package filecache;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.Assert;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
+import com.gregmarut.commons.filecache.BackgroundDeleter;
+import com.gregmarut.commons.filecache.BulkResult;
 import com.gregmarut.commons.filecache.CacheException;
+import com.gregmarut.commons.filecache.DirectoryLayout;
+import com.gregmarut.commons.filecache.DurabilityPolicy;
 import com.gregmarut.commons.filecache.FileCache;
 import com.gregmarut.commons.filecache.FileSystemCache;
+import com.gregmarut.commons.filecache.FlatLayout;
+import com.gregmarut.commons.filecache.HashedLayout;
 import com.gregmarut.commons.filecache.IllegalFileException;
+import com.gregmarut.commons.filecache.IndexMode;
+import com.gregmarut.commons.filecache.LayoutMigrator;
+import com.gregmarut.commons.filecache.MappedEntry;
 
 public class FileSystemCacheTest
 {
@@ -69,4 +95,442 @@ public class FileSystemCacheTest
 		// load the file from disk
 		fileCache.load(fileName);
 	}
+	
+	@Test
+	public void mappedLoadTest() throws CacheException
+	{
+		FileSystemCache fileCache = new FileSystemCache(root);
+		
+		// one file which is read into a pooled buffer and one which is mapped
+		byte[] small = new byte[100];
+		byte[] large = new byte[FileSystemCache.DEFAULT_MAP_THRESHOLD * 4];
+		new Random(1).nextBytes(small);
+		new Random(2).nextBytes(large);
+		
+		fileCache.save("small.bin", small);
+		fileCache.save("large.bin", large);
+		
+		for (byte[] data : new byte[][] { small, large })
+		{
+			MappedEntry entry = fileCache.loadMapped(data == small ? "small.bin" : "large.bin");
+			
+			try
+			{
+				ByteBuffer buffer = entry.getBuffer();
+				Assert.assertTrue(buffer.isReadOnly());
+				Assert.assertTrue(buffer.isDirect());
+				Assert.assertEquals(data.length, entry.size());
+				Assert.assertTrue(Arrays.equals(data, entry.toByteArray()));
+			}
+			finally
+			{
+				entry.close();
+			}
+			
+			// the buffer cannot be used once the entry is closed
+			try
+			{
+				entry.getBuffer();
+				Assert.fail();
+			}
+			catch (IllegalStateException e)
+			{
+				// expected
+			}
+		}
+		
+		// a pooled buffer is reused by the next small load
+		fileCache.save("other.bin", FILE_CONTENT.getBytes());
+		MappedEntry entry = fileCache.loadMapped("other.bin");
+		Assert.assertEquals(FILE_CONTENT, new String(entry.toByteArray()));
+		entry.close();
+	}
+	
+	@Test(expected = CacheException.class)
+	public void mappedMissingTest() throws CacheException
+	{
+		new FileSystemCache(root).loadMapped("missing.bin");
+	}
+	
+	@Test
+	public void durabilityTest() throws CacheException
+	{
+		for (DurabilityPolicy policy : DurabilityPolicy.values())
+		{
+			File folder = new File(root, "durability/" + policy);
+			FileSystemCache fileCache = new FileSystemCache(folder);
+			fileCache.setDurabilityPolicy(policy);
+			
+			// an entry which is saved again is replaced as a whole
+			fileCache.save(FILE_NAME, "a much longer first version".getBytes());
+			fileCache.save(FILE_NAME, FILE_CONTENT.getBytes());
+			Assert.assertEquals(FILE_CONTENT, new String(fileCache.load(FILE_NAME)));
+			
+			assertNoTempFiles(folder);
+		}
+	}
+	
+	@Test
+	public void groupCommitTest() throws Exception
+	{
+		final File folder = new File(root, "groupCommit");
+		final FileSystemCache fileCache = new FileSystemCache(folder);
+		fileCache.setDurabilityPolicy(DurabilityPolicy.GROUP_COMMIT);
+		
+		// holds the first error of any of the writers
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++)
+		{
+			final int thread = t;
+			threads[t] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						for (int i = 0; i < 20; i++)
+						{
+							fileCache.save("dir" + (i % 2) + "/" + thread + "-" + i, Integer.toString(i).getBytes());
+						}
+					}
+					catch (Throwable e)
+					{
+						error.compareAndSet(null, e);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		
+		Assert.assertNull(error.get());
+		for (int t = 0; t < threads.length; t++)
+		{
+			for (int i = 0; i < 20; i++)
+			{
+				Assert.assertEquals(Integer.toString(i), new String(fileCache.load("dir" + (i % 2) + "/" + t + "-" + i)));
+			}
+		}
+		
+		assertNoTempFiles(folder);
+	}
+	
+	@Test
+	public void indexTest() throws CacheException
+	{
+		for (IndexMode mode : IndexMode.values())
+		{
+			File folder = new File(root, "index/" + mode);
+			
+			FileSystemCache fileCache = new FileSystemCache(folder, mode);
+			fileCache.clear();
+			fileCache.save("dir/sub/" + FILE_NAME, FILE_CONTENT.getBytes());
+			fileCache.save("/other.txt", FILE_CONTENT.getBytes());
+			
+			// paths which name the same file share a key
+			Assert.assertTrue(mode.toString(), fileCache.exists("dir/sub/" + FILE_NAME));
+			Assert.assertTrue(mode.toString(), fileCache.exists("dir//sub/./" + FILE_NAME));
+			Assert.assertTrue(mode.toString(), fileCache.exists("dir/sub"));
+			Assert.assertTrue(mode.toString(), fileCache.exists("other.txt"));
+			Assert.assertFalse(mode.toString(), fileCache.exists("missing.txt"));
+			
+			// a second instance finds the files, whether it loads the saved index or reads the folders
+			fileCache.saveIndex();
+			FileSystemCache reopened = new FileSystemCache(folder, mode);
+			Assert.assertEquals(FILE_CONTENT, new String(reopened.load("dir/sub/" + FILE_NAME)));
+			
+			reopened.delete("dir");
+			Assert.assertFalse(mode.toString(), reopened.exists("dir/sub/" + FILE_NAME));
+			Assert.assertTrue(mode.toString(), reopened.exists("other.txt"));
+			
+			// the saved index is dropped by the change, so the next instance reads the folders again
+			Assert.assertFalse(new File(folder, FileSystemCache.INDEX_FILE_NAME).exists());
+			Assert.assertFalse(new FileSystemCache(folder, mode).exists("dir/sub/" + FILE_NAME));
+			
+			try
+			{
+				reopened.load("missing.txt");
+				Assert.fail();
+			}
+			catch (CacheException e)
+			{
+				// expected
+			}
+		}
+	}
+	
+	@Test(expected = IllegalFileException.class)
+	public void siblingOfRootTest() throws CacheException
+	{
+		// a folder whose name starts with the name of the root is still outside of it
+		new FileSystemCache(root).save("../" + root.getName() + "2/" + FILE_NAME, FILE_CONTENT.getBytes());
+	}
+	
+	@Test
+	public void trashKeyTest() throws Exception
+	{
+		File folder = new File(root, "trashKey");
+		FileSystemCache fileCache = new FileSystemCache(folder);
+		fileCache.save(FILE_NAME, FILE_CONTENT.getBytes());
+		
+		// a key which would be taken for a folder in the trash is refused, rather than deleted once the cache reopens
+		for (String key : new String[] { FileSystemCache.TRASH_PREFIX + "x",
+			"dir/" + FileSystemCache.TRASH_PREFIX + "x/" + FILE_NAME })
+		{
+			try
+			{
+				fileCache.save(key, FILE_CONTENT.getBytes());
+				Assert.fail(key);
+			}
+			catch (IllegalFileException e)
+			{
+				// expected
+			}
+		}
+		
+		// the entries which were saved are still there after the trash is resumed
+		fileCache = new FileSystemCache(folder);
+		Assert.assertEquals(FILE_CONTENT, new String(fileCache.load(FILE_NAME)));
+		Assert.assertTrue(fileCache.getDeleter().awaitIdle(30, TimeUnit.SECONDS));
+		Assert.assertEquals(FILE_CONTENT, new String(fileCache.load(FILE_NAME)));
+	}
+	
+	@Test
+	public void reservedKeyTest() throws CacheException
+	{
+		File folder = new File(root, "reservedKey");
+		FileSystemCache fileCache = new FileSystemCache(folder, IndexMode.FULL);
+		
+		// the index and the temporary files would overwrite these keys or leave them out of the index
+		for (String key : new String[] { FileSystemCache.INDEX_FILE_NAME, "dir/" + FileSystemCache.INDEX_FILE_NAME,
+			"." + FILE_NAME + FileSystemCache.TEMP_SUFFIX })
+		{
+			try
+			{
+				fileCache.save(key, FILE_CONTENT.getBytes());
+				Assert.fail(key);
+			}
+			catch (IllegalFileException e)
+			{
+				// expected
+			}
+		}
+		
+		// names which only resemble them are still allowed
+		fileCache.save("index", FILE_CONTENT.getBytes());
+		fileCache.save(FILE_NAME + FileSystemCache.TEMP_SUFFIX, FILE_CONTENT.getBytes());
+		fileCache.saveIndex();
+		
+		fileCache = new FileSystemCache(folder, IndexMode.FULL);
+		Assert.assertTrue(fileCache.exists("index"));
+		Assert.assertTrue(fileCache.exists(FILE_NAME + FileSystemCache.TEMP_SUFFIX));
+	}
+	
+	@Test
+	public void symbolicLinkTest() throws CacheException, IOException
+	{
+		File folder = new File(root, "links");
+		File outside = new File(root, "outside");
+		outside.mkdirs();
+		FileSystemCache fileCache = new FileSystemCache(folder);
+		
+		File link = new File(folder, "link");
+		link.delete();
+		Files.createSymbolicLink(link.toPath(), outside.getAbsoluteFile().toPath());
+		
+		// by default a link under the root is followed, even though it leads outside of it
+		fileCache.save("link/" + FILE_NAME, FILE_CONTENT.getBytes());
+		Assert.assertTrue(new File(outside, FILE_NAME).exists());
+		
+		// once links are resolved the same path is refused
+		fileCache.setResolveLinks(true);
+		try
+		{
+			fileCache.load("link/" + FILE_NAME);
+			Assert.fail();
+		}
+		catch (IllegalFileException e)
+		{
+			// expected
+		}
+		
+		// while paths which stay under the root still work
+		fileCache.save(FILE_NAME, FILE_CONTENT.getBytes());
+		Assert.assertEquals(FILE_CONTENT, new String(fileCache.load(FILE_NAME)));
+	}
+	
+	@Test
+	public void backgroundClearTest() throws Exception
+	{
+		final File folder = new File(root, "clear");
+		FileSystemCache fileCache = new FileSystemCache(folder, IndexMode.FULL);
+		
+		for (int i = 0; i < 600; i++)
+		{
+			fileCache.save("dir" + (i % 3) + "/" + i, FILE_CONTENT.getBytes());
+			fileCache.save("flat" + i, FILE_CONTENT.getBytes());
+		}
+		
+		// a deleted folder is gone right away, while its files are removed in the background
+		fileCache.delete("dir0");
+		Assert.assertFalse(fileCache.exists("dir0/0"));
+		Assert.assertFalse(new File(folder, "dir0").exists());
+		
+		// the cache is empty as soon as it is cleared, and can be written again right away
+		fileCache.clear();
+		Assert.assertFalse(fileCache.exists("dir1/1"));
+		Assert.assertFalse(new File(folder, "flat1").exists());
+		fileCache.save(FILE_NAME, FILE_CONTENT.getBytes());
+		
+		BackgroundDeleter deleter = fileCache.getDeleter();
+		Assert.assertTrue(deleter.awaitIdle(30, TimeUnit.SECONDS));
+		Assert.assertTrue(deleter.getDeletedFiles() >= 1200);
+		Assert.assertEquals(0, deleter.getPendingDirectories());
+		
+		// nothing is left behind but the entry which was saved after the clear
+		Assert.assertEquals(1, folder.list().length);
+		Assert.assertEquals(0, folder.getParentFile().list(new FilenameFilter()
+		{
+			@Override
+			public boolean accept(final File dir, final String name)
+			{
+				return name.startsWith(folder.getName() + FileSystemCache.TRASH_PREFIX);
+			}
+		}).length);
+		Assert.assertEquals(FILE_CONTENT, new String(fileCache.load(FILE_NAME)));
+	}
+	
+	private void assertNoTempFiles(final File folder)
+	{
+		File[] files = folder.listFiles();
+		if (null != files)
+		{
+			for (File file : files)
+			{
+				Assert.assertFalse(file.getName(), file.getName().endsWith(FileSystemCache.TEMP_SUFFIX));
+				assertNoTempFiles(file);
+			}
+		}
+	}
+	
+	@Test
+	public void streamingTest() throws CacheException, IOException
+	{
+		FileSystemCache fileCache = new FileSystemCache(root);
+		
+		byte[] data = new byte[3 * 1024 * 1024 + 5];
+		new Random(3).nextBytes(data);
+		
+		// the entry is written from a channel and read back to one without holding it in a byte array
+		ReadableByteChannel source = Channels.newChannel(new ByteArrayInputStream(data));
+		Assert.assertEquals(data.length, fileCache.save("stream/" + FILE_NAME, source));
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Assert.assertEquals(data.length, fileCache.load("stream/" + FILE_NAME, Channels.newChannel(out)));
+		Assert.assertTrue(Arrays.equals(data, out.toByteArray()));
+		
+		// the stream overloads agree with the byte array ones
+		fileCache.save("stream/small", new ByteArrayInputStream(data, 0, 100));
+		InputStream in = fileCache.openInputStream("stream/small");
+		try
+		{
+			Assert.assertTrue(Arrays.equals(Arrays.copyOf(data, 100), IOUtils.toByteArray(in)));
+		}
+		finally
+		{
+			in.close();
+		}
+		
+		Assert.assertTrue(Arrays.equals(Arrays.copyOf(data, 100), fileCache.load("stream/small")));
+	}
+	
+	@Test
+	public void hashedLayoutTest() throws CacheException
+	{
+		File folder = new File(root, "layout");
+		DirectoryLayout layout = new HashedLayout();
+		
+		FileSystemCache fileCache = new FileSystemCache(folder, IndexMode.NONE, layout);
+		fileCache.clear();
+		fileCache.save(FILE_NAME, FILE_CONTENT.getBytes());
+		fileCache.save("dir/sub/" + FILE_NAME, FILE_CONTENT.getBytes());
+		fileCache.save("dir/other.txt", FILE_CONTENT.getBytes());
+		
+		// the files are stored in the bucket folders of their keys, but are found by the keys alone
+		String storagePath = layout.getStoragePath(FILE_NAME);
+		Assert.assertTrue(storagePath.matches("[0-9a-f]{2}/[0-9a-f]{2}/" + FILE_NAME));
+		Assert.assertTrue(new File(folder, storagePath).isFile());
+		Assert.assertFalse(new File(folder, FILE_NAME).exists());
+		Assert.assertEquals(FILE_CONTENT, new String(fileCache.load(FILE_NAME)));
+		Assert.assertEquals(FILE_NAME, layout.getKey(storagePath));
+		
+		// a folder stays in one bucket, so it can be checked and deleted as a whole
+		Assert.assertTrue(fileCache.exists("dir"));
+		fileCache.delete("dir/sub");
+		Assert.assertFalse(fileCache.exists("dir/sub/" + FILE_NAME));
+		Assert.assertTrue(fileCache.exists("dir/other.txt"));
+		
+		// the files can be moved back to the flat layout
+		Assert.assertEquals(2, LayoutMigrator.migrate(folder, layout, new FlatLayout()));
+		Assert.assertTrue(new File(folder, FILE_NAME).isFile());
+		Assert.assertFalse(new File(folder, storagePath.substring(0, 2)).exists());
+		
+		FileSystemCache flatCache = new FileSystemCache(folder);
+		Assert.assertEquals(FILE_CONTENT, new String(flatCache.load(FILE_NAME)));
+		Assert.assertEquals(FILE_CONTENT, new String(flatCache.load("dir/other.txt")));
+		
+		// and over to the hashed layout again, which leaves the files which are in place alone
+		Assert.assertEquals(2, LayoutMigrator.migrate(folder, new FlatLayout(), LayoutMigrator.parseLayout("hashed")));
+		Assert.assertEquals(0, LayoutMigrator.migrate(folder, new FlatLayout(), layout));
+		Assert.assertEquals(FILE_CONTENT, new String(fileCache.load("dir/other.txt")));
+	}
+	
+	@Test
+	public void bulkTest() throws CacheException
+	{
+		FileSystemCache fileCache = new FileSystemCache(new File(root, "bulk"), IndexMode.FULL, new HashedLayout());
+		fileCache.clear();
+		
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		for (int i = 0; i < 50; i++)
+		{
+			entries.put("page/" + i + ".txt", (FILE_CONTENT + i).getBytes());
+		}
+		entries.put("flat" + FILE_NAME, FILE_CONTENT.getBytes());
+		entries.put("../outside.txt", FILE_CONTENT.getBytes());
+		
+		// an entry which fails does not stop the others
+		BulkResult<Long> saved = fileCache.saveAll(entries);
+		Assert.assertEquals(51, saved.getValues().size());
+		Assert.assertEquals(Long.valueOf(FILE_CONTENT.length()), saved.get("flat" + FILE_NAME));
+		Assert.assertNotNull(saved.getFailure("../outside.txt"));
+		Assert.assertFalse(saved.isSuccessful());
+		
+		List<String> keys = new ArrayList<String>(entries.keySet());
+		keys.add("missing.txt");
+		keys.add("page/3.txt");
+		
+		BulkResult<byte[]> loaded = fileCache.loadAll(keys);
+		Assert.assertEquals(51, loaded.getValues().size());
+		Assert.assertEquals(2, loaded.getFailures().size());
+		Assert.assertNotNull(loaded.getFailure("missing.txt"));
+		
+		// the values are in the order in which the keys were given
+		Assert.assertEquals("page/0.txt", loaded.getValues().keySet().iterator().next());
+		for (int i = 0; i < 50; i++)
+		{
+			Assert.assertEquals(FILE_CONTENT + i, new String(loaded.get("page/" + i + ".txt")));
+		}
+		
+		// a single thread handles every entry in turn
+		fileCache.setBulkExecutor(fileCache.getBulkExecutor(), 1);
+		Assert.assertTrue(fileCache.loadAll(entries.keySet()).getValues().containsKey("flat" + FILE_NAME));
+	}
 }
@@ -0,0 +1,144 @@
+package filecache;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.gregmarut.commons.filecache.BoundedInMemoryCache;
+import com.gregmarut.commons.filecache.CacheException;
+import com.gregmarut.commons.filecache.CacheStats;
+import com.gregmarut.commons.filecache.FileSystemCache;
+import com.gregmarut.commons.filecache.HistogramSnapshot;
+import com.gregmarut.commons.filecache.InMemoryCache;
+import com.gregmarut.commons.filecache.InstrumentedFileCache;
+import com.gregmarut.commons.filecache.LatencyHistogram;
+
+public class InstrumentedFileCacheTest
+{
+	public static final String ROOT = "target/instrumentedFileCache";
+	public static final String FILE_NAME = "text.txt";
+	public static final String FILE_CONTENT = "Hello World";
+	
+	@Test
+	public void countersTest() throws CacheException
+	{
+		InstrumentedFileCache cache = new InstrumentedFileCache(new InMemoryCache());
+		
+		cache.save(FILE_NAME, FILE_CONTENT.getBytes());
+		cache.load(FILE_NAME);
+		cache.load(FILE_NAME);
+		cache.load("missing.txt");
+		
+		CacheStats stats = cache.getStats();
+		Assert.assertEquals(2, stats.getHitCount());
+		Assert.assertEquals(1, stats.getMissCount());
+		Assert.assertEquals(1, stats.getSaveCount());
+		Assert.assertEquals(2 * FILE_CONTENT.length(), stats.getBytesRead());
+		Assert.assertEquals(FILE_CONTENT.length(), stats.getBytesWritten());
+		Assert.assertEquals(3, stats.getLoadLatency().getCount());
+		Assert.assertEquals(1, stats.getSaveLatency().getCount());
+		
+		cache.getRecorder().reset();
+		Assert.assertEquals(0, cache.getStats().getRequestCount());
+	}
+	
+	@Test
+	public void fileSystemMissTest() throws CacheException
+	{
+		FileSystemCache fileCache = new FileSystemCache(new File(ROOT));
+		fileCache.clear();
+		InstrumentedFileCache cache = new InstrumentedFileCache(fileCache);
+		
+		// a file which does not exist is a miss, while a path outside of the root is an error
+		try
+		{
+			cache.load("missing.txt");
+			Assert.fail();
+		}
+		catch (CacheException e)
+		{
+			// expected
+		}
+		
+		try
+		{
+			cache.load("../" + FILE_NAME);
+			Assert.fail();
+		}
+		catch (RuntimeException e)
+		{
+			// expected
+		}
+		
+		CacheStats stats = cache.getStats();
+		Assert.assertEquals(1, stats.getMissCount());
+		Assert.assertEquals(1, stats.getLoadErrorCount());
+	}
+	
+	@Test
+	public void evictionTest() throws CacheException
+	{
+		InstrumentedFileCache cache = new InstrumentedFileCache(new BoundedInMemoryCache(100));
+		
+		for (int i = 0; i < 10; i++)
+		{
+			cache.save("entry" + i, new byte[30]);
+		}
+		
+		CacheStats stats = cache.getStats();
+		Assert.assertTrue(stats.getEvictionCount() >= 7);
+		Assert.assertEquals(stats.getEvictionCount() * 30, stats.getEvictionWeight());
+	}
+	
+	@Test
+	public void jmxTest() throws Exception
+	{
+		InstrumentedFileCache cache = new InstrumentedFileCache(new InMemoryCache());
+		cache.save(FILE_NAME, FILE_CONTENT.getBytes());
+		cache.load(FILE_NAME);
+		
+		ObjectName name = cache.getRecorder().register("test");
+		try
+		{
+			Assert.assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "HitCount"));
+			Assert.assertEquals((long) FILE_CONTENT.length(),
+				ManagementFactory.getPlatformMBeanServer().getAttribute(name, "BytesRead"));
+		}
+		finally
+		{
+			cache.getRecorder().unregister();
+		}
+		
+		Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+	}
+	
+	@Test
+	public void histogramTest()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 100000; i++)
+		{
+			histogram.record(i * 1000);
+		}
+		histogram.record(Long.MAX_VALUE);
+		
+		// each percentile is within the width of its bucket
+		HistogramSnapshot snapshot = histogram.snapshot();
+		Assert.assertEquals(100001, snapshot.getCount());
+		Assert.assertEquals(Long.MAX_VALUE, snapshot.getMax());
+		assertWithin(50000000, snapshot.getPercentile(50));
+		assertWithin(99000000, snapshot.getPercentile(99));
+		assertWithin(1000, snapshot.getPercentile(0));
+		Assert.assertEquals(Long.MAX_VALUE, snapshot.getPercentile(100));
+	}
+	
+	private void assertWithin(final long expected, final long actual)
+	{
+		Assert.assertTrue(expected + " ~ " + actual, Math.abs(actual - expected) <= expected / 16);
+	}
+}
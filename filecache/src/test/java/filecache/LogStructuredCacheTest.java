@@ -0,0 +1,179 @@
+package filecache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.gregmarut.commons.filecache.CacheException;
+import com.gregmarut.commons.filecache.DurabilityPolicy;
+import com.gregmarut.commons.filecache.LogStructuredCache;
+
+public class LogStructuredCacheTest
+{
+	public static final String ROOT = "target/logStructuredCache";
+	public static final String FILE_NAME = "text.txt";
+	public static final String FILE_CONTENT = "Hello World";
+	
+	@Test
+	public void readWriteTest() throws CacheException
+	{
+		LogStructuredCache cache = open("readWrite");
+		
+		try
+		{
+			cache.save(FILE_NAME, "first".getBytes());
+			cache.save(FILE_NAME, FILE_CONTENT.getBytes());
+			Assert.assertEquals(FILE_CONTENT, new String(cache.load(FILE_NAME)));
+			Assert.assertTrue(cache.exists(FILE_NAME));
+			Assert.assertNull(cache.load("missing.txt"));
+			
+			// a delete of a folder removes everything under it but not its neighbours
+			cache.save("dir/a", "a".getBytes());
+			cache.save("dir/sub/b", "b".getBytes());
+			cache.save("dir2/c", "c".getBytes());
+			cache.delete("dir");
+			Assert.assertFalse(cache.exists("dir/a"));
+			Assert.assertFalse(cache.exists("dir/sub/b"));
+			Assert.assertTrue(cache.exists("dir2/c"));
+			
+			cache.clear();
+			Assert.assertEquals(0, cache.size());
+			Assert.assertEquals(1, cache.getSegmentCount());
+			Assert.assertFalse(cache.exists(FILE_NAME));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+	
+	@Test
+	public void rebuildTest() throws CacheException
+	{
+		LogStructuredCache cache = open("rebuild");
+		cache.setDurabilityPolicy(DurabilityPolicy.FSYNC);
+		
+		cache.save("dir/a", "old".getBytes());
+		cache.delete("dir");
+		cache.save("dir/a", "new".getBytes());
+		cache.save("dir/b", "b".getBytes());
+		cache.save("other/c", "c".getBytes());
+		cache.delete("other");
+		cache.close();
+		
+		// the index is rebuilt from the segments, with the tombstones applied in order
+		cache = new LogStructuredCache(cache.getRoot(), 128);
+		
+		try
+		{
+			Assert.assertEquals(2, cache.size());
+			Assert.assertEquals("new", new String(cache.load("dir/a")));
+			Assert.assertEquals("b", new String(cache.load("dir/b")));
+			Assert.assertFalse(cache.exists("other/c"));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+	
+	@Test
+	public void tornRecordTest() throws CacheException, IOException
+	{
+		LogStructuredCache cache = open("torn");
+		cache.save("a", FILE_CONTENT.getBytes());
+		cache.save("b", FILE_CONTENT.getBytes());
+		cache.close();
+		
+		// cut the last record in half, as a crash during its save would
+		File segment = cache.getRoot().listFiles()[0];
+		RandomAccessFile file = new RandomAccessFile(segment, "rw");
+		file.setLength(file.length() - 5);
+		file.close();
+		
+		cache = new LogStructuredCache(cache.getRoot());
+		
+		try
+		{
+			Assert.assertEquals(FILE_CONTENT, new String(cache.load("a")));
+			Assert.assertFalse(cache.exists("b"));
+			
+			// new records are appended after the last good one
+			cache.save("c", FILE_CONTENT.getBytes());
+			Assert.assertEquals(FILE_CONTENT, new String(cache.load("c")));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+	
+	@Test
+	public void compactionTest() throws CacheException
+	{
+		LogStructuredCache cache = open("compaction");
+		cache.setDurabilityPolicy(DurabilityPolicy.GROUP_COMMIT);
+		
+		for (int round = 0; round < 10; round++)
+		{
+			for (int i = 0; i < 20; i++)
+			{
+				cache.save("key" + i, (round + "-" + i).getBytes());
+			}
+		}
+		
+		cache.delete("key0");
+		
+		// only the latest version of each key survives compaction, which fits in a few of the 50 segments written
+		cache.compact();
+		Assert.assertTrue(cache.getSegmentCount() < 10);
+		Assert.assertFalse(cache.exists("key0"));
+		for (int i = 1; i < 20; i++)
+		{
+			Assert.assertEquals("9-" + i, new String(cache.load("key" + i)));
+		}
+		
+		// the compacted segments must rebuild to the same index
+		cache.close();
+		cache = new LogStructuredCache(cache.getRoot(), 128);
+		
+		try
+		{
+			Assert.assertEquals(19, cache.size());
+			Assert.assertFalse(cache.exists("key0"));
+			Assert.assertEquals("9-19", new String(cache.load("key19")));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+	
+	/**
+	 * Opens a cache in an empty folder, with small segments so that the tests span several of them
+	 * 
+	 * @param name
+	 * @return
+	 * @throws CacheException
+	 */
+	private LogStructuredCache open(final String name) throws CacheException
+	{
+		File root = new File(ROOT, name);
+		
+		// start from an empty folder
+		File[] files = root.listFiles();
+		if (null != files)
+		{
+			for (File file : files)
+			{
+				file.delete();
+			}
+		}
+		
+		return new LogStructuredCache(root, 128);
+	}
+}
@@ -0,0 +1,379 @@
+package filecache;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.gregmarut.commons.filecache.CacheException;
+import com.gregmarut.commons.filecache.ConcurrentInMemoryCache;
+import com.gregmarut.commons.filecache.FileCache;
+import com.gregmarut.commons.filecache.FileSystemCache;
+import com.gregmarut.commons.filecache.TieredFileCache;
+import com.gregmarut.commons.filecache.WriteMode;
+
+public class TieredFileCacheTest
+{
+	public static final String ROOT = "target/tieredFileCache";
+	public static final String FILE_NAME = "text.txt";
+	public static final String FILE_CONTENT = "Hello World";
+	
+	@Test
+	public void promoteTest() throws CacheException
+	{
+		ConcurrentInMemoryCache upper = new ConcurrentInMemoryCache();
+		FileSystemCache lower = new FileSystemCache(new File(ROOT, "promote"));
+		TieredFileCache cache = new TieredFileCache(upper, lower);
+		
+		// an entry which is only on disk is promoted to memory when it is read
+		lower.save(FILE_NAME, FILE_CONTENT.getBytes());
+		Assert.assertFalse(upper.exists(FILE_NAME));
+		Assert.assertEquals(FILE_CONTENT, new String(cache.load(FILE_NAME)));
+		Assert.assertTrue(upper.exists(FILE_NAME));
+		
+		// a missing entry is null rather than an error from the lower tier
+		Assert.assertNull(cache.load("missing.txt"));
+	}
+	
+	@Test
+	public void concurrentPromoteTest() throws Exception
+	{
+		ConcurrentInMemoryCache upper = new ConcurrentInMemoryCache();
+		StallingCache lower = new StallingCache();
+		TieredFileCache cache = new TieredFileCache(upper, lower);
+		lower.save(FILE_NAME, FILE_CONTENT.getBytes());
+		
+		// delete the entry while a load is reading it from the lower tier
+		Thread loader = lower.stall(cache, FILE_NAME);
+		cache.delete(FILE_NAME);
+		lower.release(loader);
+		
+		// the load must not bring back the deleted entry
+		Assert.assertFalse(upper.exists(FILE_NAME));
+		Assert.assertFalse(cache.exists(FILE_NAME));
+		
+		// replace the entry while a load is reading the old data from the lower tier
+		lower.save(FILE_NAME, FILE_CONTENT.getBytes());
+		loader = lower.stall(cache, FILE_NAME);
+		cache.save(FILE_NAME, "Goodbye".getBytes());
+		lower.release(loader);
+		
+		// the load must not overwrite the newer data
+		Assert.assertEquals("Goodbye", new String(upper.load(FILE_NAME)));
+		Assert.assertEquals("Goodbye", new String(cache.load(FILE_NAME)));
+	}
+	
+	@Test
+	public void concurrentSaveTest() throws Exception
+	{
+		ConcurrentInMemoryCache upper = new ConcurrentInMemoryCache();
+		StallingSaveCache lower = new StallingSaveCache();
+		TieredFileCache cache = new TieredFileCache(upper, lower);
+		
+		// save the entry again while the first save is writing the lower tier
+		Thread first = lower.stall(cache, FILE_NAME, FILE_CONTENT.getBytes());
+		Thread second = save(cache, FILE_NAME, "Goodbye".getBytes());
+		lower.release(first);
+		second.join(5000);
+		
+		// both tiers must hold the data of the same save
+		Assert.assertEquals(new String(lower.load(FILE_NAME)), new String(upper.load(FILE_NAME)));
+		
+		// delete the entry while a save is writing the lower tier
+		first = lower.stall(cache, FILE_NAME, FILE_CONTENT.getBytes());
+		Thread deleter = delete(cache, FILE_NAME);
+		lower.release(first);
+		deleter.join(5000);
+		
+		// the save must not leave the entry in only one of the tiers
+		Assert.assertFalse(upper.exists(FILE_NAME));
+		Assert.assertFalse(lower.exists(FILE_NAME));
+	}
+	
+	@Test
+	public void concurrentWriteBehindTest() throws Exception
+	{
+		StallingSaveCache upper = new StallingSaveCache();
+		ConcurrentInMemoryCache lower = new ConcurrentInMemoryCache();
+		TieredFileCache cache = new TieredFileCache(upper, lower, WriteMode.WRITE_BEHIND);
+		
+		try
+		{
+			// delete the entry while a save is writing the upper tier
+			Thread saver = upper.stall(cache, FILE_NAME, FILE_CONTENT.getBytes());
+			Thread deleter = delete(cache, FILE_NAME);
+			upper.release(saver);
+			deleter.join(5000);
+			cache.flush();
+			
+			// the waiting write must have been removed along with the entry
+			Assert.assertFalse(upper.exists(FILE_NAME));
+			Assert.assertFalse(lower.exists(FILE_NAME));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+	
+	@Test
+	public void writeThroughTest() throws CacheException
+	{
+		ConcurrentInMemoryCache upper = new ConcurrentInMemoryCache();
+		FileSystemCache lower = new FileSystemCache(new File(ROOT, "through"));
+		TieredFileCache cache = new TieredFileCache(upper, lower, WriteMode.WRITE_THROUGH);
+		
+		cache.save(FILE_NAME, FILE_CONTENT.getBytes());
+		Assert.assertEquals(FILE_CONTENT, new String(upper.load(FILE_NAME)));
+		Assert.assertEquals(FILE_CONTENT, new String(lower.load(FILE_NAME)));
+		
+		// a delete removes the entry from both tiers
+		cache.delete(FILE_NAME);
+		Assert.assertFalse(upper.exists(FILE_NAME));
+		Assert.assertFalse(lower.exists(FILE_NAME));
+		Assert.assertFalse(cache.exists(FILE_NAME));
+	}
+	
+	@Test
+	public void writeBehindTest() throws CacheException
+	{
+		ConcurrentInMemoryCache upper = new ConcurrentInMemoryCache();
+		FileSystemCache lower = new FileSystemCache(new File(ROOT, "behind"));
+		TieredFileCache cache = new TieredFileCache(upper, lower, WriteMode.WRITE_BEHIND);
+		
+		try
+		{
+			for (int i = 0; i < 100; i++)
+			{
+				cache.save("dir/" + i, Integer.toString(i).getBytes());
+			}
+			
+			// every entry can be read before it reaches the disk, even once memory has dropped it
+			upper.clear();
+			Assert.assertEquals("42", new String(cache.load("dir/42")));
+			
+			cache.flush();
+			Assert.assertEquals(0, cache.getPendingCount());
+			Assert.assertEquals("99", new String(lower.load("dir/99")));
+			
+			// a delete of a folder removes the writes under it which are still waiting
+			cache.save("dir/late", FILE_CONTENT.getBytes());
+			cache.delete("dir");
+			cache.flush();
+			Assert.assertFalse(cache.exists("dir/late"));
+			Assert.assertFalse(lower.exists("dir/late"));
+			Assert.assertFalse(lower.exists("dir/1"));
+			
+			cache.save(FILE_NAME, FILE_CONTENT.getBytes());
+			cache.clear();
+			cache.flush();
+			Assert.assertFalse(cache.exists(FILE_NAME));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+	
+	/**
+	 * Saves the data through the cache on a new thread and waits until it is blocked by the save which is held
+	 */
+	private static Thread save(final FileCache cache, final String relativePath, final byte[] data)
+		throws InterruptedException
+	{
+		return block(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					cache.save(relativePath, data);
+				}
+				catch (CacheException e)
+				{
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Deletes the entry through the cache on a new thread and waits until it is blocked by the save which is held
+	 */
+	private static Thread delete(final FileCache cache, final String relativePath) throws InterruptedException
+	{
+		return block(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				cache.delete(relativePath);
+			}
+		});
+	}
+	
+	private static Thread block(final Runnable runnable) throws InterruptedException
+	{
+		Thread thread = new Thread(runnable);
+		thread.start();
+		
+		// wait until the thread is waiting on one of the locks of the cache
+		long deadline = System.currentTimeMillis() + 5000;
+		while (Thread.State.BLOCKED != thread.getState() && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(1);
+		}
+		Assert.assertEquals(Thread.State.BLOCKED, thread.getState());
+		
+		return thread;
+	}
+	
+	/**
+	 * An in memory cache whose next save can be held while the cache above it is changed
+	 */
+	private static class StallingSaveCache extends ConcurrentInMemoryCache
+	{
+		private volatile CountDownLatch saving;
+		private volatile CountDownLatch release;
+		private CountDownLatch held;
+		
+		@Override
+		public void save(final String relativePath, final byte[] data)
+		{
+			CountDownLatch latch = release;
+			if (null != latch)
+			{
+				// only the first save is held
+				release = null;
+				saving.countDown();
+				
+				try
+				{
+					latch.await(5, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+			
+			super.save(relativePath, data);
+		}
+		
+		/**
+		 * Starts a save through the cache and waits until it is held in this tier
+		 */
+		private Thread stall(final FileCache cache, final String relativePath, final byte[] data)
+			throws InterruptedException
+		{
+			saving = new CountDownLatch(1);
+			held = new CountDownLatch(1);
+			release = held;
+			
+			Thread saver = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						cache.save(relativePath, data);
+					}
+					catch (CacheException e)
+					{
+						throw new IllegalStateException(e);
+					}
+				}
+			});
+			saver.start();
+			Assert.assertTrue(saving.await(5, TimeUnit.SECONDS));
+			
+			return saver;
+		}
+		
+		/**
+		 * Lets the held save finish and waits for it
+		 */
+		private void release(final Thread saver) throws InterruptedException
+		{
+			held.countDown();
+			saver.join(5000);
+		}
+	}
+	
+	/**
+	 * An in memory cache whose loads can be held while the cache above it is changed
+	 */
+	private static class StallingCache extends ConcurrentInMemoryCache
+	{
+		private volatile CountDownLatch reading;
+		private volatile CountDownLatch release;
+		
+		@Override
+		public byte[] load(final String relativePath)
+		{
+			byte[] data = super.load(relativePath);
+			
+			CountDownLatch latch = release;
+			if (null != latch)
+			{
+				reading.countDown();
+				
+				try
+				{
+					latch.await(5, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+			
+			return data;
+		}
+		
+		/**
+		 * Starts a load of the entry through the cache and waits until it is held in this tier
+		 */
+		private Thread stall(final FileCache cache, final String relativePath) throws InterruptedException
+		{
+			reading = new CountDownLatch(1);
+			release = new CountDownLatch(1);
+			
+			Thread loader = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						cache.load(relativePath);
+					}
+					catch (CacheException e)
+					{
+						throw new IllegalStateException(e);
+					}
+				}
+			});
+			loader.start();
+			Assert.assertTrue(reading.await(5, TimeUnit.SECONDS));
+			
+			return loader;
+		}
+		
+		/**
+		 * Lets the held load finish and waits for it
+		 */
+		private void release(final Thread loader) throws InterruptedException
+		{
+			CountDownLatch latch = release;
+			release = null;
+			latch.countDown();
+			loader.join(5000);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.dispatch;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the daemon threads used by the dispatchers
+ * 
+ * @author Greg Marut
+ */
+class DispatchThreadFactory implements ThreadFactory
+{
+	// holds the name given to each thread
+	private final String threadName;
+	
+	// holds the number of threads which have been created
+	private final AtomicInteger count;
+	
+	DispatchThreadFactory(final String threadName)
+	{
+		this.threadName = threadName;
+		this.count = new AtomicInteger();
+	}
+	
+	@Override
+	public Thread newThread(final Runnable runnable)
+	{
+		Thread thread = new Thread(runnable, threadName + " " + count.incrementAndGet());
+		thread.setDaemon(true);
+		
+		return thread;
+	}
+}
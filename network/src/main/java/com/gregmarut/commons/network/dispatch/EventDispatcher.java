@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.dispatch;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Defines the strategy used to deliver events to listeners. Every connection asks the dispatcher for its own executor
+ * when it starts and hands all of its events to that executor, which allows a strategy to keep the events of a single
+ * connection in order.
+ * 
+ * @author Greg Marut
+ */
+public interface EventDispatcher
+{
+	/**
+	 * Creates the executor which will deliver the events of a single connection
+	 * 
+	 * @return
+	 */
+	Executor createExecutor();
+	
+	/**
+	 * Stops any threads owned by this dispatcher. Events which have already been queued may still be delivered.
+	 */
+	void shutdown();
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.dispatch;
+
+/**
+ * Provides the dispatcher used by clients and servers which have not been given one of their own
+ * 
+ * @author Greg Marut
+ */
+public class EventDispatchers
+{
+	// ** Finals **//
+	// holds the number of events that may wait for each connection when using the default dispatcher
+	public static final int DEFAULT_QUEUE_LIMIT = 1024;
+	
+	private EventDispatchers()
+	{
+		
+	}
+	
+	/**
+	 * Returns the shared default dispatcher. Events of each connection are delivered in order on a pool with two
+	 * threads per processor, and a connection whose listeners fall behind stops being read until they catch up.
+	 * 
+	 * @return
+	 */
+	public static EventDispatcher getDefault()
+	{
+		return DefaultHolder.DEFAULT;
+	}
+	
+	/**
+	 * Lazily creates the default dispatcher the first time it is needed
+	 */
+	private static class DefaultHolder
+	{
+		private static final EventDispatcher DEFAULT = new SerialEventDispatcher(Runtime.getRuntime()
+			.availableProcessors() * 2, DEFAULT_QUEUE_LIMIT, OverflowPolicy.BLOCK);
+	}
+}
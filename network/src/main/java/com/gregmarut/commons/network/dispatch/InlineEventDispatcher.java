@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.dispatch;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Delivers every event directly on the thread which produced it. Events are delivered in order and without any
+ * hand-off cost, but a slow listener holds up the connection that it is listening to.
+ * 
+ * @author Greg Marut
+ */
+public class InlineEventDispatcher implements EventDispatcher
+{
+	// holds the executor which runs each event immediately
+	private static final Executor INLINE_EXECUTOR = new Executor()
+	{
+		@Override
+		public void execute(final Runnable command)
+		{
+			command.run();
+		}
+	};
+	
+	@Override
+	public Executor createExecutor()
+	{
+		return INLINE_EXECUTOR;
+	}
+	
+	@Override
+	public void shutdown()
+	{
+		// there are no threads to stop
+	}
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.dispatch;
+
+/**
+ * Determines what happens to a new event when the queue of a dispatcher is full
+ * 
+ * @author Greg Marut
+ */
+public enum OverflowPolicy
+{
+	/**
+	 * The thread delivering the event waits until there is room in the queue. When the events come from a socket this
+	 * stops the socket from being read, which in turn slows down the sender.
+	 */
+	BLOCK,
+	
+	/**
+	 * The thread delivering the event runs the listener itself. Serial executors treat this the same as {@link #BLOCK}
+	 * since running the event early would break the order of the connection.
+	 */
+	CALLER_RUNS,
+	
+	/**
+	 * The event is dropped
+	 */
+	DISCARD
+}
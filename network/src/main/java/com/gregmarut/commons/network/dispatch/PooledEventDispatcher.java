@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.dispatch;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers events on a fixed pool of threads with a bounded queue. All connections share the pool, so events are
+ * delivered concurrently and there is no guarantee about the order of the events of a single connection.
+ * 
+ * @author Greg Marut
+ */
+public class PooledEventDispatcher implements EventDispatcher
+{
+	protected static final String EVENT_DISPATCH_THREAD_NAME = "Pooled Event Dispatch Thread";
+	
+	// ** Objects **//
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	
+	// holds the pool which delivers the events
+	private final ThreadPoolExecutor threadPool;
+	
+	// holds the executor handed to each connection
+	private final Executor executor;
+	
+	/**
+	 * The constructor for PooledEventDispatcher
+	 * 
+	 * @param threads
+	 *            the number of threads in the pool
+	 * @param queueLimit
+	 *            the maximum number of events waiting for a thread
+	 * @param overflowPolicy
+	 *            determines what happens to an event when the queue is full
+	 */
+	public PooledEventDispatcher(final int threads, final int queueLimit, final OverflowPolicy overflowPolicy)
+	{
+		// make sure the number of threads is greater than 0
+		if (threads <= 0)
+		{
+			throw new IllegalArgumentException("threads must be greater than 0");
+		}
+		
+		// make sure the queue limit is greater than 0
+		if (queueLimit <= 0)
+		{
+			throw new IllegalArgumentException("queueLimit must be greater than 0");
+		}
+		
+		threadPool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(queueLimit), new DispatchThreadFactory(EVENT_DISPATCH_THREAD_NAME),
+			createRejectedExecutionHandler(overflowPolicy));
+		
+		// the pool itself is not handed out so that connections cannot shut it down
+		executor = new Executor()
+		{
+			@Override
+			public void execute(final Runnable command)
+			{
+				threadPool.execute(command);
+			}
+		};
+	}
+	
+	@Override
+	public Executor createExecutor()
+	{
+		return executor;
+	}
+	
+	@Override
+	public void shutdown()
+	{
+		threadPool.shutdown();
+	}
+	
+	/**
+	 * Creates the handler which applies the overflow policy when the queue is full
+	 * 
+	 * @param overflowPolicy
+	 * @return
+	 */
+	private RejectedExecutionHandler createRejectedExecutionHandler(final OverflowPolicy overflowPolicy)
+	{
+		switch (overflowPolicy)
+		{
+			case BLOCK:
+				return new RejectedExecutionHandler()
+				{
+					@Override
+					public void rejectedExecution(final Runnable runnable, final ThreadPoolExecutor executor)
+					{
+						// make sure the pool is still running
+						if (executor.isShutdown())
+						{
+							throw new RejectedExecutionException("Dispatcher has been shut down");
+						}
+						
+						try
+						{
+							// wait for room in the queue
+							executor.getQueue().put(runnable);
+						}
+						catch (InterruptedException e)
+						{
+							Thread.currentThread().interrupt();
+							throw new RejectedExecutionException(e);
+						}
+					}
+				};
+				
+			case CALLER_RUNS:
+				return new ThreadPoolExecutor.CallerRunsPolicy();
+				
+			case DISCARD:
+			default:
+				return new RejectedExecutionHandler()
+				{
+					@Override
+					public void rejectedExecution(final Runnable runnable, final ThreadPoolExecutor executor)
+					{
+						logger.warn("Event discarded because the dispatch queue is full");
+					}
+				};
+		}
+	}
+}
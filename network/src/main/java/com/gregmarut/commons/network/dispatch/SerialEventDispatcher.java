@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.dispatch;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Delivers the events of each connection in order on a shared pool of threads. Each connection is given its own
+ * {@link SerialExecutor} with a bounded queue, so a slow listener only holds up the connection it is listening to.
+ * 
+ * @author Greg Marut
+ */
+public class SerialEventDispatcher implements EventDispatcher
+{
+	protected static final String EVENT_DISPATCH_THREAD_NAME = "Serial Event Dispatch Thread";
+	
+	// ** Objects **//
+	// holds the pool shared by all of the connections
+	private final ExecutorService threadPool;
+	
+	// holds the policy to apply when the queue of a connection is full
+	private final OverflowPolicy overflowPolicy;
+	
+	// ** Primitives **//
+	// holds the maximum number of events that may wait for each connection
+	private final int queueLimit;
+	
+	/**
+	 * The constructor for SerialEventDispatcher
+	 * 
+	 * @param threads
+	 *            the number of threads in the shared pool
+	 * @param queueLimit
+	 *            the maximum number of events waiting to be delivered for a single connection
+	 * @param overflowPolicy
+	 *            determines what happens to an event when the queue of its connection is full
+	 */
+	public SerialEventDispatcher(final int threads, final int queueLimit, final OverflowPolicy overflowPolicy)
+	{
+		// make sure the number of threads is greater than 0
+		if (threads <= 0)
+		{
+			throw new IllegalArgumentException("threads must be greater than 0");
+		}
+		
+		// make sure the queue limit is greater than 0
+		if (queueLimit <= 0)
+		{
+			throw new IllegalArgumentException("queueLimit must be greater than 0");
+		}
+		
+		this.queueLimit = queueLimit;
+		this.overflowPolicy = overflowPolicy;
+		
+		// each connection has at most one run waiting in the pool's queue, so it does not need to be bounded
+		threadPool = Executors.newFixedThreadPool(threads, new DispatchThreadFactory(EVENT_DISPATCH_THREAD_NAME));
+	}
+	
+	@Override
+	public Executor createExecutor()
+	{
+		return new SerialExecutor(threadPool, queueLimit, overflowPolicy);
+	}
+	
+	@Override
+	public void shutdown()
+	{
+		threadPool.shutdown();
+	}
+}
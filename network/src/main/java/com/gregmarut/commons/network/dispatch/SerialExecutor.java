@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.dispatch;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An executor which runs its tasks one at a time, in the order they were submitted, on the threads of a shared pool.
+ * At most one task of this executor is running at any time, so many serial executors can share a small pool while
+ * each of them still appears to have a thread of its own.
+ * <p>
+ * A task which is submitted by one of the tasks of this executor is always queued, even when the queue is full, since
+ * the thread which would make room is the one which would wait for it.
+ * 
+ * @author Greg Marut
+ */
+public class SerialExecutor implements Executor
+{
+	// ** Finals **//
+	// holds the number of tasks to run before giving the pool thread back to other executors
+	private static final int MAX_TASKS_PER_RUN = 64;
+	
+	// ** Objects **//
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	
+	// holds the pool which runs the tasks
+	private final Executor pool;
+	
+	// holds the tasks which are waiting to be run
+	private final Queue<Runnable> tasks;
+	
+	// holds the free places in the queue
+	private final Semaphore room;
+	
+	// holds the policy to apply when the queue is full
+	private final OverflowPolicy overflowPolicy;
+	
+	// determines whether or not this executor currently has a run scheduled on the pool
+	private final AtomicBoolean scheduled;
+	
+	// holds the task which drains the queue on the pool
+	private final Runnable drain;
+	
+	// holds the pool thread which is running the tasks of this executor
+	private volatile Thread drainThread;
+	
+	/**
+	 * The constructor for SerialExecutor
+	 * 
+	 * @param pool
+	 *            the pool which runs the tasks
+	 * @param queueLimit
+	 *            the maximum number of tasks waiting to be run
+	 * @param overflowPolicy
+	 *            determines what happens to a task when the queue is full
+	 */
+	public SerialExecutor(final Executor pool, final int queueLimit, final OverflowPolicy overflowPolicy)
+	{
+		this.pool = pool;
+		this.tasks = new ConcurrentLinkedQueue<Runnable>();
+		this.room = new Semaphore(queueLimit);
+		this.overflowPolicy = overflowPolicy;
+		this.scheduled = new AtomicBoolean();
+		
+		drain = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				runTasks();
+			}
+		};
+	}
+	
+	@Override
+	public void execute(final Runnable command)
+	{
+		// attempt to take a place in the queue
+		if (!room.tryAcquire())
+		{
+			// check to see if the task should be dropped
+			if (OverflowPolicy.DISCARD == overflowPolicy)
+			{
+				logger.warn("Event discarded because the dispatch queue is full");
+				return;
+			}
+			
+			// a task of this executor cannot wait for room which only its own thread can make
+			if (Thread.currentThread() == drainThread)
+			{
+				tasks.offer(new OverflowTask(command));
+				schedule();
+				return;
+			}
+			
+			// running the task on this thread would break the order, so both of the other policies wait for room
+			try
+			{
+				room.acquire();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException(e);
+			}
+		}
+		
+		tasks.offer(command);
+		schedule();
+	}
+	
+	/**
+	 * Makes sure a run of this executor is scheduled on the pool
+	 */
+	private void schedule()
+	{
+		// only one run may be scheduled at a time
+		if (scheduled.compareAndSet(false, true))
+		{
+			try
+			{
+				pool.execute(drain);
+			}
+			catch (RejectedExecutionException e)
+			{
+				scheduled.set(false);
+				throw e;
+			}
+		}
+	}
+	
+	/**
+	 * Runs the queued tasks on the current pool thread
+	 */
+	private void runTasks()
+	{
+		drainThread = Thread.currentThread();
+		
+		try
+		{
+			Runnable task;
+			int count = 0;
+			
+			// run tasks until the queue is empty or this executor has had its share of the thread
+			while (count++ < MAX_TASKS_PER_RUN && null != (task = tasks.poll()))
+			{
+				// a task which was queued past the limit never took a place in the queue
+				if (!(task instanceof OverflowTask))
+				{
+					room.release();
+				}
+				
+				try
+				{
+					task.run();
+				}
+				catch (RuntimeException e)
+				{
+					logger.error(e.getMessage(), e);
+				}
+			}
+		}
+		finally
+		{
+			drainThread = null;
+			scheduled.set(false);
+			
+			// a task may have been queued after the queue was drained but before the flag was cleared
+			if (!tasks.isEmpty())
+			{
+				schedule();
+			}
+		}
+	}
+	
+	/**
+	 * A task which was queued by a task of this executor while the queue was full
+	 */
+	private static class OverflowTask implements Runnable
+	{
+		private final Runnable task;
+		
+		private OverflowTask(final Runnable task)
+		{
+			this.task = task;
+		}
+		
+		@Override
+		public void run()
+		{
+			task.run();
+		}
+	}
+}
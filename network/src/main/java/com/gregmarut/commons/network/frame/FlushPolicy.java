@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.frame;
+
+/**
+ * Determines when a frame writer pushes the frames it has buffered out to the underlying stream or channel. Frames
+ * are flushed as soon as any of the configured bounds has been reached. A bound of 0 is not enforced.
+ */
+public class FlushPolicy
+{
+	// ** Finals **//
+	/**
+	 * Flushes after every frame
+	 */
+	public static final FlushPolicy IMMEDIATE = new FlushPolicy(1, 0, 0);
+	
+	/**
+	 * Only flushes when flush is called. Frames are still written out if the writer's own buffer fills up.
+	 */
+	public static final FlushPolicy EXPLICIT = new FlushPolicy(0, 0, 0);
+	
+	// ** Primitives **//
+	// holds the number of frames which triggers a flush
+	private final int maxFrames;
+	
+	// holds the number of bytes which triggers a flush
+	private final long maxBytes;
+	
+	// holds the number of milliseconds a frame may wait before it is flushed
+	private final long maxDelayMillis;
+	
+	/**
+	 * The constructor for FlushPolicy
+	 * 
+	 * @param maxFrames
+	 * @param maxBytes
+	 * @param maxDelayMillis
+	 */
+	private FlushPolicy(final int maxFrames, final long maxBytes, final long maxDelayMillis)
+	{
+		this.maxFrames = maxFrames;
+		this.maxBytes = maxBytes;
+		this.maxDelayMillis = maxDelayMillis;
+	}
+	
+	/**
+	 * Creates a policy which flushes once enough frames or bytes are waiting, or once the oldest waiting frame has
+	 * waited long enough
+	 * 
+	 * @param maxFrames
+	 *            the number of waiting frames which triggers a flush, or 0
+	 * @param maxBytes
+	 *            the number of waiting bytes which triggers a flush, or 0
+	 * @param maxDelayMillis
+	 *            the number of milliseconds the oldest frame may wait, or 0
+	 * @return
+	 */
+	public static FlushPolicy bounded(final int maxFrames, final long maxBytes, final long maxDelayMillis)
+	{
+		// make sure none of the bounds are negative
+		if (maxFrames < 0 || maxBytes < 0 || maxDelayMillis < 0)
+		{
+			throw new IllegalArgumentException("bounds cannot be negative");
+		}
+		
+		return new FlushPolicy(maxFrames, maxBytes, maxDelayMillis);
+	}
+	
+	/**
+	 * Determines if the waiting frames should be flushed
+	 * 
+	 * @param pendingFrames
+	 * @param pendingBytes
+	 * @return
+	 */
+	public boolean shouldFlush(final int pendingFrames, final long pendingBytes)
+	{
+		return (maxFrames > 0 && pendingFrames >= maxFrames) || (maxBytes > 0 && pendingBytes >= maxBytes);
+	}
+	
+	/**
+	 * Determines if this policy only flushes when asked to
+	 * 
+	 * @return
+	 */
+	public boolean isExplicit()
+	{
+		return maxFrames == 0 && maxBytes == 0 && maxDelayMillis == 0;
+	}
+	
+	public int getMaxFrames()
+	{
+		return maxFrames;
+	}
+	
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+	
+	public long getMaxDelayMillis()
+	{
+		return maxDelayMillis;
+	}
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.frame;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Times the delayed flushes of every writer whose policy has a maximum delay. The timer thread never flushes itself,
+ * since a flush may block on a peer which is not reading; it hands each flush to the executor of its writer.
+ */
+class FlushScheduler
+{
+	private static final String FLUSH_THREAD_NAME = "Frame Flush Thread";
+	private static final String FLUSH_WORKER_THREAD_NAME = "Frame Flush Worker Thread ";
+	
+	// holds the pool which runs the flushes of writers which were not given an executor. A writer has at most one
+	// delayed flush at a time, so a peer which blocks its flush holds on to a single thread.
+	static final Executor DEFAULT_FLUSH_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory()
+	{
+		// holds the number of threads which were created
+		private final AtomicInteger count = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(final Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, FLUSH_WORKER_THREAD_NAME + count.incrementAndGet());
+			thread.setDaemon(true);
+			
+			return thread;
+		}
+	});
+	
+	// holds the single thread which times the delayed flushes
+	private static final ScheduledExecutorService SCHEDULER = Executors
+		.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(final Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, FLUSH_THREAD_NAME);
+				thread.setDaemon(true);
+				
+				return thread;
+			}
+		});
+	
+	private FlushScheduler()
+	{
+		
+	}
+	
+	/**
+	 * Hands the flush to the executor once the delay has passed
+	 * 
+	 * @param flush
+	 * @param delayMillis
+	 * @param executor
+	 */
+	static void schedule(final Runnable flush, final long delayMillis, final Executor executor)
+	{
+		SCHEDULER.schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					executor.execute(flush);
+				}
+				catch (RejectedExecutionException e)
+				{
+					// the flush must still run so that the writer can schedule the next one
+					DEFAULT_FLUSH_EXECUTOR.execute(flush);
+				}
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.frame;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes the length prefix of each frame. Every codec enforces a maximum frame size which is checked as
+ * soon as a prefix has been decoded, before anything is allocated for the frame. Codecs are immutable and can be
+ * shared by any number of readers and writers; both ends of a connection must use the same prefix format.
+ */
+public abstract class FrameCodec
+{
+	// ** Finals **//
+	// holds the maximum frame size used unless another one is set
+	public static final long DEFAULT_MAX_FRAME_SIZE = 64L * 1024 * 1024;
+	
+	// identifies that a buffer does not yet contain a complete prefix
+	public static final long NEED_MORE_DATA = -2;
+	
+	/**
+	 * The 4 byte big endian prefix which every connection used before codecs existed
+	 */
+	public static final FrameCodec DEFAULT = intPrefix();
+	
+	// ** Primitives **//
+	private final long maxFrameSize;
+	
+	/**
+	 * The constructor for FrameCodec
+	 * 
+	 * @param maxFrameSize
+	 * @param maxEncodableSize
+	 *            the largest length the prefix format can represent
+	 */
+	protected FrameCodec(final long maxFrameSize, final long maxEncodableSize)
+	{
+		// make sure the maximum can be represented
+		if (maxFrameSize < 0 || maxFrameSize > maxEncodableSize)
+		{
+			throw new IllegalArgumentException("maxFrameSize must be between 0 and " + maxEncodableSize);
+		}
+		
+		this.maxFrameSize = maxFrameSize;
+	}
+	
+	/**
+	 * Creates a codec which uses a 4 byte big endian prefix
+	 * 
+	 * @return
+	 */
+	public static FrameCodec intPrefix()
+	{
+		return new IntFrameCodec(DEFAULT_MAX_FRAME_SIZE);
+	}
+	
+	/**
+	 * Creates a codec which uses an unsigned base 128 varint prefix, taking a single byte for frames shorter than 128
+	 * bytes
+	 * 
+	 * @return
+	 */
+	public static FrameCodec varintPrefix()
+	{
+		return new VarIntFrameCodec(DEFAULT_MAX_FRAME_SIZE);
+	}
+	
+	/**
+	 * Creates a codec which uses an 8 byte big endian prefix. Frames of more than 2GB can only be read and written as
+	 * streams.
+	 * 
+	 * @return
+	 */
+	public static FrameCodec longPrefix()
+	{
+		return new LongFrameCodec(DEFAULT_MAX_FRAME_SIZE);
+	}
+	
+	/**
+	 * Returns a codec with the same prefix format and a different maximum frame size
+	 * 
+	 * @param maxFrameSize
+	 * @return
+	 */
+	public abstract FrameCodec withMaxFrameSize(long maxFrameSize);
+	
+	/**
+	 * Returns the largest number of bytes a prefix can take
+	 * 
+	 * @return
+	 */
+	public abstract int getMaxPrefixLength();
+	
+	public long getMaxFrameSize()
+	{
+		return maxFrameSize;
+	}
+	
+	/**
+	 * Encodes the length of a frame into the beginning of the array
+	 * 
+	 * @param length
+	 * @param dest
+	 *            an array of at least {@link #getMaxPrefixLength()} bytes
+	 * @return the number of bytes of the prefix
+	 * @throws FrameTooLargeException
+	 */
+	public final int writeLength(final long length, final byte[] dest) throws FrameTooLargeException
+	{
+		checkFrameSize(length);
+		return encodeLength(length, dest);
+	}
+	
+	/**
+	 * Reads the length prefix of the next frame from the stream
+	 * 
+	 * @param is
+	 * @return the length of the frame, or {@link FramedStream#END_OF_STREAM} if the stream ended before the frame
+	 *         started
+	 * @throws IOException
+	 */
+	public final long readLength(final InputStream is) throws IOException
+	{
+		long length = decodeLength(is);
+		
+		// make sure the stream did not end
+		if (FramedStream.END_OF_STREAM != length)
+		{
+			checkFrameSize(length);
+		}
+		
+		return length;
+	}
+	
+	/**
+	 * Reads the length prefix of the next frame from the buffer. If the buffer does not contain the whole prefix its
+	 * position is left unchanged.
+	 * 
+	 * @param buffer
+	 * @return the length of the frame, or {@link #NEED_MORE_DATA} if the prefix is incomplete
+	 * @throws IOException
+	 */
+	public final long readLength(final ByteBuffer buffer) throws IOException
+	{
+		long length = decodeLength(buffer);
+		
+		// make sure the prefix was complete
+		if (NEED_MORE_DATA != length)
+		{
+			checkFrameSize(length);
+		}
+		
+		return length;
+	}
+	
+	/**
+	 * Encodes the length into the beginning of the array
+	 * 
+	 * @param length
+	 * @param dest
+	 * @return the number of bytes of the prefix
+	 */
+	protected abstract int encodeLength(long length, byte[] dest);
+	
+	/**
+	 * Decodes a length from the stream
+	 * 
+	 * @param is
+	 * @return the length, or {@link FramedStream#END_OF_STREAM} if the stream ended before the prefix started
+	 * @throws IOException
+	 *             if the stream ended in the middle of the prefix or the prefix is malformed
+	 */
+	protected abstract long decodeLength(InputStream is) throws IOException;
+	
+	/**
+	 * Decodes a length from the buffer without consuming anything if the prefix is incomplete
+	 * 
+	 * @param buffer
+	 * @return the length, or {@link #NEED_MORE_DATA}
+	 * @throws IOException
+	 *             if the prefix is malformed
+	 */
+	protected abstract long decodeLength(ByteBuffer buffer) throws IOException;
+	
+	/**
+	 * Reads the next byte of a prefix which has already been started
+	 * 
+	 * @param is
+	 * @return
+	 * @throws IOException
+	 */
+	protected static int readPrefixByte(final InputStream is) throws IOException
+	{
+		int b = is.read();
+		
+		// make sure the stream did not end in the middle of the prefix
+		if (FramedStream.END_OF_STREAM == b)
+		{
+			throw new EOFException("Stream ended in the middle of a frame prefix");
+		}
+		
+		return b;
+	}
+	
+	/**
+	 * Makes sure the length is valid and within the maximum frame size
+	 * 
+	 * @param length
+	 * @throws FrameTooLargeException
+	 */
+	private void checkFrameSize(final long length) throws FrameTooLargeException
+	{
+		if (length > maxFrameSize)
+		{
+			throw new FrameTooLargeException(length, maxFrameSize);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.frame;
+
+import java.util.zip.Deflater;
+
+/**
+ * Holds the compression settings of a connection. When compression is enabled every frame starts with a flag byte
+ * which marks whether the rest of the frame is raw or deflated, so both ends of a connection must enable it. Frames
+ * shorter than the threshold, and frames which do not shrink, are sent raw.
+ */
+public class FrameCompression
+{
+	// ** Finals **//
+	// holds the size below which frames are sent raw unless another threshold is set
+	public static final int DEFAULT_THRESHOLD = 256;
+	
+	/**
+	 * Sends every frame without a flag byte, exactly as connections did before compression existed
+	 */
+	public static final FrameCompression NONE = new FrameCompression(false, 0, 0, 0);
+	
+	// ** Primitives **//
+	// determines whether or not frames carry a flag byte and may be compressed
+	private final boolean enabled;
+	
+	// holds the size below which frames are sent raw
+	private final int threshold;
+	
+	// holds the deflate compression level
+	private final int level;
+	
+	// holds the largest size a compressed frame may expand to
+	private final long maxFrameSize;
+	
+	/**
+	 * The constructor for FrameCompression
+	 * 
+	 * @param enabled
+	 * @param threshold
+	 * @param level
+	 * @param maxFrameSize
+	 */
+	private FrameCompression(final boolean enabled, final int threshold, final int level, final long maxFrameSize)
+	{
+		this.enabled = enabled;
+		this.threshold = threshold;
+		this.level = level;
+		this.maxFrameSize = maxFrameSize;
+	}
+	
+	/**
+	 * Creates settings which deflate frames of at least the default threshold at the default level
+	 * 
+	 * @return
+	 */
+	public static FrameCompression deflate()
+	{
+		return deflate(DEFAULT_THRESHOLD, Deflater.DEFAULT_COMPRESSION);
+	}
+	
+	/**
+	 * Creates settings which deflate frames of at least the given size
+	 * 
+	 * @param threshold
+	 * @param level
+	 *            a {@link Deflater} compression level
+	 * @return
+	 */
+	public static FrameCompression deflate(final int threshold, final int level)
+	{
+		return deflate(threshold, level, FrameCodec.DEFAULT_MAX_FRAME_SIZE);
+	}
+	
+	/**
+	 * Creates settings which deflate frames of at least the given size
+	 * 
+	 * @param threshold
+	 * @param level
+	 *            a {@link Deflater} compression level
+	 * @param maxFrameSize
+	 *            the largest size a received frame may expand to, which guards against frames that decompress to far
+	 *            more than they were sent as
+	 * @return
+	 */
+	public static FrameCompression deflate(final int threshold, final int level, final long maxFrameSize)
+	{
+		// make sure the settings are valid
+		if (threshold < 0)
+		{
+			throw new IllegalArgumentException("threshold cannot be negative");
+		}
+		if (level != Deflater.DEFAULT_COMPRESSION
+			&& (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION))
+		{
+			throw new IllegalArgumentException("Invalid compression level: " + level);
+		}
+		if (maxFrameSize < 0 || maxFrameSize > FramedStream.MAX_ARRAY_SIZE)
+		{
+			throw new IllegalArgumentException("maxFrameSize must be between 0 and " + FramedStream.MAX_ARRAY_SIZE);
+		}
+		
+		return new FrameCompression(true, threshold, level, maxFrameSize);
+	}
+	
+	/**
+	 * Creates the compressor for a single connection
+	 * 
+	 * @return the compressor, or null if compression is not enabled
+	 */
+	public FrameCompressor createCompressor()
+	{
+		return enabled ? new FrameCompressor(threshold, level, (int) maxFrameSize) : null;
+	}
+	
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+	
+	public int getThreshold()
+	{
+		return threshold;
+	}
+	
+	public int getLevel()
+	{
+		return level;
+	}
+	
+	public long getMaxFrameSize()
+	{
+		return maxFrameSize;
+	}
+}
@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.frame;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses and decompresses the frames of a single connection, reusing the same {@link Deflater} and
+ * {@link Inflater} for every frame. Every frame starts with a flag byte. Raw frames follow it with the payload;
+ * deflated frames follow it with the 4 byte length of the payload and then the deflated payload. Compressing and
+ * decompressing can happen on different threads at the same time.
+ */
+public class FrameCompressor
+{
+	// ** Finals **//
+	// marks a frame which is sent as is
+	public static final byte FLAG_RAW = 0;
+	
+	// marks a frame which has been deflated
+	public static final byte FLAG_DEFLATE = 1;
+	
+	// holds the size of the header of a deflated frame
+	private static final int DEFLATE_HEADER_SIZE = 1 + FramedStream.INTEGER_SIZE;
+	
+	// ** Objects **//
+	private final Deflater deflater;
+	private final Inflater inflater;
+	
+	// holds the array the deflater writes into, which grows to fit the largest frame
+	private byte[] deflateBuffer;
+	
+	// holds the array used to check that nothing follows the end of an inflated payload
+	private final byte[] trailing;
+	
+	// ** Primitives **//
+	private final int threshold;
+	private final int maxFrameSize;
+	
+	// determines if the native resources have been released
+	private volatile boolean ended;
+	
+	/**
+	 * The constructor for FrameCompressor
+	 * 
+	 * @param threshold
+	 * @param level
+	 * @param maxFrameSize
+	 */
+	FrameCompressor(final int threshold, final int level, final int maxFrameSize)
+	{
+		this.threshold = threshold;
+		this.maxFrameSize = maxFrameSize;
+		
+		deflater = new Deflater(level);
+		inflater = new Inflater();
+		deflateBuffer = new byte[FramedStream.BUFFER_SIZE];
+		trailing = new byte[1];
+	}
+	
+	/**
+	 * Compresses a frame, or marks it as raw if it is too small or does not shrink
+	 * 
+	 * @param data
+	 * @return
+	 */
+	public byte[] compress(final byte[] data)
+	{
+		// check to see if the frame is worth compressing
+		if (data.length >= threshold)
+		{
+			synchronized (deflater)
+			{
+				// an ended deflater can no longer be used, so the frame is sent raw
+				if (ended)
+				{
+					return raw(data);
+				}
+				
+				deflater.reset();
+				deflater.setInput(data);
+				deflater.finish();
+				
+				// stop once the output is no smaller than the input
+				final int limit = DEFLATE_HEADER_SIZE + data.length;
+				int length = DEFLATE_HEADER_SIZE;
+				
+				while (!deflater.finished() && length < limit)
+				{
+					// make sure there is room for more output
+					if (length == deflateBuffer.length)
+					{
+						deflateBuffer = Arrays.copyOf(deflateBuffer, Math.min(deflateBuffer.length * 2, limit));
+					}
+					
+					length += deflater.deflate(deflateBuffer, length, Math.min(deflateBuffer.length, limit) - length);
+				}
+				
+				// check to see if the frame shrank
+				if (deflater.finished() && length < limit)
+				{
+					byte[] frame = Arrays.copyOf(deflateBuffer, length);
+					frame[0] = FLAG_DEFLATE;
+					frame[1] = (byte) (data.length >>> 24);
+					frame[2] = (byte) (data.length >>> 16);
+					frame[3] = (byte) (data.length >>> 8);
+					frame[4] = (byte) data.length;
+					
+					return frame;
+				}
+			}
+		}
+		
+		// send the frame raw
+		return raw(data);
+	}
+	
+	/**
+	 * Marks a frame as raw
+	 * 
+	 * @param data
+	 * @return
+	 */
+	private byte[] raw(final byte[] data)
+	{
+		byte[] frame = new byte[data.length + 1];
+		frame[0] = FLAG_RAW;
+		System.arraycopy(data, 0, frame, 1, data.length);
+		
+		return frame;
+	}
+	
+	/**
+	 * Restores a frame produced by {@link #compress(byte[])}
+	 * 
+	 * @param frame
+	 * @return
+	 * @throws IOException
+	 *             if the frame is malformed or expands to more than the maximum frame size
+	 */
+	public byte[] decompress(final byte[] frame) throws IOException
+	{
+		// make sure there is a flag
+		if (frame.length == 0)
+		{
+			throw new IOException("Frame is missing its compression flag");
+		}
+		
+		switch (frame[0])
+		{
+			case FLAG_RAW:
+				return Arrays.copyOfRange(frame, 1, frame.length);
+				
+			case FLAG_DEFLATE:
+				return inflate(frame);
+				
+			default:
+				throw new IOException("Unknown compression flag: " + frame[0]);
+		}
+	}
+	
+	/**
+	 * Releases the native resources of the deflater and inflater. Frames compressed afterwards are sent raw and
+	 * deflated frames can no longer be restored.
+	 */
+	public void end()
+	{
+		synchronized (deflater)
+		{
+			ended = true;
+			deflater.end();
+		}
+		synchronized (inflater)
+		{
+			inflater.end();
+		}
+	}
+	
+	/**
+	 * Inflates a deflated frame
+	 * 
+	 * @param frame
+	 * @return
+	 * @throws IOException
+	 */
+	private byte[] inflate(final byte[] frame) throws IOException
+	{
+		// make sure the header is complete
+		if (frame.length < DEFLATE_HEADER_SIZE)
+		{
+			throw new IOException("Compressed frame is missing its length");
+		}
+		
+		int length = ((frame[1] & 0xFF) << 24) | ((frame[2] & 0xFF) << 16) | ((frame[3] & 0xFF) << 8)
+			| (frame[4] & 0xFF);
+		
+		// make sure the length is valid before allocating anything
+		if (length < 0)
+		{
+			throw new IOException("Invalid frame length: " + length);
+		}
+		if (length > maxFrameSize)
+		{
+			throw new FrameTooLargeException(length, maxFrameSize);
+		}
+		
+		byte[] data = new byte[length];
+		
+		synchronized (inflater)
+		{
+			// make sure the inflater has not been ended
+			if (ended)
+			{
+				throw new IOException("The compressor has been ended");
+			}
+			
+			inflater.reset();
+			inflater.setInput(frame, DEFLATE_HEADER_SIZE, frame.length - DEFLATE_HEADER_SIZE);
+			
+			try
+			{
+				int count = 0;
+				
+				// inflate until the payload is complete
+				while (count < length)
+				{
+					int n = inflater.inflate(data, count, length - count);
+					
+					// make sure progress is being made
+					if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+					{
+						break;
+					}
+					
+					count += n;
+				}
+				
+				// the end of the deflated data may not have been reached once the payload is full
+				if (count == length && !inflater.finished() && inflater.inflate(trailing) > 0)
+				{
+					throw new IOException("Compressed frame is longer than its length");
+				}
+				
+				// make sure the payload matches its length
+				if (count != length || !inflater.finished())
+				{
+					throw new IOException("Compressed frame does not match its length");
+				}
+			}
+			catch (DataFormatException e)
+			{
+				throw new IOException(e);
+			}
+		}
+		
+		return data;
+	}
+}
@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.frame;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the length prefix of a frame is larger than the maximum frame size of its {@link FrameCodec}. When this
+ * is thrown by a reader, the stream is positioned right after the prefix and should be closed.
+ */
+public class FrameTooLargeException extends IOException
+{
+	private static final long serialVersionUID = 1L;
+	
+	// ** Primitives **//
+	private final long frameSize;
+	private final long maxFrameSize;
+	
+	public FrameTooLargeException(final long frameSize, final long maxFrameSize)
+	{
+		super("Frame of " + frameSize + " bytes exceeds the maximum frame size of " + maxFrameSize + " bytes");
+		
+		this.frameSize = frameSize;
+		this.maxFrameSize = maxFrameSize;
+	}
+	
+	public long getFrameSize()
+	{
+		return frameSize;
+	}
+	
+	public long getMaxFrameSize()
+	{
+		return maxFrameSize;
+	}
+}
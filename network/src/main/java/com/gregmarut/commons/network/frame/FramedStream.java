@@ -21,4 +21,10 @@ public abstract class FramedStream
 	
 	// holds the number of bytes to represent an integer
 	public static final int INTEGER_SIZE = Integer.SIZE / Byte.SIZE;
+	
+	// holds the number of bytes to represent a long
+	public static final int LONG_SIZE = Long.SIZE / Byte.SIZE;
+	
+	// holds the largest array which can safely be allocated
+	public static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
 }
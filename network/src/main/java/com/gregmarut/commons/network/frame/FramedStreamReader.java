@@ -10,78 +10,340 @@
  ******************************************************************************/
 package com.gregmarut.commons.network.frame;
 
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 
+/**
+ * Reads length prefixed frames from an input stream. Besides {@link #readFrame()}, which returns each frame in a new
+ * array, frames can be read into an array or buffer supplied by the caller, or into a buffer owned by this reader, so
+ * that reading a frame does not allocate anything once the buffers have grown to the largest frame size. Frames too
+ * large for an array can be read with {@link #readFrame(OutputStream)}. The prefix format and the maximum frame size
+ * are set by the reader's {@link FrameCodec}.
+ */
 public class FramedStreamReader extends FramedStream
 {
 	//** Objects **//
 	private final InputStream is;
 	
+	// holds the codec which decodes the prefix of each frame
+	private FrameCodec frameCodec;
+	
+	// holds the array used to copy frames into buffers which are not backed by an array and into streams
+	private byte[] transferBuffer;
+	
+	// holds the buffer returned by readFrameBuffer
+	private ByteBuffer frameBuffer;
+	
 	public FramedStreamReader(final InputStream is)
+	{
+		this(is, FrameCodec.DEFAULT);
+	}
+	
+	public FramedStreamReader(final InputStream is, final FrameCodec frameCodec)
 	{
 		this.is = is;
+		this.frameCodec = frameCodec;
 	}
 	
+	/**
+	 * Reads the next frame into a new array
+	 * 
+	 * @return the frame, or null if the stream has ended
+	 * @throws IOException
+	 */
 	public byte[] readFrame() throws IOException
 	{
-		// holds the incoming data
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		
-		// create a new buffer
-		byte[] buffer = new byte[BUFFER_SIZE];
+		// read the length of the frame
+		long dataLength = readPrefix();
 		
-		// holds the length of the data
-		int dataLength = 0;
+		// make sure the stream did not end
+		if (END_OF_STREAM != dataLength)
+		{
+			byte[] data = new byte[toArraySize(dataLength)];
+			readFully(data, 0, data.length);
+			
+			return data;
+		}
+		else
+		{
+			return null;
+		}
+	}
+	
+	/**
+	 * Reads the next frame into the beginning of the array provided
+	 * 
+	 * @param buffer
+	 * @return the length of the frame, or {@link #END_OF_STREAM} if the stream has ended
+	 * @throws IOException
+	 *             if the frame is larger than the array. The frame is skipped so the next frame can still be read.
+	 */
+	public int readFrame(final byte[] buffer) throws IOException
+	{
+		// read the length of the frame
+		long dataLength = readPrefix();
 		
-		// holds the total number of bytes read
-		int totalRead = 0;
+		// make sure the stream did not end
+		if (END_OF_STREAM != dataLength)
+		{
+			// make sure the frame fits
+			if (dataLength > buffer.length)
+			{
+				skipFully(dataLength);
+				throw new IOException("Frame of " + dataLength + " bytes does not fit in a buffer of " + buffer.length
+					+ " bytes");
+			}
+			
+			readFully(buffer, 0, (int) dataLength);
+		}
 		
-		// holds the number of bytes that have been read
-		int n = 0;
+		return (int) dataLength;
+	}
+	
+	/**
+	 * Reads the next frame into the buffer provided. The frame is written at the buffer's position and the position is
+	 * advanced past the frame.
+	 * 
+	 * @param buffer
+	 * @return the length of the frame, or {@link #END_OF_STREAM} if the stream has ended
+	 * @throws IOException
+	 *             if the frame is larger than the space remaining in the buffer. The frame is skipped so the next frame
+	 *             can still be read.
+	 */
+	public int readFrame(final ByteBuffer buffer) throws IOException
+	{
+		// read the length of the frame
+		long dataLength = readPrefix();
 		
-		// read the prefix
-		while ((n = is.read(buffer, 0, INTEGER_SIZE - totalRead)) != END_OF_STREAM)
+		// make sure the stream did not end
+		if (END_OF_STREAM != dataLength)
 		{
-			//increment the total bytes read
-			totalRead += n;
+			// make sure the frame fits
+			if (dataLength > buffer.remaining())
+			{
+				skipFully(dataLength);
+				throw new IOException("Frame of " + dataLength + " bytes does not fit in a buffer with "
+					+ buffer.remaining() + " bytes remaining");
+			}
 			
-			//check to see if the total read is equal to the integer size
-			if(INTEGER_SIZE == totalRead)
+			// check to see if the data can be read directly into the buffer's array
+			if (buffer.hasArray())
+			{
+				readFully(buffer.array(), buffer.arrayOffset() + buffer.position(), (int) dataLength);
+				buffer.position(buffer.position() + (int) dataLength);
+			}
+			else
 			{
-				ByteBuffer bb = ByteBuffer.allocate(INTEGER_SIZE).put(buffer, 0, INTEGER_SIZE);
-				dataLength = bb.getInt(0);
+				byte[] transfer = getTransferBuffer();
+				int remaining = (int) dataLength;
 				
-				break;
+				// copy the frame through the transfer buffer
+				while (remaining > 0)
+				{
+					int count = Math.min(remaining, transfer.length);
+					readFully(transfer, 0, count);
+					buffer.put(transfer, 0, count);
+					
+					remaining -= count;
+				}
 			}
 		}
 		
-		//make sure the stream did not end
-		if(END_OF_STREAM != n)
+		return (int) dataLength;
+	}
+	
+	/**
+	 * Reads the next frame into a buffer owned by this reader. The buffer grows to fit the largest frame read so far
+	 * and is reused for every frame, so its contents are only valid until the next frame is read.
+	 * 
+	 * @return a buffer whose position is 0 and whose limit is the length of the frame, or null if the stream has ended
+	 * @throws IOException
+	 */
+	public ByteBuffer readFrameBuffer() throws IOException
+	{
+		// read the length of the frame
+		long dataLength = readPrefix();
+		
+		// make sure the stream did not end
+		if (END_OF_STREAM != dataLength)
 		{
-			//reset the total read
-			totalRead = 0;
-			
-			int remaining = dataLength;
+			final int length = toArraySize(dataLength);
 			
-			// while there is more data to be read
-			while ((n = is.read(buffer, 0, (remaining > INTEGER_SIZE ? INTEGER_SIZE : remaining))) != END_OF_STREAM && remaining > 0)
+			// check to see if the buffer needs to grow
+			if (null == frameBuffer || frameBuffer.capacity() < length)
 			{
-				//increment the total bytes read
-				totalRead += n;
-				remaining = dataLength - totalRead;
-				
-				// write the buffer to the data stream
-				baos.write(buffer, 0, n);
+				frameBuffer = ByteBuffer.allocate(Math.max(length, BUFFER_SIZE));
 			}
 			
-			return baos.toByteArray();
+			readFully(frameBuffer.array(), 0, length);
+			
+			frameBuffer.clear();
+			frameBuffer.limit(length);
+			
+			return frameBuffer;
 		}
 		else
 		{
 			return null;
 		}
 	}
+	
+	/**
+	 * Reads the next frame and copies it to the output stream. This is the only way to read frames which are too large
+	 * to fit in an array.
+	 * 
+	 * @param os
+	 * @return the length of the frame, or {@link #END_OF_STREAM} if the stream has ended
+	 * @throws IOException
+	 */
+	public long readFrame(final OutputStream os) throws IOException
+	{
+		// read the length of the frame
+		long dataLength = readPrefix();
+		
+		// make sure the stream did not end
+		if (END_OF_STREAM != dataLength)
+		{
+			byte[] transfer = getTransferBuffer();
+			long remaining = dataLength;
+			
+			// copy the frame through the transfer buffer
+			while (remaining > 0)
+			{
+				int count = (int) Math.min(remaining, transfer.length);
+				readFully(transfer, 0, count);
+				os.write(transfer, 0, count);
+				
+				remaining -= count;
+			}
+		}
+		
+		return dataLength;
+	}
+	
+	/**
+	 * Sets the codec used to decode the prefix of each frame
+	 * 
+	 * @param frameCodec
+	 */
+	public void setFrameCodec(final FrameCodec frameCodec)
+	{
+		// make sure the codec is not null
+		if (null == frameCodec)
+		{
+			throw new IllegalArgumentException("frameCodec cannot be null");
+		}
+		
+		this.frameCodec = frameCodec;
+	}
+	
+	public FrameCodec getFrameCodec()
+	{
+		return frameCodec;
+	}
+	
+	/**
+	 * Reads the length prefix of the next frame
+	 * 
+	 * @return the length of the frame, or {@link #END_OF_STREAM} if the stream ended before the frame started
+	 * @throws IOException
+	 */
+	private long readPrefix() throws IOException
+	{
+		return frameCodec.readLength(is);
+	}
+	
+	/**
+	 * Makes sure a frame can be held in a single array
+	 * 
+	 * @param dataLength
+	 * @return
+	 * @throws FrameTooLargeException
+	 */
+	private int toArraySize(final long dataLength) throws FrameTooLargeException
+	{
+		if (dataLength > MAX_ARRAY_SIZE)
+		{
+			throw new FrameTooLargeException(dataLength, MAX_ARRAY_SIZE);
+		}
+		
+		return (int) dataLength;
+	}
+	
+	/**
+	 * Returns the array used to copy frames into buffers and streams
+	 * 
+	 * @return
+	 */
+	private byte[] getTransferBuffer()
+	{
+		// make sure the transfer buffer has been created
+		if (null == transferBuffer)
+		{
+			transferBuffer = new byte[BUFFER_SIZE];
+		}
+		
+		return transferBuffer;
+	}
+	
+	/**
+	 * Reads exactly length bytes into the array
+	 * 
+	 * @param buffer
+	 * @param offset
+	 * @param length
+	 * @throws IOException
+	 */
+	private void readFully(final byte[] buffer, final int offset, final int length) throws IOException
+	{
+		// holds the total number of bytes read
+		int totalRead = 0;
+		
+		// while there is more data to be read
+		while (totalRead < length)
+		{
+			int n = is.read(buffer, offset + totalRead, length - totalRead);
+			
+			// make sure the stream did not end
+			if (END_OF_STREAM == n)
+			{
+				throw new EOFException("Stream ended in the middle of a frame");
+			}
+			
+			totalRead += n;
+		}
+	}
+	
+	/**
+	 * Skips exactly length bytes of the stream
+	 * 
+	 * @param length
+	 * @throws IOException
+	 */
+	private void skipFully(final long length) throws IOException
+	{
+		long remaining = length;
+		
+		// while there is more data to be skipped
+		while (remaining > 0)
+		{
+			long n = is.skip(remaining);
+			
+			// skip may return 0 without the stream having ended, so fall back to a read to find out
+			if (n <= 0)
+			{
+				if (END_OF_STREAM == is.read())
+				{
+					throw new EOFException("Stream ended in the middle of a frame");
+				}
+				
+				n = 1;
+			}
+			
+			remaining -= n;
+		}
+	}
 }
@@ -10,31 +10,388 @@
  ******************************************************************************/
 package com.gregmarut.commons.network.frame;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * Writes length prefixed frames to an output stream. By default every frame is flushed as soon as it is written; a
+ * different {@link FlushPolicy} lets frames collect in the stream's buffer so that many small frames leave in a single
+ * write. The prefix format is set by the writer's {@link FrameCodec}.
+ */
 public class FramedStreamWriter extends FramedStream
 {
+	// holds how long a connection waits for its pending frames to be flushed before it is closed anyway
+	public static final long CLOSE_FLUSH_TIMEOUT_MILLIS = 1000;
+	
 	//** Objects **//
 	private final OutputStream os;
 	
+	// holds the array reused for writing each prefix
+	private byte[] prefix;
+	
+	// holds the array used to copy frames from streams
+	private byte[] transferBuffer;
+	
+	// holds the codec which encodes the prefix of each frame
+	private FrameCodec frameCodec;
+	
+	// holds the policy which decides when to flush
+	private FlushPolicy flushPolicy;
+	
+	// holds an error raised by a delayed flush until it can be reported to a caller
+	private IOException flushError;
+	
+	//** Primitives **//
+	// holds the frames and bytes written since the last flush
+	private int pendingFrames;
+	private long pendingBytes;
+	
+	// holds the number of batches which are currently open
+	private int batchDepth;
+	
+	// determines whether or not a delayed flush has been scheduled
+	private boolean flushScheduled;
+	
+	// holds the task which runs a delayed flush
+	private final Runnable delayedFlush;
+	
+	// holds the executor which runs the delayed flushes
+	private Executor flushExecutor;
+	
 	public FramedStreamWriter(final OutputStream os) throws IOException
+	{
+		this(os, FlushPolicy.IMMEDIATE);
+	}
+	
+	public FramedStreamWriter(final OutputStream os, final FlushPolicy flushPolicy) throws IOException
+	{
+		this(os, flushPolicy, FrameCodec.DEFAULT);
+	}
+	
+	public FramedStreamWriter(final OutputStream os, final FlushPolicy flushPolicy, final FrameCodec frameCodec)
+		throws IOException
 	{
 		this.os = os;
+		this.prefix = new byte[frameCodec.getMaxPrefixLength()];
+		this.flushPolicy = flushPolicy;
+		this.frameCodec = frameCodec;
+		
+		delayedFlush = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				flushDelayed();
+			}
+		};
+		flushExecutor = FlushScheduler.DEFAULT_FLUSH_EXECUTOR;
+		
 		os.flush();
 	}
 	
-	public void writeFrame(final byte[] data) throws IOException
+	/**
+	 * Writes a frame to the stream. Whether or not it is flushed right away depends on the flush policy.
+	 * 
+	 * @param data
+	 * @throws IOException
+	 */
+	public synchronized void writeFrame(final byte[] data) throws IOException
 	{
-		//determine the length of the data frame
-		byte[] prefix = ByteBuffer.allocate(INTEGER_SIZE).putInt(data.length).array();
+		// report any error from a delayed flush
+		checkFlushError();
 		
 		// write the prefix for the data frame
-		os.write(prefix);
+		int prefixLength = frameCodec.writeLength(data.length, prefix);
+		os.write(prefix, 0, prefixLength);
 		
 		// write the data to the output stream
 		os.write(data);
+		
+		frameWritten(prefixLength + data.length);
+	}
+	
+	/**
+	 * Writes a frame whose payload is read from the input stream. This is the only way to write frames which are too
+	 * large to fit in an array.
+	 * 
+	 * @param data
+	 * @param length
+	 *            the number of bytes of the stream which make up the frame
+	 * @throws IOException
+	 *             if the stream ends before length bytes have been read. The frame is incomplete and the stream
+	 *             should be closed.
+	 */
+	public synchronized void writeFrame(final InputStream data, final long length) throws IOException
+	{
+		// report any error from a delayed flush
+		checkFlushError();
+		
+		// write the prefix for the data frame
+		int prefixLength = frameCodec.writeLength(length, prefix);
+		os.write(prefix, 0, prefixLength);
+		
+		// make sure the transfer buffer has been created
+		if (null == transferBuffer)
+		{
+			transferBuffer = new byte[BUFFER_SIZE];
+		}
+		
+		long remaining = length;
+		
+		// copy the payload through the transfer buffer
+		while (remaining > 0)
+		{
+			int n = data.read(transferBuffer, 0, (int) Math.min(remaining, transferBuffer.length));
+			
+			// make sure the stream did not end
+			if (END_OF_STREAM == n)
+			{
+				throw new EOFException("Stream ended " + remaining + " bytes before the end of the frame");
+			}
+			
+			os.write(transferBuffer, 0, n);
+			remaining -= n;
+		}
+		
+		frameWritten(prefixLength + length);
+	}
+	
+	/**
+	 * Applies the flush policy to a frame which has just been written
+	 * 
+	 * @param frameLength
+	 * @throws IOException
+	 */
+	private void frameWritten(final long frameLength) throws IOException
+	{
+		pendingFrames++;
+		pendingBytes += frameLength;
+		
+		// the policy is applied once the open batch ends
+		if (batchDepth > 0)
+		{
+			return;
+		}
+		
+		// check to see if the frames should be flushed now
+		if (flushPolicy.shouldFlush(pendingFrames, pendingBytes))
+		{
+			flush();
+		}
+		
+		// check to see if the frames should be flushed later
+		else if (flushPolicy.getMaxDelayMillis() > 0 && !flushScheduled)
+		{
+			flushScheduled = true;
+			FlushScheduler.schedule(delayedFlush, flushPolicy.getMaxDelayMillis(), flushExecutor);
+		}
+	}
+	
+	/**
+	 * Flushes every frame which has been written
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException
+	{
+		// report any error from a delayed flush
+		checkFlushError();
+		
+		pendingFrames = 0;
+		pendingBytes = 0;
+		
 		os.flush();
 	}
+	
+	/**
+	 * Flushes on a pool thread and waits at most the timeout for it to finish. The calling thread never blocks on a
+	 * peer which has stopped reading, nor on a writer which is stuck writing to such a peer; a flush which does not
+	 * finish in time is left to fail once the stream is closed.
+	 * 
+	 * @param timeout
+	 * @param unit
+	 * @return whether the flush finished in time
+	 * @throws IOException
+	 */
+	public boolean flush(final long timeout, final TimeUnit unit) throws IOException
+	{
+		FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>()
+		{
+			@Override
+			public Void call() throws IOException
+			{
+				flush();
+				return null;
+			}
+		});
+		
+		FlushScheduler.DEFAULT_FLUSH_EXECUTOR.execute(task);
+		
+		try
+		{
+			task.get(timeout, unit);
+			return true;
+		}
+		catch (TimeoutException e)
+		{
+			return false;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		catch (ExecutionException e)
+		{
+			// unwrap the error of the flush
+			if (e.getCause() instanceof IOException)
+			{
+				throw (IOException) e.getCause();
+			}
+			
+			throw new IOException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Starts a batch of frames. The flush policy is not applied to the frames written during the batch; instead every
+	 * frame is flushed together when the batch ends, unless the policy is explicit.
+	 */
+	public synchronized void beginBatch()
+	{
+		batchDepth++;
+	}
+	
+	/**
+	 * Ends a batch of frames and flushes the frames written during it
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void endBatch() throws IOException
+	{
+		// make sure a batch was started
+		if (batchDepth == 0)
+		{
+			throw new IllegalStateException("no batch has been started");
+		}
+		
+		batchDepth--;
+		
+		// check to see if the last batch has ended and there is something to flush
+		if (batchDepth == 0 && pendingFrames > 0 && !flushPolicy.isExplicit())
+		{
+			flush();
+		}
+	}
+	
+	/**
+	 * Sets the policy which decides when to flush. Frames which are already waiting are flushed first.
+	 * 
+	 * @param flushPolicy
+	 * @throws IOException
+	 */
+	public synchronized void setFlushPolicy(final FlushPolicy flushPolicy) throws IOException
+	{
+		// make sure the policy is not null
+		if (null == flushPolicy)
+		{
+			throw new IllegalArgumentException("flushPolicy cannot be null");
+		}
+		
+		flush();
+		this.flushPolicy = flushPolicy;
+	}
+	
+	public synchronized FlushPolicy getFlushPolicy()
+	{
+		return flushPolicy;
+	}
+	
+	/**
+	 * Sets the codec used to encode the prefix of each frame
+	 * 
+	 * @param frameCodec
+	 */
+	public synchronized void setFrameCodec(final FrameCodec frameCodec)
+	{
+		// make sure the codec is not null
+		if (null == frameCodec)
+		{
+			throw new IllegalArgumentException("frameCodec cannot be null");
+		}
+		
+		// make sure the prefix array is large enough
+		if (prefix.length < frameCodec.getMaxPrefixLength())
+		{
+			prefix = new byte[frameCodec.getMaxPrefixLength()];
+		}
+		
+		this.frameCodec = frameCodec;
+	}
+	
+	public synchronized FrameCodec getFrameCodec()
+	{
+		return frameCodec;
+	}
+	
+	/**
+	 * Sets the executor which runs the flushes that the maximum delay of the flush policy calls for. A flush blocks
+	 * while the peer is not reading, so it should run on a thread which belongs to this connection, such as its writer
+	 * thread. By default it runs on a shared pool which gives each blocked flush a thread of its own.
+	 * 
+	 * @param flushExecutor
+	 */
+	public synchronized void setFlushExecutor(final Executor flushExecutor)
+	{
+		// make sure the executor is not null
+		if (null == flushExecutor)
+		{
+			throw new IllegalArgumentException("flushExecutor cannot be null");
+		}
+		
+		this.flushExecutor = flushExecutor;
+	}
+	
+	/**
+	 * Runs a flush which was scheduled by the flush policy
+	 */
+	private synchronized void flushDelayed()
+	{
+		flushScheduled = false;
+		
+		// make sure there is still something to flush
+		if (pendingFrames > 0 && null == flushError)
+		{
+			try
+			{
+				flush();
+			}
+			catch (IOException e)
+			{
+				flushError = e;
+			}
+		}
+	}
+	
+	/**
+	 * Throws the error of a failed delayed flush
+	 * 
+	 * @throws IOException
+	 */
+	private void checkFlushError() throws IOException
+	{
+		// check to see if a delayed flush failed
+		if (null != flushError)
+		{
+			throw flushError;
+		}
+	}
 }
@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.frame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.concurrent.Executor;
+
+/**
+ * Writes length prefixed frames to a blocking gathering channel. Frames are not copied; each prefix and payload is
+ * queued as its own buffer and every queued frame is written by a single gathering write when the flush policy says
+ * so. The payload arrays must not be modified until they have been flushed.
+ * 
+ * This is a standalone utility for callers which own a blocking channel; the socket based client and server write
+ * through a {@link FramedStreamWriter} instead.
+ */
+public class GatheringFramedWriter extends FramedStream
+{
+	// ** Finals **//
+	// holds the most frames queued before they are written regardless of the policy
+	public static final int MAX_QUEUED_FRAMES = 512;
+	
+	// ** Objects **//
+	private final GatheringByteChannel channel;
+	
+	// holds the buffers passed to each gathering write
+	private final ByteBuffer[] buffers;
+	
+	// holds the prefix buffers which are reused for each batch
+	private final ByteBuffer[] prefixes;
+	
+	// holds the policy which decides when to flush
+	private FlushPolicy flushPolicy;
+	
+	// holds the codec which encodes the prefix of each frame
+	private final FrameCodec frameCodec;
+	
+	// holds an error raised by a delayed flush until it can be reported to a caller
+	private IOException flushError;
+	
+	// holds the task which runs a delayed flush
+	private final Runnable delayedFlush;
+	
+	// holds the executor which runs the delayed flushes
+	private Executor flushExecutor;
+	
+	// ** Primitives **//
+	// holds the frames and bytes queued since the last flush
+	private int pendingFrames;
+	private long pendingBytes;
+	
+	// determines whether or not a delayed flush has been scheduled
+	private boolean flushScheduled;
+	
+	public GatheringFramedWriter(final GatheringByteChannel channel)
+	{
+		this(channel, FlushPolicy.IMMEDIATE);
+	}
+	
+	public GatheringFramedWriter(final GatheringByteChannel channel, final FlushPolicy flushPolicy)
+	{
+		this(channel, flushPolicy, FrameCodec.DEFAULT);
+	}
+	
+	public GatheringFramedWriter(final GatheringByteChannel channel, final FlushPolicy flushPolicy,
+		final FrameCodec frameCodec)
+	{
+		this.channel = channel;
+		this.flushPolicy = flushPolicy;
+		this.frameCodec = frameCodec;
+		this.buffers = new ByteBuffer[MAX_QUEUED_FRAMES * 2];
+		this.prefixes = new ByteBuffer[MAX_QUEUED_FRAMES];
+		
+		// create each of the prefix buffers
+		for (int i = 0; i < prefixes.length; i++)
+		{
+			prefixes[i] = ByteBuffer.allocate(frameCodec.getMaxPrefixLength());
+		}
+		
+		delayedFlush = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				flushDelayed();
+			}
+		};
+		flushExecutor = FlushScheduler.DEFAULT_FLUSH_EXECUTOR;
+	}
+	
+	/**
+	 * Queues a frame to be written. Whether or not it is written right away depends on the flush policy.
+	 * 
+	 * @param data
+	 * @throws IOException
+	 */
+	public synchronized void writeFrame(final byte[] data) throws IOException
+	{
+		// report any error from a delayed flush
+		checkFlushError();
+		
+		// make sure there is room for another frame
+		if (pendingFrames == MAX_QUEUED_FRAMES)
+		{
+			flush();
+		}
+		
+		// fill in the prefix for this frame
+		ByteBuffer prefix = prefixes[pendingFrames];
+		int prefixLength = frameCodec.writeLength(data.length, prefix.array());
+		prefix.clear();
+		prefix.limit(prefixLength);
+		
+		// queue the prefix and the data
+		buffers[pendingFrames * 2] = prefix;
+		buffers[pendingFrames * 2 + 1] = ByteBuffer.wrap(data);
+		
+		pendingFrames++;
+		pendingBytes += prefixLength + data.length;
+		
+		// check to see if the frames should be written now
+		if (flushPolicy.shouldFlush(pendingFrames, pendingBytes))
+		{
+			flush();
+		}
+		
+		// check to see if the frames should be written later
+		else if (flushPolicy.getMaxDelayMillis() > 0 && !flushScheduled)
+		{
+			flushScheduled = true;
+			FlushScheduler.schedule(delayedFlush, flushPolicy.getMaxDelayMillis(), flushExecutor);
+		}
+	}
+	
+	/**
+	 * Writes every queued frame to the channel
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException
+	{
+		// report any error from a delayed flush
+		checkFlushError();
+		
+		final int count = pendingFrames * 2;
+		int offset = 0;
+		
+		try
+		{
+			// keep writing until every buffer has been drained
+			while (offset < count)
+			{
+				channel.write(buffers, offset, count - offset);
+				
+				// skip past the buffers which have been written completely
+				while (offset < count && !buffers[offset].hasRemaining())
+				{
+					offset++;
+				}
+			}
+		}
+		finally
+		{
+			// release the references to the payloads
+			for (int i = 0; i < count; i++)
+			{
+				buffers[i] = null;
+			}
+			
+			pendingFrames = 0;
+			pendingBytes = 0;
+		}
+	}
+	
+	/**
+	 * Sets the policy which decides when to flush. Frames which are already queued are written first.
+	 * 
+	 * @param flushPolicy
+	 * @throws IOException
+	 */
+	public synchronized void setFlushPolicy(final FlushPolicy flushPolicy) throws IOException
+	{
+		// make sure the policy is not null
+		if (null == flushPolicy)
+		{
+			throw new IllegalArgumentException("flushPolicy cannot be null");
+		}
+		
+		flush();
+		this.flushPolicy = flushPolicy;
+	}
+	
+	public synchronized FlushPolicy getFlushPolicy()
+	{
+		return flushPolicy;
+	}
+	
+	/**
+	 * Sets the executor which runs the flushes that the maximum delay of the flush policy calls for. A flush blocks
+	 * while the peer is not reading, so it should run on a thread which belongs to this connection, such as its writer
+	 * thread. By default it runs on a shared pool which gives each blocked flush a thread of its own.
+	 * 
+	 * @param flushExecutor
+	 */
+	public synchronized void setFlushExecutor(final Executor flushExecutor)
+	{
+		// make sure the executor is not null
+		if (null == flushExecutor)
+		{
+			throw new IllegalArgumentException("flushExecutor cannot be null");
+		}
+		
+		this.flushExecutor = flushExecutor;
+	}
+	
+	/**
+	 * Runs a flush which was scheduled by the flush policy
+	 */
+	private synchronized void flushDelayed()
+	{
+		flushScheduled = false;
+		
+		// make sure there is still something to flush
+		if (pendingFrames > 0 && null == flushError)
+		{
+			try
+			{
+				flush();
+			}
+			catch (IOException e)
+			{
+				flushError = e;
+			}
+		}
+	}
+	
+	/**
+	 * Throws the error of a failed delayed flush
+	 * 
+	 * @throws IOException
+	 */
+	private void checkFlushError() throws IOException
+	{
+		// check to see if a delayed flush failed
+		if (null != flushError)
+		{
+			throw flushError;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.frame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Uses a 4 byte big endian prefix
+ */
+class IntFrameCodec extends FrameCodec
+{
+	IntFrameCodec(final long maxFrameSize)
+	{
+		super(maxFrameSize, Integer.MAX_VALUE);
+	}
+	
+	@Override
+	public FrameCodec withMaxFrameSize(final long maxFrameSize)
+	{
+		return new IntFrameCodec(maxFrameSize);
+	}
+	
+	@Override
+	public int getMaxPrefixLength()
+	{
+		return FramedStream.INTEGER_SIZE;
+	}
+	
+	@Override
+	protected int encodeLength(final long length, final byte[] dest)
+	{
+		dest[0] = (byte) (length >>> 24);
+		dest[1] = (byte) (length >>> 16);
+		dest[2] = (byte) (length >>> 8);
+		dest[3] = (byte) length;
+		
+		return FramedStream.INTEGER_SIZE;
+	}
+	
+	@Override
+	protected long decodeLength(final InputStream is) throws IOException
+	{
+		int b = is.read();
+		
+		// check to see if the stream ended before the prefix started
+		if (FramedStream.END_OF_STREAM == b)
+		{
+			return FramedStream.END_OF_STREAM;
+		}
+		
+		int length = (b << 24) | (readPrefixByte(is) << 16) | (readPrefixByte(is) << 8) | readPrefixByte(is);
+		
+		// make sure the length is valid
+		if (length < 0)
+		{
+			throw new IOException("Invalid frame length: " + length);
+		}
+		
+		return length;
+	}
+	
+	@Override
+	protected long decodeLength(final ByteBuffer buffer) throws IOException
+	{
+		// make sure the whole prefix is available
+		if (buffer.remaining() < FramedStream.INTEGER_SIZE)
+		{
+			return NEED_MORE_DATA;
+		}
+		
+		int length = buffer.getInt();
+		
+		// make sure the length is valid
+		if (length < 0)
+		{
+			throw new IOException("Invalid frame length: " + length);
+		}
+		
+		return length;
+	}
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.frame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Uses an 8 byte big endian prefix
+ */
+class LongFrameCodec extends FrameCodec
+{
+	LongFrameCodec(final long maxFrameSize)
+	{
+		super(maxFrameSize, Long.MAX_VALUE);
+	}
+	
+	@Override
+	public FrameCodec withMaxFrameSize(final long maxFrameSize)
+	{
+		return new LongFrameCodec(maxFrameSize);
+	}
+	
+	@Override
+	public int getMaxPrefixLength()
+	{
+		return FramedStream.LONG_SIZE;
+	}
+	
+	@Override
+	protected int encodeLength(final long length, final byte[] dest)
+	{
+		// for each byte of the prefix, starting with the most significant
+		for (int i = 0; i < FramedStream.LONG_SIZE; i++)
+		{
+			dest[i] = (byte) (length >>> (Long.SIZE - Byte.SIZE * (i + 1)));
+		}
+		
+		return FramedStream.LONG_SIZE;
+	}
+	
+	@Override
+	protected long decodeLength(final InputStream is) throws IOException
+	{
+		int b = is.read();
+		
+		// check to see if the stream ended before the prefix started
+		if (FramedStream.END_OF_STREAM == b)
+		{
+			return FramedStream.END_OF_STREAM;
+		}
+		
+		long length = b;
+		
+		// read the remaining bytes of the prefix
+		for (int i = 1; i < FramedStream.LONG_SIZE; i++)
+		{
+			length = (length << Byte.SIZE) | readPrefixByte(is);
+		}
+		
+		// make sure the length is valid
+		if (length < 0)
+		{
+			throw new IOException("Invalid frame length: " + length);
+		}
+		
+		return length;
+	}
+	
+	@Override
+	protected long decodeLength(final ByteBuffer buffer) throws IOException
+	{
+		// make sure the whole prefix is available
+		if (buffer.remaining() < FramedStream.LONG_SIZE)
+		{
+			return NEED_MORE_DATA;
+		}
+		
+		long length = buffer.getLong();
+		
+		// make sure the length is valid
+		if (length < 0)
+		{
+			throw new IOException("Invalid frame length: " + length);
+		}
+		
+		return length;
+	}
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.frame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Uses an unsigned base 128 varint prefix. Each byte holds 7 bits of the length, least significant first, and has its
+ * high bit set when another byte follows.
+ */
+class VarIntFrameCodec extends FrameCodec
+{
+	// holds the number of bytes needed for the largest length
+	private static final int MAX_PREFIX_LENGTH = 9;
+	
+	// holds the bits of each byte which carry the length
+	private static final int VALUE_MASK = 0x7F;
+	
+	// holds the bit of each byte which marks that another byte follows
+	private static final int CONTINUATION_BIT = 0x80;
+	
+	VarIntFrameCodec(final long maxFrameSize)
+	{
+		super(maxFrameSize, Long.MAX_VALUE);
+	}
+	
+	@Override
+	public FrameCodec withMaxFrameSize(final long maxFrameSize)
+	{
+		return new VarIntFrameCodec(maxFrameSize);
+	}
+	
+	@Override
+	public int getMaxPrefixLength()
+	{
+		return MAX_PREFIX_LENGTH;
+	}
+	
+	@Override
+	protected int encodeLength(final long length, final byte[] dest)
+	{
+		long remaining = length;
+		int count = 0;
+		
+		// write 7 bits at a time until the rest fits in a single byte
+		while ((remaining & ~VALUE_MASK) != 0)
+		{
+			dest[count++] = (byte) ((remaining & VALUE_MASK) | CONTINUATION_BIT);
+			remaining >>>= 7;
+		}
+		
+		dest[count++] = (byte) remaining;
+		
+		return count;
+	}
+	
+	@Override
+	protected long decodeLength(final InputStream is) throws IOException
+	{
+		int b = is.read();
+		
+		// check to see if the stream ended before the prefix started
+		if (FramedStream.END_OF_STREAM == b)
+		{
+			return FramedStream.END_OF_STREAM;
+		}
+		
+		long length = b & VALUE_MASK;
+		int shift = 7;
+		
+		// keep reading while another byte follows
+		while ((b & CONTINUATION_BIT) != 0)
+		{
+			checkShift(shift);
+			
+			b = readPrefixByte(is);
+			length |= (long) (b & VALUE_MASK) << shift;
+			shift += 7;
+		}
+		
+		return checkLength(length);
+	}
+	
+	@Override
+	protected long decodeLength(final ByteBuffer buffer) throws IOException
+	{
+		final int start = buffer.position();
+		
+		long length = 0;
+		int shift = 0;
+		
+		while (buffer.hasRemaining())
+		{
+			int b = buffer.get();
+			length |= (long) (b & VALUE_MASK) << shift;
+			
+			// check to see if this was the last byte
+			if ((b & CONTINUATION_BIT) == 0)
+			{
+				return checkLength(length);
+			}
+			
+			shift += 7;
+			checkShift(shift);
+		}
+		
+		// the prefix is incomplete
+		buffer.position(start);
+		return NEED_MORE_DATA;
+	}
+	
+	/**
+	 * Makes sure the prefix has not grown longer than any valid length
+	 * 
+	 * @param shift
+	 * @throws IOException
+	 */
+	private void checkShift(final int shift) throws IOException
+	{
+		if (shift >= MAX_PREFIX_LENGTH * 7)
+		{
+			throw new IOException("Malformed frame prefix");
+		}
+	}
+	
+	/**
+	 * Makes sure the decoded length is valid
+	 * 
+	 * @param length
+	 * @return
+	 * @throws IOException
+	 */
+	private long checkLength(final long length) throws IOException
+	{
+		if (length < 0)
+		{
+			throw new IOException("Invalid frame length: " + length);
+		}
+		
+		return length;
+	}
+}
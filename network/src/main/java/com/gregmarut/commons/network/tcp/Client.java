@@ -15,13 +15,25 @@ import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.gregmarut.commons.network.ClientState;
 import com.gregmarut.commons.network.InvalidStateException;
+import com.gregmarut.commons.network.dispatch.EventDispatcher;
+import com.gregmarut.commons.network.dispatch.EventDispatchers;
 import com.gregmarut.commons.network.frame.FramedStreamReader;
+import com.gregmarut.commons.network.frame.FlushPolicy;
+import com.gregmarut.commons.network.frame.FrameCodec;
+import com.gregmarut.commons.network.frame.FrameCompression;
+import com.gregmarut.commons.network.frame.FrameCompressor;
 import com.gregmarut.commons.network.frame.FramedStreamWriter;
 
 /**
@@ -32,7 +44,10 @@ import com.gregmarut.commons.network.frame.FramedStreamWriter;
 public abstract class Client<S>
 {
 	protected static final String CLIENT_ACTIVITY_THREAD_NAME = "TCP Client Activity Thread";
-	protected static final String EVENT_DISPATCH_THREAD_NAME = "TCP Event Dispatch Thread";
+	
+	// holds the default water marks of the asynchronous send queue
+	public static final long DEFAULT_LOW_WATER_MARK = 32 * 1024;
+	public static final long DEFAULT_HIGH_WATER_MARK = 64 * 1024;
 	
 	// ** Enumerations **//
 	// holds the state of this client
@@ -48,6 +63,35 @@ public abstract class Client<S>
 	// holds the list of all client listeners
 	private final List<ClientListener> clientListeners;
 	
+	// holds the dispatcher which delivers the events of this client
+	private EventDispatcher eventDispatcher;
+	
+	// holds the policy which decides when written frames are flushed
+	private FlushPolicy flushPolicy;
+	
+	// holds the codec which encodes and decodes the prefix of each frame
+	private FrameCodec frameCodec;
+	
+	// holds the compression settings of each connection
+	private FrameCompression frameCompression;
+	
+	// holds the compressor of the current connection, or null if compression is not enabled
+	private volatile FrameCompressor frameCompressor;
+	
+	// holds the list of all writability listeners, which are notified from whichever thread changes the writability
+	private final List<WritabilityListener> writabilityListeners;
+	
+	// holds the lock which keeps frames written by different threads from interleaving
+	private final Lock writeLock;
+	
+	// holds the queue of asynchronous sends for the current connection
+	private volatile SendQueue sendQueue;
+	
+	// ** Primitives **//
+	// holds the water marks of the asynchronous send queue
+	private long lowWaterMark;
+	private long highWaterMark;
+	
 	/**
 	 * The constructor for TCPClient
 	 * 
@@ -59,6 +103,19 @@ public abstract class Client<S>
 		// assign the arraylist of client listeners
 		clientListeners = new ArrayList<ClientListener>();
 		
+		// use the default dispatcher until another one is set
+		eventDispatcher = EventDispatchers.getDefault();
+		
+		// flush every frame until another policy is set
+		flushPolicy = FlushPolicy.IMMEDIATE;
+		frameCodec = FrameCodec.DEFAULT;
+		frameCompression = FrameCompression.NONE;
+		
+		writabilityListeners = new CopyOnWriteArrayList<WritabilityListener>();
+		writeLock = new ReentrantLock();
+		lowWaterMark = DEFAULT_LOW_WATER_MARK;
+		highWaterMark = DEFAULT_HIGH_WATER_MARK;
+		
 		// set the default state for this client
 		state = ClientState.CLOSED;
 	}
@@ -89,6 +146,183 @@ public abstract class Client<S>
 		return clientListeners.remove(listener);
 	}
 	
+	/**
+	 * Registers a writability listener for this Client
+	 * 
+	 * @param listener
+	 */
+	public void addWritabilityListener(final WritabilityListener listener)
+	{
+		// make sure the list does not already contain the listener
+		if (!writabilityListeners.contains(listener))
+		{
+			writabilityListeners.add(listener);
+		}
+	}
+	
+	/**
+	 * Removes a writability listener from the list and returns whether or not it was successful
+	 * 
+	 * @param listener
+	 * @return boolean
+	 */
+	public boolean removeWritabilityListener(final WritabilityListener listener)
+	{
+		return writabilityListeners.remove(listener);
+	}
+	
+	/**
+	 * Sets the water marks of the asynchronous send queue. Once the bytes waiting to be sent reach the high water mark
+	 * the client is no longer writable until they drain to the low water mark. The new water marks are used starting
+	 * with the next connection.
+	 * 
+	 * @param lowWaterMark
+	 * @param highWaterMark
+	 */
+	public synchronized void setWriteWaterMarks(final long lowWaterMark, final long highWaterMark)
+	{
+		// make sure the water marks are valid
+		if (lowWaterMark < 0 || highWaterMark <= 0 || lowWaterMark > highWaterMark)
+		{
+			throw new IllegalArgumentException("water marks must satisfy 0 <= low <= high and high > 0");
+		}
+		
+		this.lowWaterMark = lowWaterMark;
+		this.highWaterMark = highWaterMark;
+	}
+	
+	public synchronized long getLowWaterMark()
+	{
+		return lowWaterMark;
+	}
+	
+	public synchronized long getHighWaterMark()
+	{
+		return highWaterMark;
+	}
+	
+	/**
+	 * Sets the dispatcher used to deliver events to the listeners of this client. The new dispatcher is used
+	 * starting with the next connection.
+	 * 
+	 * @param eventDispatcher
+	 */
+	public synchronized void setEventDispatcher(final EventDispatcher eventDispatcher)
+	{
+		// make sure the dispatcher is not null
+		if (null == eventDispatcher)
+		{
+			throw new IllegalArgumentException("eventDispatcher cannot be null");
+		}
+		
+		this.eventDispatcher = eventDispatcher;
+	}
+	
+	/**
+	 * Returns the dispatcher used to deliver events to the listeners of this client
+	 * 
+	 * @return
+	 */
+	public synchronized EventDispatcher getEventDispatcher()
+	{
+		return eventDispatcher;
+	}
+	
+	/**
+	 * Sets the policy which decides when written frames are flushed. Any frames waiting on the previous policy are
+	 * flushed first.
+	 * 
+	 * @param flushPolicy
+	 * @throws InvalidStateException
+	 */
+	public synchronized void setFlushPolicy(final FlushPolicy flushPolicy) throws InvalidStateException
+	{
+		// make sure the policy is not null
+		if (null == flushPolicy)
+		{
+			throw new IllegalArgumentException("flushPolicy cannot be null");
+		}
+		
+		this.flushPolicy = flushPolicy;
+		
+		// check to see if the output stream is already open
+		if (null != out)
+		{
+			try
+			{
+				out.setFlushPolicy(flushPolicy);
+			}
+			catch (IOException e)
+			{
+				throw new InvalidStateException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the policy which decides when written frames are flushed
+	 * 
+	 * @return
+	 */
+	public synchronized FlushPolicy getFlushPolicy()
+	{
+		return flushPolicy;
+	}
+	
+	/**
+	 * Sets the codec which encodes and decodes the prefix of each frame. The new codec is used starting with the next
+	 * connection.
+	 * 
+	 * @param frameCodec
+	 */
+	public synchronized void setFrameCodec(final FrameCodec frameCodec)
+	{
+		// make sure the codec is not null
+		if (null == frameCodec)
+		{
+			throw new IllegalArgumentException("frameCodec cannot be null");
+		}
+		
+		this.frameCodec = frameCodec;
+	}
+	
+	/**
+	 * Returns the codec which encodes and decodes the prefix of each frame
+	 * 
+	 * @return
+	 */
+	public synchronized FrameCodec getFrameCodec()
+	{
+		return frameCodec;
+	}
+	
+	/**
+	 * Sets the compression settings of each connection. Both ends of a connection must use the same settings. The new
+	 * settings are used starting with the next connection.
+	 * 
+	 * @param frameCompression
+	 */
+	public synchronized void setFrameCompression(final FrameCompression frameCompression)
+	{
+		// make sure the settings are not null
+		if (null == frameCompression)
+		{
+			throw new IllegalArgumentException("frameCompression cannot be null");
+		}
+		
+		this.frameCompression = frameCompression;
+	}
+	
+	/**
+	 * Returns the compression settings of each connection
+	 * 
+	 * @return
+	 */
+	public synchronized FrameCompression getFrameCompression()
+	{
+		return frameCompression;
+	}
+	
 	/**
 	 * Attempts a connection to the server
 	 * 
@@ -135,6 +369,27 @@ public abstract class Client<S>
 		// make sure there is a socket
 		if (null != socket)
 		{
+			// fail any asynchronous sends which have not been written
+			if (null != sendQueue)
+			{
+				sendQueue.close();
+				sendQueue = null;
+			}
+			
+			try
+			{
+				// send any frames which are still waiting to be flushed, without waiting forever on a peer which has
+				// stopped reading
+				if (null != out)
+				{
+					out.flush(FramedStreamWriter.CLOSE_FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+				}
+			}
+			catch (IOException e)
+			{
+				logger.debug(e.getMessage(), e);
+			}
+			
 			try
 			{
 				// make sure the socket is not null
@@ -155,6 +410,12 @@ public abstract class Client<S>
 				in = null;
 				socket = null;
 				
+				// release the native resources of the compressor
+				if (null != frameCompressor)
+				{
+					frameCompressor.end();
+				}
+				
 				// set the state to closed
 				state = ClientState.CLOSED;
 			}
@@ -172,6 +433,8 @@ public abstract class Client<S>
 		// make sure the client is connected
 		if (ClientState.CONNECTED == state)
 		{
+			writeLock.lock();
+			
 			// try to send the object
 			try
 			{
@@ -182,6 +445,101 @@ public abstract class Client<S>
 			{
 				logger.error(e.getMessage(), e);
 				
+				throw new InvalidStateException(e);
+			}
+			finally
+			{
+				writeLock.unlock();
+			}
+		}
+		else
+		{
+			throw new InvalidStateException();
+		}
+	}
+	
+	/**
+	 * Queues data to be sent across the socket by the writer thread of the connection. The frames sent through this
+	 * method are written in the order they were queued; their order relative to frames sent with
+	 * {@link #sendData(byte[])} is not defined.
+	 * 
+	 * @param data
+	 * @return a future which completes once the data has been written and flushed, even under an explicit flush
+	 *         policy, or completes exceptionally if the connection is closed first
+	 */
+	public CompletableFuture<Void> sendDataAsync(final byte[] data)
+	{
+		SendQueue queue = sendQueue;
+		
+		// make sure the client is connected
+		if (ClientState.CONNECTED == state && null != queue)
+		{
+			return queue.send(data);
+		}
+		else
+		{
+			CompletableFuture<Void> future = new CompletableFuture<Void>();
+			future.completeExceptionally(new InvalidStateException());
+			
+			return future;
+		}
+	}
+	
+	/**
+	 * Determines if the bytes waiting to be sent asynchronously are below the high water mark. Producers should hold
+	 * off on further asynchronous sends while this is false.
+	 * 
+	 * @return
+	 */
+	public boolean isWritable()
+	{
+		SendQueue queue = sendQueue;
+		return null != queue && queue.isWritable();
+	}
+	
+	/**
+	 * Returns the number of bytes waiting to be sent asynchronously
+	 * 
+	 * @return
+	 */
+	public long getQueuedBytes()
+	{
+		SendQueue queue = sendQueue;
+		return null == queue ? 0 : queue.getQueuedBytes();
+	}
+	
+	/**
+	 * Notifies the writability listeners that the writability of this client has changed
+	 * 
+	 * @param writable
+	 */
+	void notifyWritabilityChanged(final boolean writable)
+	{
+		// for each of the listeners
+		for (WritabilityListener listener : writabilityListeners)
+		{
+			listener.writabilityChanged(new ClientEvent(this), writable);
+		}
+	}
+	
+	/**
+	 * Flushes every frame which has been sent but is still waiting on the flush policy
+	 * 
+	 * @throws InvalidStateException
+	 */
+	public void flush() throws InvalidStateException
+	{
+		// make sure the client is connected
+		if (ClientState.CONNECTED == state)
+		{
+			try
+			{
+				out.flush();
+			}
+			catch (IOException e)
+			{
+				logger.error(e.getMessage(), e);
+				
 				throw new InvalidStateException(e);
 			}
 		}
@@ -200,7 +558,62 @@ public abstract class Client<S>
 	protected void writeData(final byte[] data) throws IOException
 	{
 		// write the data to the output stream
-		out.writeFrame(data);
+		out.writeFrame(encodeData(data));
+	}
+	
+	/**
+	 * Turns the data being sent into the frame written to the stream. The data is compressed, when compression is
+	 * enabled, and then passed to {@link #encodeFrame(byte[])}.
+	 * 
+	 * @param data
+	 * @return
+	 * @throws IOException
+	 */
+	protected byte[] encodeData(final byte[] data) throws IOException
+	{
+		FrameCompressor compressor = frameCompressor;
+		return encodeFrame(null == compressor ? data : compressor.compress(data));
+	}
+	
+	/**
+	 * Turns a frame read from the stream back into the data that was sent. This reverses
+	 * {@link #encodeData(byte[])}.
+	 * 
+	 * @param frame
+	 * @return
+	 * @throws IOException
+	 */
+	protected byte[] decodeData(final byte[] frame) throws IOException
+	{
+		byte[] data = decodeFrame(frame);
+		
+		FrameCompressor compressor = frameCompressor;
+		return null == compressor ? data : compressor.decompress(data);
+	}
+	
+	/**
+	 * Transforms every frame after it has been compressed and before it is written. Subclasses override this to
+	 * encrypt their frames.
+	 * 
+	 * @param frame
+	 * @return
+	 * @throws IOException
+	 */
+	protected byte[] encodeFrame(final byte[] frame) throws IOException
+	{
+		return frame;
+	}
+	
+	/**
+	 * Reverses {@link #encodeFrame(byte[])} on every frame which is read, before it is decompressed
+	 * 
+	 * @param frame
+	 * @return
+	 * @throws IOException
+	 */
+	protected byte[] decodeFrame(final byte[] frame) throws IOException
+	{
+		return frame;
 	}
 	
 	/**
@@ -220,6 +633,9 @@ public abstract class Client<S>
 	 */
 	protected class ClientActivity implements Runnable
 	{
+		// holds the executor which delivers the events of this connection
+		private final Executor eventExecutor = getEventDispatcher().createExecutor();
+		
 		/**
 		 * Called when a new thread is executed
 		 */
@@ -248,49 +664,39 @@ public abstract class Client<S>
 				switch (state)
 				{
 					case CONNECTED:
-						// for each of the listeners
-						for (final ClientListener listener : clientListeners)
+						// dispatch the event
+						eventExecutor.execute(new Runnable()
 						{
-							// create a new thread to dispatch the event
-							Thread dispatchThread = new Thread(
-								new Runnable()
+							@Override
+							public void run()
+							{
+								// for each of the listeners
+								for (ClientListener listener : clientListeners)
 								{
-									@Override
-									public void run()
-									{
-										// tell the listener that the connection was lost
-										listener.connectionLost(new ClientEvent(Client.this));
-									}
-								}, EVENT_DISPATCH_THREAD_NAME
-								);
-							
-							// execute the thread
-							dispatchThread.start();
-						}
+									// tell the listener that the connection was lost
+									listener.connectionLost(new ClientEvent(Client.this));
+								}
+							}
+						});
 						break;
 					
 					case CLOSED:
 					case CONNECTING:
 					default:
-						// for each of the listeners
-						for (final ClientListener objListener : clientListeners)
+						// dispatch the event
+						eventExecutor.execute(new Runnable()
 						{
-							// create a new thread to dispatch the event
-							Thread dispatchThread = new Thread(
-								new Runnable()
+							@Override
+							public void run()
+							{
+								// for each of the listeners
+								for (ClientListener listener : clientListeners)
 								{
-									@Override
-									public void run()
-									{
-										// tell the listener that the connection was lost
-										objListener.connectionError(new ClientEvent(Client.this));
-									}
-								}, EVENT_DISPATCH_THREAD_NAME
-								);
-							
-							// execute the thread
-							dispatchThread.start();
-						}
+									// tell the listener that the connection could not be made
+									listener.connectionError(new ClientEvent(Client.this));
+								}
+							}
+						});
 						break;
 				}
 				
@@ -321,10 +727,30 @@ public abstract class Client<S>
 		private void getStreams() throws IOException
 		{
 			// set up a new output stream object
-			out = new FramedStreamWriter(new BufferedOutputStream(socket.getOutputStream()));
+			out = new FramedStreamWriter(new BufferedOutputStream(socket.getOutputStream()), getFlushPolicy(),
+				getFrameCodec());
 			
 			// setup the input stream object
-			in = new FramedStreamReader(new BufferedInputStream(socket.getInputStream()));
+			in = new FramedStreamReader(new BufferedInputStream(socket.getInputStream()), getFrameCodec());
+			
+			// create the compressor and start the writer of the asynchronous sends
+			SendQueue queue;
+			synchronized (Client.this)
+			{
+				// release the compressor of a previous connection
+				if (null != frameCompressor)
+				{
+					frameCompressor.end();
+				}
+				
+				frameCompressor = frameCompression.createCompressor();
+				queue = new SendQueue(Client.this, out, writeLock, lowWaterMark, highWaterMark);
+				sendQueue = queue;
+			}
+			
+			// run the delayed flushes on the writer thread of this connection
+			out.setFlushExecutor(queue);
+			queue.start();
 		}
 		
 		/**
@@ -335,25 +761,20 @@ public abstract class Client<S>
 			// set the state to connected
 			state = ClientState.CONNECTED;
 			
-			// for each of the listeners
-			for (final ClientListener listener : clientListeners)
+			// dispatch the event
+			eventExecutor.execute(new Runnable()
 			{
-				// create a new thread to dispatch the event
-				Thread dispatchThread = new Thread(
-					new Runnable()
+				@Override
+				public void run()
+				{
+					// for each of the listeners
+					for (ClientListener listener : clientListeners)
 					{
-						@Override
-						public void run()
-						{
-							// tell the listener that a connection has been established
-							listener.connectionEstablished(new ClientEvent(Client.this));
-						}
-					}, EVENT_DISPATCH_THREAD_NAME
-					);
-				
-				// execute the thread
-				dispatchThread.start();
-			}
+						// tell the listener that a connection has been established
+						listener.connectionEstablished(new ClientEvent(Client.this));
+					}
+				}
+			});
 			
 			// loop while there is a connection
 			while (ClientState.CONNECTED == state)
@@ -368,25 +789,20 @@ public abstract class Client<S>
 				}
 				else
 				{
-					// for each listener
-					for (final ClientListener listener : clientListeners)
+					// dispatch the event
+					eventExecutor.execute(new Runnable()
 					{
-						// create a new thread to dispatch the event
-						Thread dispatchThread = new Thread(
-							new Runnable()
+						@Override
+						public void run()
+						{
+							// for each of the listeners
+							for (ClientListener listener : clientListeners)
 							{
-								@Override
-								public void run()
-								{
-									// tell the listener that data has been received
-									listener.dataReceived(new ClientEvent(Client.this, data));
-								}
-							}, EVENT_DISPATCH_THREAD_NAME
-							);
-						
-						// execute the thread
-						dispatchThread.start();
-					}
+								// tell the listener that data has been received
+								listener.dataReceived(new ClientEvent(Client.this, data));
+							}
+						}
+					});
 				}
 			}
 		}
@@ -399,7 +815,17 @@ public abstract class Client<S>
 		 */
 		protected byte[] readData() throws IOException
 		{
-			return in.readFrame();
+			byte[] frame = in.readFrame();
+			
+			// make sure the stream did not end
+			if (null != frame)
+			{
+				return decodeData(frame);
+			}
+			else
+			{
+				return null;
+			}
 		}
 	}
 	
@@ -13,6 +13,7 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,6 +21,10 @@ import org.slf4j.LoggerFactory;
 import com.gregmarut.commons.network.InvalidStateException;
 import com.gregmarut.commons.network.ServerState;
 import com.gregmarut.commons.network.frame.FramedStreamReader;
+import com.gregmarut.commons.network.frame.FlushPolicy;
+import com.gregmarut.commons.network.frame.FrameCodec;
+import com.gregmarut.commons.network.frame.FrameCompression;
+import com.gregmarut.commons.network.frame.FrameCompressor;
 import com.gregmarut.commons.network.frame.FramedStreamWriter;
 
 /**
@@ -40,6 +45,9 @@ public class ConnectedServer<S> extends Server
 	protected FramedStreamWriter out;
 	protected FramedStreamReader in;
 	
+	// holds the compressor of this connection, or null if compression is not enabled
+	private volatile FrameCompressor frameCompressor;
+	
 	/**
 	 * The constructor for Server
 	 * 
@@ -47,6 +55,21 @@ public class ConnectedServer<S> extends Server
 	 */
 	public ConnectedServer(final GenericSocket<S> socket, final List<ServerListener> serverListeners)
 		throws InvalidStateException
+	{
+		this(socket, serverListeners, true);
+	}
+	
+	/**
+	 * The constructor for Server
+	 * 
+	 * @param socket
+	 * @param serverListeners
+	 * @param openStreams
+	 *            whether or not the blocking framed streams should be opened on the socket. Servers which do their own
+	 *            non-blocking I/O pass false so that no stream buffers are allocated for the connection.
+	 */
+	protected ConnectedServer(final GenericSocket<S> socket, final List<ServerListener> serverListeners,
+		final boolean openStreams) throws InvalidStateException
 	{
 		// call the server's constructor
 		super(socket, serverListeners);
@@ -54,17 +77,22 @@ public class ConnectedServer<S> extends Server
 		// save the server socket
 		this.socket = socket;
 		
-		try
+		// check to see if the streams should be opened
+		if (openStreams)
 		{
-			// set up a new output stream object
-			out = new FramedStreamWriter(new BufferedOutputStream(socket.getOutputStream()));
-			
-			// setup the input stream object
-			in = new FramedStreamReader(new BufferedInputStream(socket.getInputStream()));
-		}
-		catch (IOException IOE)
-		{
-			throw new InvalidStateException(IOE);
+			try
+			{
+				// set up a new output stream object
+				out = new FramedStreamWriter(new BufferedOutputStream(socket.getOutputStream()), getFlushPolicy(),
+					getFrameCodec());
+				
+				// setup the input stream object
+				in = new FramedStreamReader(new BufferedInputStream(socket.getInputStream()), getFrameCodec());
+			}
+			catch (IOException IOE)
+			{
+				throw new InvalidStateException(IOE);
+			}
 		}
 	}
 	
@@ -73,7 +101,7 @@ public class ConnectedServer<S> extends Server
 	 * 
 	 * @return
 	 */
-	synchronized void listen()
+	protected synchronized void listen()
 	{
 		// make sure the state is in requested
 		if (ServerState.REQUESTED == state)
@@ -96,6 +124,9 @@ public class ConnectedServer<S> extends Server
 		// check to see if a connection exists
 		if (ServerState.CLOSED != state)
 		{
+			// send any frames which are still waiting to be flushed
+			flushQuietly();
+			
 			try
 			{
 				// attempt to close the server
@@ -110,6 +141,12 @@ public class ConnectedServer<S> extends Server
 			}
 			finally
 			{
+				// release the native resources of the compressor
+				if (null != frameCompressor)
+				{
+					frameCompressor.end();
+				}
+				
 				// set the state to closed
 				state = ServerState.CLOSED;
 			}
@@ -144,6 +181,102 @@ public class ConnectedServer<S> extends Server
 		}
 	}
 	
+	/**
+	 * Flushes every frame which has been sent but is still waiting on the flush policy
+	 * 
+	 * @throws InvalidStateException
+	 */
+	public void flush() throws InvalidStateException
+	{
+		// make sure the server is connected
+		if (ServerState.CONNECTED == state)
+		{
+			try
+			{
+				// make sure there is an output stream to flush
+				if (null != out)
+				{
+					out.flush();
+				}
+			}
+			catch (IOException IOE)
+			{
+				throw new InvalidStateException(IOE);
+			}
+		}
+		else
+		{
+			throw new InvalidStateException();
+		}
+	}
+	
+	/**
+	 * Sets the policy which decides when written frames are flushed. Any frames waiting on the previous policy are
+	 * flushed first.
+	 * 
+	 * @param flushPolicy
+	 * @throws InvalidStateException
+	 */
+	@Override
+	public synchronized void setFlushPolicy(final FlushPolicy flushPolicy) throws InvalidStateException
+	{
+		super.setFlushPolicy(flushPolicy);
+		
+		// check to see if the output stream is already open
+		if (null != out)
+		{
+			try
+			{
+				out.setFlushPolicy(flushPolicy);
+			}
+			catch (IOException IOE)
+			{
+				throw new InvalidStateException(IOE);
+			}
+		}
+	}
+	
+	/**
+	 * Sets the codec which encodes and decodes the prefix of each frame
+	 * 
+	 * @param frameCodec
+	 */
+	@Override
+	public synchronized void setFrameCodec(final FrameCodec frameCodec)
+	{
+		super.setFrameCodec(frameCodec);
+		
+		// check to see if the streams are already open
+		if (null != out)
+		{
+			out.setFrameCodec(frameCodec);
+		}
+		if (null != in)
+		{
+			in.setFrameCodec(frameCodec);
+		}
+	}
+	
+	/**
+	 * Sets the compression settings of this connection
+	 * 
+	 * @param frameCompression
+	 */
+	@Override
+	public synchronized void setFrameCompression(final FrameCompression frameCompression)
+	{
+		super.setFrameCompression(frameCompression);
+		
+		// release the compressor being replaced
+		if (null != frameCompressor)
+		{
+			frameCompressor.end();
+		}
+		
+		// create the compressor of this connection
+		frameCompressor = frameCompression.createCompressor();
+	}
+	
 	/**
 	 * Writes the data to the output stream
 	 * 
@@ -151,9 +284,94 @@ public class ConnectedServer<S> extends Server
 	 * @throws IOException
 	 */
 	protected void writeData(final byte[] data) throws IOException
+	{
+		writeFrame(encodeData(data));
+	}
+	
+	/**
+	 * Writes a frame which has already been encoded to the output stream
+	 * 
+	 * @param frame
+	 * @throws IOException
+	 */
+	protected void writeFrame(final byte[] frame) throws IOException
 	{
 		// write the data to the output stream
-		out.writeFrame(data);
+		out.writeFrame(frame);
+	}
+	
+	/**
+	 * Turns the data being sent into the frame written to the stream. The data is compressed, when compression is
+	 * enabled, and then passed to {@link #encodeFrame(byte[])}.
+	 * 
+	 * @param data
+	 * @return
+	 * @throws IOException
+	 */
+	protected byte[] encodeData(final byte[] data) throws IOException
+	{
+		FrameCompressor compressor = frameCompressor;
+		return encodeFrame(null == compressor ? data : compressor.compress(data));
+	}
+	
+	/**
+	 * Turns a frame read from the stream back into the data that was sent. This reverses
+	 * {@link #encodeData(byte[])}.
+	 * 
+	 * @param frame
+	 * @return
+	 * @throws IOException
+	 */
+	protected byte[] decodeData(final byte[] frame) throws IOException
+	{
+		byte[] data = decodeFrame(frame);
+		
+		FrameCompressor compressor = frameCompressor;
+		return null == compressor ? data : compressor.decompress(data);
+	}
+	
+	/**
+	 * Transforms every frame after it has been compressed and before it is written. Subclasses override this to
+	 * encrypt their frames.
+	 * 
+	 * @param frame
+	 * @return
+	 * @throws IOException
+	 */
+	protected byte[] encodeFrame(final byte[] frame) throws IOException
+	{
+		return frame;
+	}
+	
+	/**
+	 * Reverses {@link #encodeFrame(byte[])} on every frame which is read, before it is decompressed
+	 * 
+	 * @param frame
+	 * @return
+	 * @throws IOException
+	 */
+	protected byte[] decodeFrame(final byte[] frame) throws IOException
+	{
+		return frame;
+	}
+	
+	/**
+	 * Flushes the output stream, ignoring any errors since the connection is closing
+	 */
+	private void flushQuietly()
+	{
+		try
+		{
+			// make sure there is an output stream to flush, without waiting forever on a peer which has stopped reading
+			if (null != out)
+			{
+				out.flush(FramedStreamWriter.CLOSE_FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		}
+		catch (IOException e)
+		{
+			logger.debug(e.getMessage(), e);
+		}
 	}
 	
 	/**
@@ -202,25 +420,20 @@ public class ConnectedServer<S> extends Server
 					}
 					else
 					{
-						// for each listener
-						for (final ServerListener listener : serverListeners)
+						// dispatch the event
+						getEventExecutor().execute(new Runnable()
 						{
-							// create a new thread to dispatch the event
-							Thread dispatchThread = new Thread(
-								new Runnable()
+							@Override
+							public void run()
+							{
+								// for each listener
+								for (ServerListener listener : serverListeners)
 								{
-									@Override
-									public void run()
-									{
-										// tell the listener that data has been received
-										listener.dataReceived(new ServerEvent(ConnectedServer.this, data));
-									}
-								}, EVENT_DISPATCH_THREAD_NAME
-								);
-							
-							// execute the thread
-							dispatchThread.start();
-						}
+									// tell the listener that data has been received
+									listener.dataReceived(new ServerEvent(ConnectedServer.this, data));
+								}
+							}
+						});
 					}
 				}
 				catch (IOException e)
@@ -230,24 +443,20 @@ public class ConnectedServer<S> extends Server
 					// disconnect this server
 					disconnect();
 					
-					// for each listener
-					for (final ServerListener listener : serverListeners)
+					// dispatch the event
+					getEventExecutor().execute(new Runnable()
 					{
-						// create a new thread to dispatch the event
-						Thread dispatchThread = new Thread(
-							new Runnable()
+						@Override
+						public void run()
+						{
+							// for each listener
+							for (ServerListener listener : serverListeners)
 							{
-								@Override
-								public void run()
-								{
-									// tell the listener that a connection has been established
-									listener.connectionLost(new ServerEvent(ConnectedServer.this));
-								}
-							}, EVENT_DISPATCH_THREAD_NAME
-							);
-						
-						dispatchThread.start();
-					}
+								// tell the listener that the connection has been lost
+								listener.connectionLost(new ServerEvent(ConnectedServer.this));
+							}
+						}
+					});
 				}
 			}
 		}
@@ -260,7 +469,17 @@ public class ConnectedServer<S> extends Server
 		 */
 		protected byte[] readData() throws IOException
 		{
-			return in.readFrame();
+			byte[] frame = in.readFrame();
+			
+			// make sure the stream did not end
+			if (null != frame)
+			{
+				return decodeData(frame);
+			}
+			else
+			{
+				return null;
+			}
 		}
 	}
 }
@@ -144,6 +144,12 @@ public abstract class ListeningServer<L, S> extends Server
 					// create the new connected server object
 					ConnectedServer<S> connectedServer = createNewConnectedServer(genericSocket);
 					
+					// the connected server delivers its events the same way as this server
+					connectedServer.setEventDispatcher(getEventDispatcher());
+					connectedServer.setFlushPolicy(getFlushPolicy());
+					connectedServer.setFrameCodec(getFrameCodec());
+					connectedServer.setFrameCompression(getFrameCompression());
+					
 					// tell the listeners that a connection has been requested
 					notifyConnectionRequest(connectedServer);
 					
@@ -176,25 +182,20 @@ public abstract class ListeningServer<L, S> extends Server
 		 */
 		protected void notifyConnectionRequest(final ConnectedServer<S> connectedServer)
 		{
-			// for each of the listeners
-			for (final ServerListener listener : serverListeners)
+			// dispatch the event
+			getEventExecutor().execute(new Runnable()
 			{
-				// create a new thread to dispatch the event
-				Thread dispatchThread = new Thread(
-					new Runnable()
+				@Override
+				public void run()
+				{
+					// for each of the listeners
+					for (ServerListener listener : serverListeners)
 					{
-						@Override
-						public void run()
-						{
-							// report that a new connection has been accepted
-							listener.connectionRequest(new ServerEvent(ListeningServer.this, connectedServer));
-						}
-					}, EVENT_DISPATCH_THREAD_NAME
-					);
-				
-				// execute the thread
-				dispatchThread.start();
-			}
+						// report that a new connection has been accepted
+						listener.connectionRequest(new ServerEvent(ListeningServer.this, connectedServer));
+					}
+				}
+			});
 		}
 	}
 	
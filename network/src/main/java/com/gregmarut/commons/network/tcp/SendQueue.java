@@ -0,0 +1,378 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * Contributors:
+ * Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.tcp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gregmarut.commons.network.InvalidStateException;
+import com.gregmarut.commons.network.frame.FramedStreamWriter;
+
+/**
+ * Holds the frames sent asynchronously on a single connection. Any number of threads may add frames while a single
+ * writer thread drains them in batches, flushing once per batch and completing the future of every frame in the
+ * batch after it has been flushed. Batches are flushed even under an explicit flush policy. The writer thread also runs the delayed flushes of the connection so that a peer
+ * which stops reading only ever blocks the thread of its own connection.
+ * 
+ * @author Greg Marut
+ */
+class SendQueue implements Runnable, Executor
+{
+	private static final String WRITER_THREAD_NAME = "TCP Client Writer Thread";
+	
+	// holds the most frames written between flushes
+	private static final int MAX_BATCH_FRAMES = 256;
+	
+	// ** Objects **//
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	
+	// holds the client which owns this queue
+	private final Client<?> client;
+	
+	// holds the output stream of the connection
+	private final FramedStreamWriter out;
+	
+	// holds the lock which keeps synchronous sends from interleaving with a batch
+	private final Lock writeLock;
+	
+	// holds the frames which are waiting to be written
+	private final ConcurrentLinkedQueue<PendingSend> queue;
+	
+	// holds the tasks, such as delayed flushes, which are waiting to be run by the writer thread
+	private final ConcurrentLinkedQueue<Runnable> tasks;
+	
+	// holds the futures of the batch being written, only touched by the writer thread
+	private final List<CompletableFuture<Void>> batch;
+	
+	// holds the number of payload bytes waiting to be written
+	private final AtomicLong queuedBytes;
+	
+	// holds the thread which writes the frames
+	private volatile Thread writerThread;
+	
+	// ** Primitives **//
+	private final long lowWaterMark;
+	private final long highWaterMark;
+	
+	// determines whether or not the writer is parked waiting for frames
+	private volatile boolean parked;
+	
+	// determines whether or not this queue has been closed
+	private volatile boolean closed;
+	
+	// determines whether or not the queued bytes are below the high water mark
+	private volatile boolean writable;
+	
+	/**
+	 * The constructor for SendQueue
+	 * 
+	 * @param client
+	 * @param out
+	 * @param writeLock
+	 * @param lowWaterMark
+	 * @param highWaterMark
+	 */
+	SendQueue(final Client<?> client, final FramedStreamWriter out, final Lock writeLock, final long lowWaterMark,
+		final long highWaterMark)
+	{
+		this.client = client;
+		this.out = out;
+		this.writeLock = writeLock;
+		this.lowWaterMark = lowWaterMark;
+		this.highWaterMark = highWaterMark;
+		
+		queue = new ConcurrentLinkedQueue<PendingSend>();
+		tasks = new ConcurrentLinkedQueue<Runnable>();
+		batch = new ArrayList<CompletableFuture<Void>>(MAX_BATCH_FRAMES);
+		queuedBytes = new AtomicLong();
+		writable = true;
+	}
+	
+	/**
+	 * Starts the writer thread
+	 */
+	void start()
+	{
+		writerThread = new Thread(this, WRITER_THREAD_NAME);
+		writerThread.start();
+	}
+	
+	/**
+	 * Adds a frame to the queue
+	 * 
+	 * @param data
+	 * @return a future which completes once the frame has been written and flushed
+	 */
+	CompletableFuture<Void> send(final byte[] data)
+	{
+		CompletableFuture<Void> future = new CompletableFuture<Void>();
+		
+		// make sure the queue is still open
+		if (closed)
+		{
+			future.completeExceptionally(new InvalidStateException());
+			return future;
+		}
+		
+		queuedBytes.addAndGet(data.length);
+		queue.offer(new PendingSend(data, future));
+		
+		// check to see if the queue was closed while the frame was being added
+		if (closed)
+		{
+			failPending();
+		}
+		
+		// wake up the writer if it is waiting for frames
+		else if (parked)
+		{
+			LockSupport.unpark(writerThread);
+		}
+		
+		// check to see if the high water mark has been crossed
+		if (writable && queuedBytes.get() >= highWaterMark)
+		{
+			updateWritability();
+		}
+		
+		return future;
+	}
+	
+	/**
+	 * Runs the task on the writer thread
+	 */
+	@Override
+	public void execute(final Runnable task)
+	{
+		// make sure the queue is still open
+		if (closed)
+		{
+			throw new RejectedExecutionException();
+		}
+		
+		tasks.offer(task);
+		
+		// wake up the writer if it is waiting
+		if (parked)
+		{
+			LockSupport.unpark(writerThread);
+		}
+	}
+	
+	/**
+	 * Closes the queue and fails every frame which has not been written
+	 */
+	void close()
+	{
+		closed = true;
+		
+		// wake up the writer so that it can exit
+		Thread thread = writerThread;
+		if (null != thread)
+		{
+			LockSupport.unpark(thread);
+		}
+		
+		failPending();
+	}
+	
+	/**
+	 * Determines if the queued bytes are below the high water mark
+	 * 
+	 * @return
+	 */
+	boolean isWritable()
+	{
+		return writable;
+	}
+	
+	/**
+	 * Returns the number of payload bytes waiting to be written
+	 * 
+	 * @return
+	 */
+	long getQueuedBytes()
+	{
+		return queuedBytes.get();
+	}
+	
+	@Override
+	public void run()
+	{
+		while (!closed)
+		{
+			// run the tasks which were handed to the writer
+			Runnable task;
+			while (null != (task = tasks.poll()))
+			{
+				try
+				{
+					task.run();
+				}
+				catch (RuntimeException e)
+				{
+					logger.error(e.getMessage(), e);
+				}
+			}
+			
+			// check to see if there is nothing to write
+			if (queue.isEmpty())
+			{
+				parked = true;
+				
+				// check again now that producers can see the writer is parked
+				if (queue.isEmpty() && tasks.isEmpty() && !closed)
+				{
+					LockSupport.park(this);
+				}
+				
+				parked = false;
+				continue;
+			}
+			
+			try
+			{
+				drain();
+			}
+			catch (IOException | RuntimeException e)
+			{
+				logger.error(e.getMessage(), e);
+				
+				// fail the frames of this batch and close the connection
+				for (CompletableFuture<Void> future : batch)
+				{
+					future.completeExceptionally(e);
+				}
+				batch.clear();
+				
+				close();
+				client.disconnect();
+			}
+		}
+		
+		failPending();
+	}
+	
+	/**
+	 * Writes a batch of frames and flushes them together
+	 * 
+	 * @throws IOException
+	 */
+	private void drain() throws IOException
+	{
+		writeLock.lock();
+		
+		try
+		{
+			out.beginBatch();
+			
+			try
+			{
+				PendingSend send;
+				
+				// write frames until the batch is full or the queue is empty
+				while (batch.size() < MAX_BATCH_FRAMES && null != (send = queue.poll()))
+				{
+					batch.add(send.future);
+					queuedBytes.addAndGet(-send.data.length);
+					
+					client.writeData(send.data);
+				}
+			}
+			finally
+			{
+				out.endBatch();
+			}
+			
+			// an explicit policy does not flush at the end of a batch, but the futures promise that the frames were
+			// flushed
+			if (out.getFlushPolicy().isExplicit())
+			{
+				out.flush();
+			}
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+		
+		// every frame of the batch has been flushed
+		for (CompletableFuture<Void> future : batch)
+		{
+			future.complete(null);
+		}
+		batch.clear();
+		
+		// check to see if the low water mark has been reached. This is decided under the lock every time since a
+		// producer may be marking the queue unwritable while this batch drains it.
+		updateWritability();
+	}
+	
+	/**
+	 * Fails every frame still in the queue
+	 */
+	private void failPending()
+	{
+		PendingSend send;
+		while (null != (send = queue.poll()))
+		{
+			queuedBytes.addAndGet(-send.data.length);
+			send.future.completeExceptionally(new InvalidStateException());
+		}
+	}
+	
+	/**
+	 * Updates whether or not this queue is writable and notifies the client when it changes
+	 */
+	private synchronized void updateWritability()
+	{
+		final long queued = queuedBytes.get();
+		
+		// check to see if the queue has filled up
+		if (writable && queued >= highWaterMark)
+		{
+			writable = false;
+			client.notifyWritabilityChanged(false);
+		}
+		
+		// check to see if the queue has drained
+		else if (!writable && queued <= lowWaterMark)
+		{
+			writable = true;
+			client.notifyWritabilityChanged(true);
+		}
+	}
+	
+	/**
+	 * Holds a frame and the future to complete once it has been written
+	 */
+	private static class PendingSend
+	{
+		private final byte[] data;
+		private final CompletableFuture<Void> future;
+		
+		private PendingSend(final byte[] data, final CompletableFuture<Void> future)
+		{
+			this.data = data;
+			this.future = future;
+		}
+	}
+}
@@ -12,9 +12,15 @@ package com.gregmarut.commons.network.tcp;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import com.gregmarut.commons.network.InvalidStateException;
 import com.gregmarut.commons.network.ServerState;
+import com.gregmarut.commons.network.dispatch.EventDispatcher;
+import com.gregmarut.commons.network.dispatch.EventDispatchers;
+import com.gregmarut.commons.network.frame.FlushPolicy;
+import com.gregmarut.commons.network.frame.FrameCodec;
+import com.gregmarut.commons.network.frame.FrameCompression;
 
 /**
  * Acts as a base class where both of the types of servers share their common functionality
@@ -24,7 +30,6 @@ import com.gregmarut.commons.network.ServerState;
 public abstract class Server
 {
 	protected static final String SERVER_ACTIVITY_THREAD_NAME = "TCP Server Activity Thread";
-	protected static final String EVENT_DISPATCH_THREAD_NAME = "TCP Event Dispatch Thread";
 	
 	// ** Enumerations **//
 	// holds the state of the server
@@ -34,6 +39,21 @@ public abstract class Server
 	// holds the list of server listeners
 	protected final List<ServerListener> serverListeners;
 	
+	// holds the dispatcher which delivers the events of this server
+	private EventDispatcher eventDispatcher;
+	
+	// holds the executor which delivers the events of this server once it has been created
+	private volatile Executor eventExecutor;
+	
+	// holds the policy which decides when written frames are flushed
+	private FlushPolicy flushPolicy;
+	
+	// holds the codec which encodes and decodes the prefix of each frame
+	private FrameCodec frameCodec;
+	
+	// holds the compression settings of each connection
+	private FrameCompression frameCompression;
+	
 	/**
 	 * The constructor for Server
 	 * 
@@ -44,6 +64,14 @@ public abstract class Server
 		// set the list of server listeners
 		serverListeners = new ArrayList<ServerListener>();
 		
+		// use the default dispatcher until another one is set
+		eventDispatcher = EventDispatchers.getDefault();
+		
+		// flush every frame until another policy is set
+		flushPolicy = FlushPolicy.IMMEDIATE;
+		frameCodec = FrameCodec.DEFAULT;
+		frameCompression = FrameCompression.NONE;
+		
 		// set the state to closed
 		state = ServerState.CLOSED;
 	}
@@ -59,6 +87,14 @@ public abstract class Server
 		// save the list of server listeners
 		this.serverListeners = serverListeners;
 		
+		// use the default dispatcher until another one is set
+		eventDispatcher = EventDispatchers.getDefault();
+		
+		// flush every frame until another policy is set
+		flushPolicy = FlushPolicy.IMMEDIATE;
+		frameCodec = FrameCodec.DEFAULT;
+		frameCompression = FrameCompression.NONE;
+		
 		// check to see if the socket passed is valid
 		if (null != socket)
 		{
@@ -97,6 +133,145 @@ public abstract class Server
 		return serverListeners.remove(listener);
 	}
 	
+	/**
+	 * Sets the dispatcher used to deliver events to the listeners of this server. Connections accepted by a listening
+	 * server use the same dispatcher as the server that accepted them. The dispatcher should be set before the server
+	 * starts.
+	 * 
+	 * @param eventDispatcher
+	 */
+	public synchronized void setEventDispatcher(final EventDispatcher eventDispatcher)
+	{
+		// make sure the dispatcher is not null
+		if (null == eventDispatcher)
+		{
+			throw new IllegalArgumentException("eventDispatcher cannot be null");
+		}
+		
+		this.eventDispatcher = eventDispatcher;
+		this.eventExecutor = null;
+	}
+	
+	/**
+	 * Returns the dispatcher used to deliver events to the listeners of this server
+	 * 
+	 * @return
+	 */
+	public synchronized EventDispatcher getEventDispatcher()
+	{
+		return eventDispatcher;
+	}
+	
+	/**
+	 * Sets the policy which decides when written frames are flushed. Connections accepted by a listening server use
+	 * the same policy as the server that accepted them.
+	 * 
+	 * @param flushPolicy
+	 * @throws InvalidStateException
+	 */
+	public synchronized void setFlushPolicy(final FlushPolicy flushPolicy) throws InvalidStateException
+	{
+		// make sure the policy is not null
+		if (null == flushPolicy)
+		{
+			throw new IllegalArgumentException("flushPolicy cannot be null");
+		}
+		
+		this.flushPolicy = flushPolicy;
+	}
+	
+	/**
+	 * Returns the policy which decides when written frames are flushed
+	 * 
+	 * @return
+	 */
+	public synchronized FlushPolicy getFlushPolicy()
+	{
+		return flushPolicy;
+	}
+	
+	/**
+	 * Sets the codec which encodes and decodes the prefix of each frame. Connections accepted by a listening server use
+	 * the same codec as the server that accepted them. The codec must be set before any frames are exchanged.
+	 * 
+	 * @param frameCodec
+	 */
+	public synchronized void setFrameCodec(final FrameCodec frameCodec)
+	{
+		// make sure the codec is not null
+		if (null == frameCodec)
+		{
+			throw new IllegalArgumentException("frameCodec cannot be null");
+		}
+		
+		this.frameCodec = frameCodec;
+	}
+	
+	/**
+	 * Returns the codec which encodes and decodes the prefix of each frame
+	 * 
+	 * @return
+	 */
+	public synchronized FrameCodec getFrameCodec()
+	{
+		return frameCodec;
+	}
+	
+	/**
+	 * Sets the compression settings of each connection. Connections accepted by a listening server use the same
+	 * settings as the server that accepted them. Both ends of a connection must use the same settings, and they must
+	 * be set before any frames are exchanged.
+	 * 
+	 * @param frameCompression
+	 */
+	public synchronized void setFrameCompression(final FrameCompression frameCompression)
+	{
+		// make sure the settings are not null
+		if (null == frameCompression)
+		{
+			throw new IllegalArgumentException("frameCompression cannot be null");
+		}
+		
+		this.frameCompression = frameCompression;
+	}
+	
+	/**
+	 * Returns the compression settings of each connection
+	 * 
+	 * @return
+	 */
+	public synchronized FrameCompression getFrameCompression()
+	{
+		return frameCompression;
+	}
+	
+	/**
+	 * Returns the executor used to deliver the events of this server
+	 * 
+	 * @return
+	 */
+	protected Executor getEventExecutor()
+	{
+		Executor executor = eventExecutor;
+		
+		// check to see if the executor needs to be created
+		if (null == executor)
+		{
+			synchronized (this)
+			{
+				// make sure another thread did not create it first
+				if (null == eventExecutor)
+				{
+					eventExecutor = eventDispatcher.createExecutor();
+				}
+				
+				executor = eventExecutor;
+			}
+		}
+		
+		return executor;
+	}
+	
 	/**
 	 * Called right before this object is collected by garbage collection
 	 * @throws Throwable 
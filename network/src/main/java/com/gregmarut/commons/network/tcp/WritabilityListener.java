@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * Contributors:
+ * Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.tcp;
+
+/**
+ * Listens for changes in whether or not a client can accept more asynchronous sends without exceeding its high water
+ * mark
+ * 
+ * @author Greg Marut
+ */
+public interface WritabilityListener
+{
+	/**
+	 * invoked when the bytes waiting to be sent rise above the high water mark or fall back below the low water mark.
+	 * This is called on the thread which caused the change and must not block.
+	 * 
+	 * @param event
+	 * @param writable
+	 */
+	void writabilityChanged(ClientEvent event, boolean writable);
+}
@@ -0,0 +1,388 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.tcp.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.gregmarut.commons.network.InvalidStateException;
+import com.gregmarut.commons.network.ServerState;
+import com.gregmarut.commons.network.frame.FrameCodec;
+import com.gregmarut.commons.network.frame.FrameTooLargeException;
+import com.gregmarut.commons.network.frame.FramedStream;
+import com.gregmarut.commons.network.tcp.ConnectedServer;
+import com.gregmarut.commons.network.tcp.GenericSocket;
+import com.gregmarut.commons.network.tcp.ServerEvent;
+import com.gregmarut.commons.network.tcp.ServerListener;
+
+/**
+ * A connected server whose reads and writes are performed by a {@link SelectorLoop} instead of a dedicated thread.
+ * Frames use the same length prefixed format as {@link FramedStream}, as set by the server's {@link FrameCodec}, so
+ * these servers can talk to any existing {@link com.gregmarut.commons.network.tcp.Client}. Listeners are notified through the server's
+ * {@link com.gregmarut.commons.network.dispatch.EventDispatcher}; when the dispatcher runs events inline or blocks on a
+ * full queue, the selector loop and every other connection on it waits as well.
+ * 
+ * @author Greg Marut
+ */
+public class NIOConnectedServer extends ConnectedServer<SocketChannel>
+{
+	// ** Objects **//
+	// holds the loop which services this connection
+	private final SelectorLoop selectorLoop;
+	
+	// holds the key of this connection once it has been registered with the loop
+	private volatile SelectionKey key;
+	
+	// holds the frames which have been sent but not yet handed to the loop
+	private final Queue<ByteBuffer[]> writeQueue;
+	
+	// holds the buffers which the loop is still in the process of writing
+	private final ArrayDeque<ByteBuffer> pendingWrites;
+	
+	// holds the codec of this connection, which is fixed once the connection starts listening
+	private volatile FrameCodec frameCodec;
+	
+	// holds the prefix and the payload of the frame currently being read
+	private ByteBuffer prefix;
+	private byte[] payload;
+	private int payloadOffset;
+	
+	// determines whether or not a flush has already been scheduled on the loop
+	private final AtomicBoolean flushScheduled;
+	
+	// determines whether or not this connection has been closed
+	private final AtomicBoolean closed;
+	
+	/**
+	 * The constructor for NIOConnectedServer
+	 * 
+	 * @param socket
+	 * @param serverListeners
+	 * @param selectorLoop
+	 * @throws InvalidStateException
+	 */
+	NIOConnectedServer(final GenericSocket<SocketChannel> socket, final List<ServerListener> serverListeners,
+		final SelectorLoop selectorLoop) throws InvalidStateException
+	{
+		super(socket, serverListeners, false);
+		
+		this.selectorLoop = selectorLoop;
+		
+		writeQueue = new ConcurrentLinkedQueue<ByteBuffer[]>();
+		pendingWrites = new ArrayDeque<ByteBuffer>();
+		flushScheduled = new AtomicBoolean();
+		closed = new AtomicBoolean();
+	}
+	
+	/**
+	 * Registers this server with its selector loop
+	 */
+	@Override
+	protected synchronized void listen()
+	{
+		// make sure the state is in requested
+		if (ServerState.REQUESTED == state)
+		{
+			// change the state to connected
+			state = ServerState.CONNECTED;
+			
+			// fix the codec before any frames are exchanged
+			frameCodec = getFrameCodec();
+			prefix = ByteBuffer.allocate(frameCodec.getMaxPrefixLength());
+			
+			// hand the connection to the loop
+			selectorLoop.register(this);
+		}
+	}
+	
+	/**
+	 * Closes the connection
+	 */
+	@Override
+	public void disconnect()
+	{
+		// make sure this connection is only closed once
+		if (closed.compareAndSet(false, true))
+		{
+			// determine if the listeners were told about this connection
+			boolean connected = (null != key);
+			
+			super.disconnect();
+			
+			if (connected)
+			{
+				// dispatch the event
+				getEventExecutor().execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						// for each listener
+						for (ServerListener listener : serverListeners)
+						{
+							// tell the listener that the connection has been lost
+							listener.connectionLost(new ServerEvent(NIOConnectedServer.this));
+						}
+					}
+				});
+			}
+		}
+	}
+	
+	/**
+	 * Queues an encoded frame to be written by the selector loop
+	 * 
+	 * @param data
+	 * @throws IOException
+	 */
+	@Override
+	protected void writeFrame(final byte[] data) throws IOException
+	{
+		// build the prefix for this frame
+		byte[] prefixBytes = new byte[frameCodec.getMaxPrefixLength()];
+		ByteBuffer framePrefix = ByteBuffer.wrap(prefixBytes, 0, frameCodec.writeLength(data.length, prefixBytes));
+		
+		// the prefix and the payload are queued together so that frames from different threads cannot interleave
+		writeQueue.add(new ByteBuffer[]
+			{
+				framePrefix, ByteBuffer.wrap(data)
+			});
+		
+		// make sure the loop knows there is something to write
+		if (flushScheduled.compareAndSet(false, true))
+		{
+			selectorLoop.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					selectorLoop.flush(NIOConnectedServer.this);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Returns the channel of this connection
+	 * 
+	 * @return
+	 */
+	SocketChannel getChannel()
+	{
+		return socket.getSocket();
+	}
+	
+	/**
+	 * Called by the loop once this connection has been registered with its selector
+	 * 
+	 * @param key
+	 */
+	void registered(final SelectionKey key)
+	{
+		this.key = key;
+		
+		// dispatch the event
+		getEventExecutor().execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				// for each listener
+				for (ServerListener listener : serverListeners)
+				{
+					// tell the listener that a connection has been established
+					listener.connectionEstablished(new ServerEvent(NIOConnectedServer.this));
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Reads whatever data is available on the channel and notifies the listeners of every frame which has been
+	 * completed
+	 * 
+	 * @param readBuffer
+	 *            the buffer shared by all of the connections on the loop
+	 * @throws IOException
+	 */
+	void processRead(final ByteBuffer readBuffer) throws IOException
+	{
+		readBuffer.clear();
+		
+		// check to see if the stream has ended
+		if (FramedStream.END_OF_STREAM == getChannel().read(readBuffer))
+		{
+			throw new EOFException();
+		}
+		
+		readBuffer.flip();
+		
+		// while there is data left to process
+		while (readBuffer.hasRemaining())
+		{
+			// check to see if the prefix of a new frame is being read
+			if (null == payload)
+			{
+				long dataLength = FrameCodec.NEED_MORE_DATA;
+				
+				// check to see if the prefix can be decoded straight from the read buffer
+				if (0 == prefix.position())
+				{
+					dataLength = frameCodec.readLength(readBuffer);
+				}
+				
+				// otherwise gather the prefix a byte at a time until it is complete
+				while (FrameCodec.NEED_MORE_DATA == dataLength && readBuffer.hasRemaining())
+				{
+					prefix.put(readBuffer.get());
+					prefix.flip();
+					
+					dataLength = frameCodec.readLength(prefix);
+					
+					// keep the bytes gathered so far for the next attempt
+					if (FrameCodec.NEED_MORE_DATA == dataLength)
+					{
+						prefix.position(prefix.limit());
+						prefix.limit(prefix.capacity());
+					}
+				}
+				
+				// check to see if the prefix is still incomplete
+				if (FrameCodec.NEED_MORE_DATA == dataLength)
+				{
+					break;
+				}
+				
+				prefix.clear();
+				
+				// make sure the frame fits in an array
+				if (dataLength > FramedStream.MAX_ARRAY_SIZE)
+				{
+					throw new FrameTooLargeException(dataLength, FramedStream.MAX_ARRAY_SIZE);
+				}
+				
+				payload = new byte[(int) dataLength];
+				payloadOffset = 0;
+			}
+			
+			// copy as much of the payload as is available
+			int count = Math.min(readBuffer.remaining(), payload.length - payloadOffset);
+			readBuffer.get(payload, payloadOffset, count);
+			payloadOffset += count;
+			
+			// check to see if the frame is complete
+			if (payloadOffset == payload.length)
+			{
+				final byte[] data = decodeData(payload);
+				payload = null;
+				
+				// dispatch the event
+				getEventExecutor().execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						// for each listener
+						for (ServerListener listener : serverListeners)
+						{
+							// tell the listener that data has been received
+							listener.dataReceived(new ServerEvent(NIOConnectedServer.this, data));
+						}
+					}
+				});
+			}
+		}
+	}
+	
+	/**
+	 * Writes as many of the queued frames as the socket will accept. If the socket cannot take everything, the loop
+	 * is asked to call again once the socket becomes writable.
+	 * 
+	 * @param gatherBuffers
+	 *            the array shared by all of the connections on the loop
+	 * @throws IOException
+	 */
+	void processWrite(final ByteBuffer[] gatherBuffers) throws IOException
+	{
+		// make sure the connection has been registered
+		if (null == key)
+		{
+			return;
+		}
+		
+		while (true)
+		{
+			// move any queued frames into the pending buffers
+			ByteBuffer[] frame;
+			while (null != (frame = writeQueue.poll()))
+			{
+				pendingWrites.add(frame[0]);
+				pendingWrites.add(frame[1]);
+			}
+			
+			// check to see if everything has been written
+			if (pendingWrites.isEmpty())
+			{
+				// stop watching for the socket to become writable
+				key.interestOps(SelectionKey.OP_READ);
+				flushScheduled.set(false);
+				
+				// a frame may have been queued after the queue was drained but before the flag was cleared
+				if (writeQueue.isEmpty() || !flushScheduled.compareAndSet(false, true))
+				{
+					return;
+				}
+			}
+			else
+			{
+				// gather as many buffers as possible into a single write
+				int count = 0;
+				long total = 0;
+				for (ByteBuffer buffer : pendingWrites)
+				{
+					if (count == gatherBuffers.length)
+					{
+						break;
+					}
+					
+					gatherBuffers[count++] = buffer;
+					total += buffer.remaining();
+				}
+				
+				long written = getChannel().write(gatherBuffers, 0, count);
+				Arrays.fill(gatherBuffers, 0, count, null);
+				
+				// remove the buffers which have been completely written
+				while (!pendingWrites.isEmpty() && !pendingWrites.peekFirst().hasRemaining())
+				{
+					pendingWrites.pollFirst();
+				}
+				
+				// check to see if the socket's send buffer is full
+				if (written < total)
+				{
+					// wait for the socket to become writable again
+					key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					return;
+				}
+			}
+		}
+	}
+}
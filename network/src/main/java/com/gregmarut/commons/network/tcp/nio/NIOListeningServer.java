@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.tcp.nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+
+import com.gregmarut.commons.network.ServerState;
+import com.gregmarut.commons.network.tcp.ConnectedServer;
+import com.gregmarut.commons.network.tcp.GenericServerSocket;
+import com.gregmarut.commons.network.tcp.GenericSocket;
+import com.gregmarut.commons.network.tcp.ListeningServer;
+import com.gregmarut.commons.network.tcp.ServerListener;
+
+/**
+ * A listening server whose accepted connections are serviced by a small group of selector loops instead of a thread
+ * per connection. The same {@link ServerListener} callbacks are fired as for any other listening server.
+ * 
+ * @author Greg Marut
+ */
+public class NIOListeningServer extends ListeningServer<ServerSocketChannel, SocketChannel>
+{
+	// ** Objects **//
+	// holds the group of loops that connections are handed to
+	private SelectorLoopGroup selectorLoopGroup;
+	
+	// ** Primitives **//
+	// holds the port to use for network communication
+	protected final int port;
+	
+	// holds the number of loops to create when no group was provided
+	private final int selectorCount;
+	
+	// determines whether or not this server created the group and is therefore responsible for shutting it down
+	private final boolean ownsSelectorLoopGroup;
+	
+	/**
+	 * The constructor for NIOListeningServer. One selector loop is created for each available processor.
+	 * 
+	 * @param port
+	 */
+	public NIOListeningServer(final int port)
+	{
+		this(port, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * The constructor for NIOListeningServer
+	 * 
+	 * @param port
+	 * @param selectorCount
+	 *            the number of selector loops to create when this server starts listening
+	 */
+	public NIOListeningServer(final int port, final int selectorCount)
+	{
+		// make sure the selector count is greater than 0
+		if (selectorCount <= 0)
+		{
+			throw new IllegalArgumentException("selectorCount must be greater than 0");
+		}
+		
+		this.port = port;
+		this.selectorCount = selectorCount;
+		this.ownsSelectorLoopGroup = true;
+	}
+	
+	/**
+	 * The constructor for NIOListeningServer
+	 * 
+	 * @param port
+	 * @param selectorLoopGroup
+	 *            a group of selector loops which is shared with other servers. The group is not shut down when this
+	 *            server disconnects.
+	 */
+	public NIOListeningServer(final int port, final SelectorLoopGroup selectorLoopGroup)
+	{
+		this.port = port;
+		this.selectorCount = selectorLoopGroup.size();
+		this.selectorLoopGroup = selectorLoopGroup;
+		this.ownsSelectorLoopGroup = false;
+	}
+	
+	/**
+	 * Starts the listening server
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	@Override
+	public synchronized boolean listen() throws IOException
+	{
+		// check to see if the loops need to be created
+		if (ServerState.CLOSED == state && ownsSelectorLoopGroup)
+		{
+			selectorLoopGroup = new SelectorLoopGroup(selectorCount);
+		}
+		
+		try
+		{
+			return super.listen();
+		}
+		catch (IOException e)
+		{
+			// the server could not be started so stop the loops again
+			if (ownsSelectorLoopGroup)
+			{
+				selectorLoopGroup.shutdown();
+			}
+			
+			state = ServerState.CLOSED;
+			throw e;
+		}
+	}
+	
+	/**
+	 * Closes the connection. If this server created its own selector loops, every connection it accepted is closed as
+	 * well.
+	 */
+	@Override
+	public synchronized void disconnect()
+	{
+		// determine if the loops are running
+		boolean listening = (ServerState.CLOSED != state);
+		
+		super.disconnect();
+		
+		// check to see if the loops should be stopped
+		if (listening && ownsSelectorLoopGroup)
+		{
+			selectorLoopGroup.shutdown();
+		}
+	}
+	
+	@Override
+	public GenericServerSocket<ServerSocketChannel, SocketChannel> createNewServerSocket() throws IOException
+	{
+		ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+		serverSocketChannel.bind(new InetSocketAddress(port));
+		
+		return new NIOServerSocket(serverSocketChannel);
+	}
+	
+	@Override
+	protected GenericSocket<SocketChannel> createNewSocket(final SocketChannel socket)
+	{
+		return new NIOSocket(socket);
+	}
+	
+	/**
+	 * Returns the server activity to use for this server
+	 * 
+	 * @return
+	 */
+	@Override
+	protected ServerActivity getServerActivity()
+	{
+		return new NIOServerActivity();
+	}
+	
+	/**
+	 * A class used to hand accepted connections to the selector loops
+	 * 
+	 * @author Greg Marut
+	 */
+	protected class NIOServerActivity extends ListeningServer<ServerSocketChannel, SocketChannel>.ServerActivity
+	{
+		@Override
+		protected ConnectedServer<SocketChannel> createNewConnectedServer(final GenericSocket<SocketChannel> socket)
+		{
+			// return a new instance of a connected server which is serviced by the next loop
+			return new NIOConnectedServer(socket, new ArrayList<ServerListener>(serverListeners),
+				selectorLoopGroup.next());
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.tcp.nio;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import com.gregmarut.commons.network.tcp.GenericServerSocket;
+
+public class NIOServerSocket extends GenericServerSocket<ServerSocketChannel, SocketChannel>
+{
+	public NIOServerSocket(final ServerSocketChannel serverSocket)
+	{
+		super(serverSocket);
+	}
+	
+	@Override
+	public SocketChannel accept() throws IOException
+	{
+		return serverSocket.accept();
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		serverSocket.close();
+	}
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.tcp.nio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+import com.gregmarut.commons.network.tcp.GenericSocket;
+
+public class NIOSocket extends GenericSocket<SocketChannel>
+{
+	//** Objects **//
+	//holds the host to connect to
+	private final String host;
+	
+	//holds the port to use
+	private final int port;
+	
+	public NIOSocket(final SocketChannel socket)
+	{
+		this(socket, null, 0);
+	}
+	
+	public NIOSocket(final SocketChannel socket, final String host, final int port)
+	{
+		super(socket);
+		
+		this.host = host;
+		this.port = port;
+	}
+	
+	@Override
+	public void connect() throws IOException
+	{
+		//connect the socket
+		socket.connect(new InetSocketAddress(host, port));
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		socket.close();
+	}
+	
+	@Override
+	public InputStream getInputStream() throws IOException
+	{
+		return Channels.newInputStream(socket);
+	}
+	
+	@Override
+	public OutputStream getOutputStream() throws IOException
+	{
+		return Channels.newOutputStream(socket);
+	}
+	
+	@Override
+	public boolean isConnected()
+	{
+		return socket.isConnected();
+	}
+}
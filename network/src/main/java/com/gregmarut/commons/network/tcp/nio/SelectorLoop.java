@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.tcp.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single thread which multiplexes the non-blocking reads and writes of many connections over one {@link Selector}.
+ * All of the state belonging to a connection is only ever touched from the thread of the loop that the connection was
+ * registered with, other threads hand work to the loop through {@link #execute(Runnable)}.
+ * 
+ * @author Greg Marut
+ */
+class SelectorLoop implements Runnable
+{
+	// ** Finals **//
+	// holds the size of the buffer which every connection on this loop reads into
+	static final int READ_BUFFER_SIZE = 64 * 1024;
+	
+	// holds the maximum number of buffers that are passed to a single gathering write
+	static final int MAX_GATHER_BUFFERS = 64;
+	
+	// ** Objects **//
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	
+	// holds the selector that this loop waits on
+	private final Selector selector;
+	
+	// holds the tasks which have been handed to this loop from other threads
+	private final Queue<Runnable> tasks;
+	
+	// holds the buffers that are shared by every connection on this loop
+	private final ByteBuffer readBuffer;
+	private final ByteBuffer[] gatherBuffers;
+	
+	// holds the thread running this loop
+	private Thread thread;
+	
+	// ** Primitives **//
+	// determines whether or not this loop is still running
+	private volatile boolean running;
+	
+	SelectorLoop() throws IOException
+	{
+		selector = Selector.open();
+		tasks = new ConcurrentLinkedQueue<Runnable>();
+		
+		// the read buffer is direct so that the channel can read into it without an intermediate copy
+		readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		gatherBuffers = new ByteBuffer[MAX_GATHER_BUFFERS];
+	}
+	
+	/**
+	 * Starts the thread for this loop
+	 * 
+	 * @param threadName
+	 */
+	synchronized void start(final String threadName)
+	{
+		// make sure this loop has not already been started
+		if (null == thread)
+		{
+			running = true;
+			
+			thread = new Thread(this, threadName);
+			thread.start();
+		}
+	}
+	
+	/**
+	 * Stops this loop. Every connection that is still registered is disconnected.
+	 */
+	void shutdown()
+	{
+		running = false;
+		selector.wakeup();
+	}
+	
+	/**
+	 * Queues a task to be run on the thread of this loop
+	 * 
+	 * @param task
+	 */
+	void execute(final Runnable task)
+	{
+		tasks.add(task);
+		selector.wakeup();
+	}
+	
+	/**
+	 * Registers a connection with this loop. Once registered, the connection's listeners are told that a connection
+	 * has been established and the loop begins reading frames from it.
+	 * 
+	 * @param connection
+	 */
+	void register(final NIOConnectedServer connection)
+	{
+		execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					// switch the channel into non-blocking mode and start watching it for data
+					SocketChannel channel = connection.getChannel();
+					channel.configureBlocking(false);
+					
+					connection.registered(channel.register(selector, SelectionKey.OP_READ, connection));
+				}
+				catch (IOException e)
+				{
+					logger.error(e.getMessage(), e);
+					
+					connection.disconnect();
+				}
+			}
+		});
+	}
+	
+	@Override
+	public void run()
+	{
+		try
+		{
+			// while this loop has not been shut down
+			while (running)
+			{
+				// wait for one of the channels to become ready or for a task to arrive
+				selector.select();
+				
+				// run any tasks which were handed to this loop
+				runTasks();
+				
+				// for each of the keys which are ready
+				Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+				while (iterator.hasNext())
+				{
+					SelectionKey key = iterator.next();
+					iterator.remove();
+					
+					process(key);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			logger.error(e.getMessage(), e);
+		}
+		finally
+		{
+			close();
+		}
+	}
+	
+	/**
+	 * Processes a key which the selector has reported as ready
+	 * 
+	 * @param key
+	 */
+	private void process(final SelectionKey key)
+	{
+		NIOConnectedServer connection = (NIOConnectedServer) key.attachment();
+		
+		try
+		{
+			// check to see if there is data to be read
+			if (key.isValid() && key.isReadable())
+			{
+				connection.processRead(readBuffer);
+			}
+			
+			// check to see if the socket can accept more data
+			if (key.isValid() && key.isWritable())
+			{
+				connection.processWrite(gatherBuffers);
+			}
+		}
+		catch (IOException e)
+		{
+			logger.debug(e.getMessage(), e);
+			
+			connection.disconnect();
+		}
+		catch (CancelledKeyException e)
+		{
+			connection.disconnect();
+		}
+	}
+	
+	/**
+	 * Runs all of the tasks which are currently queued
+	 */
+	private void runTasks()
+	{
+		Runnable task;
+		while (null != (task = tasks.poll()))
+		{
+			try
+			{
+				task.run();
+			}
+			catch (RuntimeException e)
+			{
+				logger.error(e.getMessage(), e);
+			}
+		}
+	}
+	
+	/**
+	 * Disconnects every connection which is still registered and closes the selector
+	 */
+	private void close()
+	{
+		// holds the connections that are still registered
+		List<NIOConnectedServer> connections = new ArrayList<NIOConnectedServer>();
+		
+		for (SelectionKey key : selector.keys())
+		{
+			connections.add((NIOConnectedServer) key.attachment());
+		}
+		
+		// disconnect each of the connections
+		for (NIOConnectedServer connection : connections)
+		{
+			connection.disconnect();
+		}
+		
+		try
+		{
+			selector.close();
+		}
+		catch (IOException e)
+		{
+			logger.error(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Writes the pending frames of a connection from the thread of this loop
+	 * 
+	 * @param connection
+	 */
+	void flush(final NIOConnectedServer connection)
+	{
+		try
+		{
+			connection.processWrite(gatherBuffers);
+		}
+		catch (IOException e)
+		{
+			logger.debug(e.getMessage(), e);
+			
+			connection.disconnect();
+		}
+		catch (CancelledKeyException e)
+		{
+			connection.disconnect();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Greg Marut.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *    Greg Marut - initial API and implementation
+ ******************************************************************************/
+package com.gregmarut.commons.network.tcp.nio;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed group of selector loops that connections are spread across. Each loop is a single thread which services
+ * the reads and writes of every connection registered with it, so a group of a handful of loops can serve thousands
+ * of connections. A group may be shared between several servers.
+ * 
+ * @author Greg Marut
+ */
+public class SelectorLoopGroup
+{
+	protected static final String SELECTOR_LOOP_THREAD_NAME = "TCP Selector Loop Thread";
+	
+	// ** Objects **//
+	// holds the loops in this group
+	private final SelectorLoop[] loops;
+	
+	// holds the index used to assign the next connection
+	private final AtomicInteger nextLoop;
+	
+	/**
+	 * Creates and starts a new group of selector loops
+	 * 
+	 * @param size
+	 *            the number of loops (threads) in this group
+	 * @throws IOException
+	 */
+	public SelectorLoopGroup(final int size) throws IOException
+	{
+		// make sure the size is greater than 0
+		if (size <= 0)
+		{
+			throw new IllegalArgumentException("size must be greater than 0");
+		}
+		
+		loops = new SelectorLoop[size];
+		nextLoop = new AtomicInteger();
+		
+		try
+		{
+			// create and start each of the loops
+			for (int i = 0; i < size; i++)
+			{
+				loops[i] = new SelectorLoop();
+				loops[i].start(SELECTOR_LOOP_THREAD_NAME + " " + i);
+			}
+		}
+		catch (IOException e)
+		{
+			// stop any loops that have already been started
+			shutdown();
+			
+			throw e;
+		}
+	}
+	
+	/**
+	 * Returns the loop that the next connection should be registered with
+	 * 
+	 * @return
+	 */
+	SelectorLoop next()
+	{
+		return loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+	}
+	
+	/**
+	 * Returns the number of loops in this group
+	 * 
+	 * @return
+	 */
+	public int size()
+	{
+		return loops.length;
+	}
+	
+	/**
+	 * Stops each of the loops in this group. Every connection that is still open is disconnected.
+	 */
+	public void shutdown()
+	{
+		for (SelectorLoop loop : loops)
+		{
+			// make sure the loop was created
+			if (null != loop)
+			{
+				loop.shutdown();
+			}
+		}
+	}
+}
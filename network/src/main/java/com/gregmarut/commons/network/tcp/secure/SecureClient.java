@@ -11,21 +11,31 @@ package com.gregmarut.commons.network.tcp.secure;
 
 import java.io.IOException;
 
+import com.gregmarut.commons.encryption.AESGCMEncryption;
 import com.gregmarut.commons.encryption.Encryption;
 import com.gregmarut.commons.encryption.EncryptionException;
 import com.gregmarut.commons.network.tcp.Client;
 
 /**
  * Provides the exact same functionality as a Client but also provides added
- * security by encrypting data that is transmitted over the sockets.
+ * security by encrypting data that is transmitted over the sockets. {@link AESGCMEncryption} is recommended since it
+ * also detects frames which have been tampered with.
  * 
  * @author Greg Marut
  */
 public abstract class SecureClient<S> extends Client<S>
 {
 	// ** Finals **//
-	// holds the algorithm to use for this encryption
+	/**
+	 * @deprecated this was never used; frames are encrypted by whichever {@link Encryption} is given to the client
+	 */
+	@Deprecated
 	public static final int ITERATION_COUNT = 1024;
+	
+	/**
+	 * @deprecated this was never used; frames are encrypted by whichever {@link Encryption} is given to the client
+	 */
+	@Deprecated
 	public static final int SALT_LENGTH = 8;
 	
 	// ** Objects **//
@@ -46,23 +56,19 @@ public abstract class SecureClient<S> extends Client<S>
 	}
 	
 	/**
-	 * Writes the data to the output stream
+	 * Encrypts every frame before it is written. Frames are compressed before they are encrypted.
 	 * 
-	 * @param objData
+	 * @param frame
+	 * @return
 	 * @throws IOException
 	 */
 	@Override
-	protected void writeData(final byte[] decryptedData) throws IOException
+	protected byte[] encodeFrame(final byte[] frame) throws IOException
 	{
-		byte[] encryptedData;
-		
 		try
 		{
 			// encrypt the data
-			encryptedData = encryption.encrypt(decryptedData);
-			
-			// write the data to the output stream
-			out.writeFrame(encryptedData);
+			return encryption.encrypt(frame);
 		}
 		catch (EncryptionException e)
 		{
@@ -71,54 +77,35 @@ public abstract class SecureClient<S> extends Client<S>
 	}
 	
 	/**
-	 * Returns the client activity to use for this client
+	 * Decrypts every frame which is read. Frames are decrypted before they are decompressed.
 	 * 
+	 * @param frame
 	 * @return
+	 * @throws IOException
 	 */
 	@Override
-	protected ClientActivity getClientActivity()
+	protected byte[] decodeFrame(final byte[] frame) throws IOException
 	{
-		return new SecureClientActivity();
+		try
+		{
+			// decrypt the data
+			return encryption.decrypt(frame);
+		}
+		catch (EncryptionException e)
+		{
+			throw new IOException(e);
+		}
 	}
 	
 	/**
 	 * A class used to handle the connection process to the server
 	 * 
 	 * @author Greg
+	 * @deprecated frames are now decrypted by {@link #decodeFrame(byte[])}, so this class no longer adds anything
+	 *             and is only kept for existing subclasses
 	 */
+	@Deprecated
 	protected class SecureClientActivity extends Client<S>.ClientActivity
 	{
-		/**
-		 * Waits for data to be read from the reader
-		 * 
-		 * @return
-		 * @throws IOException
-		 */
-		@Override
-		protected byte[] readData() throws IOException
-		{
-			// holds the encrypted data
-			byte[] encryptedData = super.readData();
-			
-			// make sure the data is not null
-			if (null != encryptedData)
-			{
-				try
-				{
-					// decrypt the data
-					byte[] decryptedData = encryption.decrypt(encryptedData);
-					
-					return decryptedData;
-				}
-				catch (EncryptionException e)
-				{
-					throw new IOException(e);
-				}
-			}
-			else
-			{
-				return null;
-			}
-		}
 	}
 }
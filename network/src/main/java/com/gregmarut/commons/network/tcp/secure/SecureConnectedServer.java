@@ -48,24 +48,19 @@ public class SecureConnectedServer<S> extends ConnectedServer<S>
 	}
 	
 	/**
-	 * Writes the data to the output stream
+	 * Encrypts every frame before it is written. Frames are compressed before they are encrypted.
 	 * 
-	 * @param objData
+	 * @param frame
+	 * @return
 	 * @throws IOException
 	 */
 	@Override
-	protected void writeData(final byte[] decryptedData) throws IOException
+	protected byte[] encodeFrame(final byte[] frame) throws IOException
 	{
-		// holds the encrypted data
-		byte[] encryptedData;
-		
 		try
 		{
 			// encrypt the data
-			encryptedData = encryption.encrypt(decryptedData);
-			
-			// write the data to the output stream
-			out.writeFrame(encryptedData);
+			return encryption.encrypt(frame);
 		}
 		catch (EncryptionException e)
 		{
@@ -74,46 +69,35 @@ public class SecureConnectedServer<S> extends ConnectedServer<S>
 	}
 	
 	/**
-	 * Returns the server activity to use for this server
+	 * Decrypts every frame which is read. Frames are decrypted before they are decompressed.
 	 * 
+	 * @param frame
 	 * @return
+	 * @throws IOException
 	 */
 	@Override
-	protected ServerActivity getServerActivity()
+	protected byte[] decodeFrame(final byte[] frame) throws IOException
 	{
-		return new SecureServerActivity();
+		try
+		{
+			// decrypt the data
+			return encryption.decrypt(frame);
+		}
+		catch (EncryptionException e)
+		{
+			throw new IOException(e);
+		}
 	}
 	
 	/**
 	 * A class used to handle the listening process of the server
 	 * 
 	 * @author Greg Marut
+	 * @deprecated frames are now decrypted by {@link #decodeFrame(byte[])}, so this class no longer adds anything
+	 *             and is only kept for existing subclasses
 	 */
+	@Deprecated
 	protected class SecureServerActivity extends ConnectedServer<S>.ServerActivity
 	{
-		/**
-		 * Waits for data to be read from the reader
-		 * 
-		 * @return
-		 * @throws IOException
-		 */
-		@Override
-		protected byte[] readData() throws IOException
-		{
-			// holds the encrypted data
-			byte[] encryptedData = super.readData();
-			
-			try
-			{
-				// decrypt the data
-				byte[] decryptedData = encryption.decrypt(encryptedData);
-				
-				return decryptedData;
-			}
-			catch (EncryptionException e)
-			{
-				throw new IOException(e);
-			}
-		}
 	}
 }
@@ -11,6 +11,7 @@ package com.gregmarut.commons.network.tcp.secure;
 
 import java.util.ArrayList;
 
+import com.gregmarut.commons.encryption.AESGCMEncryption;
 import com.gregmarut.commons.encryption.Encryption;
 import com.gregmarut.commons.encryption.EncryptionException;
 import com.gregmarut.commons.network.tcp.ConnectedServer;
@@ -20,16 +21,31 @@ import com.gregmarut.commons.network.tcp.ServerListener;
 
 /**
  * Provides the exact same functionality as a ListeningServer but also provides added
- * security by encrypting data that is transmitted over the sockets.
+ * security by encrypting data that is transmitted over the sockets. {@link AESGCMEncryption} is recommended since it
+ * also detects frames which have been tampered with.
  * 
  * @author Greg Marut
  */
 public abstract class SecureListeningServer<L, S> extends ListeningServer<L, S>
 {
 	// ** Finals **//
-	// holds the algorithm to use for this encryption
+	/**
+	 * @deprecated this was never used; the connections use whichever {@link Encryption} is given to the server, and
+	 *             PBEWithMD5AndDES is not secure. Use {@link AESGCMEncryption}.
+	 */
+	@Deprecated
 	public static final String ALGORITHM = "PBEWithMD5AndDES";
+	
+	/**
+	 * @deprecated only applies to the password based {@link #ALGORITHM}
+	 */
+	@Deprecated
 	public static final int ITERATION_COUNT = 1024;
+	
+	/**
+	 * @deprecated only applies to the password based {@link #ALGORITHM}
+	 */
+	@Deprecated
 	public static final int SALT_LENGTH = 8;
 	
 	// ** Objects **//
@@ -20,17 +20,20 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.gregmarut.commons.network.dispatch.EventDispatcher;
+import com.gregmarut.commons.network.dispatch.EventDispatchers;
+
 public class UDPSocket
 {
 	// holds the maximum size of a UDP packet
 	public static final int MAX_PACKET_SIZE = 65508;
 	
 	private static final String UDP_LISTENING_ACTIVITY_THREAD_NAME = "UDP Listening Activity Thread";
-	private static final String EVENT_DISPATCH_THREAD_NAME = "UDP Event Dispatch Thread";
 	private static final String SEND_DATA_THREAD = "UDP Send Data Thread";
 	
 	// ** Objects **//
@@ -42,6 +45,9 @@ public class UDPSocket
 	// holds the list of udp listeners
 	protected final List<UDPListener> udpListeners;
 	
+	// holds the dispatcher which delivers the events of this socket
+	private EventDispatcher eventDispatcher;
+	
 	// ** Primitives **//
 	// holds the port number to operate on
 	private final int port;
@@ -61,6 +67,36 @@ public class UDPSocket
 		
 		// set the list of udp listeners
 		udpListeners = new ArrayList<UDPListener>();
+		
+		// use the default dispatcher until another one is set
+		eventDispatcher = EventDispatchers.getDefault();
+	}
+	
+	/**
+	 * Sets the dispatcher used to deliver events to the listeners of this socket. The new dispatcher is used the next
+	 * time this socket starts listening.
+	 * 
+	 * @param eventDispatcher
+	 */
+	public synchronized void setEventDispatcher(final EventDispatcher eventDispatcher)
+	{
+		// make sure the dispatcher is not null
+		if (null == eventDispatcher)
+		{
+			throw new IllegalArgumentException("eventDispatcher cannot be null");
+		}
+		
+		this.eventDispatcher = eventDispatcher;
+	}
+	
+	/**
+	 * Returns the dispatcher used to deliver events to the listeners of this socket
+	 * 
+	 * @return
+	 */
+	public synchronized EventDispatcher getEventDispatcher()
+	{
+		return eventDispatcher;
 	}
 	
 	/**
@@ -239,6 +275,9 @@ public class UDPSocket
 	
 	protected class UDPListeningActivity implements Runnable
 	{
+		// holds the executor which delivers the events of this activity
+		private final Executor eventExecutor = getEventDispatcher().createExecutor();
+		
 		@Override
 		public void run()
 		{
@@ -253,21 +292,20 @@ public class UDPSocket
 					// receive the data
 					datagramSocket.receive(packet);
 					
-					// for each of the udp listeners
-					for (final UDPListener listener : udpListeners)
+					// dispatch the event
+					eventExecutor.execute(new Runnable()
 					{
-						// create a new event dispatch thread
-						Thread thread = new Thread(new Runnable()
+						@Override
+						public void run()
 						{
-							@Override
-							public void run()
+							// for each of the udp listeners
+							for (UDPListener listener : udpListeners)
 							{
 								// notify the listener that a datagram packet has arrived
 								listener.packetReceived(packet);
 							}
-						}, EVENT_DISPATCH_THREAD_NAME);
-						thread.start();
-					}
+						}
+					});
 				}
 				catch (IOException e)
 				{
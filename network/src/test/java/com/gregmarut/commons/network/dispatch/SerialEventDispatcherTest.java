@@ -0,0 +1,187 @@
+package com.gregmarut.commons.network.dispatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class SerialEventDispatcherTest
+{
+	private static final int EVENTS = 10000;
+	
+	@Test
+	public void orderTest() throws InterruptedException
+	{
+		SerialEventDispatcher dispatcher = new SerialEventDispatcher(4, 16, OverflowPolicy.BLOCK);
+		
+		try
+		{
+			// create several connections which share the pool
+			List<List<Integer>> results = new ArrayList<List<Integer>>();
+			List<Executor> executors = new ArrayList<Executor>();
+			for (int i = 0; i < 8; i++)
+			{
+				results.add(Collections.synchronizedList(new ArrayList<Integer>()));
+				executors.add(dispatcher.createExecutor());
+			}
+			
+			final CountDownLatch latch = new CountDownLatch(EVENTS * executors.size());
+			
+			// interleave the events of each of the connections
+			for (int i = 0; i < EVENTS; i++)
+			{
+				for (int j = 0; j < executors.size(); j++)
+				{
+					final int value = i;
+					final List<Integer> result = results.get(j);
+					
+					executors.get(j).execute(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							result.add(value);
+							latch.countDown();
+						}
+					});
+				}
+			}
+			
+			Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+			
+			// verify that every connection saw its events in order
+			for (List<Integer> result : results)
+			{
+				Assert.assertEquals(EVENTS, result.size());
+				
+				for (int i = 0; i < EVENTS; i++)
+				{
+					Assert.assertEquals(i, result.get(i).intValue());
+				}
+			}
+		}
+		finally
+		{
+			dispatcher.shutdown();
+		}
+	}
+	
+	@Test
+	public void discardTest() throws InterruptedException
+	{
+		SerialEventDispatcher dispatcher = new SerialEventDispatcher(1, 1, OverflowPolicy.DISCARD);
+		
+		try
+		{
+			Executor executor = dispatcher.createExecutor();
+			
+			final CountDownLatch blocked = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			final AtomicInteger count = new AtomicInteger();
+			
+			// hold up the only thread so that the queue fills
+			executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					blocked.countDown();
+					
+					try
+					{
+						release.await();
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			
+			Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+			
+			// the first event fits in the queue and the rest are dropped
+			for (int i = 0; i < 10; i++)
+			{
+				executor.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						count.incrementAndGet();
+					}
+				});
+			}
+			
+			release.countDown();
+			
+			// wait for the queued event to be delivered
+			long timeout = System.currentTimeMillis() + 5000;
+			while (count.get() < 1 && System.currentTimeMillis() < timeout)
+			{
+				Thread.sleep(10);
+			}
+			
+			Thread.sleep(100);
+			Assert.assertEquals(1, count.get());
+		}
+		finally
+		{
+			dispatcher.shutdown();
+		}
+	}
+	
+	@Test
+	public void nestedBlockTest() throws InterruptedException
+	{
+		SerialEventDispatcher dispatcher = new SerialEventDispatcher(1, 1, OverflowPolicy.BLOCK);
+		
+		try
+		{
+			final Executor executor = dispatcher.createExecutor();
+			final List<Integer> result = Collections.synchronizedList(new ArrayList<Integer>());
+			final CountDownLatch latch = new CountDownLatch(5);
+			
+			// a task which queues more events than fit must not wait for its own thread
+			executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					for (int i = 0; i < 5; i++)
+					{
+						final int value = i;
+						executor.execute(new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								result.add(value);
+								latch.countDown();
+							}
+						});
+					}
+				}
+			});
+			
+			Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+			
+			// the nested events still run in the order they were queued
+			for (int i = 0; i < 5; i++)
+			{
+				Assert.assertEquals(i, result.get(i).intValue());
+			}
+		}
+		finally
+		{
+			dispatcher.shutdown();
+		}
+	}
+}
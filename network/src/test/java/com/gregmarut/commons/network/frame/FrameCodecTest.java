@@ -0,0 +1,164 @@
+package com.gregmarut.commons.network.frame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class FrameCodecTest
+{
+	private static final int[] SIZES = { 0, 1, 127, 128, 16383, 16384, 1024 * 1024 };
+	
+	@Test
+	public void roundTripTest() throws IOException
+	{
+		for (FrameCodec codec : new FrameCodec[] { FrameCodec.intPrefix(), FrameCodec.varintPrefix(),
+			FrameCodec.longPrefix() })
+		{
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			FramedStreamWriter writer = new FramedStreamWriter(os, FlushPolicy.IMMEDIATE, codec);
+			
+			for (int size : SIZES)
+			{
+				writer.writeFrame(frame(size));
+			}
+			
+			FramedStreamReader reader = new FramedStreamReader(new ByteArrayInputStream(os.toByteArray()), codec);
+			for (int size : SIZES)
+			{
+				Assert.assertTrue(Arrays.equals(frame(size), reader.readFrame()));
+			}
+			Assert.assertNull(reader.readFrame());
+		}
+	}
+	
+	@Test
+	public void varintOverheadTest() throws IOException
+	{
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		FramedStreamWriter writer = new FramedStreamWriter(os, FlushPolicy.IMMEDIATE, FrameCodec.varintPrefix());
+		
+		// tiny frames only need a single byte of prefix
+		writer.writeFrame(frame(10));
+		Assert.assertEquals(11, os.size());
+		
+		// the largest int needs five
+		byte[] prefix = new byte[FrameCodec.varintPrefix().getMaxPrefixLength()];
+		Assert.assertEquals(5, FrameCodec.varintPrefix().withMaxFrameSize(Integer.MAX_VALUE).writeLength(
+			Integer.MAX_VALUE, prefix));
+	}
+	
+	@Test
+	public void maxFrameSizeTest() throws IOException
+	{
+		// a hostile prefix claiming a 2GB frame with nothing behind it
+		byte[] hostile = new byte[] { 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF };
+		FramedStreamReader reader = new FramedStreamReader(new ByteArrayInputStream(hostile), FrameCodec.intPrefix()
+			.withMaxFrameSize(1024));
+		
+		try
+		{
+			reader.readFrame();
+			Assert.fail();
+		}
+		catch (FrameTooLargeException e)
+		{
+			Assert.assertEquals(Integer.MAX_VALUE, e.getFrameSize());
+			Assert.assertEquals(1024, e.getMaxFrameSize());
+		}
+		
+		// the writer refuses to send frames the codec does not allow
+		FramedStreamWriter writer = new FramedStreamWriter(new ByteArrayOutputStream(), FlushPolicy.IMMEDIATE,
+			FrameCodec.intPrefix().withMaxFrameSize(1024));
+		try
+		{
+			writer.writeFrame(new byte[1025]);
+			Assert.fail();
+		}
+		catch (FrameTooLargeException e)
+		{
+			Assert.assertEquals(1025, e.getFrameSize());
+		}
+	}
+	
+	@Test
+	public void incompleteBufferTest() throws IOException
+	{
+		for (FrameCodec codec : new FrameCodec[] { FrameCodec.intPrefix(), FrameCodec.varintPrefix(),
+			FrameCodec.longPrefix() })
+		{
+			byte[] prefix = new byte[codec.getMaxPrefixLength()];
+			int length = codec.writeLength(300, prefix);
+			
+			// every partial prefix asks for more data without consuming anything
+			for (int i = 0; i < length; i++)
+			{
+				ByteBuffer buffer = ByteBuffer.wrap(prefix, 0, i);
+				Assert.assertEquals(FrameCodec.NEED_MORE_DATA, codec.readLength(buffer));
+				Assert.assertEquals(0, buffer.position());
+			}
+			
+			ByteBuffer buffer = ByteBuffer.wrap(prefix, 0, length);
+			Assert.assertEquals(300, codec.readLength(buffer));
+			Assert.assertFalse(buffer.hasRemaining());
+		}
+	}
+	
+	@Test
+	public void streamingTest() throws IOException
+	{
+		final long length = 3L * 1024 * 1024 + 7;
+		FrameCodec codec = FrameCodec.longPrefix().withMaxFrameSize(Long.MAX_VALUE);
+		
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		FramedStreamWriter writer = new FramedStreamWriter(os, FlushPolicy.IMMEDIATE, codec);
+		writer.writeFrame(new PatternInputStream(), length);
+		
+		// the payload is copied straight through to the output stream
+		FramedStreamReader reader = new FramedStreamReader(new ByteArrayInputStream(os.toByteArray()), codec);
+		CheckingOutputStream check = new CheckingOutputStream();
+		Assert.assertEquals(length, reader.readFrame(check));
+		Assert.assertEquals(length, check.count);
+		Assert.assertEquals(FramedStream.END_OF_STREAM, reader.readFrame(check));
+	}
+	
+	private byte[] frame(final int size)
+	{
+		byte[] frame = new byte[size];
+		for (int i = 0; i < size; i++)
+		{
+			frame[i] = (byte) i;
+		}
+		
+		return frame;
+	}
+	
+	private static class PatternInputStream extends InputStream
+	{
+		private long position;
+		
+		@Override
+		public int read()
+		{
+			return (int) (position++ & 0xFF);
+		}
+	}
+	
+	private static class CheckingOutputStream extends OutputStream
+	{
+		private long count;
+		
+		@Override
+		public void write(final int b)
+		{
+			Assert.assertEquals(count++ & 0xFF, b & 0xFF);
+		}
+	}
+}
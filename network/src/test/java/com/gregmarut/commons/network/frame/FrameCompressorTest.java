@@ -0,0 +1,141 @@
+package com.gregmarut.commons.network.frame;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class FrameCompressorTest
+{
+	@Test
+	public void thresholdTest() throws IOException
+	{
+		FrameCompressor compressor = FrameCompression.deflate(64, Deflater.DEFAULT_COMPRESSION).createCompressor();
+		
+		// frames below the threshold are sent raw behind the flag
+		byte[] small = new byte[63];
+		byte[] frame = compressor.compress(small);
+		Assert.assertEquals(FrameCompressor.FLAG_RAW, frame[0]);
+		Assert.assertEquals(64, frame.length);
+		Assert.assertTrue(Arrays.equals(small, compressor.decompress(frame)));
+	}
+	
+	@Test
+	public void compressibleTest() throws IOException
+	{
+		FrameCompressor compressor = FrameCompression.deflate().createCompressor();
+		
+		// repeated json shrinks considerably
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < 1000; i++)
+		{
+			json.append("{\"id\":").append(i).append(",\"name\":\"item\",\"active\":true},");
+		}
+		byte[] data = json.append("]").toString().getBytes();
+		
+		// reuse the same compressor for several frames
+		for (int i = 0; i < 3; i++)
+		{
+			byte[] frame = compressor.compress(data);
+			Assert.assertEquals(FrameCompressor.FLAG_DEFLATE, frame[0]);
+			Assert.assertTrue(frame.length < data.length / 4);
+			Assert.assertTrue(Arrays.equals(data, compressor.decompress(frame)));
+		}
+	}
+	
+	@Test
+	public void incompressibleTest() throws IOException
+	{
+		FrameCompressor compressor = FrameCompression.deflate().createCompressor();
+		
+		// random data does not shrink so it is sent raw
+		byte[] data = new byte[64 * 1024];
+		new Random(1).nextBytes(data);
+		
+		byte[] frame = compressor.compress(data);
+		Assert.assertEquals(FrameCompressor.FLAG_RAW, frame[0]);
+		Assert.assertEquals(data.length + 1, frame.length);
+		Assert.assertTrue(Arrays.equals(data, compressor.decompress(frame)));
+	}
+	
+	@Test
+	public void maxFrameSizeTest() throws IOException
+	{
+		// a frame which expands to 1MB
+		byte[] frame = FrameCompression.deflate().createCompressor().compress(new byte[1024 * 1024]);
+		Assert.assertEquals(FrameCompressor.FLAG_DEFLATE, frame[0]);
+		
+		// the receiver refuses it before inflating anything
+		FrameCompressor receiver = FrameCompression.deflate(0, Deflater.DEFAULT_COMPRESSION, 1024)
+			.createCompressor();
+		try
+		{
+			receiver.decompress(frame);
+			Assert.fail();
+		}
+		catch (FrameTooLargeException e)
+		{
+			Assert.assertEquals(1024 * 1024, e.getFrameSize());
+		}
+	}
+	
+	@Test
+	public void corruptTest()
+	{
+		FrameCompressor compressor = FrameCompression.deflate().createCompressor();
+		
+		byte[] frame = compressor.compress(new byte[4096]);
+		
+		// a frame which claims a different length than it inflates to
+		frame[4]++;
+		try
+		{
+			compressor.decompress(frame);
+			Assert.fail();
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+		
+		// an unknown flag
+		try
+		{
+			compressor.decompress(new byte[] { 9, 1, 2 });
+			Assert.fail();
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+	}
+	
+	@Test
+	public void endTest() throws IOException
+	{
+		FrameCompressor compressor = FrameCompression.deflate().createCompressor();
+		byte[] frame = compressor.compress(new byte[4096]);
+		
+		compressor.end();
+		
+		// frames are sent raw once the compressor has ended
+		byte[] raw = compressor.compress(new byte[4096]);
+		Assert.assertEquals(FrameCompressor.FLAG_RAW, raw[0]);
+		Assert.assertEquals(4096, compressor.decompress(raw).length);
+		
+		// but deflated frames can no longer be restored
+		try
+		{
+			compressor.decompress(frame);
+			Assert.fail();
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+	}
+}
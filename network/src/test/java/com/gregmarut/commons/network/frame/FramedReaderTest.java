@@ -0,0 +1,149 @@
+package com.gregmarut.commons.network.frame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class FramedReaderTest
+{
+	private static final int[] SIZES = { 0, 1, 127, 4096, 10000 };
+	
+	@Test
+	public void arrayReadTest() throws IOException
+	{
+		FramedStreamReader reader = reader(SIZES);
+		byte[] buffer = new byte[16384];
+		
+		// each frame is read into the front of the same array
+		for (int size : SIZES)
+		{
+			Assert.assertEquals(size, reader.readFrame(buffer));
+			Assert.assertTrue(Arrays.equals(frame(size), Arrays.copyOf(buffer, size)));
+		}
+		Assert.assertEquals(FramedStream.END_OF_STREAM, reader.readFrame(buffer));
+	}
+	
+	@Test
+	public void heapBufferReadTest() throws IOException
+	{
+		assertBufferRead(ByteBuffer.allocate(16384));
+	}
+	
+	@Test
+	public void directBufferReadTest() throws IOException
+	{
+		assertBufferRead(ByteBuffer.allocateDirect(16384));
+	}
+	
+	@Test
+	public void frameBufferTest() throws IOException
+	{
+		FramedStreamReader reader = reader(SIZES);
+		
+		// the buffer is limited to each frame in turn
+		for (int size : SIZES)
+		{
+			ByteBuffer buffer = reader.readFrameBuffer();
+			Assert.assertEquals(0, buffer.position());
+			Assert.assertEquals(size, buffer.remaining());
+			
+			byte[] data = new byte[size];
+			buffer.get(data);
+			Assert.assertTrue(Arrays.equals(frame(size), data));
+		}
+		Assert.assertNull(reader.readFrameBuffer());
+	}
+	
+	@Test
+	public void oversizedFrameTest() throws IOException
+	{
+		FramedStreamReader reader = reader(new int[] { 10000, 10, 10000, 20 });
+		
+		// a frame which does not fit in the array is skipped
+		try
+		{
+			reader.readFrame(new byte[100]);
+			Assert.fail();
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+		
+		// so the next frame is still read
+		byte[] buffer = new byte[100];
+		Assert.assertEquals(10, reader.readFrame(buffer));
+		Assert.assertTrue(Arrays.equals(frame(10), Arrays.copyOf(buffer, 10)));
+		
+		// the same goes for a buffer with too little room
+		ByteBuffer direct = ByteBuffer.allocateDirect(100);
+		try
+		{
+			reader.readFrame(direct);
+			Assert.fail();
+		}
+		catch (IOException e)
+		{
+			Assert.assertEquals(0, direct.position());
+		}
+		
+		Assert.assertEquals(20, reader.readFrame(direct));
+		Assert.assertEquals(20, direct.position());
+	}
+	
+	/**
+	 * Reads every frame into a single buffer, one after the other, starting at an offset
+	 * 
+	 * @param buffer
+	 * @throws IOException
+	 */
+	private void assertBufferRead(final ByteBuffer buffer) throws IOException
+	{
+		FramedStreamReader reader = reader(SIZES);
+		buffer.position(3);
+		
+		for (int size : SIZES)
+		{
+			int start = buffer.position();
+			Assert.assertEquals(size, reader.readFrame(buffer));
+			Assert.assertEquals(start + size, buffer.position());
+			
+			byte[] data = new byte[size];
+			ByteBuffer copy = buffer.duplicate();
+			copy.position(start);
+			copy.get(data);
+			Assert.assertTrue(Arrays.equals(frame(size), data));
+		}
+		Assert.assertEquals(FramedStream.END_OF_STREAM, reader.readFrame(buffer));
+	}
+	
+	private FramedStreamReader reader(final int[] sizes) throws IOException
+	{
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		FramedStreamWriter writer = new FramedStreamWriter(os);
+		
+		for (int size : sizes)
+		{
+			writer.writeFrame(frame(size));
+		}
+		
+		return new FramedStreamReader(new ByteArrayInputStream(os.toByteArray()));
+	}
+	
+	private byte[] frame(final int size)
+	{
+		byte[] frame = new byte[size];
+		for (int i = 0; i < size; i++)
+		{
+			frame[i] = (byte) i;
+		}
+		
+		return frame;
+	}
+}
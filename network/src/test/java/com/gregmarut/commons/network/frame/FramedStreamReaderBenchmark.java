@@ -0,0 +1,172 @@
+package com.gregmarut.commons.network.frame;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the throughput of the original frame reading loop against the read modes of {@link FramedStreamReader}.
+ * Run the main method of this class with the test classpath of this module.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FramedStreamReaderBenchmark
+{
+	@Param(
+		{
+			"16", "1024", "65536", "1048576", "16777216"
+		})
+	private int frameSize;
+	
+	private InputStream legacyStream;
+	private FramedStreamReader reader;
+	private ByteBuffer callerBuffer;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException
+	{
+		// build a single frame which the streams repeat forever
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		FramedStreamWriter writer = new FramedStreamWriter(baos);
+		writer.writeFrame(new byte[frameSize]);
+		byte[] frame = baos.toByteArray();
+		
+		// the client and server wrap their socket streams the same way
+		legacyStream = new BufferedInputStream(new RepeatingInputStream(frame));
+		reader = new FramedStreamReader(new BufferedInputStream(new RepeatingInputStream(frame)));
+		callerBuffer = ByteBuffer.allocate(frameSize);
+	}
+	
+	@Benchmark
+	public byte[] legacyReadFrame() throws IOException
+	{
+		return legacyReadFrame(legacyStream);
+	}
+	
+	@Benchmark
+	public byte[] readFrame() throws IOException
+	{
+		return reader.readFrame();
+	}
+	
+	@Benchmark
+	public int readFrameIntoCallerBuffer() throws IOException
+	{
+		callerBuffer.clear();
+		return reader.readFrame(callerBuffer);
+	}
+	
+	@Benchmark
+	public ByteBuffer readFrameBuffer() throws IOException
+	{
+		return reader.readFrameBuffer();
+	}
+	
+	/**
+	 * The frame reading loop as it was before the read modes were added
+	 */
+	private static byte[] legacyReadFrame(final InputStream is) throws IOException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[FramedStream.BUFFER_SIZE];
+		int dataLength = 0;
+		int totalRead = 0;
+		int n = 0;
+		
+		while ((n = is.read(buffer, 0, FramedStream.INTEGER_SIZE - totalRead)) != FramedStream.END_OF_STREAM)
+		{
+			totalRead += n;
+			
+			if (FramedStream.INTEGER_SIZE == totalRead)
+			{
+				ByteBuffer bb = ByteBuffer.allocate(FramedStream.INTEGER_SIZE).put(buffer, 0,
+					FramedStream.INTEGER_SIZE);
+				dataLength = bb.getInt(0);
+				
+				break;
+			}
+		}
+		
+		if (FramedStream.END_OF_STREAM != n)
+		{
+			totalRead = 0;
+			int remaining = dataLength;
+			
+			while ((n = is.read(buffer, 0,
+				(remaining > FramedStream.INTEGER_SIZE ? FramedStream.INTEGER_SIZE : remaining))) != FramedStream.END_OF_STREAM
+				&& remaining > 0)
+			{
+				totalRead += n;
+				remaining = dataLength - totalRead;
+				baos.write(buffer, 0, n);
+			}
+			
+			return baos.toByteArray();
+		}
+		else
+		{
+			return null;
+		}
+	}
+	
+	/**
+	 * An input stream which endlessly repeats the same bytes
+	 */
+	private static class RepeatingInputStream extends InputStream
+	{
+		private final byte[] data;
+		private int position;
+		
+		RepeatingInputStream(final byte[] data)
+		{
+			this.data = data;
+		}
+		
+		@Override
+		public int read()
+		{
+			int b = data[position] & 0xFF;
+			position = (position + 1) % data.length;
+			
+			return b;
+		}
+		
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+		{
+			int count = Math.min(len, data.length - position);
+			System.arraycopy(data, position, b, off, count);
+			position = (position + count) % data.length;
+			
+			return count;
+		}
+	}
+	
+	public static void main(final String[] args) throws RunnerException
+	{
+		new Runner(new OptionsBuilder().include(FramedStreamReaderBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,278 @@
+package com.gregmarut.commons.network.frame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class FramedWriterTest
+{
+	@Test
+	public void explicitFlushTest() throws IOException
+	{
+		CountingOutputStream os = new CountingOutputStream();
+		FramedStreamWriter writer = new FramedStreamWriter(os, FlushPolicy.EXPLICIT);
+		
+		// write several frames without flushing
+		for (int i = 0; i < 10; i++)
+		{
+			writer.writeFrame(new byte[] { (byte) i });
+		}
+		Assert.assertEquals(1, os.flushes);
+		
+		writer.flush();
+		Assert.assertEquals(2, os.flushes);
+		
+		assertFrames(os.toByteArray(), 10);
+	}
+	
+	@Test
+	public void boundedFlushTest() throws IOException
+	{
+		CountingOutputStream os = new CountingOutputStream();
+		FramedStreamWriter writer = new FramedStreamWriter(os, FlushPolicy.bounded(4, 0, 0));
+		
+		// every fourth frame should trigger a flush
+		for (int i = 0; i < 10; i++)
+		{
+			writer.writeFrame(new byte[] { (byte) i });
+		}
+		Assert.assertEquals(3, os.flushes);
+	}
+	
+	@Test
+	public void delayedFlushTest() throws IOException, InterruptedException
+	{
+		CountingOutputStream os = new CountingOutputStream();
+		FramedStreamWriter writer = new FramedStreamWriter(os, FlushPolicy.bounded(0, 0, 10));
+		
+		writer.writeFrame(new byte[] { 1 });
+		Assert.assertEquals(1, os.flushes);
+		
+		// wait for the scheduled flush to run
+		long deadline = System.currentTimeMillis() + 5000;
+		while (os.getFlushes() < 2 && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(5);
+		}
+		Assert.assertEquals(2, os.getFlushes());
+	}
+	
+	@Test
+	public void blockedFlushTest() throws IOException, InterruptedException
+	{
+		final CountDownLatch release = new CountDownLatch(1);
+		
+		// this stream blocks every delayed flush like a peer which has stopped reading
+		CountingOutputStream blocked = new CountingOutputStream()
+		{
+			@Override
+			public void flush()
+			{
+				super.flush();
+				
+				try
+				{
+					if (getFlushes() > 1)
+					{
+						release.await();
+					}
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		
+		try
+		{
+			FramedStreamWriter stalled = new FramedStreamWriter(blocked, FlushPolicy.bounded(0, 0, 10));
+			stalled.writeFrame(new byte[] { 1 });
+			
+			// wait for the delayed flush of the stalled writer to block
+			long deadline = System.currentTimeMillis() + 5000;
+			while (blocked.getFlushes() < 2 && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(5);
+			}
+			Assert.assertEquals(2, blocked.getFlushes());
+			
+			// the delayed flush of another writer must still run
+			CountingOutputStream os = new CountingOutputStream();
+			FramedStreamWriter writer = new FramedStreamWriter(os, FlushPolicy.bounded(0, 0, 10));
+			writer.writeFrame(new byte[] { 1 });
+			
+			deadline = System.currentTimeMillis() + 5000;
+			while (os.getFlushes() < 2 && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(5);
+			}
+			Assert.assertEquals(2, os.getFlushes());
+		}
+		finally
+		{
+			release.countDown();
+		}
+	}
+	
+	@Test
+	public void timedFlushTest() throws IOException, InterruptedException
+	{
+		final CountDownLatch release = new CountDownLatch(1);
+		
+		// this stream blocks every flush after the first like a peer which has stopped reading
+		CountingOutputStream blocked = new CountingOutputStream()
+		{
+			@Override
+			public void flush()
+			{
+				super.flush();
+				
+				try
+				{
+					if (getFlushes() > 1)
+					{
+						release.await();
+					}
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		
+		try
+		{
+			FramedStreamWriter writer = new FramedStreamWriter(blocked, FlushPolicy.EXPLICIT);
+			writer.writeFrame(new byte[] { 1 });
+			
+			// the flush gives up instead of waiting on the stream
+			long start = System.currentTimeMillis();
+			Assert.assertFalse(writer.flush(100, TimeUnit.MILLISECONDS));
+			Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+			
+			// a flush which is not blocked finishes in time
+			release.countDown();
+			Assert.assertTrue(writer.flush(5, TimeUnit.SECONDS));
+		}
+		finally
+		{
+			release.countDown();
+		}
+	}
+	
+	@Test
+	public void flushExecutorTest() throws IOException, InterruptedException
+	{
+		final CountDownLatch executed = new CountDownLatch(1);
+		
+		CountingOutputStream os = new CountingOutputStream();
+		FramedStreamWriter writer = new FramedStreamWriter(os, FlushPolicy.bounded(0, 0, 10));
+		writer.setFlushExecutor(new Executor()
+		{
+			@Override
+			public void execute(final Runnable command)
+			{
+				command.run();
+				executed.countDown();
+			}
+		});
+		
+		// the delayed flush should be handed to the executor
+		writer.writeFrame(new byte[] { 1 });
+		Assert.assertTrue(executed.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(2, os.getFlushes());
+	}
+	
+	@Test
+	public void gatheringTest() throws IOException
+	{
+		File file = File.createTempFile("frames", ".bin");
+		file.deleteOnExit();
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		FileChannel channel = raf.getChannel();
+		
+		try
+		{
+			GatheringFramedWriter writer = new GatheringFramedWriter(channel, FlushPolicy.EXPLICIT);
+			
+			// queue more frames than fit in a single gathering write
+			final int frames = GatheringFramedWriter.MAX_QUEUED_FRAMES * 2 + 3;
+			for (int i = 0; i < frames; i++)
+			{
+				writer.writeFrame(new byte[] { (byte) i });
+			}
+			
+			// only the full batches should have been written so far
+			Assert.assertEquals(GatheringFramedWriter.MAX_QUEUED_FRAMES * 2 * 5, channel.size());
+			
+			writer.flush();
+			Assert.assertEquals(frames * 5, channel.size());
+			
+			// read back every frame that was written
+			byte[] bytes = new byte[(int) channel.size()];
+			FileInputStream is = new FileInputStream(file);
+			try
+			{
+				Assert.assertEquals(bytes.length, is.read(bytes));
+			}
+			finally
+			{
+				is.close();
+			}
+			
+			assertFrames(bytes, frames);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Verifies that the bytes hold the expected single byte frames
+	 * 
+	 * @param bytes
+	 * @param frames
+	 * @throws IOException
+	 */
+	private void assertFrames(final byte[] bytes, final int frames) throws IOException
+	{
+		FramedStreamReader reader = new FramedStreamReader(new ByteArrayInputStream(bytes));
+		for (int i = 0; i < frames; i++)
+		{
+			Assert.assertTrue(Arrays.equals(new byte[] { (byte) i }, reader.readFrame()));
+		}
+		Assert.assertNull(reader.readFrame());
+	}
+	
+	private static class CountingOutputStream extends ByteArrayOutputStream
+	{
+		private int flushes;
+		
+		@Override
+		public synchronized void flush()
+		{
+			flushes++;
+		}
+		
+		public synchronized int getFlushes()
+		{
+			return flushes;
+		}
+	}
+}
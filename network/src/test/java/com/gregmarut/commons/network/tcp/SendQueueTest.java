@@ -0,0 +1,341 @@
+package com.gregmarut.commons.network.tcp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.gregmarut.commons.network.InvalidStateException;
+import com.gregmarut.commons.network.frame.FramedStreamWriter;
+import com.gregmarut.commons.network.tcp.ip.IPClient;
+import com.gregmarut.commons.network.tcp.nio.NIOListeningServer;
+
+public class SendQueueTest
+{
+	private static final int FRAMES = 10000;
+	
+	@Test
+	public void pipelineTest() throws Exception
+	{
+		final int port = findFreePort();
+		
+		// count every frame the server receives
+		final AtomicInteger count = new AtomicInteger();
+		final CountDownLatch received = new CountDownLatch(FRAMES);
+		NIOListeningServer server = new NIOListeningServer(port, 1);
+		server.addServerListener(new CountingListener(count, received));
+		server.listen();
+		
+		IPClient client = new IPClient("localhost", port);
+		
+		try
+		{
+			connect(client);
+			
+			// pipeline every frame without waiting on the socket
+			List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+			for (int i = 0; i < FRAMES; i++)
+			{
+				futures.add(client.sendDataAsync(Integer.toString(i).getBytes()));
+			}
+			
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).get(10,
+				TimeUnit.SECONDS);
+			Assert.assertTrue(received.await(10, TimeUnit.SECONDS));
+			Assert.assertEquals(FRAMES, count.get());
+			Assert.assertEquals(0, client.getQueuedBytes());
+		}
+		finally
+		{
+			client.disconnect();
+			server.disconnect();
+		}
+	}
+	
+	@Test
+	public void waterMarkTest() throws Exception
+	{
+		final int port = findFreePort();
+		
+		NIOListeningServer server = new NIOListeningServer(port, 1);
+		server.addServerListener(new CountingListener(new AtomicInteger(), new CountDownLatch(0)));
+		server.listen();
+		
+		final BlockingQueue<Boolean> changes = new LinkedBlockingQueue<Boolean>();
+		
+		IPClient client = new IPClient("localhost", port);
+		client.setWriteWaterMarks(512 * 1024, 1024 * 1024);
+		client.addWritabilityListener(new WritabilityListener()
+		{
+			@Override
+			public void writabilityChanged(ClientEvent event, boolean writable)
+			{
+				changes.add(writable);
+			}
+		});
+		
+		try
+		{
+			connect(client);
+			Assert.assertTrue(client.isWritable());
+			
+			// queue far more than the high water mark
+			CompletableFuture<Void> last = null;
+			for (int i = 0; i < 64; i++)
+			{
+				last = client.sendDataAsync(new byte[1024 * 1024]);
+			}
+			
+			// the client becomes unwritable once the high water mark is reached
+			Assert.assertEquals(Boolean.FALSE, changes.poll(10, TimeUnit.SECONDS));
+			last.get(10, TimeUnit.SECONDS);
+			
+			// it may cross the water marks several times, but ends up writable once the queue drains
+			Boolean lastChange = Boolean.FALSE;
+			Boolean change;
+			while (null != (change = changes.poll(1, TimeUnit.SECONDS)))
+			{
+				lastChange = change;
+			}
+			Assert.assertEquals(Boolean.TRUE, lastChange);
+			Assert.assertTrue(client.isWritable());
+		}
+		finally
+		{
+			client.disconnect();
+			server.disconnect();
+		}
+	}
+	
+	@Test
+	public void drainedWhileUnwritableTest() throws Exception
+	{
+		final CountDownLatch writable = new CountDownLatch(1);
+		final SendQueue[] holder = new SendQueue[1];
+		
+		// this client writes nothing and holds the producer inside the writability update until the queue drains
+		IPClient client = new IPClient("localhost", 1)
+		{
+			@Override
+			protected void writeData(final byte[] data)
+			{
+			}
+			
+			@Override
+			void notifyWritabilityChanged(final boolean isWritable)
+			{
+				if (isWritable)
+				{
+					writable.countDown();
+				}
+				else
+				{
+					awaitDrained(holder[0]);
+				}
+			}
+		};
+		
+		SendQueue queue = new SendQueue(client, new FramedStreamWriter(new ByteArrayOutputStream()),
+			new ReentrantLock(), 64, 128);
+		holder[0] = queue;
+		queue.start();
+		
+		try
+		{
+			// cross the high water mark while the writer empties the queue
+			queue.send(new byte[256]).get(5, TimeUnit.SECONDS);
+			
+			// the writer must notice the queue drained even though it was marked unwritable late
+			Assert.assertTrue(writable.await(5, TimeUnit.SECONDS));
+			Assert.assertTrue(queue.isWritable());
+		}
+		finally
+		{
+			queue.close();
+		}
+	}
+	
+	@Test
+	public void concurrentWritabilityTest() throws Exception
+	{
+		IPClient client = new IPClient("localhost", 1)
+		{
+			@Override
+			protected void writeData(final byte[] data)
+			{
+			}
+		};
+		
+		final SendQueue queue = new SendQueue(client, new FramedStreamWriter(new ByteArrayOutputStream()),
+			new ReentrantLock(), 64, 128);
+		queue.start();
+		
+		try
+		{
+			// keep several producers crossing the water marks while the writer drains
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int i = 0; i < 4; i++)
+			{
+				Thread thread = new Thread(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						for (int j = 0; j < 20000; j++)
+						{
+							queue.send(new byte[100]);
+						}
+					}
+				});
+				thread.start();
+				threads.add(thread);
+			}
+			
+			for (Thread thread : threads)
+			{
+				thread.join();
+			}
+			
+			// once every frame has been written the queue must be writable again
+			awaitDrained(queue);
+			long deadline = System.currentTimeMillis() + 5000;
+			while (!queue.isWritable() && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(5);
+			}
+			Assert.assertTrue(queue.isWritable());
+		}
+		finally
+		{
+			queue.close();
+		}
+	}
+	
+	@Test
+	public void disconnectedTest() throws InterruptedException, TimeoutException
+	{
+		IPClient client = new IPClient("localhost", 1);
+		
+		try
+		{
+			client.sendDataAsync(new byte[1]).get(1, TimeUnit.SECONDS);
+			Assert.fail();
+		}
+		catch (ExecutionException e)
+		{
+			Assert.assertTrue(e.getCause() instanceof InvalidStateException);
+		}
+	}
+	
+	private void connect(final Client<?> client) throws InterruptedException
+	{
+		final CountDownLatch connected = new CountDownLatch(1);
+		client.addClientListener(new ClientListener()
+		{
+			@Override
+			public void dataReceived(ClientEvent event)
+			{
+			}
+			
+			@Override
+			public void connectionEstablished(ClientEvent event)
+			{
+				connected.countDown();
+			}
+			
+			@Override
+			public void connectionLost(ClientEvent event)
+			{
+			}
+			
+			@Override
+			public void connectionError(ClientEvent event)
+			{
+			}
+		});
+		
+		client.connect();
+		Assert.assertTrue(connected.await(5, TimeUnit.SECONDS));
+	}
+	
+	private static void awaitDrained(final SendQueue queue)
+	{
+		long deadline = System.currentTimeMillis() + 5000;
+		while (queue.getQueuedBytes() > 0 && System.currentTimeMillis() < deadline)
+		{
+			Thread.yield();
+		}
+		
+		// give the writer time to finish the batch
+		try
+		{
+			Thread.sleep(50);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private int findFreePort() throws IOException
+	{
+		ServerSocket serverSocket = new ServerSocket(0);
+		
+		try
+		{
+			return serverSocket.getLocalPort();
+		}
+		finally
+		{
+			serverSocket.close();
+		}
+	}
+	
+	private static class CountingListener implements ServerListener
+	{
+		private final AtomicInteger count;
+		private final CountDownLatch received;
+		
+		private CountingListener(final AtomicInteger count, final CountDownLatch received)
+		{
+			this.count = count;
+			this.received = received;
+		}
+		
+		@Override
+		public void dataReceived(ServerEvent event)
+		{
+			count.incrementAndGet();
+			received.countDown();
+		}
+		
+		@Override
+		public void connectionEstablished(ServerEvent event)
+		{
+		}
+		
+		@Override
+		public void connectionLost(ServerEvent event)
+		{
+		}
+		
+		@Override
+		public void connectionRequest(ServerEvent event)
+		{
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package com.gregmarut.commons.network.tcp.ip.secure;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.gregmarut.commons.encryption.AESEncryption;
+import com.gregmarut.commons.encryption.AESGCMEncryption;
+import com.gregmarut.commons.encryption.Encryption;
+import com.gregmarut.commons.encryption.EncryptionException;
+import com.gregmarut.commons.network.frame.FrameCompression;
+import com.gregmarut.commons.network.tcp.ClientEvent;
+import com.gregmarut.commons.network.tcp.ClientListener;
+import com.gregmarut.commons.network.tcp.ServerEvent;
+import com.gregmarut.commons.network.tcp.ServerListener;
+
+public class SecureCompressionTest
+{
+	private static final String KEY = "0123456789abcdef";
+	
+	@Test
+	public void echoTest() throws IOException, InterruptedException, EncryptionException
+	{
+		echo(new AESEncryption(KEY), new AESEncryption(KEY));
+	}
+	
+	@Test
+	public void gcmEchoTest() throws IOException, InterruptedException, EncryptionException
+	{
+		echo(new AESGCMEncryption(KEY.getBytes()), new AESGCMEncryption(KEY.getBytes()));
+	}
+	
+	private void echo(final Encryption serverEncryption, final Encryption clientEncryption) throws IOException,
+		InterruptedException, EncryptionException
+	{
+		final int port = findFreePort();
+		
+		// create an encrypted, compressed server which echoes every frame back to the client
+		IPSecureListeningServer server = new IPSecureListeningServer(port, serverEncryption);
+		server.setFrameCompression(FrameCompression.deflate());
+		server.addServerListener(new EchoListener());
+		server.listen();
+		
+		final CountDownLatch connected = new CountDownLatch(1);
+		final BlockingQueue<byte[]> received = new LinkedBlockingQueue<byte[]>();
+		
+		IPSecureClient client = new IPSecureClient("localhost", port, clientEncryption);
+		client.setFrameCompression(FrameCompression.deflate());
+		client.addClientListener(new ClientListener()
+		{
+			@Override
+			public void dataReceived(ClientEvent event)
+			{
+				received.add(event.getData());
+			}
+			
+			@Override
+			public void connectionEstablished(ClientEvent event)
+			{
+				connected.countDown();
+			}
+			
+			@Override
+			public void connectionLost(ClientEvent event)
+			{
+			}
+			
+			@Override
+			public void connectionError(ClientEvent event)
+			{
+			}
+		});
+		
+		try
+		{
+			client.connect();
+			Assert.assertTrue(connected.await(5, TimeUnit.SECONDS));
+			
+			// one frame below the threshold and one which is compressed
+			StringBuilder json = new StringBuilder();
+			for (int i = 0; i < 500; i++)
+			{
+				json.append("{\"id\":").append(i).append(",\"name\":\"item\"}");
+			}
+			
+			client.sendData("Hello World".getBytes());
+			client.sendData(json.toString().getBytes());
+			
+			Assert.assertEquals("Hello World", new String(received.poll(5, TimeUnit.SECONDS)));
+			Assert.assertEquals(json.toString(), new String(received.poll(5, TimeUnit.SECONDS)));
+		}
+		finally
+		{
+			client.disconnect();
+			server.disconnect();
+		}
+	}
+	
+	private int findFreePort() throws IOException
+	{
+		ServerSocket serverSocket = new ServerSocket(0);
+		
+		try
+		{
+			return serverSocket.getLocalPort();
+		}
+		finally
+		{
+			serverSocket.close();
+		}
+	}
+	
+	private static class EchoListener implements ServerListener
+	{
+		@Override
+		public void dataReceived(ServerEvent event)
+		{
+			event.getConnectedServer().sendData(event.getData());
+		}
+		
+		@Override
+		public void connectionEstablished(ServerEvent event)
+		{
+		}
+		
+		@Override
+		public void connectionLost(ServerEvent event)
+		{
+		}
+		
+		@Override
+		public void connectionRequest(ServerEvent event)
+		{
+		}
+	}
+}
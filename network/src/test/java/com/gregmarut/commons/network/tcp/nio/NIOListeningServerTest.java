@@ -0,0 +1,138 @@
+package com.gregmarut.commons.network.tcp.nio;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.gregmarut.commons.network.frame.FrameCodec;
+import com.gregmarut.commons.network.tcp.ClientEvent;
+import com.gregmarut.commons.network.tcp.ClientListener;
+import com.gregmarut.commons.network.tcp.ServerEvent;
+import com.gregmarut.commons.network.tcp.ServerListener;
+import com.gregmarut.commons.network.tcp.ip.IPClient;
+
+public class NIOListeningServerTest
+{
+	@Test
+	public void echoTest() throws IOException, InterruptedException
+	{
+		echo(FrameCodec.DEFAULT);
+	}
+	
+	@Test
+	public void varintEchoTest() throws IOException, InterruptedException
+	{
+		echo(FrameCodec.varintPrefix());
+	}
+	
+	private void echo(final FrameCodec frameCodec) throws IOException, InterruptedException
+	{
+		final int port = findFreePort();
+		
+		// create a server which echoes every frame back to the client
+		NIOListeningServer server = new NIOListeningServer(port, 2);
+		server.setFrameCodec(frameCodec);
+		server.addServerListener(new EchoListener());
+		server.listen();
+		
+		final CountDownLatch connected = new CountDownLatch(1);
+		final BlockingQueue<byte[]> received = new LinkedBlockingQueue<byte[]>();
+		
+		IPClient client = new IPClient("localhost", port);
+		client.setFrameCodec(frameCodec);
+		client.addClientListener(new ClientListener()
+		{
+			@Override
+			public void dataReceived(ClientEvent event)
+			{
+				received.add(event.getData());
+			}
+			
+			@Override
+			public void connectionEstablished(ClientEvent event)
+			{
+				connected.countDown();
+			}
+			
+			@Override
+			public void connectionLost(ClientEvent event)
+			{
+			}
+			
+			@Override
+			public void connectionError(ClientEvent event)
+			{
+			}
+		});
+		
+		try
+		{
+			client.connect();
+			Assert.assertTrue(connected.await(5, TimeUnit.SECONDS));
+			
+			// a large frame spans many reads and writes on both sides
+			byte[] large = new byte[1024 * 1024];
+			Arrays.fill(large, (byte) 7);
+			
+			client.sendData("Hello World".getBytes());
+			client.sendData(new byte[0]);
+			client.sendData(large);
+			
+			// the frames of a single connection are delivered in the order they were sent
+			Assert.assertEquals("Hello World", new String(received.poll(5, TimeUnit.SECONDS)));
+			Assert.assertEquals(0, received.poll(5, TimeUnit.SECONDS).length);
+			Assert.assertTrue(Arrays.equals(large, received.poll(5, TimeUnit.SECONDS)));
+		}
+		finally
+		{
+			client.disconnect();
+			server.disconnect();
+		}
+	}
+	
+	private int findFreePort() throws IOException
+	{
+		ServerSocket serverSocket = new ServerSocket(0);
+		
+		try
+		{
+			return serverSocket.getLocalPort();
+		}
+		finally
+		{
+			serverSocket.close();
+		}
+	}
+	
+	private static class EchoListener implements ServerListener
+	{
+		@Override
+		public void dataReceived(ServerEvent event)
+		{
+			event.getConnectedServer().sendData(event.getData());
+		}
+		
+		@Override
+		public void connectionEstablished(ServerEvent event)
+		{
+		}
+		
+		@Override
+		public void connectionLost(ServerEvent event)
+		{
+		}
+		
+		@Override
+		public void connectionRequest(ServerEvent event)
+		{
+		}
+	}
+}